@@ -33,6 +33,11 @@ class Method extends Node {
     this.offset,
     this.objcSelector = '',
     this.taskQueueType = TaskQueueType.serial,
+    this.isCoalesced = false,
+    this.isLastArgumentStreamed = false,
+    this.adaptiveBudgetMicroseconds,
+    this.hasDeadline = false,
+    this.boundedTaskQueue,
     this.documentationComments = const <String>[],
   });
 
@@ -57,6 +62,26 @@ class Method extends Node {
   /// Specifies how handlers are dispatched with respect to threading.
   TaskQueueType taskQueueType;
 
+  /// Whether a call may be replaced by a newer call before it is sent.
+  bool isCoalesced;
+
+  /// Whether the host reads the elements of the last argument, a `List`, one
+  /// at a time instead of receiving the whole list.
+  bool isLastArgumentStreamed;
+
+  /// The average time per call, in microseconds, above which the host moves
+  /// the handler of this method to a background task queue, or null if the
+  /// handler isn't moved.
+  int? adaptiveBudgetMicroseconds;
+
+  /// Whether calls carry the time after which the caller no longer waits for
+  /// the reply.
+  bool hasDeadline;
+
+  /// The limits of the background executor that runs the handler of this
+  /// method, or null if the handler doesn't have its own.
+  BoundedTaskQueue? boundedTaskQueue;
+
   /// List of documentation comments, seperated by line.
   ///
   /// Lines should not include the comment marker itself, but should include any
@@ -80,6 +105,8 @@ class Api extends Node {
     required this.location,
     required this.methods,
     this.dartHostTestHandler,
+    this.isSingleChannel = false,
+    this.boundedTaskQueue,
     this.documentationComments = const <String>[],
   });
 
@@ -95,6 +122,14 @@ class Api extends Node {
   /// The name of the Dart test interface to generate to help with testing.
   String? dartHostTestHandler;
 
+  /// Whether all methods share one channel, with messages carrying the index
+  /// of the called method.
+  bool isSingleChannel;
+
+  /// The limits of the background executor shared by the handlers of all
+  /// methods, or null if they aren't run on one.
+  BoundedTaskQueue? boundedTaskQueue;
+
   /// List of documentation comments, seperated by line.
   ///
   /// Lines should not include the comment marker itself, but should include any
@@ -177,6 +212,9 @@ class NamedType extends Node {
     required this.type,
     this.offset,
     this.documentationComments = const <String>[],
+    this.largeBlobThreshold,
+    this.isColumnar = false,
+    this.isOffsetIndexed = false,
   });
 
   /// The name of the entity.
@@ -188,6 +226,18 @@ class NamedType extends Node {
   /// The offset in the source file where the [NamedType] appears.
   int? offset;
 
+  /// The payload size in bytes from which the field is transferred through a
+  /// file, or null if the field isn't annotated with `LargeBlob`.
+  int? largeBlobThreshold;
+
+  /// Whether the field is a list of data classes that is sent as one array per
+  /// field of the element class.
+  bool isColumnar;
+
+  /// Whether the field is a list that is sent with a table of the offsets of
+  /// its encoded elements.
+  bool isOffsetIndexed;
+
   /// List of documentation comments, seperated by line.
   ///
   /// Lines should not include the comment marker itself, but should include any
@@ -207,6 +257,7 @@ class Class extends Node {
   Class({
     required this.name,
     required this.fields,
+    this.hasPresenceBitmap = false,
     this.documentationComments = const <String>[],
   });
 
@@ -216,6 +267,10 @@ class Class extends Node {
   /// All the fields contained in the class.
   List<NamedType> fields;
 
+  /// Whether instances are sent as a bitmap of the non-null fields followed by
+  /// their values, instead of a map with every field.
+  bool hasPresenceBitmap;
+
   /// List of documentation comments, seperated by line.
   ///
   /// Lines should not include the comment marker itself, but should include any
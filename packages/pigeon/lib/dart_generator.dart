@@ -21,11 +21,23 @@ const DocumentCommentSpecification _docCommentSpec =
 /// Options that control how Dart code will be generated.
 class DartOptions {
   /// Constructor for DartOptions.
-  const DartOptions({this.copyrightHeader});
+  const DartOptions(
+      {this.copyrightHeader, this.varintIntegers, this.preserveReferences});
 
   /// A copyright header that will get prepended to generated code.
   final Iterable<String>? copyrightHeader;
 
+  /// Determines if codecs write integers as zigzag varints. This is false by
+  /// default and is set through `PigeonOptions.varintIntegers`, so that the
+  /// host uses the same encoding.
+  final bool? varintIntegers;
+
+  /// Determines if codecs write a data class instance that appears more than
+  /// once in a message as a reference to its first occurrence. This is false
+  /// by default and is set through `PigeonOptions.preserveReferences`, so that
+  /// the host uses the same encoding.
+  final bool? preserveReferences;
+
   /// Creates a [DartOptions] from a Map representation where:
   /// `x = DartOptions.fromMap(x.toMap())`.
   static DartOptions fromMap(Map<String, Object> map) {
@@ -33,6 +45,8 @@ class DartOptions {
         map['copyrightHeader'] as Iterable<dynamic>?;
     return DartOptions(
       copyrightHeader: copyrightHeader?.cast<String>(),
+      varintIntegers: map['varintIntegers'] as bool?,
+      preserveReferences: map['preserveReferences'] as bool?,
     );
   }
 
@@ -41,6 +55,9 @@ class DartOptions {
   Map<String, Object> toMap() {
     final Map<String, Object> result = <String, Object>{
       if (copyrightHeader != null) 'copyrightHeader': copyrightHeader!,
+      if (varintIntegers != null) 'varintIntegers': varintIntegers!,
+      if (preserveReferences != null)
+        'preserveReferences': preserveReferences!,
     };
     return result;
   }
@@ -62,23 +79,149 @@ String _escapeForDartSingleQuotedString(String raw) {
 /// Calculates the name of the codec class that will be generated for [api].
 String _getCodecName(Api api) => '_${api.name}Codec';
 
+/// The type that codecs write before varint integers when
+/// `varintIntegers` is set. It is below the types of custom classes.
+const int _varintType = 127;
+
+/// The type that codecs write before a reference to a data class instance that
+/// was already written to the message when `preserveReferences` is set.
+const int _referenceType = 126;
+
+/// Returns the classes in the codec of [api], with those that don't fit in a
+/// single byte written as [extendedCodecFieldKey] and a 16-bit type.
+Iterable<EnumeratedClass> _getCodecClasses(Api api, Root root) =>
+    getCodecClasses(api, root, extendedTypes: true);
+
 /// Writes the codec that will be used by [api].
 /// Example:
 ///
 /// class FooCodec extends StandardMessageCodec {...}
-void _writeCodec(Indent indent, String codecName, Api api, Root root) {
+void _writeCodec(Indent indent, String codecName, Api api, Root root,
+    {bool varintIntegers = false, bool preserveReferences = false}) {
   indent.write('class $codecName extends StandardMessageCodec ');
   indent.scoped('{', '}', () {
     indent.writeln('const $codecName();');
-    if (getCodecClasses(api, root).isNotEmpty) {
+    if (varintIntegers) {
+      indent.format('''
+void _writeVarint(WriteBuffer buffer, int value) {
+\tint zigzag = (value << 1) ^ (value >> 63);
+\twhile ((zigzag & ~0x7F) != 0) {
+\t\tbuffer.putUint8((zigzag & 0x7F) | 0x80);
+\t\t// A logical shift, zigzag can have the sign bit set.
+\t\tzigzag = (zigzag >> 7) & 0x01FFFFFFFFFFFFFF;
+\t}
+\tbuffer.putUint8(zigzag);
+}
+int _readVarint(ReadBuffer buffer) {
+\tint zigzag = 0;
+\tint shift = 0;
+\tint byte;
+\tdo {
+\t\tbyte = buffer.getUint8();
+\t\tzigzag |= (byte & 0x7F) << shift;
+\t\tshift += 7;
+\t} while ((byte & 0x80) != 0);
+\treturn ((zigzag >> 1) & 0x7FFFFFFFFFFFFFFF) ^ -(zigzag & 1);
+}''');
+    }
+    final List<EnumeratedClass> codecClasses =
+        _getCodecClasses(api, root).toList();
+    final Iterable<EnumeratedClass> extendedClasses =
+        codecClasses.where((EnumeratedClass element) => element.isExtended);
+    final bool hasReferences = preserveReferences && codecClasses.isNotEmpty;
+    if (hasReferences) {
+      indent.format('''
+/// The data classes written to each message that is encoded, by their index.
+static final Expando<Map<Object, int>> _writtenObjects = Expando<Map<Object, int>>();
+/// The data classes read from each message that is decoded, by their index.
+static final Expando<List<Object>> _readObjects = Expando<List<Object>>();
+/// Writes a reference to [value] if it was already written to [buffer] and
+/// returns whether it did.
+bool _writeReference(WriteBuffer buffer, Object value) {
+\tfinal int? index = (_writtenObjects[buffer] ??= Map<Object, int>.identity())[value];
+\tif (index == null) {
+\t\treturn false;
+\t}
+\tbuffer.putUint8($_referenceType);
+\twriteSize(buffer, index);
+\treturn true;
+}
+/// Records that [value] was written to [buffer], so that later occurrences
+/// are written as references.
+void _addWrittenObject(WriteBuffer buffer, Object value) {
+\tfinal Map<Object, int> objects = _writtenObjects[buffer]!;
+\tobjects[value] = objects.length;
+}
+/// Records that [value] was read from [buffer], so that references to it
+/// can be resolved.
+Object _addReadObject(ReadBuffer buffer, Object value) {
+\t(_readObjects[buffer] ??= <Object>[]).add(value);
+\treturn value;
+}''');
+    }
+    void writeDecode(EnumeratedClass customClass) {
+      final String decodeCall =
+          '${customClass.name}.decode(readValue(buffer)!)';
+      indent.writeln(hasReferences
+          ? 'return _addReadObject(buffer, $decodeCall);'
+          : 'return $decodeCall;');
+    }
+
+    if (extendedClasses.isNotEmpty) {
+      indent.writeln(
+          '/// Reads a custom class written as $extendedCodecFieldKey followed by its 16-bit [type].');
+      indent.write(
+          'Object? _readExtendedValueOfType(int type, ReadBuffer buffer) ');
+      indent.scoped('{', '}', () {
+        indent.write('switch (type) ');
+        indent.scoped('{', '}', () {
+          for (final EnumeratedClass customClass in extendedClasses) {
+            indent.write('case ${customClass.extendedEnumeration}: ');
+            indent.writeScoped('', '', () {
+              writeDecode(customClass);
+            });
+          }
+          indent.write('default:');
+          indent.writeScoped('', '', () {
+            indent.writeln("throw const FormatException('Message corrupted');");
+          });
+        });
+      });
+    }
+    if (codecClasses.isNotEmpty || varintIntegers) {
       indent.writeln('@override');
       indent.write('void writeValue(WriteBuffer buffer, Object? value) ');
       indent.scoped('{', '}', () {
-        for (final EnumeratedClass customClass in getCodecClasses(api, root)) {
+        if (varintIntegers) {
+          indent.write('if (value is int) ');
+          indent.scoped('{', '} else ', () {
+            indent.writeln('buffer.putUint8($_varintType);');
+            indent.writeln('_writeVarint(buffer, value);');
+          });
+        }
+        for (final EnumeratedClass customClass in codecClasses) {
           indent.write('if (value is ${customClass.name}) ');
           indent.scoped('{', '} else ', () {
-            indent.writeln('buffer.putUint8(${customClass.enumeration});');
-            indent.writeln('writeValue(buffer, value.encode());');
+            void writeObject() {
+              if (customClass.isExtended) {
+                indent.writeln('buffer.putUint8($extendedCodecFieldKey);');
+                indent.writeln(
+                    'buffer.putUint16(${customClass.extendedEnumeration});');
+              } else {
+                indent.writeln('buffer.putUint8(${customClass.enumeration});');
+              }
+              indent.writeln('writeValue(buffer, value.encode());');
+            }
+
+            if (hasReferences) {
+              indent.write('if (!_writeReference(buffer, value)) ');
+              indent.scoped('{', '}', () {
+                writeObject();
+                indent.writeln('_addWrittenObject(buffer, value);');
+              });
+            } else {
+              writeObject();
+            }
           });
         }
         indent.scoped('{', '}', () {
@@ -90,12 +233,30 @@ void _writeCodec(Indent indent, String codecName, Api api, Root root) {
       indent.scoped('{', '}', () {
         indent.write('switch (type) ');
         indent.scoped('{', '}', () {
-          for (final EnumeratedClass customClass
-              in getCodecClasses(api, root)) {
+          if (varintIntegers) {
+            indent.write('case $_varintType: ');
+            indent.writeScoped('', '', () {
+              indent.writeln('return _readVarint(buffer);');
+            });
+          }
+          if (hasReferences) {
+            indent.write('case $_referenceType: ');
+            indent.writeScoped('', '', () {
+              indent.writeln('return _readObjects[buffer]![readSize(buffer)];');
+            });
+          }
+          for (final EnumeratedClass customClass in codecClasses
+              .where((EnumeratedClass element) => !element.isExtended)) {
             indent.write('case ${customClass.enumeration}: ');
+            indent.writeScoped('', '', () {
+              writeDecode(customClass);
+            });
+          }
+          if (extendedClasses.isNotEmpty) {
+            indent.write('case $extendedCodecFieldKey: ');
             indent.writeScoped('', '', () {
               indent.writeln(
-                  'return ${customClass.name}.decode(readValue(buffer)!);');
+                  'return _readExtendedValueOfType(buffer.getUint16(), buffer);');
             });
           }
           indent.write('default:');
@@ -158,7 +319,9 @@ String _getMethodArgumentsSignature(
 void _writeHostApi(DartOptions opt, Indent indent, Api api, Root root) {
   assert(api.location == ApiLocation.host);
   final String codecName = _getCodecName(api);
-  _writeCodec(indent, codecName, api, root);
+  _writeCodec(indent, codecName, api, root,
+      varintIntegers: opt.varintIntegers ?? false,
+      preserveReferences: opt.preserveReferences ?? false);
   indent.addln('');
   bool first = true;
   addDocumentationComments(indent, api.documentationComments, _docCommentSpec);
@@ -175,7 +338,7 @@ final BinaryMessenger? _binaryMessenger;
 
     indent.writeln('static const MessageCodec<Object?> codec = $codecName();');
     indent.addln('');
-    for (final Method func in api.methods) {
+    enumerate(api.methods, (int methodIndex, Method func) {
       if (!first) {
         indent.writeln('');
       } else {
@@ -184,7 +347,9 @@ final BinaryMessenger? _binaryMessenger;
       addDocumentationComments(
           indent, func.documentationComments, _docCommentSpec);
       String argSignature = '';
-      String sendArgument = 'null';
+      final List<String> sendItems = <String>[
+        if (api.isSingleChannel) '$methodIndex',
+      ];
       if (func.arguments.isNotEmpty) {
         String argNameFunc(int index, NamedType type) =>
             _getSafeArgumentName(index, type);
@@ -197,14 +362,26 @@ final BinaryMessenger? _binaryMessenger;
             return name;
           }
         });
-        sendArgument = '<Object?>[${argExpressions.join(', ')}]';
+        sendItems.addAll(argExpressions);
         argSignature = _getMethodArgumentsSignature(func, argNameFunc);
       }
+      if (func.hasDeadline) {
+        // The deadline is sent after the arguments, so hosts that don't read
+        // it still find the arguments where they expect them.
+        sendItems.add('deadline');
+        argSignature = argSignature.isEmpty
+            ? '{Duration? timeout}'
+            : '$argSignature, {Duration? timeout}';
+      }
+      final String sendArgument =
+          sendItems.isEmpty ? 'null' : '<Object?>[${sendItems.join(', ')}]';
       indent.write(
         'Future<${_addGenericTypesNullable(func.returnType)}> ${func.name}($argSignature) async ',
       );
       indent.scoped('{', '}', () {
-        final String channelName = makeChannelName(api, func);
+        final String channelName = api.isSingleChannel
+            ? makeSingleChannelName(api)
+            : makeChannelName(api, func);
         indent.writeln(
             'final BasicMessageChannel<Object?> channel = BasicMessageChannel<Object?>(');
         indent.nest(2, () {
@@ -220,8 +397,19 @@ final BinaryMessenger? _binaryMessenger;
         final String returnStatement = func.returnType.isVoid
             ? 'return;'
             : 'return ($accessor as $returnType?)$nullHandler$castCall;';
+        if (func.hasDeadline) {
+          indent.format('''
+final int? deadline = timeout == null
+\t\t? null
+\t\t: DateTime.now().add(timeout).millisecondsSinceEpoch;
+final Future<Object?> reply = channel.send($sendArgument);
+final Map<Object?, Object?>? replyMap =
+\t\tawait (timeout == null ? reply : reply.timeout(timeout)) as Map<Object?, Object?>?;''');
+        } else {
+          indent.format('''
+final Map<Object?, Object?>? replyMap =\n\t\tawait channel.send($sendArgument) as Map<Object?, Object?>?;''');
+        }
         indent.format('''
-final Map<Object?, Object?>? replyMap =\n\t\tawait channel.send($sendArgument) as Map<Object?, Object?>?;
 if (replyMap == null) {
 \tthrow PlatformException(
 \t\tcode: 'channel-error',
@@ -250,7 +438,7 @@ if (replyMap == null) {
 \t$returnStatement
 }''');
       });
-    }
+    });
   });
 }
 
@@ -273,7 +461,9 @@ void _writeFlutterApi(
 }) {
   assert(api.location == ApiLocation.flutter);
   final String codecName = _getCodecName(api);
-  _writeCodec(indent, codecName, api, root);
+  _writeCodec(indent, codecName, api, root,
+      varintIntegers: opt.varintIntegers ?? false,
+      preserveReferences: opt.preserveReferences ?? false);
   addDocumentationComments(indent, api.documentationComments, _docCommentSpec);
 
   indent.write('abstract class ${api.name} ');
@@ -432,6 +622,8 @@ void generateDart(DartOptions opt, Root root, StringSink sink) {
       root.classes.map((Class x) => x.name).toList();
   final List<String> customEnumNames =
       root.enums.map((Enum x) => x.name).toList();
+  final Set<String> columnarClassNames = getColumnarClassNames(root);
+  final bool preserveReferences = opt.preserveReferences ?? false;
   final Indent indent = Indent(sink);
 
   void writeHeader() {
@@ -461,8 +653,12 @@ void generateDart(DartOptions opt, Root root, StringSink sink) {
 
   void writeImports() {
     indent.writeln("import 'dart:async';");
+    if (hasLargeBlobFields(root)) {
+      indent.writeln("import 'dart:io' show Directory, File, RandomAccessFile;");
+    }
+    final String byteData = hasOffsetIndexedFields(root) ? 'ByteData, ' : '';
     indent.writeln(
-      "import 'dart:typed_data' show Float64List, Int32List, Int64List, Uint8List;",
+      "import 'dart:typed_data' show ${byteData}Float64List, Int32List, Int64List, Uint8List;",
     );
     indent.addln('');
     indent.writeln(
@@ -490,7 +686,38 @@ void generateDart(DartOptions opt, Root root, StringSink sink) {
         for (final NamedType field in klass.fields) {
           indent.write("pigeonMap['${field.name}'] = ");
           final String conditional = field.type.isNullable ? '?' : '';
-          if (customClassNames.contains(field.type.baseName)) {
+          if (field.largeBlobThreshold != null) {
+            indent.addln(
+              '_encodeLargeBlob(${field.name}, ${field.largeBlobThreshold});',
+            );
+          } else if (field.isColumnar) {
+            final String encodeCall =
+                '${field.type.typeArguments.first.baseName}.encodeColumns';
+            indent.addln(
+              field.type.isNullable
+                  ? '${field.name} == null ? null : $encodeCall(${field.name}!);'
+                  : '$encodeCall(${field.name});',
+            );
+          } else if (field.isOffsetIndexed) {
+            final String nonNullField =
+                field.type.isNullable ? '${field.name}!' : field.name;
+            String elements = nonNullField;
+            if (field.type.typeArguments.isNotEmpty &&
+                customClassNames
+                    .contains(field.type.typeArguments.first.baseName)) {
+              final TypeDeclaration elementType =
+                  field.type.typeArguments.first;
+              final String access = elementType.isNullable ? '?' : '';
+              elements =
+                  '$nonNullField.map((${_addGenericTypesNullable(elementType)} e) => e$access.encode())';
+            }
+            indent.addln(
+              field.type.isNullable
+                  ? '${field.name} == null ? null : _encodeOffsetIndexed($elements);'
+                  : '_encodeOffsetIndexed($elements);',
+            );
+          } else if (customClassNames.contains(field.type.baseName) &&
+              !preserveReferences) {
             indent.addln(
               '${field.name}$conditional.encode();',
             );
@@ -502,13 +729,57 @@ void generateDart(DartOptions opt, Root root, StringSink sink) {
             indent.addln('${field.name};');
           }
         }
-        indent.writeln('return pigeonMap;');
+        if (klass.hasPresenceBitmap) {
+          indent.writeln('return _encodePresenceBitmap(pigeonMap.values);');
+        } else {
+          indent.writeln('return pigeonMap;');
+        }
       });
     }
 
     void writeDecode() {
       void writeValueDecode(NamedType field) {
-        if (customClassNames.contains(field.type.baseName)) {
+        if (field.largeBlobThreshold != null) {
+          final String nullCheck = field.type.isNullable ? '' : '!';
+          indent.add("_decodeLargeBlob(pigeonMap['${field.name}'])$nullCheck");
+        } else if (field.isColumnar) {
+          final String nonNullValue =
+              "${field.type.typeArguments.first.baseName}.decodeColumns(pigeonMap['${field.name}']!)";
+          indent.format(
+              field.type.isNullable
+                  ? '''
+pigeonMap['${field.name}'] != null
+\t\t? $nonNullValue
+\t\t: null'''
+                  : nonNullValue,
+              leadingSpace: false,
+              trailingNewline: false);
+        } else if (field.isOffsetIndexed) {
+          final String elementType = field.type.typeArguments.isEmpty
+              ? 'Object?'
+              : _addGenericTypesNullable(field.type.typeArguments.first);
+          String elementDecode = '(Object? value) => value as $elementType';
+          if (field.type.typeArguments.isNotEmpty &&
+              customClassNames
+                  .contains(field.type.typeArguments.first.baseName)) {
+            final String className = field.type.typeArguments.first.baseName;
+            elementDecode = field.type.typeArguments.first.isNullable
+                ? '(Object? value) => value == null ? null : $className.decode(value)'
+                : '(Object? value) => $className.decode(value!)';
+          }
+          final String nonNullValue =
+              "_decodeOffsetIndexed<$elementType>(pigeonMap['${field.name}']!, $elementDecode)";
+          indent.format(
+              field.type.isNullable
+                  ? '''
+pigeonMap['${field.name}'] != null
+\t\t? $nonNullValue
+\t\t: null'''
+                  : nonNullValue,
+              leadingSpace: false,
+              trailingNewline: false);
+        } else if (customClassNames.contains(field.type.baseName) &&
+            !preserveReferences) {
           final String nonNullValue =
               "${field.type.baseName}.decode(pigeonMap['${field.name}']!)";
           indent.format(
@@ -557,9 +828,17 @@ pigeonMap['${field.name}'] != null
         'static ${klass.name} decode(Object message) ',
       );
       indent.scoped('{', '}', () {
-        indent.writeln(
-          'final Map<Object?, Object?> pigeonMap = message as Map<Object?, Object?>;',
-        );
+        if (klass.hasPresenceBitmap) {
+          final String names =
+              klass.fields.map((NamedType field) => "'${field.name}'").join(', ');
+          indent.writeln(
+            'final Map<Object?, Object?> pigeonMap = _decodePresenceBitmap(message, const <String>[$names]);',
+          );
+        } else {
+          indent.writeln(
+            'final Map<Object?, Object?> pigeonMap = message as Map<Object?, Object?>;',
+          );
+        }
         indent.write('return ${klass.name}');
         indent.scoped('(', ');', () {
           for (int index = 0; index < klass.fields.length; index += 1) {
@@ -572,6 +851,159 @@ pigeonMap['${field.name}'] != null
       });
     }
 
+    void writeColumns() {
+      final String className = klass.name;
+      String columnType(NamedType field) {
+        if (customEnumNames.contains(field.type.baseName)) {
+          return 'Int32List';
+        }
+        switch (field.type.baseName) {
+          case 'int':
+            return 'Int64List';
+          case 'double':
+            return 'Float64List';
+          case 'bool':
+            return 'Uint8List';
+          default:
+            return 'Int32List';
+        }
+      }
+
+      bool isString(NamedType field) => field.type.baseName == 'String';
+      String columnSlot(int index) => '${2 + index * 2}';
+      String presenceSlot(int index) => '${3 + index * 2}';
+
+      indent.write('static Object encodeColumns(List<$className?> rows) ');
+      indent.scoped('{', '}', () {
+        indent.writeln('final int length = rows.length;');
+        indent.writeln(
+            'final Uint8List presence = Uint8List((length + 7) >> 3);');
+        for (final NamedType field in klass.fields) {
+          final String type = columnType(field);
+          indent.writeln(
+              'final $type ${field.name}Column = $type(length);');
+          if (isString(field)) {
+            indent.writeln(
+                'final List<String> ${field.name}Table = <String>[];');
+            indent.writeln(
+                'final Map<String, int> ${field.name}Indices = <String, int>{};');
+          }
+          if (field.type.isNullable) {
+            indent.writeln(
+                'final Uint8List ${field.name}Presence = Uint8List((length + 7) >> 3);');
+          }
+        }
+        indent.write('for (int row = 0; row < length; row++) ');
+        indent.scoped('{', '}', () {
+          indent.writeln('final $className? value = rows[row];');
+          indent.write('if (value == null) ');
+          indent.scoped('{', '}', () {
+            indent.writeln('continue;');
+          });
+          indent.writeln('_setColumnValuePresent(presence, row);');
+          for (final NamedType field in klass.fields) {
+            final String column = '${field.name}Column[row]';
+            final String local = '${field.name}Value';
+            String assignment;
+            if (customEnumNames.contains(field.type.baseName)) {
+              assignment = '$column = $local.index;';
+            } else if (field.type.baseName == 'bool') {
+              assignment = '$column = $local ? 1 : 0;';
+            } else if (isString(field)) {
+              assignment = '''
+$column = ${field.name}Indices.putIfAbsent($local, () {
+\t${field.name}Table.add($local);
+\treturn ${field.name}Table.length - 1;
+});''';
+            } else {
+              assignment = '$column = $local;';
+            }
+            indent.writeln(
+                'final ${_addGenericTypesNullable(field.type)} $local = value.${field.name};');
+            if (field.type.isNullable) {
+              indent.write('if ($local != null) ');
+              indent.scoped('{', '}', () {
+                indent.writeln(
+                    '_setColumnValuePresent(${field.name}Presence, row);');
+                indent.format(assignment);
+              });
+            } else {
+              indent.format(assignment);
+            }
+          }
+        });
+        indent.write('return <Object?>');
+        indent.scoped('[', '];', () {
+          indent.writeln('length,');
+          indent.writeln('presence,');
+          for (final NamedType field in klass.fields) {
+            if (isString(field)) {
+              indent.writeln(
+                  '<Object?>[${field.name}Table, ${field.name}Column],');
+            } else {
+              indent.writeln('${field.name}Column,');
+            }
+            indent.writeln(
+                '${field.type.isNullable ? '${field.name}Presence' : 'null'},');
+          }
+        });
+      });
+      indent.writeln('');
+      indent.write(
+          'static List<$className?> decodeColumns(Object message) ');
+      indent.scoped('{', '}', () {
+        indent.writeln('final List<Object?> columns = message as List<Object?>;');
+        indent.writeln('final int length = columns[0]! as int;');
+        indent.writeln('final Uint8List presence = columns[1]! as Uint8List;');
+        enumerate(klass.fields, (int index, NamedType field) {
+          if (isString(field)) {
+            indent.writeln(
+                'final List<Object?> ${field.name}Columns = columns[${columnSlot(index)}]! as List<Object?>;');
+            indent.writeln(
+                'final List<Object?> ${field.name}Table = ${field.name}Columns[0]! as List<Object?>;');
+            indent.writeln(
+                'final Int32List ${field.name}Column = ${field.name}Columns[1]! as Int32List;');
+          } else {
+            final String type = columnType(field);
+            indent.writeln(
+                'final $type ${field.name}Column = columns[${columnSlot(index)}]! as $type;');
+          }
+          if (field.type.isNullable) {
+            indent.writeln(
+                'final Uint8List ${field.name}Presence = columns[${presenceSlot(index)}]! as Uint8List;');
+          }
+        });
+        indent.write('return List<$className?>.generate(length, (int row) ');
+        indent.scoped('{', '});', () {
+          indent.write('if (!_isColumnValuePresent(presence, row)) ');
+          indent.scoped('{', '}', () {
+            indent.writeln('return null;');
+          });
+          indent.write('return $className');
+          indent.scoped('(', ');', () {
+            for (final NamedType field in klass.fields) {
+              final String column = '${field.name}Column[row]';
+              String value;
+              if (customEnumNames.contains(field.type.baseName)) {
+                value = '${field.type.baseName}.values[$column]';
+              } else if (field.type.baseName == 'bool') {
+                value = '$column != 0';
+              } else if (isString(field)) {
+                value = '${field.name}Table[$column]! as String';
+              } else {
+                value = column;
+              }
+              if (field.type.isNullable) {
+                value =
+                    '_isColumnValuePresent(${field.name}Presence, row) ? $value : null';
+              }
+              indent.writeln('${field.name}: $value,');
+            }
+          });
+        });
+      });
+    }
+
     addDocumentationComments(
         indent, klass.documentationComments, _docCommentSpec);
 
@@ -592,6 +1024,10 @@ pigeonMap['${field.name}'] != null
       writeEncode();
       indent.writeln('');
       writeDecode();
+      if (columnarClassNames.contains(klass.name)) {
+        indent.writeln('');
+        writeColumns();
+      }
     });
   }
 
@@ -603,9 +1039,164 @@ pigeonMap['${field.name}'] != null
     }
   }
 
+  void writeLargeBlobFunctions() {
+    indent.format('''
+
+int _largeBlobCount = 0;
+
+/// The directory of payload files, which the Java side uses too.
+Directory _largeBlobDirectory() =>
+\t\tDirectory('\${Directory.systemTemp.path}/pigeon_blobs');
+
+/// Returns the file at [path], which must be a payload in
+/// [_largeBlobDirectory] after resolving `..` and symbolic links, so that a
+/// message can't delete other files of the app.
+File _largeBlobFile(String path) {
+\tfinal File file = File(File(path).resolveSymbolicLinksSync());
+\tfinal String name = file.uri.pathSegments.last;
+\tif (file.parent.path != _largeBlobDirectory().resolveSymbolicLinksSync() ||
+\t\t\tname.length < 'pigeon.blob'.length ||
+\t\t\t!name.startsWith('pigeon') ||
+\t\t\t!name.endsWith('.blob')) {
+\t\tthrow ArgumentError.value(path, 'path', 'Not a LargeBlob payload');
+\t}
+\treturn file;
+}
+
+Object? _encodeLargeBlob(Uint8List? data, int threshold) {
+\tif (data == null || data.length < threshold) {
+\t\treturn data;
+\t}
+\tfinal Directory directory = _largeBlobDirectory();
+\tdirectory.createSync(recursive: true);
+\tfinal File file = File(
+\t\t\t'\${directory.path}/pigeon\${DateTime.now().microsecondsSinceEpoch}_\${_largeBlobCount++}.blob');
+\tfile.writeAsBytesSync(data);
+\treturn <Object?, Object?>{
+\t\t'path': file.path,
+\t\t'offset': 0,
+\t\t'length': data.length,
+\t};
+}
+
+Uint8List? _decodeLargeBlob(Object? value) {
+\tif (value is! Map<Object?, Object?>) {
+\t\treturn value as Uint8List?;
+\t}
+\tfinal File file = _largeBlobFile(value['path']! as String);
+\tfinal RandomAccessFile input = file.openSync();
+\ttry {
+\t\tinput.setPositionSync(value['offset']! as int);
+\t\treturn input.readSync(value['length']! as int);
+\t} finally {
+\t\tinput.closeSync();
+\t\tfile.deleteSync();
+\t}
+}''');
+  }
+
+  void writeColumnFunctions() {
+    indent.format('''
+
+bool _isColumnValuePresent(Uint8List bits, int row) =>
+\t\t(bits[row >> 3] & (1 << (row & 7))) != 0;
+
+void _setColumnValuePresent(Uint8List bits, int row) {
+\tbits[row >> 3] |= 1 << (row & 7);
+}''');
+  }
+
+  void writeOffsetIndexedFunctions() {
+    indent.format('''
+
+Object _encodeOffsetIndexed(Iterable<Object?> elements) {
+\tconst StandardMessageCodec codec = StandardMessageCodec();
+\tfinal List<ByteData?> encodedElements =
+\t\t\telements.map((Object? e) => codec.encodeMessage(e)).toList();
+\tfinal Int32List offsets = Int32List(encodedElements.length + 1);
+\tint end = 0;
+\tfor (int i = 0; i < encodedElements.length; i++) {
+\t\t// Elements start at multiples of 8, so that they are aligned the same way
+\t\t// as when they are encoded on their own.
+\t\toffsets[i] = (end + 7) & ~7;
+\t\t// A null element is encoded as a single zero byte.
+\t\tend = offsets[i] + (encodedElements[i]?.lengthInBytes ?? 1);
+\t}
+\toffsets[encodedElements.length] = end;
+\tfinal Uint8List payload = Uint8List(end);
+\tfor (int i = 0; i < encodedElements.length; i++) {
+\t\tfinal ByteData? element = encodedElements[i];
+\t\tif (element != null) {
+\t\t\tpayload.setAll(
+\t\t\t\t\toffsets[i],
+\t\t\t\t\telement.buffer
+\t\t\t\t\t\t\t.asUint8List(element.offsetInBytes, element.lengthInBytes));
+\t\t}
+\t}
+\treturn <Object?>[offsets, payload];
+}
+
+List<T> _decodeOffsetIndexed<T>(
+\t\tObject encoded, T Function(Object? value) decodeElement) {
+\tconst StandardMessageCodec codec = StandardMessageCodec();
+\tfinal List<Object?> parts = encoded as List<Object?>;
+\tfinal Int32List offsets = parts[0]! as Int32List;
+\tfinal Uint8List payload = parts[1]! as Uint8List;
+\treturn List<T>.generate(
+\t\t\toffsets.length - 1,
+\t\t\t(int i) => decodeElement(codec.readValue(ReadBuffer(
+\t\t\t\t\tByteData.sublistView(payload, offsets[i], offsets[i + 1])))));
+}''');
+  }
+
+  void writePresenceBitmapFunctions() {
+    indent.format('''
+
+List<Object?> _encodePresenceBitmap(Iterable<Object?> values) {
+\tfinal List<Object?> result = <Object?>[0];
+\tint presence = 0;
+\tint index = 0;
+\tfor (final Object? value in values) {
+\t\tif (value != null) {
+\t\t\tpresence |= 1 << index;
+\t\t\tresult.add(value);
+\t\t}
+\t\tindex++;
+\t}
+\tresult[0] = presence;
+\treturn result;
+}
+
+Map<Object?, Object?> _decodePresenceBitmap(
+\t\tObject message, List<String> names) {
+\tfinal List<Object?> values = message as List<Object?>;
+\tfinal int presence = values[0]! as int;
+\tfinal Map<Object?, Object?> result = <Object?, Object?>{};
+\tint index = 1;
+\tfor (int i = 0; i < names.length; i++) {
+\t\tif ((presence & (1 << i)) != 0) {
+\t\t\tresult[names[i]] = values[index++];
+\t\t}
+\t}
+\treturn result;
+}''');
+  }
+
   writeHeader();
   writeImports();
   writeEnums();
+  if (hasLargeBlobFields(root)) {
+    writeLargeBlobFunctions();
+  }
+  if (columnarClassNames.isNotEmpty) {
+    writeColumnFunctions();
+  }
+  if (hasOffsetIndexedFields(root)) {
+    writeOffsetIndexedFunctions();
+  }
+  if (root.classes.any((Class klass) => klass.hasPresenceBitmap)) {
+    writePresenceBitmapFunctions();
+  }
   for (final Class klass in root.classes) {
     indent.writeln('');
     writeDataClass(klass);
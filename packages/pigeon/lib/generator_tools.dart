@@ -9,7 +9,7 @@ import 'dart:mirrors';
 import 'ast.dart';
 
 /// The current version of pigeon. This must match the version in pubspec.yaml.
-const String pigeonVersion = '4.1.0';
+const String pigeonVersion = '4.2.0';
 
 /// Read all the content from [stdin] to a String.
 String readStdin() {
@@ -151,6 +151,12 @@ String makeChannelName(Api api, Method func) {
   return 'dev.flutter.pigeon.${api.name}.${func.name}';
 }
 
+/// Create the generated name of the channel shared by all methods of an [api]
+/// annotated with `SingleChannel`.
+String makeSingleChannelName(Api api) {
+  return 'dev.flutter.pigeon.${api.name}';
+}
+
 /// Represents the mapping of a Dart datatype to a Host datatype.
 class HostDatatype {
   /// Parametric constructor for HostDatatype.
@@ -302,7 +308,17 @@ class EnumeratedClass {
   final String name;
 
   /// The enumeration of the class.
+  ///
+  /// Enumerations from [extendedCodecFieldKey] up are written as that key
+  /// followed by the 16-bit [extendedEnumeration].
   final int enumeration;
+
+  /// True if the class doesn't fit in the single byte types of the codec.
+  bool get isExtended => enumeration >= extendedCodecFieldKey;
+
+  /// The 16-bit type written after [extendedCodecFieldKey] for an extended
+  /// class.
+  int get extendedEnumeration => enumeration - extendedCodecFieldKey;
 }
 
 /// Supported basic datatypes.
@@ -324,6 +340,13 @@ const List<String> validTypes = <String>[
 /// avoid collisions with the StandardMessageCodec.
 const int _minimumCodecFieldKey = 128;
 
+/// The type that codecs write before the 16-bit type of a custom class that
+/// doesn't fit in the single byte types from [_minimumCodecFieldKey] to 254.
+const int extendedCodecFieldKey = 255;
+
+/// The number of custom classes that can follow [extendedCodecFieldKey].
+const int _maximumExtendedCodecFieldKeys = 65536;
+
 Iterable<TypeDeclaration> _getTypeArguments(TypeDeclaration type) sync* {
   for (final TypeDeclaration typeArg in type.typeArguments) {
     yield* _getTypeArguments(typeArg);
@@ -402,7 +425,12 @@ bool _isConcreteTypeAmbiguous(TypeDeclaration type) {
 
 /// Given an [Api], return the enumerated classes that must exist in the codec
 /// where the enumeration should be the key used in the buffer.
-Iterable<EnumeratedClass> getCodecClasses(Api api, Root root) sync* {
+///
+/// If [extendedTypes] is true, the classes that don't fit in the single byte
+/// types are enumerated from [extendedCodecFieldKey] up, for codecs that write
+/// them as that key followed by a 16-bit type.
+Iterable<EnumeratedClass> getCodecClasses(Api api, Root root,
+    {bool extendedTypes = false}) sync* {
   final Set<String> enumNames = root.enums.map((Enum e) => e.name).toSet();
   final Map<TypeDeclaration, List<int>> referencedTypes =
       getReferencedTypes(<Api>[api], root.classes);
@@ -418,7 +446,9 @@ Iterable<EnumeratedClass> getCodecClasses(Api api, Root root) sync* {
       .toList();
   sortedNames.sort();
   int enumeration = _minimumCodecFieldKey;
-  const int maxCustomClassesPerApi = 255 - _minimumCodecFieldKey;
+  final int maxCustomClassesPerApi = extendedCodecFieldKey -
+      _minimumCodecFieldKey +
+      (extendedTypes ? _maximumExtendedCodecFieldKeys : 0);
   if (sortedNames.length > maxCustomClassesPerApi) {
     throw Exception(
         "Pigeon doesn't support more than $maxCustomClassesPerApi referenced custom classes per API, try splitting up your APIs.");
@@ -433,6 +463,25 @@ Iterable<EnumeratedClass> getCodecClasses(Api api, Root root) sync* {
 bool isEnum(Root root, TypeDeclaration type) =>
     root.enums.map((Enum e) => e.name).contains(type.baseName);
 
+/// Returns true if a field of any class in [root] is annotated with
+/// `LargeBlob`.
+bool hasLargeBlobFields(Root root) => root.classes.any((Class klass) =>
+    klass.fields.any((NamedType field) => field.largeBlobThreshold != null));
+
+/// Returns true if a field of any class in [root] is annotated with
+/// `OffsetIndexed`.
+bool hasOffsetIndexedFields(Root root) => root.classes.any(
+    (Class klass) => klass.fields.any((NamedType field) => field.isOffsetIndexed));
+
+/// Returns the names of the classes that are the element type of a `List`
+/// field annotated with `Columnar`.
+Set<String> getColumnarClassNames(Root root) => root.classes
+    .expand((Class klass) => klass.fields)
+    .where((NamedType field) =>
+        field.isColumnar && field.type.typeArguments.isNotEmpty)
+    .map((NamedType field) => field.type.typeArguments.first.baseName)
+    .toSet();
+
 /// Describes how to format a document comment.
 class DocumentCommentSpecification {
   /// Constructor for [DocumentationCommentSpecification]
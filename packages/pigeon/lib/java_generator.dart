@@ -5,7 +5,7 @@
 import 'ast.dart';
 import 'functional.dart';
 import 'generator_tools.dart';
-import 'pigeon_lib.dart' show TaskQueueType;
+import 'pigeon_lib.dart' show BoundedTaskQueue, TaskQueueType;
 
 /// Documentation open symbol.
 const String _docCommentPrefix = '/**';
@@ -32,6 +32,16 @@ class JavaOptions {
     this.package,
     this.copyrightHeader,
     this.useGeneratedAnnotation,
+    this.flutterApiTimeouts,
+    this.flutterApiBackpressure,
+    this.immutableDataClasses,
+    this.flutterApiFanOut,
+    this.flutterApiThreadSafe,
+    this.socketMessenger,
+    this.sharedMemoryMessenger,
+    this.varintIntegers,
+    this.preserveReferences,
+    this.traceSections,
   });
 
   /// The name of the class that will house all the generated classes.
@@ -48,6 +58,56 @@ class JavaOptions {
   /// default .
   final bool? useGeneratedAnnotation;
 
+  /// Determines if FlutterApi methods get overloads that take a timeout and
+  /// return a cancellable `PendingReply` handle. This is false by default.
+  final bool? flutterApiTimeouts;
+
+  /// Determines if FlutterApi classes get a constructor that takes an
+  /// `InFlightWindow`, which bounds the number of calls waiting for a reply.
+  /// This is false by default.
+  final bool? flutterApiBackpressure;
+
+  /// Determines if data classes are generated with `final` fields that are set
+  /// by a single constructor, instead of setters and a `Builder`. This is false
+  /// by default.
+  final bool? immutableDataClasses;
+
+  /// Determines if FlutterApi classes get a nested `FanOut` class that sends
+  /// each call to several messengers and encodes its arguments once. This is
+  /// false by default.
+  final bool? flutterApiFanOut;
+
+  /// Determines if FlutterApi classes get a nested `ThreadSafe` class that
+  /// accepts calls from any thread and makes them on the platform thread, in
+  /// batches, through a shared `PlatformThreadQueue`. This is false by default.
+  final bool? flutterApiThreadSafe;
+
+  /// Determines if a `SocketBinaryMessenger` class is generated, which lets
+  /// the APIs be served or called by another process over a socket. This is
+  /// false by default.
+  final bool? socketMessenger;
+
+  /// Determines if a `SharedMemoryBinaryMessenger` class is generated, which
+  /// lets the APIs be served or called by another process through ring
+  /// buffers in a memory-mapped file. This is false by default.
+  final bool? sharedMemoryMessenger;
+
+  /// Determines if codecs write integers as zigzag varints that are always
+  /// read as `Long`. This is false by default and is set through
+  /// `PigeonOptions.varintIntegers`, so that Dart uses the same encoding.
+  final bool? varintIntegers;
+
+  /// Determines if codecs write a data class instance that appears more than
+  /// once in a message as a reference to its first occurrence. This is false
+  /// by default and is set through `PigeonOptions.preserveReferences`, so that
+  /// Dart uses the same encoding.
+  final bool? preserveReferences;
+
+  /// Determines if host handlers and FlutterApi calls emit trace sections
+  /// through a generated `PigeonTrace` class, which show up in Perfetto while
+  /// tracing is enabled. This is false by default.
+  final bool? traceSections;
+
   /// Creates a [JavaOptions] from a Map representation where:
   /// `x = JavaOptions.fromMap(x.toMap())`.
   static JavaOptions fromMap(Map<String, Object> map) {
@@ -58,6 +118,16 @@ class JavaOptions {
       package: map['package'] as String?,
       copyrightHeader: copyrightHeader?.cast<String>(),
       useGeneratedAnnotation: map['useGeneratedAnnotation'] as bool?,
+      flutterApiTimeouts: map['flutterApiTimeouts'] as bool?,
+      flutterApiBackpressure: map['flutterApiBackpressure'] as bool?,
+      immutableDataClasses: map['immutableDataClasses'] as bool?,
+      flutterApiFanOut: map['flutterApiFanOut'] as bool?,
+      flutterApiThreadSafe: map['flutterApiThreadSafe'] as bool?,
+      socketMessenger: map['socketMessenger'] as bool?,
+      sharedMemoryMessenger: map['sharedMemoryMessenger'] as bool?,
+      varintIntegers: map['varintIntegers'] as bool?,
+      preserveReferences: map['preserveReferences'] as bool?,
+      traceSections: map['traceSections'] as bool?,
     );
   }
 
@@ -70,6 +140,21 @@ class JavaOptions {
       if (copyrightHeader != null) 'copyrightHeader': copyrightHeader!,
       if (useGeneratedAnnotation != null)
         'useGeneratedAnnotation': useGeneratedAnnotation!,
+      if (flutterApiTimeouts != null) 'flutterApiTimeouts': flutterApiTimeouts!,
+      if (flutterApiBackpressure != null)
+        'flutterApiBackpressure': flutterApiBackpressure!,
+      if (immutableDataClasses != null)
+        'immutableDataClasses': immutableDataClasses!,
+      if (flutterApiFanOut != null) 'flutterApiFanOut': flutterApiFanOut!,
+      if (flutterApiThreadSafe != null)
+        'flutterApiThreadSafe': flutterApiThreadSafe!,
+      if (socketMessenger != null) 'socketMessenger': socketMessenger!,
+      if (sharedMemoryMessenger != null)
+        'sharedMemoryMessenger': sharedMemoryMessenger!,
+      if (varintIntegers != null) 'varintIntegers': varintIntegers!,
+      if (preserveReferences != null)
+        'preserveReferences': preserveReferences!,
+      if (traceSections != null) 'traceSections': traceSections!,
     };
     return result;
   }
@@ -84,34 +169,1612 @@ class JavaOptions {
 /// Calculates the name of the codec that will be generated for [api].
 String _getCodecName(Api api) => '${api.name}Codec';
 
+/// Calculates the prefix of the trace sections of [method] of [api], or of
+/// the single channel of [api] when [method] is null.
+String _traceSectionName(Api api, [Method? method]) => method == null
+    ? 'Pigeon:${api.name}'
+    : 'Pigeon:${api.name}.${method.name}';
+
+/// Returns the Java type of the elements of [type], a `List`.
+String _javaTypeForListElement(TypeDeclaration type) =>
+    type.typeArguments.isEmpty
+        ? 'Object'
+        : _javaTypeForDartType(type.typeArguments.first);
+
+/// Returns true if any method of a host [Api] in [root] is annotated with
+/// `StreamedList`.
+bool _hasStreamedArguments(Root root) => root.apis.any((Api api) =>
+    api.location == ApiLocation.host &&
+    api.methods.any((Method method) => method.isLastArgumentStreamed));
+
+/// Returns true if the class named [className] is annotated with
+/// `PresenceBitmap`.
+bool _hasPresenceBitmap(String className, List<Class> classes) => classes
+    .any((Class klass) => klass.name == className && klass.hasPresenceBitmap);
+
+/// Returns the method that converts an instance of the class named
+/// [className] to the value that is sent.
+String _encodeMethod(String className, List<Class> classes) =>
+    _hasPresenceBitmap(className, classes) ? 'toList' : 'toMap';
+
+/// Returns an expression that converts [value], a value sent for an instance
+/// of the class named [className], back to an instance.
+String _decodeCall(String className, List<Class> classes, String value) =>
+    _hasPresenceBitmap(className, classes)
+        ? '$className.fromList((List<Object>) $value)'
+        : '$className.fromMap((Map<String, Object>) $value)';
+
+/// The name of the list class of `OffsetIndexed` fields.
+const String _offsetIndexedListName = 'OffsetIndexedList';
+
+/// Writes the list class that decodes the elements of `OffsetIndexed` fields
+/// on access.
+void _writeOffsetIndexedList(Indent indent) {
+  indent.format('''
+
+/**
+ * A list of elements that are encoded one after another with an offset table,
+ * used for `OffsetIndexed` fields.
+ *
+ * <p>Elements are decoded when they are first accessed. {@link #decodeAll} decodes the remaining
+ * elements up front, in parallel for large lists on API level 24 and above. Concurrent access from
+ * several threads needs external synchronization unless {@link #decodeAll} has returned.
+ */
+public static final class $_offsetIndexedListName<T> extends AbstractList<T> {
+\t/** Converts an element to a value that the StandardMessageCodec can write. */
+\tpublic interface ElementEncoder<T> {
+\t\t@Nullable Object encode(@NonNull T element);
+\t}
+
+\t/** Converts a value read by the StandardMessageCodec to an element. */
+\tpublic interface ElementDecoder<T> {
+\t\t@Nullable T decode(@Nullable Object value);
+\t}
+
+\tprivate static final class ElementCodec extends StandardMessageCodec {
+\t\tstatic final ElementCodec INSTANCE = new ElementCodec();
+
+\t\tvoid write(ByteArrayOutputStream stream, Object value) {
+\t\t\twriteValue(stream, value);
+\t\t}
+
+\t\tObject read(ByteBuffer buffer) {
+\t\t\treturn readValue(buffer);
+\t\t}
+\t}
+
+\t/** The number of elements from which {@link #decodeAll} works in parallel. */
+\tpublic static final int PARALLEL_THRESHOLD = 1024;
+\tprivate static final int PARALLEL_CHUNK = 256;
+\tprivate static final Object NOT_DECODED = new Object();
+
+\tprivate final @NonNull List<Object> encoded;
+\tprivate final @NonNull int[] offsets;
+\tprivate final @NonNull byte[] payload;
+\tprivate final @NonNull ElementDecoder<T> decoder;
+\tprivate final @NonNull Object[] elements;
+
+\tprivate $_offsetIndexedListName(@NonNull List<Object> encoded, @NonNull ElementDecoder<T> decoder) {
+\t\tthis.encoded = encoded;
+\t\tthis.offsets = (int[]) encoded.get(0);
+\t\tthis.payload = (byte[]) encoded.get(1);
+\t\tthis.decoder = decoder;
+\t\tthis.elements = new Object[offsets.length - 1];
+\t\tArrays.fill(elements, NOT_DECODED);
+\t}
+
+\t@Override
+\tpublic int size() {
+\t\treturn elements.length;
+\t}
+
+\t@Override
+\tpublic T get(int index) {
+\t\tObject element = elements[index];
+\t\tif (element == NOT_DECODED) {
+\t\t\tByteBuffer buffer = ByteBuffer.wrap(payload).order(ByteOrder.nativeOrder());
+\t\t\tbuffer.position(offsets[index]);
+\t\t\telement = decoder.decode(ElementCodec.INSTANCE.read(buffer));
+\t\t\telements[index] = element;
+\t\t}
+\t\treturn (T) element;
+\t}
+
+\t/**
+\t * Decodes all elements, on {@code pool} if there are at least {@link #PARALLEL_THRESHOLD}.
+\t *
+\t * <p>{@link ForkJoinPool} needs API level 21, use {@link #decodeAll()} below that.
+\t */
+\tpublic void decodeAll(@NonNull ForkJoinPool pool) {
+\t\tif (elements.length < PARALLEL_THRESHOLD) {
+\t\t\tdecodeRange(0, elements.length);
+\t\t} else {
+\t\t\tpool.invoke(new DecodeAction(0, elements.length));
+\t\t}
+\t}
+
+\t/**
+\t * Decodes all elements, on the common pool if there are at least {@link #PARALLEL_THRESHOLD}.
+\t *
+\t * <p>The common pool needs API level 24, the elements are decoded on the calling thread below
+\t * that.
+\t */
+\tpublic void decodeAll() {
+\t\tif (Build.VERSION.SDK_INT >= 24) {
+\t\t\tdecodeAll(ForkJoinPool.commonPool());
+\t\t} else {
+\t\t\tdecodeRange(0, elements.length);
+\t\t}
+\t}
+
+\tprivate void decodeRange(int start, int end) {
+\t\tfor (int index = start; index < end; index++) {
+\t\t\tget(index);
+\t\t}
+\t}
+
+\tprivate final class DecodeAction extends RecursiveAction {
+\t\tprivate final int start;
+\t\tprivate final int end;
+
+\t\tDecodeAction(int start, int end) {
+\t\t\tthis.start = start;
+\t\t\tthis.end = end;
+\t\t}
+
+\t\t@Override
+\t\tprotected void compute() {
+\t\t\tif (end - start <= PARALLEL_CHUNK) {
+\t\t\t\tdecodeRange(start, end);
+\t\t\t} else {
+\t\t\t\tint middle = (start + end) >>> 1;
+\t\t\t\tinvokeAll(new DecodeAction(start, middle), new DecodeAction(middle, end));
+\t\t\t}
+\t\t}
+\t}
+
+\tstatic @NonNull <T> List<Object> encode(@NonNull List<T> elements, @NonNull ElementEncoder<T> encoder) {
+\t\tif (elements instanceof $_offsetIndexedListName) {
+\t\t\treturn (($_offsetIndexedListName<T>) elements).encoded;
+\t\t}
+\t\tByteArrayOutputStream stream = new ByteArrayOutputStream();
+\t\tint[] offsets = new int[elements.size() + 1];
+\t\tint index = 0;
+\t\tfor (T element : elements) {
+\t\t\t// Elements start at multiples of 8, so that they are aligned the same way
+\t\t\t// as when they are encoded on their own.
+\t\t\twhile (stream.size() % 8 != 0) {
+\t\t\t\tstream.write(0);
+\t\t\t}
+\t\t\toffsets[index++] = stream.size();
+\t\t\tElementCodec.INSTANCE.write(stream, element == null ? null : encoder.encode(element));
+\t\t}
+\t\toffsets[index] = stream.size();
+\t\treturn new ArrayList<Object>(Arrays.asList(offsets, stream.toByteArray()));
+\t}
+
+\tstatic @NonNull <T> $_offsetIndexedListName<T> decode(@NonNull Object encoded, @NonNull ElementDecoder<T> decoder) {
+\t\treturn new $_offsetIndexedListName<>((List<Object>) encoded, decoder);
+\t}
+}''');
+}
+
+/// The name of the class that transfers `LargeBlob` fields through files.
+const String _largeBlobFilesName = 'LargeBlobFiles';
+
+/// Writes the class that moves the contents of `LargeBlob` fields through
+/// temporary files instead of the platform channel.
+void _writeLargeBlobFiles(Indent indent) {
+  indent.format('''
+
+/**
+ * Transfers the contents of `@LargeBlob` fields through temporary files.
+ *
+ * <p>The files are written to {@link #getDirectory()}, the directory the Dart side uses too. The
+ * receiver of a file takes ownership of it and deletes it once read. Only files in that directory
+ * are read, so that a message can't delete other files of the app.
+ */
+public static final class $_largeBlobFilesName {
+\tprivate static final String PREFIX = "pigeon";
+\tprivate static final String SUFFIX = ".blob";
+\t/** The subdirectory of `java.io.tmpdir` that payloads are written to. */
+\tpublic static final String DIRECTORY_NAME = "pigeon_blobs";
+
+\tprivate $_largeBlobFilesName() {}
+
+\t/**
+\t * Returns the directory where payloads are written, the `pigeon_blobs` subdirectory of
+\t * `java.io.tmpdir`. On Android that is in the app's private cache directory, which is also
+\t * Dart's `Directory.systemTemp`.
+\t */
+\tpublic static @NonNull File getDirectory() {
+\t\treturn new File(System.getProperty("java.io.tmpdir"), DIRECTORY_NAME);
+\t}
+
+\tprivate static boolean isPayloadName(@NonNull String name) {
+\t\treturn name.length() >= PREFIX.length() + SUFFIX.length()
+\t\t\t\t&& name.startsWith(PREFIX)
+\t\t\t\t&& name.endsWith(SUFFIX);
+\t}
+
+\t/**
+\t * Returns the file at {@code path}, which must be a payload in {@link #getDirectory()}, after
+\t * resolving `..` and symbolic links.
+\t */
+\tprivate static @NonNull File payloadFile(@NonNull String path) throws IOException {
+\t\tFile file = new File(path).getCanonicalFile();
+\t\tif (!getDirectory().getCanonicalFile().equals(file.getParentFile())
+\t\t\t\t|| !isPayloadName(file.getName())) {
+\t\t\tthrow new IllegalArgumentException("Not a LargeBlob payload: " + path);
+\t\t}
+\t\treturn file;
+\t}
+
+\t/**
+\t * Deletes the payload files left behind by messages that were never received.
+\t * Only the files in {@link #getDirectory()} are deleted. Only call this when no
+\t * messages are in flight, for example at startup.
+\t */
+\tpublic static void deleteAll() {
+\t\tFile[] files = getDirectory().listFiles((parent, name) -> isPayloadName(name));
+\t\tif (files == null) {
+\t\t\treturn;
+\t\t}
+\t\tfor (File file : files) {
+\t\t\tfile.delete();
+\t\t}
+\t}
+
+\tstatic @Nullable Object encode(@Nullable byte[] data, int threshold) {
+\t\tif (data == null || data.length < threshold) {
+\t\t\treturn data;
+\t\t}
+\t\tFile file = null;
+\t\ttry {
+\t\t\tFile dir = getDirectory();
+\t\t\tif (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+\t\t\t\tthrow new IOException("Can't create " + dir);
+\t\t\t}
+\t\t\tfile = File.createTempFile(PREFIX, SUFFIX, dir);
+\t\t\tRandomAccessFile output = new RandomAccessFile(file, "rw");
+\t\t\ttry {
+\t\t\t\tFileChannel channel = output.getChannel();
+\t\t\t\tByteBuffer buffer = ByteBuffer.wrap(data);
+\t\t\t\twhile (buffer.hasRemaining()) {
+\t\t\t\t\tchannel.write(buffer);
+\t\t\t\t}
+\t\t\t} finally {
+\t\t\t\toutput.close();
+\t\t\t}
+\t\t} catch (IOException exception) {
+\t\t\tif (file != null) {
+\t\t\t\tfile.delete();
+\t\t\t}
+\t\t\tthrow new RuntimeException(exception);
+\t\t}
+\t\tMap<String, Object> descriptor = new HashMap<>();
+\t\tdescriptor.put("path", file.getAbsolutePath());
+\t\tdescriptor.put("offset", 0L);
+\t\tdescriptor.put("length", (long) data.length);
+\t\treturn descriptor;
+\t}
+
+\tstatic @Nullable byte[] decode(@Nullable Object value) {
+\t\tif (!(value instanceof Map)) {
+\t\t\treturn (byte[]) value;
+\t\t}
+\t\tMap<String, Object> descriptor = (Map<String, Object>) value;
+\t\tlong offset = ((Number) descriptor.get("offset")).longValue();
+\t\tint length = ((Number) descriptor.get("length")).intValue();
+\t\tFile file;
+\t\ttry {
+\t\t\tfile = payloadFile((String) descriptor.get("path"));
+\t\t} catch (IOException exception) {
+\t\t\tthrow new RuntimeException(exception);
+\t\t}
+\t\ttry {
+\t\t\tRandomAccessFile input = new RandomAccessFile(file, "r");
+\t\t\ttry {
+\t\t\t\tMappedByteBuffer mapped =
+\t\t\t\t\t\tinput.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length);
+\t\t\t\tbyte[] result = new byte[length];
+\t\t\t\tmapped.get(result);
+\t\t\t\treturn result;
+\t\t\t} finally {
+\t\t\t\tinput.close();
+\t\t\t}
+\t\t} catch (IOException exception) {
+\t\t\tthrow new RuntimeException(exception);
+\t\t} finally {
+\t\t\t// Only reached for payloads in getDirectory().
+\t\t\tfile.delete();
+\t\t}
+\t}
+}''');
+}
+
+/// The name of the class that tracks FlutterApi calls waiting for a reply.
+const String _pendingReplyName = 'PendingReply';
+
+/// Writes the class that tracks timeouts and cancellation of FlutterApi calls
+/// when [JavaOptions.flutterApiTimeouts] is set.
+void _writePendingReply(Indent indent) {
+  indent.format('''
+
+/**
+ * A call to Flutter that hasn't been replied to yet.
+ *
+ * <p>Expirations of all calls are tracked by a single hashed timer wheel that
+ * is serviced by one daemon thread, which sleeps while no call with a timeout
+ * is pending. Once a call completes, times out or is cancelled its callback is
+ * released and its {@code onSettled} hook runs, so a Flutter side that never
+ * replies doesn't leak callbacks or whatever else the call holds on to.
+ */
+public static final class $_pendingReplyName {
+\tprivate static final long TICK_MILLIS = 10;
+\tprivate static final int WHEEL_SIZE = 512;
+\tprivate static final long START_NANOS = System.nanoTime();
+\tprivate static final Object lock = new Object();
+\tprivate static final PendingReply[] wheel = new PendingReply[WHEEL_SIZE];
+\tprivate static int pendingCount;
+\tprivate static int scheduledCount;
+\tprivate static long processedTick;
+\tprivate static @Nullable Thread timerThread;
+
+\tprivate @Nullable Object callback;
+\tprivate @Nullable Runnable onTimeout;
+\tprivate @Nullable Runnable onSettled;
+\tprivate final @Nullable AtomicInteger counter;
+\tprivate final long timeoutMillis;
+\tprivate long deadlineTick = -1;
+\tprivate @Nullable PendingReply previous;
+\tprivate @Nullable PendingReply next;
+\tprivate boolean started;
+\tprivate boolean scheduled;
+\tprivate boolean done;
+
+\tprivate PendingReply(@NonNull Object callback, long timeoutMillis, @Nullable Runnable onTimeout, @Nullable AtomicInteger counter) {
+\t\tthis.callback = callback;
+\t\tthis.timeoutMillis = timeoutMillis;
+\t\tthis.onTimeout = onTimeout;
+\t\tthis.counter = counter;
+\t}
+
+\t/** Returns the number of calls, across all FlutterApis, waiting for a reply. */
+\tpublic static int getPendingCount() {
+\t\tsynchronized (lock) {
+\t\t\treturn pendingCount;
+\t\t}
+\t}
+
+\t/**
+\t * Registers a call that is sent right away. A {@code timeoutMillis} of zero or
+\t * less means the call never times out.
+\t */
+\tstatic @NonNull PendingReply start(@NonNull Object callback, long timeoutMillis, @Nullable Runnable onTimeout, @Nullable AtomicInteger counter) {
+\t\tPendingReply pending = create(callback, timeoutMillis, onTimeout, counter);
+\t\tpending.begin(null);
+\t\treturn pending;
+\t}
+
+\t/**
+\t * Makes a call that may be held back before it is sent. It doesn't wait for a
+\t * reply, or count towards the pending calls, until {@link #begin} is called,
+\t * but it can already be cancelled.
+\t */
+\tstatic @NonNull PendingReply create(@NonNull Object callback, long timeoutMillis, @Nullable Runnable onTimeout, @Nullable AtomicInteger counter) {
+\t\treturn new PendingReply(callback, timeoutMillis, onTimeout, counter);
+\t}
+
+\t/**
+\t * Starts waiting for the reply, right before the call is sent.
+\t *
+\t * <p>{@code onSettled} runs exactly once: when the call completes, times out or
+\t * is cancelled. If the call was cancelled before it began it runs right away.
+\t *
+\t * @return false if the call was cancelled and must not be sent.
+\t */
+\tboolean begin(@Nullable Runnable onSettled) {
+\t\tsynchronized (lock) {
+\t\t\tif (!done) {
+\t\t\t\tstarted = true;
+\t\t\t\tthis.onSettled = onSettled;
+\t\t\t\tpendingCount++;
+\t\t\t\tif (counter != null) {
+\t\t\t\t\tcounter.incrementAndGet();
+\t\t\t\t}
+\t\t\t\tif (timeoutMillis > 0) {
+\t\t\t\t\tdeadlineTick = currentTick() + 1 + (timeoutMillis + TICK_MILLIS - 1) / TICK_MILLIS;
+\t\t\t\t\tlink();
+\t\t\t\t\tif (timerThread == null) {
+\t\t\t\t\t\ttimerThread = new Thread(PendingReply::runTimer, "PigeonPendingReplies");
+\t\t\t\t\t\ttimerThread.setDaemon(true);
+\t\t\t\t\t\ttimerThread.start();
+\t\t\t\t\t}
+\t\t\t\t\tlock.notifyAll();
+\t\t\t\t}
+\t\t\t\treturn true;
+\t\t\t}
+\t\t}
+\t\tif (onSettled != null) {
+\t\t\tonSettled.run();
+\t\t}
+\t\treturn false;
+\t}
+
+\t/**
+\t * Completes the call and returns its callback, or null if the call already
+\t * timed out or was cancelled.
+\t */
+\t@Nullable Object finish() {
+\t\tObject result;
+\t\tRunnable settled;
+\t\tsynchronized (lock) {
+\t\t\tif (done) {
+\t\t\t\treturn null;
+\t\t\t}
+\t\t\tresult = callback;
+\t\t\tsettled = release();
+\t\t}
+\t\tif (settled != null) {
+\t\t\tsettled.run();
+\t\t}
+\t\treturn result;
+\t}
+
+\t/**
+\t * Cancels the call, dropping its callback without invoking it.
+\t *
+\t * @return false if the call had already completed, timed out or been
+\t *     cancelled.
+\t */
+\tpublic boolean cancel() {
+\t\tRunnable settled;
+\t\tsynchronized (lock) {
+\t\t\tif (done) {
+\t\t\t\treturn false;
+\t\t\t}
+\t\t\tsettled = release();
+\t\t}
+\t\tif (settled != null) {
+\t\t\tsettled.run();
+\t\t}
+\t\treturn true;
+\t}
+
+\t/**
+\t * Drops a call whose send threw, without running {@code onSettled}. Whoever
+\t * catches the exception releases what the call holds.
+\t */
+\tvoid discard() {
+\t\tsynchronized (lock) {
+\t\t\tif (!done) {
+\t\t\t\trelease();
+\t\t\t}
+\t\t}
+\t}
+
+\t/** Returns true once the call has completed, timed out or been cancelled. */
+\tpublic boolean isDone() {
+\t\tsynchronized (lock) {
+\t\t\treturn done;
+\t\t}
+\t}
+
+\tprivate static long currentTick() {
+\t\treturn (System.nanoTime() - START_NANOS) / (TICK_MILLIS * 1000000);
+\t}
+
+\t/** Marks the call done and returns its {@code onSettled} hook, which the caller runs outside the lock. */
+\tprivate @Nullable Runnable release() {
+\t\tRunnable settled = onSettled;
+\t\tdone = true;
+\t\tcallback = null;
+\t\tonTimeout = null;
+\t\tonSettled = null;
+\t\tif (started) {
+\t\t\tpendingCount--;
+\t\t\tif (counter != null) {
+\t\t\t\tcounter.decrementAndGet();
+\t\t\t}
+\t\t}
+\t\tif (scheduled) {
+\t\t\tunlink();
+\t\t}
+\t\treturn settled;
+\t}
+
+\tprivate void link() {
+\t\tint bucket = (int) (deadlineTick % WHEEL_SIZE);
+\t\tnext = wheel[bucket];
+\t\tif (next != null) {
+\t\t\tnext.previous = this;
+\t\t}
+\t\twheel[bucket] = this;
+\t\tscheduled = true;
+\t\tscheduledCount++;
+\t}
+
+\tprivate void unlink() {
+\t\tif (previous != null) {
+\t\t\tprevious.next = next;
+\t\t} else {
+\t\t\twheel[(int) (deadlineTick % WHEEL_SIZE)] = next;
+\t\t}
+\t\tif (next != null) {
+\t\t\tnext.previous = previous;
+\t\t}
+\t\tprevious = null;
+\t\tnext = null;
+\t\tscheduled = false;
+\t\tscheduledCount--;
+\t}
+
+\tprivate static void runTimer() {
+\t\tArrayList<Runnable> expired = new ArrayList<>();
+\t\twhile (true) {
+\t\t\tsynchronized (lock) {
+\t\t\t\ttry {
+\t\t\t\t\twhile (scheduledCount == 0) {
+\t\t\t\t\t\tlock.wait();
+\t\t\t\t\t}
+\t\t\t\t\tlock.wait(TICK_MILLIS);
+\t\t\t\t} catch (InterruptedException e) {
+\t\t\t\t\ttimerThread = null;
+\t\t\t\t\treturn;
+\t\t\t\t}
+\t\t\t\tlong now = currentTick();
+\t\t\t\tlong steps = Math.min(now - processedTick, WHEEL_SIZE);
+\t\t\t\tfor (long tick = now - steps + 1; tick <= now; tick++) {
+\t\t\t\t\tPendingReply pending = wheel[(int) (tick % WHEEL_SIZE)];
+\t\t\t\t\twhile (pending != null) {
+\t\t\t\t\t\tPendingReply following = pending.next;
+\t\t\t\t\t\tif (pending.deadlineTick <= now) {
+\t\t\t\t\t\t\tRunnable onTimeout = pending.onTimeout;
+\t\t\t\t\t\t\tRunnable settled = pending.release();
+\t\t\t\t\t\t\t// The call's resources are released before onTimeout runs, so
+\t\t\t\t\t\t\t// that it can make another call.
+\t\t\t\t\t\t\tif (settled != null) {
+\t\t\t\t\t\t\t\texpired.add(settled);
+\t\t\t\t\t\t\t}
+\t\t\t\t\t\t\tif (onTimeout != null) {
+\t\t\t\t\t\t\t\texpired.add(onTimeout);
+\t\t\t\t\t\t\t}
+\t\t\t\t\t\t}
+\t\t\t\t\t\tpending = following;
+\t\t\t\t\t}
+\t\t\t\t}
+\t\t\t\tprocessedTick = now;
+\t\t\t}
+\t\t\tfor (Runnable runnable : expired) {
+\t\t\t\ttry {
+\t\t\t\t\trunnable.run();
+\t\t\t\t} catch (RuntimeException exception) {
+\t\t\t\t\tLog.e("PigeonPendingReplies", "Timeout handler threw", exception);
+\t\t\t\t}
+\t\t\t}
+\t\t\texpired.clear();
+\t\t}
+\t}
+}''');
+}
+
+/// The name of the class that bounds the FlutterApi calls waiting for a reply.
+const String _inFlightWindowName = 'InFlightWindow';
+
+/// Writes the classes that bound FlutterApi calls waiting for a reply when
+/// [JavaOptions.flutterApiBackpressure] is set.
+void _writeInFlightWindow(Indent indent) {
+  indent.format('''
+
+/** What a FlutterApi does with a call while its {@link InFlightWindow} is full. */
+public enum OverflowPolicy {
+\t/** Blocks the calling thread until a reply frees up room. */
+\tBLOCK,
+\t/** Throws a {@link RejectedExecutionException}. */
+\tFAIL_FAST,
+\t/** Sends the call once room frees up, throwing a {@link RejectedExecutionException} if the queue is full. */
+\tQUEUE,
+}
+
+/**
+ * Bounds the number of FlutterApi calls that are waiting for a reply.
+ *
+ * <p>A call occupies the window from when it is sent until its reply arrives,
+ * or, with timeouts, until it times out or is cancelled. One window can be shared by several FlutterApi objects. {@link OverflowPolicy#BLOCK}
+ * must not be used on the thread replies are delivered on, which is usually
+ * the platform thread.
+ */
+public static final class InFlightWindow {
+\tprivate final int maxInFlight;
+\tprivate final @NonNull OverflowPolicy policy;
+\tprivate final int maxQueued;
+\tprivate final ArrayDeque<Runnable> queued = new ArrayDeque<>();
+\tprivate int inFlight;
+\tprivate boolean draining;
+
+\t/**
+\t * @param maxInFlight the number of calls that may wait for a reply at once.
+\t * @param policy what happens to calls made while the window is full.
+\t * @param maxQueued the number of calls held back by {@link OverflowPolicy#QUEUE}.
+\t */
+\tpublic InFlightWindow(int maxInFlight, @NonNull OverflowPolicy policy, int maxQueued) {
+\t\tif (maxInFlight < 1) {
+\t\t\tthrow new IllegalArgumentException("maxInFlight must be positive.");
+\t\t}
+\t\tthis.maxInFlight = maxInFlight;
+\t\tthis.policy = policy;
+\t\tthis.maxQueued = maxQueued;
+\t}
+
+\tpublic InFlightWindow(int maxInFlight, @NonNull OverflowPolicy policy) {
+\t\tthis(maxInFlight, policy, 0);
+\t}
+
+\t/** Returns the number of calls waiting for a reply. */
+\tpublic synchronized int getInFlightCount() {
+\t\treturn inFlight;
+\t}
+
+\t/** Returns the number of calls held back by {@link OverflowPolicy#QUEUE}. */
+\tpublic synchronized int getQueuedCount() {
+\t\treturn queued.size();
+\t}
+
+\tvoid submit(@NonNull Runnable send) {
+\t\tsynchronized (this) {
+\t\t\tif (inFlight >= maxInFlight || !queued.isEmpty()) {
+\t\t\t\tswitch (policy) {
+\t\t\t\t\tcase BLOCK:
+\t\t\t\t\t\ttry {
+\t\t\t\t\t\t\twhile (inFlight >= maxInFlight) {
+\t\t\t\t\t\t\t\twait();
+\t\t\t\t\t\t\t}
+\t\t\t\t\t\t} catch (InterruptedException exception) {
+\t\t\t\t\t\t\tThread.currentThread().interrupt();
+\t\t\t\t\t\t\tthrow new RejectedExecutionException("Interrupted while waiting for the in-flight window.");
+\t\t\t\t\t\t}
+\t\t\t\t\t\tbreak;
+\t\t\t\t\tcase FAIL_FAST:
+\t\t\t\t\t\tthrow new RejectedExecutionException("Too many calls in flight: " + inFlight);
+\t\t\t\t\tcase QUEUE:
+\t\t\t\t\t\tif (queued.size() >= maxQueued) {
+\t\t\t\t\t\t\tthrow new RejectedExecutionException("Too many calls queued: " + queued.size());
+\t\t\t\t\t\t}
+\t\t\t\t\t\tqueued.add(send);
+\t\t\t\t\t\treturn;
+\t\t\t\t}
+\t\t\t}
+\t\t\tinFlight++;
+\t\t}
+\t\ttry {
+\t\t\tsend.run();
+\t\t} catch (RuntimeException exception) {
+\t\t\trelease();
+\t\t\tthrow exception;
+\t\t}
+\t}
+
+\tvoid release() {
+\t\tsynchronized (this) {
+\t\t\tinFlight--;
+\t\t\tnotifyAll();
+\t\t\tif (draining) {
+\t\t\t\treturn;
+\t\t\t}
+\t\t\tdraining = true;
+\t\t}
+\t\t// Sends queued calls in a loop rather than recursively, since a reply can
+\t\t// arrive before send returns.
+\t\twhile (true) {
+\t\t\tRunnable send;
+\t\t\tsynchronized (this) {
+\t\t\t\tif (inFlight >= maxInFlight || queued.isEmpty()) {
+\t\t\t\t\tdraining = false;
+\t\t\t\t\treturn;
+\t\t\t\t}
+\t\t\t\tsend = queued.poll();
+\t\t\t\tinFlight++;
+\t\t\t}
+\t\t\ttry {
+\t\t\t\tsend.run();
+\t\t\t} catch (RuntimeException exception) {
+\t\t\t\tsynchronized (this) {
+\t\t\t\t\tinFlight--;
+\t\t\t\t\tdraining = false;
+\t\t\t\t}
+\t\t\t\tthrow exception;
+\t\t\t}
+\t\t}
+\t}
+}''');
+}
+
+/// The name of the class that holds back superseded calls of `Coalesce`
+/// methods.
+const String _coalescerName = 'Coalescer';
+
+/// Writes the class that coalesces calls of `Coalesce` FlutterApi methods.
+void _writeCoalescer(Indent indent) {
+  indent.format('''
+
+/**
+ * Holds back calls of a {@code @Coalesce} method while an earlier call waits
+ * for its reply, keeping only the latest one.
+ */
+private static final class $_coalescerName {
+\tprivate boolean inFlight;
+\tprivate @Nullable Runnable pending;
+\tprivate @Nullable Runnable pendingDropped;
+
+\t/** Sends now if no call is in flight, otherwise replaces the held back call. */
+\tvoid submit(@NonNull Runnable send, @Nullable Runnable onDropped) {
+\t\tboolean sendNow = false;
+\t\tRunnable dropped = null;
+\t\tsynchronized (this) {
+\t\t\tif (!inFlight) {
+\t\t\t\tinFlight = true;
+\t\t\t\tsendNow = true;
+\t\t\t} else {
+\t\t\t\tif (pending != null) {
+\t\t\t\t\tdropped = pendingDropped;
+\t\t\t\t}
+\t\t\t\tpending = send;
+\t\t\t\tpendingDropped = onDropped;
+\t\t\t}
+\t\t}
+\t\tif (dropped != null) {
+\t\t\tdropped.run();
+\t\t}
+\t\tif (sendNow) {
+\t\t\trun(send);
+\t\t}
+\t}
+
+\t/**
+\t * Called when the call in flight is replied to, times out or is cancelled;
+\t * sends the held back call, if any.
+\t */
+\tvoid complete() {
+\t\tRunnable next;
+\t\tsynchronized (this) {
+\t\t\tnext = pending;
+\t\t\tpending = null;
+\t\t\tpendingDropped = null;
+\t\t\tif (next == null) {
+\t\t\t\tinFlight = false;
+\t\t\t\treturn;
+\t\t\t}
+\t\t}
+\t\trun(next);
+\t}
+
+\tprivate void run(@NonNull Runnable send) {
+\t\ttry {
+\t\t\tsend.run();
+\t\t} catch (RuntimeException exception) {
+\t\t\tcomplete();
+\t\t\tthrow exception;
+\t\t}
+\t}
+}''');
+}
+
+/// The name of the class that moves the handler of an `AdaptiveTaskQueue`
+/// method to a background task queue once it gets slow.
+const String _adaptiveDispatchName = 'AdaptiveDispatch';
+
+/// Writes the class that measures the handlers of `AdaptiveTaskQueue` methods.
+void _writeAdaptiveDispatch(Indent indent) {
+  indent.format('''
+
+/**
+ * Runs the handler of an {@code @AdaptiveTaskQueue} method on the platform thread until it
+ * gets slow, and on a background task queue after that.
+ *
+ * <p>The time each call of the handler takes is tracked with an exponentially weighted moving
+ * average. Once the average is over the budget the handler is registered again on a background
+ * task queue, where it stays. Calls that are already queued at that moment may run in a
+ * different order than they were sent. For {@code @async} methods only the time until the
+ * method returns is measured.
+ */
+public static final class $_adaptiveDispatchName implements BinaryMessenger {
+\t/** A source of time in nanoseconds. */
+\tpublic interface Clock {
+\t\tlong nanoTime();
+\t}
+
+\t/** The number of calls that are measured before the handler can be moved. */
+\tpublic static final int WARM_UP_CALLS = 8;
+\tprivate static final Clock SYSTEM_CLOCK = System::nanoTime;
+\tprivate static volatile Clock clock = SYSTEM_CLOCK;
+\tprivate static final Map<String, AdaptiveDispatch> dispatches = new ConcurrentHashMap<>();
+
+\tprivate final BinaryMessenger binaryMessenger;
+\tprivate final long budgetNanos;
+\tprivate final AtomicLong callCount = new AtomicLong();
+\tprivate final AtomicLong offloadedCallCount = new AtomicLong();
+\tprivate @Nullable String channel;
+\tprivate volatile @Nullable BinaryMessageHandler handler;
+\tprivate long averageNanos;
+\tprivate long measuredCount;
+\tprivate volatile boolean offloaded;
+
+\tpublic AdaptiveDispatch(@NonNull BinaryMessenger binaryMessenger, long budgetNanos) {
+\t\tthis.binaryMessenger = binaryMessenger;
+\t\tthis.budgetNanos = budgetNanos;
+\t}
+
+\t/** Replaces the clock used to measure handlers, or restores the system clock if null. */
+\tstatic void setClock(@Nullable Clock clock) {
+\t\tAdaptiveDispatch.clock = clock == null ? SYSTEM_CLOCK : clock;
+\t}
+
+\t/** Returns the dispatch of the handler last set up on {@code channel}, if any. */
+\tpublic static @Nullable AdaptiveDispatch forChannel(@NonNull String channel) {
+\t\treturn dispatches.get(channel);
+\t}
+
+\t/** Returns the average time per call above which the handler is moved. */
+\tpublic long getBudgetNanos() {
+\t\treturn budgetNanos;
+\t}
+
+\t/** Returns the moving average of the time a call of the handler takes. */
+\tpublic synchronized long getAverageNanos() {
+\t\treturn averageNanos;
+\t}
+
+\t/** Returns true once the handler has been moved to a background task queue. */
+\tpublic boolean isOffloaded() {
+\t\treturn offloaded;
+\t}
+
+\t/** Returns the number of calls of the handler. */
+\tpublic long getCallCount() {
+\t\treturn callCount.get();
+\t}
+
+\t/** Returns the number of calls of the handler made after it was moved. */
+\tpublic long getOffloadedCallCount() {
+\t\treturn offloadedCallCount.get();
+\t}
+
+\t@Override
+\tpublic void send(@NonNull String channel, @Nullable ByteBuffer message) {
+\t\tbinaryMessenger.send(channel, message);
+\t}
+
+\t@Override
+\tpublic void send(@NonNull String channel, @Nullable ByteBuffer message, @Nullable BinaryReply callback) {
+\t\tbinaryMessenger.send(channel, message, callback);
+\t}
+
+\t@Override
+\tpublic @NonNull TaskQueue makeBackgroundTaskQueue() {
+\t\treturn binaryMessenger.makeBackgroundTaskQueue();
+\t}
+
+\t@Override
+\tpublic void setMessageHandler(@NonNull String channel, @Nullable BinaryMessageHandler handler, @Nullable TaskQueue taskQueue) {
+\t\tbinaryMessenger.setMessageHandler(channel, handler, taskQueue);
+\t}
+
+\t@Override
+\tpublic synchronized void setMessageHandler(@NonNull String channel, @Nullable BinaryMessageHandler handler) {
+\t\tthis.channel = channel;
+\t\tthis.handler = handler;
+\t\tif (handler == null) {
+\t\t\tdispatches.remove(channel);
+\t\t\tbinaryMessenger.setMessageHandler(channel, null);
+\t\t\treturn;
+\t\t}
+\t\tdispatches.put(channel, this);
+\t\tbinaryMessenger.setMessageHandler(channel, this::onMessage);
+\t}
+
+\tprivate void onMessage(@Nullable ByteBuffer message, @NonNull BinaryReply reply) {
+\t\tBinaryMessageHandler current = handler;
+\t\tif (current == null) {
+\t\t\treply.reply(null);
+\t\t\treturn;
+\t\t}
+\t\tcallCount.incrementAndGet();
+\t\tif (offloaded) {
+\t\t\toffloadedCallCount.incrementAndGet();
+\t\t\tcurrent.onMessage(message, reply);
+\t\t\treturn;
+\t\t}
+\t\tlong start = clock.nanoTime();
+\t\ttry {
+\t\t\tcurrent.onMessage(message, reply);
+\t\t} finally {
+\t\t\tmeasure(clock.nanoTime() - start);
+\t\t}
+\t}
+
+\tprivate synchronized void measure(long elapsedNanos) {
+\t\tif (offloaded) {
+\t\t\treturn;
+\t\t}
+\t\t// An average with a weight of 1/8 for the latest call.
+\t\taverageNanos = measuredCount == 0 ? elapsedNanos : averageNanos + (elapsedNanos - averageNanos) / 8;
+\t\tmeasuredCount++;
+\t\tif (measuredCount >= WARM_UP_CALLS && averageNanos > budgetNanos && handler != null) {
+\t\t\toffloaded = true;
+\t\t\tLog.i("PigeonAdaptiveDispatch", channel + " moved to a background task queue, averaging " + averageNanos / 1000 + " us per call");
+\t\t\tbinaryMessenger.setMessageHandler(channel, this::onMessage, binaryMessenger.makeBackgroundTaskQueue());
+\t\t}
+\t}
+}''');
+}
+
+/// The name of the class that admits the calls of `BoundedTaskQueue` handlers
+/// into a bounded background executor.
+const String _boundedDispatchName = 'BoundedDispatch';
+
+/// Writes the class that runs the handlers of `BoundedTaskQueue` methods.
+void _writeBoundedDispatch(Indent indent) {
+  indent.format('''
+
+/**
+ * Runs the handlers of {@code @BoundedTaskQueue} HostApi methods on at most {@code
+ * maxConcurrentCalls} background threads, with at most {@code maxPendingCalls} calls waiting
+ * for a thread.
+ *
+ * <p>Calls are admitted on the platform thread before they are decoded. A call over the limits
+ * is replied to right away with an {@code Overloaded} error, which is encoded only once. The
+ * message of an admitted call is copied, since the engine may release it once the platform
+ * thread handler returns.
+ */
+public static final class $_boundedDispatchName implements BinaryMessenger {
+\tprivate static final Map<String, BoundedDispatch> dispatches = new ConcurrentHashMap<>();
+
+\tprivate final BinaryMessenger binaryMessenger;
+\tprivate final int maxConcurrentCalls;
+\tprivate final int maxPendingCalls;
+\tprivate final ThreadPoolExecutor executor;
+\tprivate final ByteBuffer overloadedReply;
+\tprivate final AtomicLong rejectedCount = new AtomicLong();
+
+\tpublic BoundedDispatch(@NonNull BinaryMessenger binaryMessenger, @NonNull MessageCodec<Object> codec, int maxConcurrentCalls, int maxPendingCalls) {
+\t\tthis.binaryMessenger = binaryMessenger;
+\t\tthis.maxConcurrentCalls = maxConcurrentCalls;
+\t\tthis.maxPendingCalls = maxPendingCalls;
+\t\tBlockingQueue<Runnable> pending = maxPendingCalls == 0 ? new SynchronousQueue<Runnable>() : new ArrayBlockingQueue<Runnable>(maxPendingCalls);
+\t\texecutor = new ThreadPoolExecutor(maxConcurrentCalls, maxConcurrentCalls, 30, TimeUnit.SECONDS, pending, runnable -> {
+\t\t\tThread thread = new Thread(runnable, "PigeonBoundedDispatch");
+\t\t\tthread.setDaemon(true);
+\t\t\treturn thread;
+\t\t});
+\t\texecutor.allowCoreThreadTimeOut(true);
+\t\tMap<String, Object> error = new HashMap<>();
+\t\terror.put("message", "Too many calls are waiting to be handled.");
+\t\terror.put("code", "Overloaded");
+\t\terror.put("details", null);
+\t\tMap<String, Object> wrapped = new HashMap<>();
+\t\twrapped.put("error", error);
+\t\toverloadedReply = codec.encodeMessage(wrapped);
+\t}
+
+\t/** Returns the dispatch that handles calls on {@code channel}, if any. */
+\tpublic static @Nullable BoundedDispatch forChannel(@NonNull String channel) {
+\t\treturn dispatches.get(channel);
+\t}
+
+\t/** Returns the number of calls handled at the same time at most. */
+\tpublic int getMaxConcurrentCalls() {
+\t\treturn maxConcurrentCalls;
+\t}
+
+\t/** Returns the number of calls that wait for a thread at most. */
+\tpublic int getMaxPendingCalls() {
+\t\treturn maxPendingCalls;
+\t}
+
+\t/** Returns the number of calls waiting for a thread. */
+\tpublic int getQueueDepth() {
+\t\treturn executor.getQueue().size();
+\t}
+
+\t/** Returns the approximate number of calls being handled. */
+\tpublic int getActiveCount() {
+\t\treturn executor.getActiveCount();
+\t}
+
+\t/** Returns the approximate number of calls that have been handled. */
+\tpublic long getCompletedCount() {
+\t\treturn executor.getCompletedTaskCount();
+\t}
+
+\t/** Returns the number of calls replied to with an {@code Overloaded} error. */
+\tpublic long getRejectedCount() {
+\t\treturn rejectedCount.get();
+\t}
+
+\t@Override
+\tpublic void send(@NonNull String channel, @Nullable ByteBuffer message) {
+\t\tbinaryMessenger.send(channel, message);
+\t}
+
+\t@Override
+\tpublic void send(@NonNull String channel, @Nullable ByteBuffer message, @Nullable BinaryReply callback) {
+\t\tbinaryMessenger.send(channel, message, callback);
+\t}
+
+\t@Override
+\tpublic @NonNull TaskQueue makeBackgroundTaskQueue() {
+\t\treturn binaryMessenger.makeBackgroundTaskQueue();
+\t}
+
+\t@Override
+\tpublic void setMessageHandler(@NonNull String channel, @Nullable BinaryMessageHandler handler, @Nullable TaskQueue taskQueue) {
+\t\tbinaryMessenger.setMessageHandler(channel, handler, taskQueue);
+\t}
+
+\t@Override
+\tpublic void setMessageHandler(@NonNull String channel, @Nullable BinaryMessageHandler handler) {
+\t\tif (handler == null) {
+\t\t\tdispatches.remove(channel);
+\t\t\tbinaryMessenger.setMessageHandler(channel, null);
+\t\t\treturn;
+\t\t}
+\t\tdispatches.put(channel, this);
+\t\tbinaryMessenger.setMessageHandler(channel, (message, reply) -> {
+\t\t\tByteBuffer copy = null;
+\t\t\tif (message != null) {
+\t\t\t\tcopy = ByteBuffer.allocateDirect(message.remaining());
+\t\t\t\tcopy.put(message);
+\t\t\t\tcopy.flip();
+\t\t\t}
+\t\t\tByteBuffer admitted = copy;
+\t\t\ttry {
+\t\t\t\texecutor.execute(() -> handler.onMessage(admitted, reply));
+\t\t\t} catch (RejectedExecutionException exception) {
+\t\t\t\trejectedCount.incrementAndGet();
+\t\t\t\treply.reply(overloadedReply.duplicate());
+\t\t\t}
+\t\t});
+\t}
+}''');
+}
+
+/// The name of the class that carries the deadline of a call to a `Deadline`
+/// method.
+const String _callContextName = 'CallContext';
+
+/// Writes the class passed to the implementations of `Deadline` methods.
+void _writeCallContext(Indent indent) {
+  indent.format('''
+
+/**
+ * The context of a call to a {@code @Deadline} HostApi method.
+ *
+ * <p>The caller sends the time, in milliseconds since the epoch, after which it stops waiting
+ * for the reply. A call handled after that time is shed: it is replied to with a {@code
+ * DeadlineExceeded} error without calling the implementation, and counted.
+ */
+public static final class $_callContextName {
+\tprivate static final Map<String, AtomicLong> shedCounts = new ConcurrentHashMap<>();
+\tprivate static final AtomicLong totalShedCount = new AtomicLong();
+
+\tprivate final long deadlineMillis;
+
+\tprivate CallContext(long deadlineMillis) {
+\t\tthis.deadlineMillis = deadlineMillis;
+\t}
+
+\t/**
+\t * Returns the context of a call from the deadline sent with it, which is null without a
+\t * timeout.
+\t */
+\tstatic @NonNull CallContext fromDeadline(@Nullable Object deadline) {
+\t\treturn new CallContext(deadline == null ? Long.MAX_VALUE : ((Number) deadline).longValue());
+\t}
+
+\t/** Returns true if the caller gave the call a timeout. */
+\tpublic boolean hasDeadline() {
+\t\treturn deadlineMillis != Long.MAX_VALUE;
+\t}
+
+\t/**
+\t * Returns the time, in milliseconds since the epoch, after which the caller stops waiting, or
+\t * {@code Long.MAX_VALUE} without a timeout.
+\t */
+\tpublic long getDeadlineMillis() {
+\t\treturn deadlineMillis;
+\t}
+
+\t/**
+\t * Returns the milliseconds left until the deadline, which are negative once it has passed, or
+\t * {@code Long.MAX_VALUE} without a timeout.
+\t */
+\tpublic long getRemainingMillis() {
+\t\treturn hasDeadline() ? deadlineMillis - System.currentTimeMillis() : Long.MAX_VALUE;
+\t}
+
+\t/** Returns true once the caller has stopped waiting for the reply. */
+\tpublic boolean isExpired() {
+\t\treturn getRemainingMillis() <= 0;
+\t}
+
+\t/** Returns the number of calls shed on the channel of a method. */
+\tpublic static long getShedCount(@NonNull String channelName) {
+\t\tAtomicLong count = shedCounts.get(channelName);
+\t\treturn count == null ? 0 : count.get();
+\t}
+
+\t/** Returns the number of calls shed on all channels. */
+\tpublic static long getTotalShedCount() {
+\t\treturn totalShedCount.get();
+\t}
+
+\t/** Counts a call shed on {@code channelName} and returns its reply. */
+\tstatic @NonNull Map<String, Object> shed(@NonNull String channelName) {
+\t\tAtomicLong count = shedCounts.get(channelName);
+\t\tif (count == null) {
+\t\t\tAtomicLong newCount = new AtomicLong();
+\t\t\tcount = shedCounts.putIfAbsent(channelName, newCount);
+\t\t\tif (count == null) {
+\t\t\t\tcount = newCount;
+\t\t\t}
+\t\t}
+\t\tcount.incrementAndGet();
+\t\ttotalShedCount.incrementAndGet();
+\t\tMap<String, Object> error = new HashMap<>();
+\t\terror.put("message", "The deadline of the call passed before it was handled.");
+\t\terror.put("code", "DeadlineExceeded");
+\t\terror.put("details", null);
+\t\tMap<String, Object> wrapped = new HashMap<>();
+\t\twrapped.put("error", error);
+\t\treturn wrapped;
+\t}
+}''');
+}
+
+/// The name of the class that emits the trace sections of channels when
+/// [JavaOptions.traceSections] is set.
+const String _pigeonTraceName = 'PigeonTrace';
+
+/// Writes the class that emits trace sections for channels.
+void _writePigeonTrace(Indent indent) {
+  indent.format('''
+
+/**
+ * Emits trace sections for the messages of Pigeon channels, named like {@code
+ * Pigeon:Api.method:decode}, {@code :handler} and {@code :encode}, and an async section for
+ * each FlutterApi call waiting for its reply.
+ *
+ * <p>Sections go to {@link android.os.Trace}, where they show up in Perfetto, and are only
+ * emitted while tracing is enabled. Since that can only be checked from API 29, no sections
+ * are emitted on older versions. A {@link Sink} can be set instead, for example in tests.
+ */
+public static final class $_pigeonTraceName {
+\t/** Receives trace sections. */
+\tpublic interface Sink {
+\t\tboolean isEnabled();
+\t\tvoid beginSection(@NonNull String name);
+\t\tvoid endSection();
+\t\tvoid beginAsyncSection(@NonNull String name, int cookie);
+\t\tvoid endAsyncSection(@NonNull String name, int cookie);
+\t}
+
+\tprivate static final Sink SYSTEM_SINK = new Sink() {
+\t\t@Override
+\t\tpublic boolean isEnabled() {
+\t\t\treturn Build.VERSION.SDK_INT >= 29 && Trace.isEnabled();
+\t\t}
+
+\t\t@Override
+\t\tpublic void beginSection(@NonNull String name) {
+\t\t\tif (Build.VERSION.SDK_INT >= 29) {
+\t\t\t\tTrace.beginSection(name);
+\t\t\t}
+\t\t}
+
+\t\t@Override
+\t\tpublic void endSection() {
+\t\t\tif (Build.VERSION.SDK_INT >= 29) {
+\t\t\t\tTrace.endSection();
+\t\t\t}
+\t\t}
+
+\t\t@Override
+\t\tpublic void beginAsyncSection(@NonNull String name, int cookie) {
+\t\t\tif (Build.VERSION.SDK_INT >= 29) {
+\t\t\t\tTrace.beginAsyncSection(name, cookie);
+\t\t\t}
+\t\t}
+
+\t\t@Override
+\t\tpublic void endAsyncSection(@NonNull String name, int cookie) {
+\t\t\tif (Build.VERSION.SDK_INT >= 29) {
+\t\t\t\tTrace.endAsyncSection(name, cookie);
+\t\t\t}
+\t\t}
+\t};
+\tprivate static volatile Sink sink = SYSTEM_SINK;
+\tprivate static final AtomicInteger nextCookie = new AtomicInteger();
+
+\tprivate PigeonTrace() {}
+
+\t/** Replaces the sink that receives sections, or restores {@link android.os.Trace} if null. */
+\tstatic void setSink(@Nullable Sink sink) {
+\t\tPigeonTrace.sink = sink == null ? SYSTEM_SINK : sink;
+\t}
+
+\t/** Returns true if sections are being emitted. */
+\tpublic static boolean isEnabled() {
+\t\treturn sink.isEnabled();
+\t}
+
+\t/** Begins an async section and returns its cookie, or 0 if sections aren't being emitted. */
+\tpublic static int beginAsyncSection(@NonNull String name) {
+\t\tSink current = sink;
+\t\tif (!current.isEnabled()) {
+\t\t\treturn 0;
+\t\t}
+\t\tint cookie = nextCookie.incrementAndGet();
+\t\tif (cookie == 0) {
+\t\t\tcookie = nextCookie.incrementAndGet();
+\t\t}
+\t\tcurrent.beginAsyncSection(name, cookie);
+\t\treturn cookie;
+\t}
+
+\t/** Ends an async section begun by {@link #beginAsyncSection(String)}. */
+\tpublic static void endAsyncSection(@NonNull String name, int cookie) {
+\t\tif (cookie != 0) {
+\t\t\tsink.endAsyncSection(name, cookie);
+\t\t}
+\t}
+
+\t/** Wraps {@code codec} in one that emits {@code name:decode} and {@code name:encode} sections. */
+\tpublic static @NonNull MessageCodec<Object> codec(@NonNull String name, @NonNull MessageCodec<Object> codec) {
+\t\tString decodeSection = name + ":decode";
+\t\tString encodeSection = name + ":encode";
+\t\treturn new MessageCodec<Object>() {
+\t\t\t@Override
+\t\t\tpublic @Nullable ByteBuffer encodeMessage(@Nullable Object message) {
+\t\t\t\tSink current = sink;
+\t\t\t\tif (!current.isEnabled()) {
+\t\t\t\t\treturn codec.encodeMessage(message);
+\t\t\t\t}
+\t\t\t\tcurrent.beginSection(encodeSection);
+\t\t\t\ttry {
+\t\t\t\t\treturn codec.encodeMessage(message);
+\t\t\t\t} finally {
+\t\t\t\t\tcurrent.endSection();
+\t\t\t\t}
+\t\t\t}
+
+\t\t\t@Override
+\t\t\tpublic @Nullable Object decodeMessage(@Nullable ByteBuffer message) {
+\t\t\t\tSink current = sink;
+\t\t\t\tif (!current.isEnabled()) {
+\t\t\t\t\treturn codec.decodeMessage(message);
+\t\t\t\t}
+\t\t\t\tcurrent.beginSection(decodeSection);
+\t\t\t\ttry {
+\t\t\t\t\treturn codec.decodeMessage(message);
+\t\t\t\t} finally {
+\t\t\t\t\tcurrent.endSection();
+\t\t\t\t}
+\t\t\t}
+\t\t};
+\t}
+
+\t/** Wraps {@code handler} in one that emits a {@code name:handler} section. */
+\tpublic static @NonNull BasicMessageChannel.MessageHandler<Object> handler(@NonNull String name, @NonNull BasicMessageChannel.MessageHandler<Object> handler) {
+\t\tString section = name + ":handler";
+\t\treturn (message, reply) -> {
+\t\t\tSink current = sink;
+\t\t\tif (!current.isEnabled()) {
+\t\t\t\thandler.onMessage(message, reply);
+\t\t\t\treturn;
+\t\t\t}
+\t\t\tcurrent.beginSection(section);
+\t\t\ttry {
+\t\t\t\thandler.onMessage(message, reply);
+\t\t\t} finally {
+\t\t\t\tcurrent.endSection();
+\t\t\t}
+\t\t};
+\t}
+
+\t/** Wraps {@code handler} in one that emits a {@code name:handler} section. */
+\tpublic static @NonNull BinaryMessenger.BinaryMessageHandler binaryHandler(@NonNull String name, @NonNull BinaryMessenger.BinaryMessageHandler handler) {
+\t\tString section = name + ":handler";
+\t\treturn (message, reply) -> {
+\t\t\tSink current = sink;
+\t\t\tif (!current.isEnabled()) {
+\t\t\t\thandler.onMessage(message, reply);
+\t\t\t\treturn;
+\t\t\t}
+\t\t\tcurrent.beginSection(section);
+\t\t\ttry {
+\t\t\t\thandler.onMessage(message, reply);
+\t\t\t} finally {
+\t\t\t\tcurrent.endSection();
+\t\t\t}
+\t\t};
+\t}
+}''');
+}
+
 /// Converts an expression that evaluates to an nullable int to an expression
 /// that evaluates to a nullable enum.
+///
+/// The int is read as a [Number], since it is a `Long` when the codec reads
+/// varint integers.
 String _intToEnum(String expression, String enumName) =>
-    '$expression == null ? null : $enumName.values()[(int)$expression]';
+    '$expression == null ? null : $enumName.values()[((Number) $expression).intValue()]';
+
+/// The type that codecs write before varint integers when
+/// `varintIntegers` is set. It is below the types of custom classes.
+const int _varintType = 127;
+
+/// The type that codecs write before a reference to a data class instance that
+/// was already written to the message when `preserveReferences` is set.
+const int _referenceType = 126;
+
+/// Returns the classes in the codec of [api], with those that don't fit in a
+/// single byte written as [extendedCodecFieldKey] and a 16-bit type.
+Iterable<EnumeratedClass> _getCodecClasses(Api api, Root root) =>
+    getCodecClasses(api, root, extendedTypes: true);
+
+/// How the StandardMessageCodec writes a typed array.
+class _TypedArray {
+  const _TypedArray(this.javaType, this.type, this.elementSize, this.view);
+
+  /// The Java type of the array.
+  final String javaType;
+
+  /// The type that is written before the array.
+  final int type;
+
+  /// The size of an element in bytes, which is also its alignment.
+  final int elementSize;
+
+  /// The [ByteBuffer] method that returns a view for writing the elements.
+  final String view;
+}
+
+/// The typed arrays by their Dart name.
+const Map<String, _TypedArray> _typedArrays = <String, _TypedArray>{
+  'Int32List': _TypedArray('int[]', 9, 4, 'asIntBuffer'),
+  'Int64List': _TypedArray('long[]', 10, 8, 'asLongBuffer'),
+  'Float64List': _TypedArray('double[]', 11, 8, 'asDoubleBuffer'),
+};
+
+/// Returns the typed arrays that [api] sends in its arguments, return values
+/// or the fields of its data classes.
+Set<String> _typedArraysSentBy(Api api, Root root) {
+  final Set<String> result = <String>{};
+  void addType(TypeDeclaration type) {
+    if (_typedArrays.containsKey(type.baseName)) {
+      result.add(type.baseName);
+    }
+    type.typeArguments.forEach(addType);
+  }
+
+  for (final Method method in api.methods) {
+    addType(method.returnType);
+    for (final NamedType argument in method.arguments) {
+      addType(argument.type);
+    }
+  }
+  final Set<String> codecClassNames = _getCodecClasses(api, root)
+      .map((EnumeratedClass customClass) => customClass.name)
+      .toSet();
+  for (final Class klass in root.classes) {
+    if (codecClassNames.contains(klass.name)) {
+      for (final NamedType field in klass.fields) {
+        addType(field.type);
+      }
+    }
+  }
+  return result;
+}
 
 /// Writes the codec class that will be used by [api].
 /// Example:
 /// private static class FooCodec extends StandardMessageCodec {...}
-void _writeCodec(Indent indent, Api api, Root root) {
+void _writeCodec(Indent indent, Api api, Root root,
+    {bool varintIntegers = false, bool preserveReferences = false}) {
   final String codecName = _getCodecName(api);
   indent.write('private static class $codecName extends StandardMessageCodec ');
   indent.scoped('{', '}', () {
     indent
         .writeln('public static final $codecName INSTANCE = new $codecName();');
     indent.writeln('private $codecName() {}');
-    if (getCodecClasses(api, root).isNotEmpty) {
+    if (api.location == ApiLocation.host &&
+        api.methods.any((Method method) => method.isLastArgumentStreamed)) {
+      indent.format('''
+/** Reads the header of the list at the position of {@code buffer} and returns its size. */
+int readListSize(ByteBuffer buffer) {
+\t// The type that the StandardMessageCodec writes before lists.
+\tfinal byte listType = 12;
+\tif (buffer.get() != listType) {
+\t\tthrow new IllegalArgumentException("Message corrupted");
+\t}
+\treturn readSize(buffer);
+}
+/** Reads the value at the position of {@code buffer}. */
+Object readNextValue(ByteBuffer buffer) {
+\treturn readValue(buffer);
+}''');
+    }
+    if (varintIntegers) {
+      indent.format('''
+/** Writes {@code value} as a zigzag encoded base-128 varint. */
+private static void writeVarint(ByteArrayOutputStream stream, long value) {
+\tlong zigzag = (value << 1) ^ (value >> 63);
+\twhile ((zigzag & ~0x7FL) != 0) {
+\t\tstream.write((int) ((zigzag & 0x7F) | 0x80));
+\t\tzigzag >>>= 7;
+\t}
+\tstream.write((int) zigzag);
+}
+/** Reads a zigzag encoded base-128 varint at the position of {@code buffer}. */
+private static long readVarint(ByteBuffer buffer) {
+\tlong zigzag = 0;
+\tfor (int shift = 0; ; shift += 7) {
+\t\tbyte b = buffer.get();
+\t\tzigzag |= (long) (b & 0x7F) << shift;
+\t\tif (b >= 0) {
+\t\t\tbreak;
+\t\t}
+\t}
+\treturn (zigzag >>> 1) ^ -(zigzag & 1);
+}''');
+    }
+    final bool hasReferences =
+        preserveReferences && _getCodecClasses(api, root).isNotEmpty;
+    if (hasReferences) {
+      indent.format('''
+/** The data classes written to the message that is encoded on this thread, by their index. */
+private static final ThreadLocal<IdentityHashMap<Object, Integer>> writtenObjects = new ThreadLocal<>();
+/** The data classes read from the message that is decoded on this thread, by their index. */
+private static final ThreadLocal<ArrayList<Object>> readObjects = new ThreadLocal<>();
+@Override
+public ByteBuffer encodeMessage(Object message) {
+\tIdentityHashMap<Object, Integer> enclosingObjects = writtenObjects.get();
+\twrittenObjects.set(new IdentityHashMap<>());
+\ttry {
+\t\treturn super.encodeMessage(message);
+\t} finally {
+\t\twrittenObjects.set(enclosingObjects);
+\t}
+}
+@Override
+public Object decodeMessage(ByteBuffer message) {
+\tArrayList<Object> enclosingObjects = readObjects.get();
+\treadObjects.set(new ArrayList<>());
+\ttry {
+\t\treturn super.decodeMessage(message);
+\t} finally {
+\t\treadObjects.set(enclosingObjects);
+\t}
+}
+/**
+ * Writes a reference to {@code value} if it was already written to the message and returns
+ * whether it did.
+ */
+private static boolean writeReference(ByteArrayOutputStream stream, Object value) {
+\tIdentityHashMap<Object, Integer> objects = writtenObjects.get();
+\tInteger index = objects == null ? null : objects.get(value);
+\tif (index == null) {
+\t\treturn false;
+\t}
+\tstream.write($_referenceType);
+\twriteSize(stream, index);
+\treturn true;
+}
+/** Records that {@code value} was written, so that later occurrences are written as references. */
+private static void addWrittenObject(Object value) {
+\tIdentityHashMap<Object, Integer> objects = writtenObjects.get();
+\tif (objects != null) {
+\t\tobjects.put(value, objects.size());
+\t}
+}
+/** Records that {@code value} was read, so that references to it can be resolved. */
+private static Object addReadObject(Object value) {
+\tArrayList<Object> objects = readObjects.get();
+\tif (objects != null) {
+\t\tobjects.add(value);
+\t}
+\treturn value;
+}''');
+    }
+    final Set<String> typedArrays = _typedArraysSentBy(api, root);
+    if (typedArrays.isNotEmpty) {
+      indent.format('''
+/** The size in bytes of the buffer that the elements of typed arrays are copied through. */
+private static final int TYPED_ARRAY_CHUNK = 8192;
+private static final ThreadLocal<ByteBuffer> typedArrayChunk =
+\t\tnew ThreadLocal<ByteBuffer>() {
+\t\t\t@Override
+\t\t\tprotected ByteBuffer initialValue() {
+\t\t\t\treturn ByteBuffer.allocate(TYPED_ARRAY_CHUNK).order(ByteOrder.nativeOrder());
+\t\t\t}
+\t\t};
+
+/**
+ * Writes the header of a typed array of {@code length} elements to {@code stream}, which is
+ * followed by the elements, at most {@link #TYPED_ARRAY_CHUNK} bytes per write.
+ */
+private static void writeTypedArrayHeader(ByteArrayOutputStream stream, int type, int length, int elementSize) {
+\tstream.write(type);
+\twriteSize(stream, length);
+\twriteAlignment(stream, elementSize);
+}''');
+    }
+    final List<EnumeratedClass> codecClasses =
+        _getCodecClasses(api, root).toList();
+    final Iterable<EnumeratedClass> extendedClasses =
+        codecClasses.where((EnumeratedClass element) => element.isExtended);
+    void writeDecode(EnumeratedClass customClass) {
+      final String decodeCall =
+          _decodeCall(customClass.name, root.classes, 'readValue(buffer)');
+      indent.writeln(hasReferences
+          ? 'return addReadObject($decodeCall);'
+          : 'return $decodeCall;');
+    }
+
+    if (extendedClasses.isNotEmpty) {
+      indent.writeln(
+          '/** Reads a custom class written as $extendedCodecFieldKey followed by its 16-bit {@code type}. */');
+      indent.write(
+          'private Object readExtendedValueOfType(char type, ByteBuffer buffer) ');
+      indent.scoped('{', '}', () {
+        indent.write('switch (type) ');
+        indent.scoped('{', '}', () {
+          for (final EnumeratedClass customClass in extendedClasses) {
+            indent.write('case ${customClass.extendedEnumeration}: ');
+            indent.writeScoped('', '', () {
+              writeDecode(customClass);
+            });
+          }
+          indent.write('default:');
+          indent.writeScoped('', '', () {
+            indent.writeln(
+                'throw new IllegalArgumentException("Message corrupted");');
+          });
+        });
+      });
+    }
+    if (codecClasses.isNotEmpty || varintIntegers) {
       indent.writeln('@Override');
       indent.write(
           'protected Object readValueOfType(byte type, ByteBuffer buffer) ');
       indent.scoped('{', '}', () {
         indent.write('switch (type) ');
         indent.scoped('{', '}', () {
-          for (final EnumeratedClass customClass
-              in getCodecClasses(api, root)) {
+          if (varintIntegers) {
+            indent.write('case (byte)$_varintType: ');
+            indent.writeScoped('', '', () {
+              indent.writeln('return readVarint(buffer);');
+            });
+          }
+          if (hasReferences) {
+            indent.write('case (byte)$_referenceType: ');
+            indent.writeScoped('', '', () {
+              indent.writeln('return readObjects.get().get(readSize(buffer));');
+            });
+          }
+          for (final EnumeratedClass customClass in codecClasses
+              .where((EnumeratedClass element) => !element.isExtended)) {
             indent.write('case (byte)${customClass.enumeration}: ');
+            indent.writeScoped('', '', () {
+              writeDecode(customClass);
+            });
+          }
+          if (extendedClasses.isNotEmpty) {
+            indent.write('case (byte)$extendedCodecFieldKey: ');
             indent.writeScoped('', '', () {
               indent.writeln(
-                  'return ${customClass.name}.fromMap((Map<String, Object>) readValue(buffer));');
+                  'return readExtendedValueOfType(buffer.getChar(), buffer);');
             });
           }
           indent.write('default:');
@@ -120,16 +1783,67 @@ void _writeCodec(Indent indent, Api api, Root root) {
           });
         });
       });
+    }
+    if (codecClasses.isNotEmpty || varintIntegers || typedArrays.isNotEmpty) {
       indent.writeln('@Override');
       indent.write(
           'protected void writeValue(ByteArrayOutputStream stream, Object value) ');
       indent.writeScoped('{', '}', () {
-        for (final EnumeratedClass customClass in getCodecClasses(api, root)) {
-          indent.write('if (value instanceof ${customClass.name}) ');
+        if (varintIntegers) {
+          indent.write('if (value instanceof Long || value instanceof Integer) ');
+          indent.scoped('{', '} else ', () {
+            indent.writeln('stream.write($_varintType);');
+            indent.writeln('writeVarint(stream, ((Number) value).longValue());');
+          });
+        }
+        // The StandardMessageCodec writes typed arrays one byte at a time.
+        for (final String typedArray in typedArrays) {
+          final _TypedArray info = _typedArrays[typedArray]!;
+          indent.write('if (value instanceof ${info.javaType}) ');
           indent.scoped('{', '} else ', () {
-            indent.writeln('stream.write(${customClass.enumeration});');
+            indent.writeln('${info.javaType} array = (${info.javaType}) value;');
             indent.writeln(
-                'writeValue(stream, ((${customClass.name}) value).toMap());');
+                'writeTypedArrayHeader(stream, ${info.type}, array.length, ${info.elementSize});');
+            // The elements go through a small buffer of the thread, so that
+            // large arrays aren't copied to a temporary of their full size.
+            indent.writeln('ByteBuffer chunk = typedArrayChunk.get();');
+            indent.writeln('int start = 0;');
+            indent.write('while (start < array.length) ');
+            indent.scoped('{', '}', () {
+              indent.writeln(
+                  'int count = Math.min(array.length - start, TYPED_ARRAY_CHUNK / ${info.elementSize});');
+              indent.writeln('chunk.clear();');
+              indent.writeln('chunk.${info.view}().put(array, start, count);');
+              indent.writeln(
+                  'stream.write(chunk.array(), 0, count * ${info.elementSize});');
+              indent.writeln('start += count;');
+            });
+          });
+        }
+        for (final EnumeratedClass customClass in codecClasses) {
+          indent.write('if (value instanceof ${customClass.name}) ');
+          indent.scoped('{', '} else ', () {
+            void writeObject() {
+              if (customClass.isExtended) {
+                indent.writeln('stream.write($extendedCodecFieldKey);');
+                indent.writeln(
+                    'writeChar(stream, ${customClass.extendedEnumeration});');
+              } else {
+                indent.writeln('stream.write(${customClass.enumeration});');
+              }
+              indent.writeln(
+                  'writeValue(stream, ((${customClass.name}) value).${_encodeMethod(customClass.name, root.classes)}());');
+            }
+
+            if (hasReferences) {
+              indent.write('if (!writeReference(stream, value)) ');
+              indent.scoped('{', '}', () {
+                writeObject();
+                indent.writeln('addWrittenObject(value);');
+              });
+            } else {
+              writeObject();
+            }
           });
         }
         indent.scoped('{', '}', () {
@@ -146,7 +1860,8 @@ void _writeCodec(Indent indent, Api api, Root root) {
 ///   int add(int x, int y);
 ///   static void setup(BinaryMessenger binaryMessenger, Foo api) {...}
 /// }
-void _writeHostApi(Indent indent, Api api, Root root) {
+void _writeHostApi(Indent indent, Api api, Root root,
+    {bool varintIntegers = false, bool traceSections = false}) {
   assert(api.location == ApiLocation.host);
 
   bool isEnum(TypeDeclaration type) =>
@@ -161,8 +1876,10 @@ void _writeHostApi(Indent indent, Api api, Root root) {
         : _nullsafeJavaTypeForDartType(method.returnType);
     final List<String> argSignature = <String>[];
     if (method.arguments.isNotEmpty) {
-      final Iterable<String> argTypes = method.arguments
-          .map((NamedType e) => _nullsafeJavaTypeForDartType(e.type));
+      final Iterable<String> argTypes = method.arguments.map((NamedType e) =>
+          method.isLastArgumentStreamed && e == method.arguments.last
+              ? '@NonNull Iterator<${_javaTypeForListElement(e.type)}>'
+              : _nullsafeJavaTypeForDartType(e.type));
       final Iterable<String> argNames =
           method.arguments.map((NamedType e) => e.name);
       argSignature
@@ -170,16 +1887,160 @@ void _writeHostApi(Indent indent, Api api, Root root) {
         return '$argType $argName';
       }));
     }
+    if (method.hasDeadline) {
+      argSignature.add('@NonNull $_callContextName context');
+    }
     if (method.isAsynchronous) {
       final String resultType = method.returnType.isVoid
           ? 'Void'
           : _javaTypeForDartType(method.returnType);
       argSignature.add('Result<$resultType> result');
     }
-    addDocumentationComments(
-        indent, method.documentationComments, _docCommentSpec);
-
-    indent.writeln('$returnType ${method.name}(${argSignature.join(', ')});');
+    addDocumentationComments(
+        indent, method.documentationComments, _docCommentSpec);
+
+    indent.writeln('$returnType ${method.name}(${argSignature.join(', ')});');
+  }
+
+  /// Write the body of the message handler of [method], which replies through
+  /// `reply`. Arguments are read from `args` starting at [argOffset]; when
+  /// [argOffset] is 0 `args` is declared from `message`. When the last
+  /// argument of [method] is streamed, arguments are instead read one by one
+  /// from `message`, an undecoded `ByteBuffer`, with `codec`.
+  void writeMethodHandlerBody(final Method method, {int argOffset = 0}) {
+    final String returnType = method.returnType.isVoid
+        ? 'Void'
+        : _javaTypeForDartType(method.returnType);
+    final bool isStreamed = method.isLastArgumentStreamed;
+    indent.writeln('Map<String, Object> wrapped = new HashMap<>();');
+    indent.write('try ');
+    indent.scoped('{', '}', () {
+      final List<String> methodArgument = <String>[];
+      if (isStreamed) {
+        indent.writeln(
+            'ByteBuffer buffer = message.order(ByteOrder.nativeOrder());');
+        indent.writeln('codec.readListSize(buffer);');
+      } else if ((method.arguments.isNotEmpty || method.hasDeadline) &&
+          argOffset == 0) {
+        indent.writeln('ArrayList<Object> args = (ArrayList<Object>)message;');
+      }
+      if (method.hasDeadline) {
+        // Calls whose caller stopped waiting are shed before their arguments
+        // are read.
+        indent.format('''
+$_callContextName context = $_callContextName.fromDeadline(args.get(${method.arguments.length + argOffset}));
+if (context.isExpired()) {
+\treply.reply($_callContextName.shed("${makeChannelName(api, method)}"));
+\treturn;
+}''');
+      }
+      if (method.arguments.isNotEmpty) {
+        enumerate(method.arguments, (int index, NamedType arg) {
+          if (isStreamed && arg == method.arguments.last) {
+            final String argName = _getSafeArgumentName(index, arg);
+            final String elementType = _javaTypeForListElement(arg.type);
+            final String element = elementType == 'Long' && !varintIntegers
+                ? '(value == null) ? null : ((Number) value).longValue()'
+                : '($elementType) value';
+            indent.writeln('int ${argName}Size = codec.readListSize(buffer);');
+            indent.format('''
+Iterator<$elementType> $argName = new Iterator<$elementType>() {
+\tprivate int index = 0;
+\t@Override
+\tpublic boolean hasNext() {
+\t\treturn index < ${argName}Size;
+\t}
+\t@Override
+\tpublic $elementType next() {
+\t\tif (index >= ${argName}Size) {
+\t\t\tthrow new NoSuchElementException();
+\t\t}
+\t\tindex++;
+\t\tObject value = codec.readNextValue(buffer);
+\t\treturn $element;
+\t}
+};''');
+            methodArgument.add(argName);
+            return;
+          }
+          // The StandardMessageCodec can give us [Integer, Long] for
+          // a Dart 'int'.  To keep things simple we just use 64bit
+          // longs in Pigeon with Java. Varint integers are always read as
+          // Long.
+          final bool isInt = arg.type.baseName == 'int' && !varintIntegers;
+          final String argType =
+              isInt ? 'Number' : _javaTypeForDartType(arg.type);
+          final String argName = _getSafeArgumentName(index, arg);
+          final String argExpression = isInt
+              ? '($argName == null) ? null : $argName.longValue()'
+              : argName;
+          String accessor = 'args.get(${index + argOffset})';
+          if (isStreamed) {
+            accessor = '${argName}Value';
+            indent.writeln('Object $accessor = codec.readNextValue(buffer);');
+          }
+          if (isEnum(arg.type)) {
+            accessor = _intToEnum(accessor, arg.type.baseName);
+          } else {
+            accessor = '($argType)$accessor';
+          }
+          indent.writeln('$argType $argName = $accessor;');
+          if (!arg.type.isNullable) {
+            indent.write('if ($argName == null) ');
+            indent.scoped('{', '}', () {
+              indent.writeln(
+                  'throw new NullPointerException("$argName unexpectedly null.");');
+            });
+          }
+          methodArgument.add(argExpression);
+        });
+      }
+      if (method.hasDeadline) {
+        methodArgument.add('context');
+      }
+      if (method.isAsynchronous) {
+        final String resultValue =
+            method.returnType.isVoid ? 'null' : 'result';
+        const String resultName = 'resultCallback';
+        indent.format('''
+Result<$returnType> $resultName = new Result<$returnType>() {
+\tpublic void success($returnType result) {
+\t\twrapped.put("${Keys.result}", $resultValue);
+\t\treply.reply(wrapped);
+\t}
+\tpublic void error(Throwable error) {
+\t\twrapped.put("${Keys.error}", wrapError(error));
+\t\treply.reply(wrapped);
+\t}
+};
+''');
+        methodArgument.add(resultName);
+      }
+      final String call =
+          'api.${method.name}(${methodArgument.join(', ')})';
+      if (method.isAsynchronous) {
+        indent.writeln('$call;');
+      } else if (method.returnType.isVoid) {
+        indent.writeln('$call;');
+        indent.writeln('wrapped.put("${Keys.result}", null);');
+      } else {
+        indent.writeln('$returnType output = $call;');
+        indent.writeln('wrapped.put("${Keys.result}", output);');
+      }
+    });
+    indent.write('catch (Error | RuntimeException exception) ');
+    indent.scoped('{', '}', () {
+      indent
+          .writeln('wrapped.put("${Keys.error}", wrapError(exception));');
+      if (method.isAsynchronous) {
+        indent.writeln('reply.reply(wrapped);');
+      }
+    });
+    if (isStreamed) {
+      indent.writeln('reply.reply(codec.encodeMessage(wrapped));');
+    } else if (!method.isAsynchronous) {
+      indent.writeln('reply.reply(wrapped);');
+    }
   }
 
   /// Write a static setup function in the interface.
@@ -195,11 +2056,55 @@ void _writeHostApi(Indent indent, Api api, Root root) {
         indent.writeln(
             'BinaryMessenger.TaskQueue taskQueue = binaryMessenger.makeBackgroundTaskQueue();');
       }
+      String messenger = api.boundedTaskQueue != null
+          ? 'apiBoundedDispatch'
+          : 'binaryMessenger';
+      final BoundedTaskQueue? boundedTaskQueue = method.boundedTaskQueue;
+      if (boundedTaskQueue != null) {
+        messenger = 'boundedDispatch';
+        indent.writeln(
+            '$_boundedDispatchName $messenger = new $_boundedDispatchName(binaryMessenger, getCodec(), ${boundedTaskQueue.maxConcurrentCalls}, ${boundedTaskQueue.maxPendingCalls});');
+      }
+      if (method.isLastArgumentStreamed) {
+        // The handler is registered on the messenger directly so that the
+        // message isn't decoded before the handler reads it.
+        final String codecName = _getCodecName(api);
+        final String taskQueueArgument =
+            taskQueue != null ? ', $taskQueue' : '';
+        indent.write('if (api != null) ');
+        indent.scoped('{', '} else {', () {
+          indent.writeln('$codecName codec = $codecName.INSTANCE;');
+          if (traceSections) {
+            indent.write(
+                '$messenger.setMessageHandler("$channelName", $_pigeonTraceName.binaryHandler("${_traceSectionName(api, method)}", (message, reply) -> ');
+            indent.scoped('{', '})$taskQueueArgument);', () {
+              writeMethodHandlerBody(method);
+            });
+          } else {
+            indent.write(
+                '$messenger.setMessageHandler("$channelName", (message, reply) -> ');
+            indent.scoped('{', '}$taskQueueArgument);', () {
+              writeMethodHandlerBody(method);
+            });
+          }
+        });
+        indent.scoped(null, '}', () {
+          indent.writeln(
+              '$messenger.setMessageHandler("$channelName", null$taskQueueArgument);');
+        });
+        return;
+      }
+      if (method.adaptiveBudgetMicroseconds != null) {
+        messenger = 'adaptiveDispatch';
+        indent.writeln(
+            '$_adaptiveDispatchName $messenger = new $_adaptiveDispatchName(binaryMessenger, ${method.adaptiveBudgetMicroseconds! * 1000}L);');
+      }
       indent.writeln('BasicMessageChannel<Object> channel =');
       indent.inc();
       indent.inc();
+      final String traceName = _traceSectionName(api, method);
       indent.write(
-          'new BasicMessageChannel<>(binaryMessenger, "$channelName", getCodec()');
+          'new BasicMessageChannel<>($messenger, "$channelName", ${traceSections ? '$_pigeonTraceName.codec("$traceName", getCodec())' : 'getCodec()'}');
       if (taskQueue != null) {
         indent.addln(', $taskQueue);');
       } else {
@@ -209,88 +2114,18 @@ void _writeHostApi(Indent indent, Api api, Root root) {
       indent.dec();
       indent.write('if (api != null) ');
       indent.scoped('{', '} else {', () {
-        indent.write('channel.setMessageHandler((message, reply) -> ');
-        indent.scoped('{', '});', () {
-          final String returnType = method.returnType.isVoid
-              ? 'Void'
-              : _javaTypeForDartType(method.returnType);
-          indent.writeln('Map<String, Object> wrapped = new HashMap<>();');
-          indent.write('try ');
-          indent.scoped('{', '}', () {
-            final List<String> methodArgument = <String>[];
-            if (method.arguments.isNotEmpty) {
-              indent.writeln(
-                  'ArrayList<Object> args = (ArrayList<Object>)message;');
-              enumerate(method.arguments, (int index, NamedType arg) {
-                // The StandardMessageCodec can give us [Integer, Long] for
-                // a Dart 'int'.  To keep things simple we just use 64bit
-                // longs in Pigeon with Java.
-                final bool isInt = arg.type.baseName == 'int';
-                final String argType =
-                    isInt ? 'Number' : _javaTypeForDartType(arg.type);
-                final String argName = _getSafeArgumentName(index, arg);
-                final String argExpression = isInt
-                    ? '($argName == null) ? null : $argName.longValue()'
-                    : argName;
-                String accessor = 'args.get($index)';
-                if (isEnum(arg.type)) {
-                  accessor = _intToEnum(accessor, arg.type.baseName);
-                } else {
-                  accessor = '($argType)$accessor';
-                }
-                indent.writeln('$argType $argName = $accessor;');
-                if (!arg.type.isNullable) {
-                  indent.write('if ($argName == null) ');
-                  indent.scoped('{', '}', () {
-                    indent.writeln(
-                        'throw new NullPointerException("$argName unexpectedly null.");');
-                  });
-                }
-                methodArgument.add(argExpression);
-              });
-            }
-            if (method.isAsynchronous) {
-              final String resultValue =
-                  method.returnType.isVoid ? 'null' : 'result';
-              const String resultName = 'resultCallback';
-              indent.format('''
-Result<$returnType> $resultName = new Result<$returnType>() {
-\tpublic void success($returnType result) {
-\t\twrapped.put("${Keys.result}", $resultValue);
-\t\treply.reply(wrapped);
-\t}
-\tpublic void error(Throwable error) {
-\t\twrapped.put("${Keys.error}", wrapError(error));
-\t\treply.reply(wrapped);
-\t}
-};
-''');
-              methodArgument.add(resultName);
-            }
-            final String call =
-                'api.${method.name}(${methodArgument.join(', ')})';
-            if (method.isAsynchronous) {
-              indent.writeln('$call;');
-            } else if (method.returnType.isVoid) {
-              indent.writeln('$call;');
-              indent.writeln('wrapped.put("${Keys.result}", null);');
-            } else {
-              indent.writeln('$returnType output = $call;');
-              indent.writeln('wrapped.put("${Keys.result}", output);');
-            }
+        if (traceSections) {
+          indent.write(
+              'channel.setMessageHandler($_pigeonTraceName.handler("$traceName", (message, reply) -> ');
+          indent.scoped('{', '}));', () {
+            writeMethodHandlerBody(method);
           });
-          indent.write('catch (Error | RuntimeException exception) ');
-          indent.scoped('{', '}', () {
-            indent
-                .writeln('wrapped.put("${Keys.error}", wrapError(exception));');
-            if (method.isAsynchronous) {
-              indent.writeln('reply.reply(wrapped);');
-            }
+        } else {
+          indent.write('channel.setMessageHandler((message, reply) -> ');
+          indent.scoped('{', '});', () {
+            writeMethodHandlerBody(method);
           });
-          if (!method.isAsynchronous) {
-            indent.writeln('reply.reply(wrapped);');
-          }
-        });
+        }
       });
       indent.scoped(null, '}', () {
         indent.writeln('channel.setMessageHandler(null);');
@@ -298,6 +2133,64 @@ Result<$returnType> $resultName = new Result<$returnType>() {
     });
   }
 
+  /// Write the body of a static setup function that registers one channel for
+  /// all methods and dispatches on the method index sent with each message.
+  void writeSingleChannelSetup() {
+    final String channelName = makeSingleChannelName(api);
+    String? taskQueue;
+    if (api.methods
+        .any((Method method) => method.taskQueueType != TaskQueueType.serial)) {
+      taskQueue = 'taskQueue';
+      indent.writeln(
+          'BinaryMessenger.TaskQueue taskQueue = binaryMessenger.makeBackgroundTaskQueue();');
+    }
+    final String messenger = api.boundedTaskQueue != null
+        ? 'apiBoundedDispatch'
+        : 'binaryMessenger';
+    indent.writeln('BasicMessageChannel<Object> channel =');
+    indent.inc();
+    indent.inc();
+    final String traceName = _traceSectionName(api);
+    indent.write(
+        'new BasicMessageChannel<>($messenger, "$channelName", ${traceSections ? '$_pigeonTraceName.codec("$traceName", getCodec())' : 'getCodec()'}');
+    if (taskQueue != null) {
+      indent.addln(', $taskQueue);');
+    } else {
+      indent.addln(');');
+    }
+    indent.dec();
+    indent.dec();
+    indent.write('if (api != null) ');
+    indent.scoped('{', '} else {', () {
+      if (traceSections) {
+        indent.write(
+            'channel.setMessageHandler($_pigeonTraceName.handler("$traceName", (message, reply) -> ');
+      } else {
+        indent.write('channel.setMessageHandler((message, reply) -> ');
+      }
+      indent.scoped('{', traceSections ? '}));' : '});', () {
+        indent.writeln('ArrayList<Object> args = (ArrayList<Object>)message;');
+        indent.write('switch (((Number)args.get(0)).intValue()) ');
+        indent.scoped('{', '}', () {
+          enumerate(api.methods, (int index, Method method) {
+            indent.write('case $index: ');
+            indent.scoped('{', '}', () {
+              writeMethodHandlerBody(method, argOffset: 1);
+              indent.writeln('break;');
+            });
+          });
+          indent.writeln('default:');
+          indent.nest(1, () {
+            indent.writeln('reply.reply(null);');
+          });
+        });
+      });
+    });
+    indent.scoped(null, '}', () {
+      indent.writeln('channel.setMessageHandler(null);');
+    });
+  }
+
   const List<String> generatedMessages = <String>[
     ' Generated interface from Pigeon that represents a handler of messages from Flutter.'
   ];
@@ -320,7 +2213,16 @@ static MessageCodec<Object> getCodec() {
     indent.write(
         'static void setup(BinaryMessenger binaryMessenger, ${api.name} api) ');
     indent.scoped('{', '}', () {
-      api.methods.forEach(writeMethodSetup);
+      final BoundedTaskQueue? boundedTaskQueue = api.boundedTaskQueue;
+      if (boundedTaskQueue != null) {
+        indent.writeln(
+            '$_boundedDispatchName apiBoundedDispatch = new $_boundedDispatchName(binaryMessenger, getCodec(), ${boundedTaskQueue.maxConcurrentCalls}, ${boundedTaskQueue.maxPendingCalls});');
+      }
+      if (api.isSingleChannel) {
+        writeSingleChannelSetup();
+      } else {
+        api.methods.forEach(writeMethodSetup);
+      }
     });
   });
 }
@@ -341,8 +2243,11 @@ String _getSafeArgumentName(int count, NamedType argument) =>
 ///   }
 ///   public int add(int x, int y, Reply<int> callback) {...}
 /// }
-void _writeFlutterApi(Indent indent, Api api) {
+void _writeFlutterApi(Indent indent, Api api, JavaOptions options) {
   assert(api.location == ApiLocation.flutter);
+  final bool withTimeouts = options.flutterApiTimeouts ?? false;
+  final bool withWindow = options.flutterApiBackpressure ?? false;
+  final bool withTrace = options.traceSections ?? false;
   const List<String> generatedMessages = <String>[
     ' Generated class from Pigeon that represents Flutter messages that can be called from Java.'
   ];
@@ -352,10 +2257,35 @@ void _writeFlutterApi(Indent indent, Api api) {
   indent.write('public static class ${api.name} ');
   indent.scoped('{', '}', () {
     indent.writeln('private final BinaryMessenger binaryMessenger;');
+    if (withTimeouts) {
+      indent.writeln(
+          'private final AtomicInteger pendingReplyCount = new AtomicInteger();');
+    }
+    if (withWindow) {
+      indent.writeln('private final @Nullable $_inFlightWindowName window;');
+    }
+    for (final Method func in api.methods.where((Method m) => m.isCoalesced)) {
+      indent.writeln(
+          'private final $_coalescerName ${func.name}Coalescer = new $_coalescerName();');
+    }
     indent.write('public ${api.name}(BinaryMessenger argBinaryMessenger)');
     indent.scoped('{', '}', () {
-      indent.writeln('this.binaryMessenger = argBinaryMessenger;');
+      if (withWindow) {
+        indent.writeln('this(argBinaryMessenger, null);');
+      } else {
+        indent.writeln('this.binaryMessenger = argBinaryMessenger;');
+      }
     });
+    if (withWindow) {
+      indent.writeln(
+          '/** Creates an object whose calls are limited by {@code window}, unless it is null. */');
+      indent.write(
+          'public ${api.name}(BinaryMessenger argBinaryMessenger, @Nullable $_inFlightWindowName window)');
+      indent.scoped('{', '}', () {
+        indent.writeln('this.binaryMessenger = argBinaryMessenger;');
+        indent.writeln('this.window = window;');
+      });
+    }
     indent.write('public interface Reply<T> ');
     indent.scoped('{', '}', () {
       indent.writeln('void reply(T reply);');
@@ -366,61 +2296,889 @@ static MessageCodec<Object> getCodec() {
 \treturn $codecName.INSTANCE;
 }
 ''');
+    if (withTimeouts) {
+      indent.format('''
+/** Returns the number of calls made through this object waiting for a reply. */
+public int getPendingReplyCount() {
+\treturn pendingReplyCount.get();
+}
+''');
+    }
+    if (withWindow) {
+      indent.format('''
+private void submitToWindow(Runnable send) {
+\tif (window == null) {
+\t\tsend.run();
+\t} else {
+\t\twindow.submit(send);
+\t}
+}
+private void releaseWindow() {
+\tif (window != null) {
+\t\twindow.release();
+\t}
+}
+''');
+    }
     for (final Method func in api.methods) {
       final String channelName = makeChannelName(api, func);
       final String returnType = func.returnType.isVoid
           ? 'Void'
           : _javaTypeForDartType(func.returnType);
       String sendArgument;
-      addDocumentationComments(
-          indent, func.documentationComments, _docCommentSpec);
+      final List<String> argsSignature = <String>[];
+      final List<String> argNames = <String>[];
       if (func.arguments.isEmpty) {
-        indent.write('public void ${func.name}(Reply<$returnType> callback) ');
         sendArgument = 'null';
       } else {
         final Iterable<String> argTypes = func.arguments
             .map((NamedType e) => _nullsafeJavaTypeForDartType(e.type));
-        final Iterable<String> argNames =
-            indexMap(func.arguments, _getSafeArgumentName);
+        argNames.addAll(indexMap(func.arguments, _getSafeArgumentName));
         sendArgument =
             'new ArrayList<Object>(Arrays.asList(${argNames.join(', ')}))';
-        final String argsSignature =
-            map2(argTypes, argNames, (String x, String y) => '$x $y')
-                .join(', ');
+        argsSignature.addAll(
+            map2(argTypes, argNames, (String x, String y) => '$x $y'));
+      }
+      addDocumentationComments(
+          indent, func.documentationComments, _docCommentSpec);
+      indent.write(
+          'public void ${func.name}(${<String>[...argsSignature, 'Reply<$returnType> callback'].join(', ')}) ');
+      if (withTimeouts) {
+        indent.scoped('{', '}', () {
+          indent.writeln(
+              '${func.name}(${<String>[...argNames, '0', 'callback', 'null'].join(', ')});');
+        });
+        indent.writeln(
+            '/** Like {@link #${func.name}}, but stops waiting for a reply after {@code timeoutMillis}, when positive, and then runs {@code onTimeout} on the timer thread. */');
         indent.write(
-            'public void ${func.name}($argsSignature, Reply<$returnType> callback) ');
+            'public @NonNull $_pendingReplyName ${func.name}(${<String>[...argsSignature, 'long timeoutMillis', 'Reply<$returnType> callback', '@Nullable Runnable onTimeout'].join(', ')}) ');
       }
       indent.scoped('{', '}', () {
         const String channel = 'channel';
-        indent.writeln('BasicMessageChannel<Object> $channel =');
-        indent.inc();
-        indent.inc();
+        // What a call holds until it's replied to. With timeouts it's released
+        // by the PendingReply, which also covers timeouts and cancellation,
+        // and the PendingReply only begins once the call is actually sent.
+        final List<String> settleCalls = <String>[
+          if (withWindow) 'releaseWindow()',
+          if (func.isCoalesced) '${func.name}Coalescer.complete()',
+        ];
+        final bool beginsWhenSent = withTimeouts && settleCalls.isNotEmpty;
+        if (beginsWhenSent) {
+          indent.writeln(
+              '$_pendingReplyName pending = $_pendingReplyName.create(callback, timeoutMillis, onTimeout, pendingReplyCount);');
+        } else if (withTimeouts) {
+          indent.writeln(
+              '$_pendingReplyName pending = $_pendingReplyName.start(callback, timeoutMillis, onTimeout, pendingReplyCount);');
+        }
+        final String traceName = _traceSectionName(api, func);
+        void writeSend() {
+          if (beginsWhenSent) {
+            final String onSettled = settleCalls.length == 1
+                ? '() -> ${settleCalls.single}'
+                : '() -> { ${settleCalls.map((String call) => '$call;').join(' ')} }';
+            indent.write('if (!pending.begin($onSettled)) ');
+            indent.scoped('{', '}', () {
+              indent.writeln('return;');
+            });
+          }
+          if (withTrace) {
+            indent.writeln(
+                'int traceCookie = $_pigeonTraceName.beginAsyncSection("$traceName");');
+          }
+          void writeChannelSend() {
+            indent.write('$channel.send($sendArgument, channelReply -> ');
+            indent.scoped('{', '});', () {
+              if (withTrace) {
+                indent.writeln(
+                    '$_pigeonTraceName.endAsyncSection("$traceName", traceCookie);');
+              }
+              if (!withTimeouts) {
+                for (final String call in settleCalls) {
+                  indent.writeln('$call;');
+                }
+              }
+              String replyCallback = 'callback';
+              if (withTimeouts) {
+                replyCallback = 'pendingCallback';
+                indent.writeln(
+                    'Reply<$returnType> $replyCallback = (Reply<$returnType>) pending.finish();');
+                indent.write('if ($replyCallback == null) ');
+                indent.scoped('{', '}', () {
+                  indent.writeln('return;');
+                });
+              }
+              if (func.returnType.isVoid) {
+                indent.writeln('$replyCallback.reply(null);');
+              } else {
+                const String output = 'output';
+                indent.writeln('@SuppressWarnings("ConstantConditions")');
+                if (func.returnType.baseName == 'int' &&
+                    !(options.varintIntegers ?? false)) {
+                  indent.writeln(
+                      '$returnType $output = channelReply == null ? null : ((Number)channelReply).longValue();');
+                } else {
+                  indent
+                      .writeln('$returnType $output = ($returnType)channelReply;');
+                }
+                indent.writeln('$replyCallback.reply($output);');
+              }
+            });
+          }
+
+          if (withTimeouts) {
+            indent.write('try ');
+            indent.scoped(
+                '{', '} catch (RuntimeException exception) {', writeChannelSend);
+            indent.nest(1, () {
+              indent.writeln('pending.discard();');
+              indent.writeln('throw exception;');
+            });
+            indent.writeln('}');
+          } else {
+            writeChannelSend();
+          }
+        }
+
+        void writeChannelAndSend() {
+          indent.writeln('BasicMessageChannel<Object> $channel =');
+          indent.inc();
+          indent.inc();
+          indent.writeln(
+              'new BasicMessageChannel<>(binaryMessenger, "$channelName", ${withTrace ? '$_pigeonTraceName.codec("$traceName", getCodec())' : 'getCodec()'});');
+          indent.dec();
+          indent.dec();
+          if (withWindow) {
+            indent.write('submitToWindow(() -> ');
+            indent.scoped('{', '});', writeSend);
+          } else {
+            writeSend();
+          }
+        }
+
+        if (func.isCoalesced) {
+          final String onDropped = withTimeouts ? 'pending::cancel' : 'null';
+          indent.write('${func.name}Coalescer.submit(() -> ');
+          indent.scoped('{', '}, $onDropped);', writeChannelAndSend);
+        } else {
+          writeChannelAndSend();
+        }
+        if (withTimeouts) {
+          indent.writeln('return pending;');
+        }
+      });
+    }
+    if (options.flutterApiFanOut ?? false) {
+      _writeFlutterApiFanOut(indent, api, options);
+    }
+    if (options.flutterApiThreadSafe ?? false) {
+      _writeFlutterApiThreadSafe(indent, api);
+    }
+  });
+}
+
+/// Writes the `FanOut` class of the FlutterApi [api], which sends each call
+/// to a list of messengers. The arguments are encoded once and every messenger
+/// is sent a read-only view of the same buffer.
+void _writeFlutterApiFanOut(Indent indent, Api api, JavaOptions options) {
+  indent.writeln(
+      '/** Sends each call to several messengers, encoding its arguments once. */');
+  indent.write('public static class FanOut ');
+  indent.scoped('{', '}', () {
+    indent.format('''
+private final List<BinaryMessenger> binaryMessengers;
+public FanOut(@NonNull Collection<BinaryMessenger> argBinaryMessengers) {
+\tthis.binaryMessengers = new ArrayList<>(argBinaryMessengers);
+}
+/**
+ * Sends {@code message} to every messenger and calls {@code callback} with their decoded replies,
+ * in the order of the messengers, once all of them replied.
+ */
+private void send(@NonNull String channelName, @Nullable ByteBuffer message, @NonNull Reply<List<Object>> callback) {
+\tint count = binaryMessengers.size();
+\tif (count == 0) {
+\t\tcallback.reply(new ArrayList<>());
+\t\treturn;
+\t}
+\tObject[] replies = new Object[count];
+\tAtomicInteger remaining = new AtomicInteger(count);
+\tfor (int i = 0; i < count; i++) {
+\t\tfinal int index = i;
+\t\tByteBuffer view = message == null ? null : message.asReadOnlyBuffer();
+\t\tbinaryMessengers.get(i).send(channelName, view, reply -> {
+\t\t\treplies[index] = getCodec().decodeMessage(reply);
+\t\t\tif (remaining.decrementAndGet() == 0) {
+\t\t\t\tcallback.reply(new ArrayList<>(Arrays.asList(replies)));
+\t\t\t}
+\t\t});
+\t}
+}''');
+    for (final Method func in api.methods) {
+      final String channelName = makeChannelName(api, func);
+      String sendArgument = 'null';
+      final List<String> argsSignature = <String>[];
+      if (func.arguments.isNotEmpty) {
+        final List<String> argNames =
+            indexMap(func.arguments, _getSafeArgumentName).toList();
+        sendArgument =
+            'new ArrayList<Object>(Arrays.asList(${argNames.join(', ')}))';
+        argsSignature.addAll(map2(
+            func.arguments.map(
+                (NamedType arg) => _nullsafeJavaTypeForDartType(arg.type)),
+            argNames,
+            (String type, String name) => '$type $name'));
+      }
+      final String returnType = func.returnType.isVoid
+          ? 'Void'
+          : _javaTypeForDartType(func.returnType);
+      final String callbackType =
+          func.returnType.isVoid ? 'Reply<Void>' : 'Reply<List<$returnType>>';
+      addDocumentationComments(
+          indent, func.documentationComments, _docCommentSpec);
+      indent.write(
+          'public void ${func.name}(${<String>[...argsSignature, '$callbackType callback'].join(', ')}) ');
+      indent.scoped('{', '}', () {
         indent.writeln(
-            'new BasicMessageChannel<>(binaryMessenger, "$channelName", getCodec());');
-        indent.dec();
-        indent.dec();
-        indent.write('$channel.send($sendArgument, channelReply -> ');
+            'ByteBuffer message = getCodec().encodeMessage($sendArgument);');
+        indent.write('send("$channelName", message, channelReplies -> ');
         indent.scoped('{', '});', () {
           if (func.returnType.isVoid) {
             indent.writeln('callback.reply(null);');
-          } else {
-            const String output = 'output';
-            indent.writeln('@SuppressWarnings("ConstantConditions")');
-            if (func.returnType.baseName == 'int') {
+            return;
+          }
+          indent.writeln(
+              'List<$returnType> output = new ArrayList<>(channelReplies.size());');
+          indent.write('for (Object channelReply : channelReplies) ');
+          indent.scoped('{', '}', () {
+            if (func.returnType.baseName == 'int' &&
+                !(options.varintIntegers ?? false)) {
               indent.writeln(
-                  '$returnType $output = channelReply == null ? null : ((Number)channelReply).longValue();');
+                  'output.add(channelReply == null ? null : ((Number)channelReply).longValue());');
             } else {
-              indent
-                  .writeln('$returnType $output = ($returnType)channelReply;');
+              indent.writeln('output.add(($returnType)channelReply);');
             }
-            indent.writeln('callback.reply($output);');
-          }
+          });
+          indent.writeln('callback.reply(output);');
         });
       });
     }
   });
 }
 
+/// The name of the class that runs FlutterApi calls made on other threads on
+/// the platform thread.
+const String _platformThreadQueueName = 'PlatformThreadQueue';
+
+/// Writes the class that moves FlutterApi calls to the platform thread when
+/// [JavaOptions.flutterApiThreadSafe] is set.
+void _writePlatformThreadQueue(Indent indent) {
+  indent.format('''
+
+/**
+ * Runs tasks submitted from any thread on the platform thread, in batches.
+ *
+ * <p>Tasks go into a lock-free queue. Only the first task submitted while the queue
+ * is idle hands a drain to {@code platformExecutor}, and that drain runs every task
+ * submitted until the queue is empty, so a burst of calls costs one trip to the
+ * platform thread. One queue can be shared by several FlutterApi objects, which
+ * keeps calls in the order they were submitted.
+ */
+public static final class PlatformThreadQueue {
+\tprivate final @NonNull Executor platformExecutor;
+\tprivate final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+\tprivate final AtomicBoolean drainScheduled = new AtomicBoolean();
+\tprivate final Runnable drain = this::drain;
+
+\t/**
+\t * @param platformExecutor runs tasks on the platform thread, for example
+\t *     {@code new Handler(Looper.getMainLooper())::post}.
+\t */
+\tpublic PlatformThreadQueue(@NonNull Executor platformExecutor) {
+\t\tthis.platformExecutor = platformExecutor;
+\t}
+
+\t/** Runs {@code task} on the platform thread after the tasks submitted before it. */
+\tpublic void submit(@NonNull Runnable task) {
+\t\ttasks.add(task);
+\t\tif (drainScheduled.compareAndSet(false, true)) {
+\t\t\tplatformExecutor.execute(drain);
+\t\t}
+\t}
+
+\tprivate void drain() {
+\t\t// Cleared first, so that a task submitted after the last poll schedules another drain.
+\t\tdrainScheduled.set(false);
+\t\tRunnable task;
+\t\twhile ((task = tasks.poll()) != null) {
+\t\t\ttry {
+\t\t\t\ttask.run();
+\t\t\t} catch (RuntimeException exception) {
+\t\t\t\tLog.e("PigeonPlatformThread", "FlutterApi call threw", exception);
+\t\t\t}
+\t\t}
+\t}
+}''');
+}
+
+/// Writes the `ThreadSafe` class of the FlutterApi [api], which can be called
+/// from any thread and makes its calls on the platform thread through a
+/// `PlatformThreadQueue`.
+void _writeFlutterApiThreadSafe(Indent indent, Api api) {
+  indent.writeln(
+      '/** Accepts calls from any thread and makes them on the platform thread, in batches. */');
+  indent.write('public static class ThreadSafe ');
+  indent.scoped('{', '}', () {
+    indent.format('''
+private final @NonNull ${api.name} api;
+private final @NonNull $_platformThreadQueueName queue;
+/** Creates an object that makes its calls on {@code api} through {@code queue}. */
+public ThreadSafe(@NonNull ${api.name} api, @NonNull $_platformThreadQueueName queue) {
+\tthis.api = api;
+\tthis.queue = queue;
+}''');
+    for (final Method func in api.methods) {
+      final String returnType = func.returnType.isVoid
+          ? 'Void'
+          : _javaTypeForDartType(func.returnType);
+      final List<String> argNames =
+          indexMap(func.arguments, _getSafeArgumentName).toList();
+      final List<String> argsSignature = <String>[];
+      argsSignature.addAll(map2(
+          func.arguments.map(
+              (NamedType arg) => _nullsafeJavaTypeForDartType(arg.type)),
+          argNames,
+          (String type, String name) => '$type $name'));
+      addDocumentationComments(
+          indent, func.documentationComments, _docCommentSpec);
+      indent.write(
+          'public void ${func.name}(${<String>[...argsSignature, 'Reply<$returnType> callback'].join(', ')}) ');
+      indent.scoped('{', '}', () {
+        indent.writeln(
+            'queue.submit(() -> api.${func.name}(${<String>[...argNames, 'callback'].join(', ')}));');
+      });
+    }
+  });
+}
+
+/// Writes the base class of the `BinaryMessenger`s that exchange framed
+/// messages with another process, when [JavaOptions.socketMessenger] or
+/// [JavaOptions.sharedMemoryMessenger] is set.
+void _writeFramedBinaryMessenger(Indent indent) {
+  indent.format('''
+
+/**
+ * The part of a {@link BinaryMessenger} that exchanges messages with another process, shared
+ * by the transports in this file.
+ *
+ * <p>Messages are sent as frames that carry their channel name and a correlation ID, so any
+ * number of calls can wait for a reply at once and replies can arrive in any order. Handlers
+ * and reply callbacks run on {@code executor}, which may run several of them at once. As with
+ * the engine's messenger, the size of a message sent is the position of its buffer.
+ */
+public abstract static class FramedBinaryMessenger implements BinaryMessenger, Closeable {
+\tstatic final String TAG = "PigeonFramedMessenger";
+\tstatic final byte FLAG_REPLY = 1;
+\tstatic final byte FLAG_NULL = 2;
+\tstatic final byte FLAG_WANTS_REPLY = 4;
+\t/** The frame length, flags, correlation ID and channel name length. */
+\tstatic final int HEADER_SIZE = 11;
+\tprivate final @NonNull Executor executor;
+\tprivate final Map<String, BinaryMessageHandler> handlers = new ConcurrentHashMap<>();
+\tprivate final Map<Integer, BinaryReply> pendingReplies = new ConcurrentHashMap<>();
+\tprivate final AtomicInteger nextId = new AtomicInteger();
+\tprivate final AtomicBoolean closed = new AtomicBoolean();
+
+\tFramedBinaryMessenger(@NonNull Executor executor) {
+\t\tthis.executor = executor;
+\t}
+
+\t/** Sends a frame made of {@code header} and, unless it is null, {@code payload}. */
+\tabstract void writeFrame(@NonNull ByteBuffer header, @Nullable ByteBuffer payload);
+
+\t/** Releases the transport, once, when the messenger is closed. */
+\tabstract void closeTransport() throws IOException;
+
+\t@Override
+\tpublic void send(@NonNull String channelName, @Nullable ByteBuffer message) {
+\t\tsendFrame((byte) 0, 0, channelName, message);
+\t}
+
+\t@Override
+\tpublic void send(@NonNull String channelName, @Nullable ByteBuffer message, @Nullable BinaryReply callback) {
+\t\tif (callback == null) {
+\t\t\tsend(channelName, message);
+\t\t\treturn;
+\t\t}
+\t\tint id = nextId.incrementAndGet();
+\t\tpendingReplies.put(id, callback);
+\t\tif (closed.get()) {
+\t\t\tfailPendingReply(id);
+\t\t\treturn;
+\t\t}
+\t\tsendFrame(FLAG_WANTS_REPLY, id, channelName, message);
+\t}
+
+\t@Override
+\tpublic void setMessageHandler(@NonNull String channelName, @Nullable BinaryMessageHandler handler) {
+\t\tif (handler == null) {
+\t\t\thandlers.remove(channelName);
+\t\t} else {
+\t\t\thandlers.put(channelName, handler);
+\t\t}
+\t}
+
+\t/** Returns a task queue for handlers, which run on the messenger's executor like any other. */
+\t@Override
+\tpublic @NonNull TaskQueue makeBackgroundTaskQueue() {
+\t\treturn new TaskQueue() {};
+\t}
+
+\t@Override
+\tpublic void setMessageHandler(@NonNull String channelName, @Nullable BinaryMessageHandler handler, @Nullable TaskQueue taskQueue) {
+\t\tsetMessageHandler(channelName, handler);
+\t}
+
+\t/** Returns whether {@link #close} was called, or the transport failed. */
+\tpublic boolean isClosed() {
+\t\treturn closed.get();
+\t}
+
+\t/** Closes the transport and replies {@code null} to the calls still waiting for a reply. */
+\t@Override
+\tpublic void close() {
+\t\tif (!closed.compareAndSet(false, true)) {
+\t\t\treturn;
+\t\t}
+\t\ttry {
+\t\t\tcloseTransport();
+\t\t} catch (IOException exception) {
+\t\t\tLog.e(TAG, "Failed to close the transport", exception);
+\t\t}
+\t\tfor (Integer id : pendingReplies.keySet()) {
+\t\t\tfailPendingReply(id);
+\t\t}
+\t}
+
+\tprivate void failPendingReply(int id) {
+\t\tBinaryReply callback = pendingReplies.remove(id);
+\t\tif (callback != null) {
+\t\t\texecutor.execute(() -> callback.reply(null));
+\t\t}
+\t}
+
+\tprivate void sendFrame(byte flags, int id, @NonNull String channelName, @Nullable ByteBuffer message) {
+\t\tbyte[] name = channelName.getBytes(StandardCharsets.UTF_8);
+\t\tint size = message == null ? 0 : message.position();
+\t\tByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + name.length);
+\t\theader.putInt(HEADER_SIZE - 4 + name.length + size);
+\t\theader.put(message == null ? (byte) (flags | FLAG_NULL) : flags);
+\t\theader.putInt(id);
+\t\theader.putShort((short) name.length);
+\t\theader.put(name);
+\t\theader.flip();
+\t\tByteBuffer payload = null;
+\t\tif (message != null) {
+\t\t\tpayload = message.duplicate();
+\t\t\tpayload.flip();
+\t\t}
+\t\twriteFrame(header, payload);
+\t}
+
+\t/** Hands a frame that was read to its handler or to the callback waiting for it. */
+\tvoid dispatch(byte flags, int id, @NonNull String channelName, @Nullable ByteBuffer payload) {
+\t\tif ((flags & FLAG_REPLY) != 0) {
+\t\t\tBinaryReply callback = pendingReplies.remove(id);
+\t\t\tif (callback != null) {
+\t\t\t\texecutor.execute(() -> callback.reply(payload));
+\t\t\t}
+\t\t\treturn;
+\t\t}
+\t\tBinaryMessageHandler handler = handlers.get(channelName);
+\t\tIncomingReply reply = new IncomingReply(id, (flags & FLAG_WANTS_REPLY) != 0);
+\t\texecutor.execute(() -> {
+\t\t\tif (handler == null) {
+\t\t\t\treply.reply(null);
+\t\t\t\treturn;
+\t\t\t}
+\t\t\ttry {
+\t\t\t\thandler.onMessage(payload, reply);
+\t\t\t} catch (RuntimeException exception) {
+\t\t\t\tLog.e(TAG, "Uncaught exception in the handler of " + channelName, exception);
+\t\t\t\tif (!reply.done.get()) {
+\t\t\t\t\treply.reply(null);
+\t\t\t\t}
+\t\t\t}
+\t\t});
+\t}
+
+\t/** Sends the reply to a message that was received, at most once. */
+\tprivate final class IncomingReply implements BinaryReply {
+\t\tprivate final int id;
+\t\tprivate final boolean wantsReply;
+\t\tprivate final AtomicBoolean done = new AtomicBoolean();
+
+\t\tIncomingReply(int id, boolean wantsReply) {
+\t\t\tthis.id = id;
+\t\t\tthis.wantsReply = wantsReply;
+\t\t}
+
+\t\t@Override
+\t\tpublic void reply(@Nullable ByteBuffer reply) {
+\t\t\tif (!done.compareAndSet(false, true)) {
+\t\t\t\tthrow new IllegalStateException("Reply already submitted");
+\t\t\t}
+\t\t\tif (wantsReply && !closed.get()) {
+\t\t\t\tsendFrame(FLAG_REPLY, id, "", reply);
+\t\t\t}
+\t\t}
+\t}
+}''');
+}
+
+/// Writes the `BinaryMessenger` that exchanges messages with another process
+/// over a socket when [JavaOptions.socketMessenger] is set.
+void _writeSocketBinaryMessenger(Indent indent) {
+  indent.format('''
+
+/**
+ * A {@link FramedBinaryMessenger} that exchanges messages with another process over a
+ * {@link SocketChannel}, so that the APIs in this file can be served or called out of process.
+ *
+ * <p>Each end of a connected TCP or Unix-domain socket creates one. One selector thread reads
+ * the socket into a direct buffer and writes the queued frames with gather writes.
+ */
+public static final class SocketBinaryMessenger extends FramedBinaryMessenger {
+\tprivate final @NonNull SocketChannel channel;
+\tprivate final Selector selector;
+\tprivate final SelectionKey key;
+\tprivate final ConcurrentLinkedQueue<ByteBuffer[]> outgoing = new ConcurrentLinkedQueue<>();
+\tprivate final AtomicBoolean writeScheduled = new AtomicBoolean();
+\tprivate final ArrayList<ByteBuffer> writing = new ArrayList<>();
+\tprivate ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+
+\t/**
+\t * Starts exchanging messages over {@code channel}, which must be connected.
+\t *
+\t * @param executor runs message handlers and reply callbacks.
+\t */
+\tpublic SocketBinaryMessenger(@NonNull SocketChannel channel, @NonNull Executor executor) throws IOException {
+\t\tsuper(executor);
+\t\tthis.channel = channel;
+\t\tselector = Selector.open();
+\t\tif (channel.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+\t\t\tchannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+\t\t}
+\t\tchannel.configureBlocking(false);
+\t\tkey = channel.register(selector, SelectionKey.OP_READ);
+\t\tThread thread = new Thread(this::run, "PigeonSocketMessenger");
+\t\tthread.setDaemon(true);
+\t\tthread.start();
+\t}
+
+\t@Override
+\tvoid writeFrame(@NonNull ByteBuffer header, @Nullable ByteBuffer payload) {
+\t\toutgoing.add(payload == null ? new ByteBuffer[] {header} : new ByteBuffer[] {header, payload});
+\t\tif (writeScheduled.compareAndSet(false, true)) {
+\t\t\tselector.wakeup();
+\t\t}
+\t}
+
+\t@Override
+\tvoid closeTransport() throws IOException {
+\t\tselector.close();
+\t\tchannel.close();
+\t}
+
+\tprivate void run() {
+\t\ttry {
+\t\t\twhile (!isClosed()) {
+\t\t\t\tselector.select();
+\t\t\t\tif (!selector.selectedKeys().isEmpty()) {
+\t\t\t\t\tselector.selectedKeys().clear();
+\t\t\t\t\tif (key.isReadable()) {
+\t\t\t\t\t\tread();
+\t\t\t\t\t}
+\t\t\t\t}
+\t\t\t\twrite();
+\t\t\t}
+\t\t} catch (IOException | CancelledKeyException | ClosedSelectorException exception) {
+\t\t\tif (!isClosed()) {
+\t\t\t\tLog.e(TAG, "The socket failed", exception);
+\t\t\t}
+\t\t} finally {
+\t\t\tclose();
+\t\t}
+\t}
+
+\tprivate void write() throws IOException {
+\t\t// Cleared first, so that a frame queued after the last poll wakes the selector again.
+\t\twriteScheduled.set(false);
+\t\tByteBuffer[] frame;
+\t\twhile ((frame = outgoing.poll()) != null) {
+\t\t\twriting.addAll(Arrays.asList(frame));
+\t\t}
+\t\twhile (!writing.isEmpty()) {
+\t\t\tByteBuffer[] buffers = writing.toArray(new ByteBuffer[0]);
+\t\t\tif (channel.write(buffers) == 0) {
+\t\t\t\tbreak;
+\t\t\t}
+\t\t\tint written = 0;
+\t\t\twhile (written < buffers.length && !buffers[written].hasRemaining()) {
+\t\t\t\twritten++;
+\t\t\t}
+\t\t\twriting.subList(0, written).clear();
+\t\t}
+\t\tkey.interestOps(writing.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+\t}
+
+\tprivate void read() throws IOException {
+\t\tif (channel.read(readBuffer) < 0) {
+\t\t\tthrow new EOFException("The socket was closed by the other process.");
+\t\t}
+\t\treadBuffer.flip();
+\t\twhile (readBuffer.remaining() >= 4) {
+\t\t\tint length = readBuffer.getInt(readBuffer.position());
+\t\t\tif (readBuffer.remaining() < 4 + length) {
+\t\t\t\tif (4 + length > readBuffer.capacity()) {
+\t\t\t\t\tByteBuffer larger = ByteBuffer.allocateDirect(4 + length);
+\t\t\t\t\tlarger.put(readBuffer);
+\t\t\t\t\treadBuffer = larger;
+\t\t\t\t\treturn;
+\t\t\t\t}
+\t\t\t\tbreak;
+\t\t\t}
+\t\t\treadBuffer.getInt();
+\t\t\tbyte flags = readBuffer.get();
+\t\t\tint id = readBuffer.getInt();
+\t\t\tbyte[] name = new byte[readBuffer.getShort() & 0xFFFF];
+\t\t\treadBuffer.get(name);
+\t\t\tint size = length - (HEADER_SIZE - 4) - name.length;
+\t\t\tByteBuffer payload = null;
+\t\t\tif ((flags & FLAG_NULL) == 0) {
+\t\t\t\tByteBuffer source = readBuffer.duplicate();
+\t\t\t\tsource.limit(source.position() + size);
+\t\t\t\tpayload = ByteBuffer.allocateDirect(size);
+\t\t\t\tpayload.put(source);
+\t\t\t\tpayload.flip();
+\t\t\t}
+\t\t\treadBuffer.position(readBuffer.position() + size);
+\t\t\tdispatch(flags, id, new String(name, StandardCharsets.UTF_8), payload);
+\t\t}
+\t\treadBuffer.compact();
+\t}
+}''');
+}
+
+/// Writes the `BinaryMessenger` that exchanges messages with another process
+/// through shared memory when [JavaOptions.sharedMemoryMessenger] is set.
+void _writeSharedMemoryBinaryMessenger(Indent indent) {
+  indent.format('''
+
+/**
+ * A {@link FramedBinaryMessenger} that exchanges messages with another process through a
+ * memory-mapped file, without copying them through the kernel.
+ *
+ * <p>The file holds two single-producer, single-consumer ring buffers, one for each direction,
+ * whose head and tail indices are updated without locks. Threads of this process that send at
+ * the same time take turns writing to the outgoing ring. Frames larger than a ring are written
+ * and read in parts. A reader thread waits for frames by spinning, then yielding, then
+ * parking for up to {@link #MAX_PARK_NANOS} at a time. The process that passes {@code create}
+ * clears the file, so it must map the file before the other process does.
+ */
+public static final class SharedMemoryBinaryMessenger extends FramedBinaryMessenger {
+\t/** Spinning only helps when the other process can run at the same time. */
+\tprivate static final int SPIN_COUNT = Runtime.getRuntime().availableProcessors() > 1 ? 10000 : 0;
+\tprivate static final int YIELD_COUNT = 100;
+\tprivate static final long MAX_PARK_NANOS = 100000;
+\t/** The offsets of a ring's head, tail and data. The indices are on separate cache lines. */
+\tprivate static final int HEAD_OFFSET = 0;
+\tprivate static final int TAIL_OFFSET = 64;
+\tprivate static final int DATA_OFFSET = 128;
+\tprivate final @NonNull Ring outgoing;
+\tprivate final @NonNull Ring incoming;
+\tprivate final @NonNull Thread reader;
+
+\t/**
+\t * Maps {@code file} and starts exchanging messages through it.
+\t *
+\t * @param create whether this process clears the file, before the other process maps it.
+\t * @param ringCapacity the size in bytes of each ring, a power of two.
+\t * @param executor runs message handlers and reply callbacks.
+\t */
+\tpublic SharedMemoryBinaryMessenger(@NonNull File file, boolean create, int ringCapacity, @NonNull Executor executor) throws IOException {
+\t\tsuper(executor);
+\t\tif (ringCapacity <= 0 || Integer.bitCount(ringCapacity) != 1) {
+\t\t\tthrow new IllegalArgumentException("ringCapacity must be a power of two.");
+\t\t}
+\t\tint ringSize = DATA_OFFSET + ringCapacity;
+\t\tMappedByteBuffer memory;
+\t\ttry (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+\t\t\tif (create) {
+\t\t\t\trandomAccessFile.setLength(0);
+\t\t\t}
+\t\t\trandomAccessFile.setLength(2L * ringSize);
+\t\t\tmemory = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 2L * ringSize);
+\t\t}
+\t\toutgoing = new Ring(memory, create ? 0 : ringSize, ringCapacity, true);
+\t\tincoming = new Ring(memory, create ? ringSize : 0, ringCapacity, false);
+\t\treader = new Thread(this::run, "PigeonSharedMemoryMessenger");
+\t\treader.setDaemon(true);
+\t\treader.start();
+\t}
+
+\t@Override
+\tvoid writeFrame(@NonNull ByteBuffer header, @Nullable ByteBuffer payload) {
+\t\tsynchronized (outgoing) {
+\t\t\toutgoing.write(header);
+\t\t\tif (payload != null) {
+\t\t\t\toutgoing.write(payload);
+\t\t\t}
+\t\t\toutgoing.publish();
+\t\t}
+\t}
+
+\t@Override
+\tvoid closeTransport() {
+\t\tLockSupport.unpark(reader);
+\t}
+
+\tprivate void run() {
+\t\tByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+\t\twhile (true) {
+\t\t\theader.clear();
+\t\t\tif (!incoming.read(header)) {
+\t\t\t\treturn;
+\t\t\t}
+\t\t\theader.flip();
+\t\t\tint length = header.getInt();
+\t\t\tbyte flags = header.get();
+\t\t\tint id = header.getInt();
+\t\t\tByteBuffer name = ByteBuffer.allocate(header.getShort() & 0xFFFF);
+\t\t\tByteBuffer payload = null;
+\t\t\tif ((flags & FLAG_NULL) == 0) {
+\t\t\t\tpayload = ByteBuffer.allocateDirect(length - (HEADER_SIZE - 4) - name.capacity());
+\t\t\t}
+\t\t\tif (!incoming.read(name) || (payload != null && !incoming.read(payload))) {
+\t\t\t\treturn;
+\t\t\t}
+\t\t\tincoming.publish();
+\t\t\tif (payload != null) {
+\t\t\t\tpayload.flip();
+\t\t\t}
+\t\t\tdispatch(flags, id, new String(name.array(), StandardCharsets.UTF_8), payload);
+\t\t}
+\t}
+
+\t/** Spins {@link #SPIN_COUNT} times, yields {@link #YIELD_COUNT} times, then parks for longer and longer. */
+\tprivate static int idle(int idleCount) {
+\t\tint parkCount = idleCount - SPIN_COUNT - YIELD_COUNT;
+\t\tif (parkCount >= 0) {
+\t\t\tLockSupport.parkNanos(Math.min((parkCount + 1) * 1000L, MAX_PARK_NANOS));
+\t\t} else if (idleCount >= SPIN_COUNT) {
+\t\t\tThread.yield();
+\t\t}
+\t\treturn idleCount + 1;
+\t}
+
+\t/** One direction of the shared memory: a single-producer, single-consumer byte queue. */
+\tprivate final class Ring {
+\t\tprivate final @NonNull ByteBuffer memory;
+\t\tprivate final @NonNull ByteBuffer data;
+\t\tprivate final int capacity;
+\t\t/** The offset of the index this process publishes: the head when writing, else the tail. */
+\t\tprivate final int ownIndex;
+\t\t/** The offset of the index the other process publishes. */
+\t\tprivate final int otherIndex;
+\t\t/** How far this process has written or read, ahead of what it has published. */
+\t\tprivate int position;
+\t\t/** How far this process may write or read before it checks the other process's index. */
+\t\tprivate int limit;
+\t\tprivate volatile int fence;
+
+\t\tRing(@NonNull ByteBuffer memory, int offset, int capacity, boolean writer) {
+\t\t\tthis.memory = memory;
+\t\t\tByteBuffer view = memory.duplicate();
+\t\t\tview.position(offset + DATA_OFFSET);
+\t\t\tview.limit(offset + DATA_OFFSET + capacity);
+\t\t\tdata = view.slice();
+\t\t\tthis.capacity = capacity;
+\t\t\townIndex = offset + (writer ? HEAD_OFFSET : TAIL_OFFSET);
+\t\t\totherIndex = offset + (writer ? TAIL_OFFSET : HEAD_OFFSET);
+\t\t\tposition = memory.getInt(ownIndex);
+\t\t\tlimit = position;
+\t\t}
+
+\t\t/**
+\t\t * Keeps the memory accesses before it ahead of those after it. A volatile write followed by a
+\t\t * volatile read of the same field does that on every Android version, unlike {@code VarHandle}.
+\t\t */
+\t\tprivate int fence() {
+\t\t\tfence = 0;
+\t\t\treturn fence;
+\t\t}
+
+\t\t/** Makes what was written or read visible to the other process. */
+\t\tvoid publish() {
+\t\t\tfence();
+\t\t\tmemory.putInt(ownIndex, position);
+\t\t}
+
+\t\t/** Returns whether more can be written or read, waiting for the other process if needed. */
+\t\tprivate boolean await(boolean writer) {
+\t\t\tif (position != limit) {
+\t\t\t\treturn true;
+\t\t\t}
+\t\t\tpublish();
+\t\t\tfor (int idleCount = 0; ; idleCount = idle(idleCount)) {
+\t\t\t\tint other = memory.getInt(otherIndex);
+\t\t\t\tfence();
+\t\t\t\tlimit = writer ? other + capacity : other;
+\t\t\t\tif (position != limit) {
+\t\t\t\t\treturn true;
+\t\t\t\t}
+\t\t\t\tif (isClosed()) {
+\t\t\t\t\treturn false;
+\t\t\t\t}
+\t\t\t}
+\t\t}
+
+\t\t/** Copies {@code source} into the ring. */
+\t\tvoid write(@NonNull ByteBuffer source) {
+\t\t\twhile (source.hasRemaining()) {
+\t\t\t\tif (!await(true)) {
+\t\t\t\t\treturn;
+\t\t\t\t}
+\t\t\t\tint offset = position & (capacity - 1);
+\t\t\t\tint count = Math.min(Math.min(limit - position, source.remaining()), capacity - offset);
+\t\t\t\tByteBuffer chunk = source.duplicate();
+\t\t\t\tchunk.limit(chunk.position() + count);
+\t\t\t\tByteBuffer target = data.duplicate();
+\t\t\t\ttarget.position(offset);
+\t\t\t\ttarget.put(chunk);
+\t\t\t\tsource.position(source.position() + count);
+\t\t\t\tposition += count;
+\t\t\t}
+\t\t}
+
+\t\t/** Fills {@code target} from the ring, returning false if the messenger was closed first. */
+\t\tboolean read(@NonNull ByteBuffer target) {
+\t\t\twhile (target.hasRemaining()) {
+\t\t\t\tif (!await(false)) {
+\t\t\t\t\treturn false;
+\t\t\t\t}
+\t\t\t\tint offset = position & (capacity - 1);
+\t\t\t\tint count = Math.min(Math.min(limit - position, target.remaining()), capacity - offset);
+\t\t\t\tByteBuffer chunk = data.duplicate();
+\t\t\t\tchunk.position(offset);
+\t\t\t\tchunk.limit(offset + count);
+\t\t\t\ttarget.put(chunk);
+\t\t\t\tposition += count;
+\t\t\t}
+\t\t\treturn true;
+\t\t}
+\t}
+}''');
+}
+
 String _makeGetter(NamedType field) {
   final String uppercased =
       field.name.substring(0, 1).toUpperCase() + field.name.substring(1);
@@ -486,11 +3244,18 @@ String _nullsafeJavaTypeForDartType(TypeDeclaration type) {
 /// This is for use in codecs where we may have a map representation of an
 /// object.
 String _castObject(
-    NamedType field, List<Class> classes, List<Enum> enums, String varName) {
+    NamedType field, List<Class> classes, List<Enum> enums, String varName,
+    {bool varintIntegers = false, bool preserveReferences = false}) {
   final HostDatatype hostDatatype = getFieldHostDatatype(field, classes, enums,
       (TypeDeclaration x) => _javaTypeForBuiltinDartType(x));
-  if (field.type.baseName == 'int') {
+  if (field.type.baseName == 'int' && !varintIntegers) {
     return '($varName == null) ? null : (($varName instanceof Integer) ? (Integer)$varName : (${hostDatatype.datatype})$varName)';
+  } else if (preserveReferences) {
+    // Data classes are decoded by the codec.
+    return '(${hostDatatype.datatype})$varName';
+  } else if (!hostDatatype.isBuiltin &&
+      _hasPresenceBitmap(field.type.baseName, classes)) {
+    return '($varName == null) ? null : ${hostDatatype.datatype}.fromList((List<Object>)$varName)';
   } else if (!hostDatatype.isBuiltin &&
       classes.map((Class x) => x.name).contains(field.type.baseName)) {
     return '($varName == null) ? null : ${hostDatatype.datatype}.fromMap((Map)$varName)';
@@ -507,6 +3272,42 @@ void generateJava(JavaOptions options, Root root, StringSink sink) {
   final Set<String> rootEnumNameSet =
       root.enums.map((Enum x) => x.name).toSet();
   final Indent indent = Indent(sink);
+  final bool hasFlutterApiTimeouts = (options.flutterApiTimeouts ?? false) &&
+      root.apis.any((Api api) => api.location == ApiLocation.flutter);
+  final bool hasCoalescedMethods = root.apis.any((Api api) =>
+      api.location == ApiLocation.flutter &&
+      api.methods.any((Method method) => method.isCoalesced));
+  final bool hasFlutterApiBackpressure =
+      (options.flutterApiBackpressure ?? false) &&
+          root.apis.any((Api api) => api.location == ApiLocation.flutter);
+  final bool hasFlutterApiFanOut = (options.flutterApiFanOut ?? false) &&
+      root.apis.any((Api api) => api.location == ApiLocation.flutter);
+  final bool hasFlutterApiThreadSafe =
+      (options.flutterApiThreadSafe ?? false) &&
+          root.apis.any((Api api) => api.location == ApiLocation.flutter);
+  final bool hasSocketMessenger =
+      (options.socketMessenger ?? false) && root.apis.isNotEmpty;
+  final bool hasSharedMemoryMessenger =
+      (options.sharedMemoryMessenger ?? false) && root.apis.isNotEmpty;
+  final bool hasFramedMessenger =
+      hasSocketMessenger || hasSharedMemoryMessenger;
+  final bool hasMappedFiles =
+      hasLargeBlobFields(root) || hasSharedMemoryMessenger;
+  final bool hasAdaptiveMethods = root.apis.any((Api api) =>
+      api.location == ApiLocation.host &&
+      api.methods
+          .any((Method method) => method.adaptiveBudgetMicroseconds != null));
+  final bool hasDeadlineMethods = root.apis.any((Api api) =>
+      api.location == ApiLocation.host &&
+      api.methods.any((Method method) => method.hasDeadline));
+  final bool hasTraceSections =
+      (options.traceSections ?? false) && root.apis.isNotEmpty;
+  final bool hasBoundedMethods = root.apis.any((Api api) =>
+      api.location == ApiLocation.host &&
+      (api.boundedTaskQueue != null ||
+          api.methods
+              .any((Method method) => method.boundedTaskQueue != null)));
+  final Set<String> columnarClassNames = getColumnarClassNames(root);
 
   void writeHeader() {
     if (options.copyrightHeader != null) {
@@ -517,6 +3318,12 @@ void generateJava(JavaOptions options, Root root, StringSink sink) {
   }
 
   void writeImports() {
+    if (hasTraceSections || hasOffsetIndexedFields(root)) {
+      indent.writeln('import android.os.Build;');
+    }
+    if (hasTraceSections) {
+      indent.writeln('import android.os.Trace;');
+    }
     indent.writeln('import android.util.Log;');
     indent.writeln('import androidx.annotation.NonNull;');
     indent.writeln('import androidx.annotation.Nullable;');
@@ -525,12 +3332,113 @@ void generateJava(JavaOptions options, Root root, StringSink sink) {
     indent.writeln('import io.flutter.plugin.common.MessageCodec;');
     indent.writeln('import io.flutter.plugin.common.StandardMessageCodec;');
     indent.writeln('import java.io.ByteArrayOutputStream;');
+    if (hasFramedMessenger) {
+      indent.writeln('import java.io.Closeable;');
+    }
+    if (hasSocketMessenger) {
+      indent.writeln('import java.io.EOFException;');
+    }
+    if (hasMappedFiles) {
+      indent.writeln('import java.io.File;');
+    }
+    if (hasLargeBlobFields(root) || hasFramedMessenger) {
+      indent.writeln('import java.io.IOException;');
+    }
+    if (hasMappedFiles) {
+      indent.writeln('import java.io.RandomAccessFile;');
+    }
+    if (hasSocketMessenger) {
+      indent.writeln('import java.net.StandardSocketOptions;');
+    }
     indent.writeln('import java.nio.ByteBuffer;');
+    if (_hasStreamedArguments(root) ||
+        hasOffsetIndexedFields(root) ||
+        root.apis.any((Api api) => _typedArraysSentBy(api, root).isNotEmpty)) {
+      indent.writeln('import java.nio.ByteOrder;');
+    }
+    if (hasMappedFiles) {
+      indent.writeln('import java.nio.MappedByteBuffer;');
+    }
+    if (hasSocketMessenger) {
+      indent.writeln('import java.nio.channels.CancelledKeyException;');
+      indent.writeln('import java.nio.channels.ClosedSelectorException;');
+    }
+    if (hasMappedFiles) {
+      indent.writeln('import java.nio.channels.FileChannel;');
+    }
+    if (hasSocketMessenger) {
+      indent.writeln('import java.nio.channels.SelectionKey;');
+      indent.writeln('import java.nio.channels.Selector;');
+      indent.writeln('import java.nio.channels.SocketChannel;');
+    }
+    if (hasFramedMessenger) {
+      indent.writeln('import java.nio.charset.StandardCharsets;');
+    }
+    if (columnarClassNames.isNotEmpty || hasOffsetIndexedFields(root)) {
+      indent.writeln('import java.util.AbstractList;');
+    }
+    if (hasFlutterApiBackpressure) {
+      indent.writeln('import java.util.ArrayDeque;');
+    }
     indent.writeln('import java.util.Arrays;');
     indent.writeln('import java.util.ArrayList;');
+    if (hasFlutterApiFanOut) {
+      indent.writeln('import java.util.Collection;');
+    }
     indent.writeln('import java.util.List;');
     indent.writeln('import java.util.Map;');
     indent.writeln('import java.util.HashMap;');
+    if ((options.preserveReferences ?? false) &&
+        root.apis.any((Api api) => _getCodecClasses(api, root).isNotEmpty)) {
+      indent.writeln('import java.util.IdentityHashMap;');
+    }
+    if (_hasStreamedArguments(root)) {
+      indent.writeln('import java.util.Iterator;');
+      indent.writeln('import java.util.NoSuchElementException;');
+    }
+    if (hasBoundedMethods) {
+      indent.writeln('import java.util.concurrent.ArrayBlockingQueue;');
+      indent.writeln('import java.util.concurrent.BlockingQueue;');
+    }
+    if (hasFramedMessenger ||
+        hasAdaptiveMethods ||
+        hasDeadlineMethods ||
+        hasBoundedMethods) {
+      indent.writeln('import java.util.concurrent.ConcurrentHashMap;');
+    }
+    if (hasFlutterApiThreadSafe || hasSocketMessenger) {
+      indent.writeln('import java.util.concurrent.ConcurrentLinkedQueue;');
+    }
+    if (hasFlutterApiThreadSafe || hasFramedMessenger) {
+      indent.writeln('import java.util.concurrent.Executor;');
+    }
+    if (hasOffsetIndexedFields(root)) {
+      indent.writeln('import java.util.concurrent.ForkJoinPool;');
+      indent.writeln('import java.util.concurrent.RecursiveAction;');
+    }
+    if (hasFlutterApiBackpressure || hasBoundedMethods) {
+      indent.writeln('import java.util.concurrent.RejectedExecutionException;');
+    }
+    if (hasBoundedMethods) {
+      indent.writeln('import java.util.concurrent.SynchronousQueue;');
+      indent.writeln('import java.util.concurrent.ThreadPoolExecutor;');
+      indent.writeln('import java.util.concurrent.TimeUnit;');
+    }
+    if (hasFlutterApiThreadSafe || hasFramedMessenger) {
+      indent.writeln('import java.util.concurrent.atomic.AtomicBoolean;');
+    }
+    if (hasFlutterApiTimeouts ||
+        hasFlutterApiFanOut ||
+        hasFramedMessenger ||
+        hasTraceSections) {
+      indent.writeln('import java.util.concurrent.atomic.AtomicInteger;');
+    }
+    if (hasAdaptiveMethods || hasDeadlineMethods || hasBoundedMethods) {
+      indent.writeln('import java.util.concurrent.atomic.AtomicLong;');
+    }
+    if (hasSharedMemoryMessenger) {
+      indent.writeln('import java.util.concurrent.locks.LockSupport;');
+    }
   }
 
   String camelToSnake(String camelCase) {
@@ -566,6 +3474,8 @@ void generateJava(JavaOptions options, Root root, StringSink sink) {
   }
 
   void writeDataClass(Class klass) {
+    final bool isImmutable = options.immutableDataClasses ?? false;
+
     void writeField(NamedType field) {
       final HostDatatype hostDatatype = getFieldHostDatatype(
           field,
@@ -577,10 +3487,14 @@ void generateJava(JavaOptions options, Root root, StringSink sink) {
       addDocumentationComments(
           indent, field.documentationComments, _docCommentSpec);
 
+      final String finalModifier = isImmutable ? 'final ' : '';
       indent.writeln(
-          'private $nullability ${hostDatatype.datatype} ${field.name};');
+          'private $finalModifier$nullability ${hostDatatype.datatype} ${field.name};');
       indent.writeln(
           'public $nullability ${hostDatatype.datatype} ${_makeGetter(field)}() { return ${field.name}; }');
+      if (isImmutable) {
+        return;
+      }
       indent.writeScoped(
           'public void ${_makeSetter(field)}($nullability ${hostDatatype.datatype} setterArg) {',
           '}', () {
@@ -594,52 +3508,443 @@ void generateJava(JavaOptions options, Root root, StringSink sink) {
       });
     }
 
+    String encodedFieldValue(NamedType field) {
+      final HostDatatype hostDatatype = getFieldHostDatatype(
+          field,
+          root.classes,
+          root.enums,
+          (TypeDeclaration x) => _javaTypeForBuiltinDartType(x));
+      final String fieldName = field.name;
+      if (field.largeBlobThreshold != null) {
+        return '$_largeBlobFilesName.encode($fieldName, ${field.largeBlobThreshold})';
+      } else if (field.isColumnar) {
+        return '($fieldName == null) ? null : ${field.type.typeArguments.first.baseName}.Columns.encode($fieldName)';
+      } else if (field.isOffsetIndexed) {
+        final bool isClassList = field.type.typeArguments.isNotEmpty &&
+            rootClassNameSet.contains(field.type.typeArguments.first.baseName);
+        final String encoder = isClassList
+            ? 'pigeonElement -> pigeonElement.${_encodeMethod(field.type.typeArguments.first.baseName, root.classes)}()'
+            : 'pigeonElement -> pigeonElement';
+        return '($fieldName == null) ? null : $_offsetIndexedListName.encode($fieldName, $encoder)';
+      } else if (!hostDatatype.isBuiltin &&
+          rootClassNameSet.contains(field.type.baseName) &&
+          !(options.preserveReferences ?? false)) {
+        return '($fieldName == null) ? null : $fieldName.${_encodeMethod(field.type.baseName, root.classes)}()';
+      } else if (!hostDatatype.isBuiltin &&
+          rootEnumNameSet.contains(field.type.baseName)) {
+        return '$fieldName == null ? null : $fieldName.index';
+      } else {
+        return field.name;
+      }
+    }
+
     void writeToMap() {
       indent.write('@NonNull Map<String, Object> toMap() ');
       indent.scoped('{', '}', () {
         indent.writeln('Map<String, Object> toMapResult = new HashMap<>();');
         for (final NamedType field in klass.fields) {
-          final HostDatatype hostDatatype = getFieldHostDatatype(
-              field,
-              root.classes,
-              root.enums,
-              (TypeDeclaration x) => _javaTypeForBuiltinDartType(x));
-          String toWriteValue = '';
-          final String fieldName = field.name;
-          if (!hostDatatype.isBuiltin &&
-              rootClassNameSet.contains(field.type.baseName)) {
-            toWriteValue = '($fieldName == null) ? null : $fieldName.toMap()';
-          } else if (!hostDatatype.isBuiltin &&
-              rootEnumNameSet.contains(field.type.baseName)) {
-            toWriteValue = '$fieldName == null ? null : $fieldName.index';
-          } else {
-            toWriteValue = field.name;
-          }
-          indent.writeln('toMapResult.put("${field.name}", $toWriteValue);');
+          indent.writeln(
+              'toMapResult.put("${field.name}", ${encodedFieldValue(field)});');
         }
         indent.writeln('return toMapResult;');
       });
     }
 
+    String fieldValue(NamedType field, String fieldVariable) {
+      if (rootEnumNameSet.contains(field.type.baseName)) {
+        return _intToEnum(fieldVariable, field.type.baseName);
+      } else if (field.largeBlobThreshold != null) {
+        return '$_largeBlobFilesName.decode($fieldVariable)';
+      } else if (field.isColumnar) {
+        return '($fieldVariable == null) ? null : ${field.type.typeArguments.first.baseName}.Columns.decode($fieldVariable)';
+      } else if (field.isOffsetIndexed) {
+        final String elementType = _javaTypeForListElement(field.type);
+        String decoder;
+        if (rootClassNameSet.contains(elementType)) {
+          decoder =
+              'pigeonValue -> (pigeonValue == null) ? null : ${_decodeCall(elementType, root.classes, 'pigeonValue')}';
+        } else if (elementType == 'Long') {
+          decoder =
+              'pigeonValue -> (pigeonValue == null) ? null : ((Number) pigeonValue).longValue()';
+        } else {
+          decoder = 'pigeonValue -> ($elementType) pigeonValue';
+        }
+        return '($fieldVariable == null) ? null : $_offsetIndexedListName.decode($fieldVariable, $decoder)';
+      } else {
+        return _castObject(field, root.classes, root.enums, fieldVariable,
+            varintIntegers: options.varintIntegers ?? false,
+            preserveReferences: options.preserveReferences ?? false);
+      }
+    }
+
     void writeFromMap() {
       indent.write(
           'static @NonNull ${klass.name} fromMap(@NonNull Map<String, Object> map) ');
       indent.scoped('{', '}', () {
+        if (isImmutable) {
+          for (final NamedType field in klass.fields) {
+            indent.writeln('Object ${field.name} = map.get("${field.name}");');
+          }
+          final Iterable<String> values = klass.fields
+              .map((NamedType field) => fieldValue(field, field.name));
+          indent.writeln('return new ${klass.name}(${values.join(', ')});');
+          return;
+        }
         const String result = 'pigeonResult';
         indent.writeln('${klass.name} $result = new ${klass.name}();');
         for (final NamedType field in klass.fields) {
           final String fieldVariable = field.name;
           final String setter = _makeSetter(field);
           indent.writeln('Object $fieldVariable = map.get("${field.name}");');
+          indent.writeln(
+              '$result.$setter(${fieldValue(field, fieldVariable)});');
+        }
+        indent.writeln('return $result;');
+      });
+    }
+
+    void writeToList() {
+      indent.write('@NonNull List<Object> toList() ');
+      indent.scoped('{', '}', () {
+        indent.writeln('ArrayList<Object> toListResult = new ArrayList<>();');
+        indent.writeln('toListResult.add(null);');
+        indent.writeln('long pigeonPresence = 0;');
+        enumerate(klass.fields, (int index, NamedType field) {
+          indent.write('if (${field.name} != null) ');
+          indent.scoped('{', '}', () {
+            indent.writeln('pigeonPresence |= 1L << $index;');
+            indent.writeln('toListResult.add(${encodedFieldValue(field)});');
+          });
+        });
+        indent.writeln('toListResult.set(0, pigeonPresence);');
+        indent.writeln('return toListResult;');
+      });
+    }
+
+    void writeFromList() {
+      indent.write(
+          'static @NonNull ${klass.name} fromList(@NonNull List<Object> list) ');
+      indent.scoped('{', '}', () {
+        const String result = 'pigeonResult';
+        if (isImmutable) {
+          for (final NamedType field in klass.fields) {
+            indent.writeln('Object ${field.name} = null;');
+          }
+        } else {
+          indent.writeln('${klass.name} $result = new ${klass.name}();');
+        }
+        indent.writeln('int pigeonIndex = 1;');
+        indent.write(
+            'for (long pigeonBits = ((Number) list.get(0)).longValue(); pigeonBits != 0; pigeonBits &= pigeonBits - 1) ');
+        indent.scoped('{', '}', () {
+          indent.writeln('Object pigeonFieldValue = list.get(pigeonIndex++);');
+          indent.write('switch (Long.numberOfTrailingZeros(pigeonBits)) ');
+          indent.scoped('{', '}', () {
+            enumerate(klass.fields, (int index, NamedType field) {
+              indent.writeln('case $index:');
+              indent.nest(1, () {
+                if (isImmutable) {
+                  indent.writeln('${field.name} = pigeonFieldValue;');
+                } else {
+                  indent.writeln(
+                      '$result.${_makeSetter(field)}(${fieldValue(field, 'pigeonFieldValue')});');
+                }
+                indent.writeln('break;');
+              });
+            });
+          });
+        });
+        if (isImmutable) {
+          final Iterable<String> values = klass.fields
+              .map((NamedType field) => fieldValue(field, field.name));
+          indent.writeln('return new ${klass.name}(${values.join(', ')});');
+        } else {
+          indent.writeln('return $result;');
+        }
+      });
+    }
+
+    void writeConstructor() {
+      final Iterable<String> parameters = klass.fields.map((NamedType field) {
+        final HostDatatype hostDatatype = getFieldHostDatatype(
+            field,
+            root.classes,
+            root.enums,
+            (TypeDeclaration x) => _javaTypeForBuiltinDartType(x));
+        final String nullability =
+            field.type.isNullable ? '@Nullable' : '@NonNull';
+        return '$nullability ${hostDatatype.datatype} ${field.name}';
+      });
+      indent.write('public ${klass.name}(${parameters.join(', ')}) ');
+      indent.scoped('{', '}', () {
+        for (final NamedType field
+            in klass.fields.where((NamedType field) => !field.type.isNullable)) {
+          indent.write('if (${field.name} == null) ');
+          indent.scoped('{', '}', () {
+            indent.writeln(
+                'throw new IllegalStateException("Nonnull field \\"${field.name}\\" is null.");');
+          });
+        }
+        for (final NamedType field in klass.fields) {
+          indent.writeln('this.${field.name} = ${field.name};');
+        }
+      });
+    }
+
+    void writeColumns() {
+      final String className = klass.name;
+      String columnType(NamedType field) {
+        if (rootEnumNameSet.contains(field.type.baseName)) {
+          return 'int[]';
+        }
+        switch (field.type.baseName) {
+          case 'int':
+            return 'long[]';
+          case 'double':
+            return 'double[]';
+          case 'bool':
+            return 'byte[]';
+          default:
+            return 'int[]';
+        }
+      }
+
+      bool isString(NamedType field) => field.type.baseName == 'String';
+      bool hasPrimitiveGetter(NamedType field) =>
+          <String>['int', 'double', 'bool'].contains(field.type.baseName);
+      String hasName(NamedType field) =>
+          'has${field.name[0].toUpperCase()}${field.name.substring(1)}';
+      String columnSlot(int index) => '${2 + index * 2}';
+      String presenceSlot(int index) => '${3 + index * 2}';
+
+      indent.writeln(
+          '$_docCommentPrefix A read-only view of rows that are sent as one array per field, used for `Columnar` lists.$_docCommentSuffix');
+      indent.write(
+          'public static final class Columns extends AbstractList<$className> ');
+      indent.scoped('{', '}', () {
+        indent.writeln('private final @NonNull List<Object> columns;');
+        indent.writeln('private final int size;');
+        indent.writeln('private final @NonNull byte[] presence;');
+        for (final NamedType field in klass.fields) {
+          indent.writeln(
+              'private final @NonNull ${columnType(field)} ${field.name}Column;');
+          if (isString(field)) {
+            indent.writeln(
+                'private final @NonNull List<String> ${field.name}Table;');
+          }
+          if (field.type.isNullable) {
+            indent.writeln(
+                'private final @NonNull byte[] ${field.name}Presence;');
+          }
           if (rootEnumNameSet.contains(field.type.baseName)) {
             indent.writeln(
-                '$result.$setter(${_intToEnum(fieldVariable, field.type.baseName)});');
+                'private static final ${field.type.baseName}[] ${field.name}Values = ${field.type.baseName}.values();');
+          }
+        }
+        indent.addln('');
+        indent.write('private Columns(@NonNull List<Object> columns) ');
+        indent.scoped('{', '}', () {
+          indent.writeln('this.columns = columns;');
+          indent.writeln('size = ((Number) columns.get(0)).intValue();');
+          indent.writeln('presence = (byte[]) columns.get(1);');
+          enumerate(klass.fields, (int index, NamedType field) {
+            if (isString(field)) {
+              indent.writeln(
+                  '${field.name}Column = (int[]) ((List<Object>) columns.get(${columnSlot(index)})).get(1);');
+              indent.writeln(
+                  '${field.name}Table = (List<String>) ((List<Object>) columns.get(${columnSlot(index)})).get(0);');
+            } else {
+              indent.writeln(
+                  '${field.name}Column = (${columnType(field)}) columns.get(${columnSlot(index)});');
+            }
+            if (field.type.isNullable) {
+              indent.writeln(
+                  '${field.name}Presence = (byte[]) columns.get(${presenceSlot(index)});');
+            }
+          });
+        });
+        indent.addln('');
+        indent.format('''
+private static boolean isPresent(byte[] bits, int row) {
+\treturn (bits[row >> 3] & (1 << (row & 7))) != 0;
+}
+
+private static void setPresent(byte[] bits, int row) {
+\tbits[row >> 3] |= 1 << (row & 7);
+}''');
+        if (klass.fields.any(isString)) {
+          indent.format('''
+
+private static int indexInTable(List<String> table, Map<String, Integer> indices, String value) {
+\tInteger index = indices.get(value);
+\tif (index == null) {
+\t\tindex = table.size();
+\t\tindices.put(value, index);
+\t\ttable.add(value);
+\t}
+\treturn index;
+}''');
+        }
+        indent.addln('');
+        indent.format('''
+@Override
+public int size() {
+\treturn size;
+}
+
+/** Returns true if the row at index {@code row} is null. */
+public boolean isNull(int row) {
+\treturn !isPresent(presence, row);
+}''');
+        for (final NamedType field in klass.fields) {
+          final String getter = _makeGetter(field);
+          final String column = '${field.name}Column';
+          if (field.type.isNullable) {
+            indent.addln('');
+            indent.write('public boolean ${hasName(field)}(int row) ');
+            indent.scoped('{', '}', () {
+              indent.writeln('return isPresent(${field.name}Presence, row);');
+            });
+          }
+          indent.addln('');
+          final String nullability =
+              field.type.isNullable ? '@Nullable' : '@NonNull';
+          String value;
+          String returnType;
+          if (rootEnumNameSet.contains(field.type.baseName)) {
+            returnType = '$nullability ${field.type.baseName}';
+            value = '${field.name}Values[$column[row]]';
+          } else if (isString(field)) {
+            returnType = '$nullability String';
+            value = '${field.name}Table.get($column[row])';
           } else {
-            indent.writeln(
-                '$result.$setter(${_castObject(field, root.classes, root.enums, fieldVariable)});');
+            returnType = field.type.baseName == 'int'
+                ? 'long'
+                : field.type.baseName == 'double'
+                    ? 'double'
+                    : 'boolean';
+            value = field.type.baseName == 'bool'
+                ? '$column[row] != 0'
+                : '$column[row]';
           }
+          if (field.type.isNullable && !hasPrimitiveGetter(field)) {
+            value = '${hasName(field)}(row) ? $value : null';
+          }
+          indent.write('public $returnType $getter(int row) ');
+          indent.scoped('{', '}', () {
+            indent.writeln('return $value;');
+          });
         }
-        indent.writeln('return $result;');
+        indent.addln('');
+        String rowValue(NamedType field) {
+          final String getter = '${_makeGetter(field)}(row)';
+          return field.type.isNullable && hasPrimitiveGetter(field)
+              ? '${hasName(field)}(row) ? $getter : null'
+              : getter;
+        }
+
+        indent.writeln('@Override');
+        indent.write('public @Nullable $className get(int row) ');
+        indent.scoped('{', '}', () {
+          indent.write('if (row < 0 || row >= size) ');
+          indent.scoped('{', '}', () {
+            indent.writeln(
+                'throw new IndexOutOfBoundsException("Index: " + row + ", Size: " + size);');
+          });
+          indent.write('if (isNull(row)) ');
+          indent.scoped('{', '}', () {
+            indent.writeln('return null;');
+          });
+          if (isImmutable) {
+            indent.writeln(
+                'return new $className(${klass.fields.map(rowValue).join(', ')});');
+          } else {
+            const String result = 'pigeonResult';
+            indent.writeln('$className $result = new $className();');
+            for (final NamedType field in klass.fields) {
+              indent.writeln('$result.${_makeSetter(field)}(${rowValue(field)});');
+            }
+            indent.writeln('return $result;');
+          }
+        });
+        indent.addln('');
+        indent.write(
+            'static @NonNull List<Object> encode(@NonNull List<$className> rows) ');
+        indent.scoped('{', '}', () {
+          indent.write('if (rows instanceof Columns) ');
+          indent.scoped('{', '}', () {
+            indent.writeln('return ((Columns) rows).columns;');
+          });
+          indent.writeln('int size = rows.size();');
+          indent.writeln('byte[] presence = new byte[(size + 7) >> 3];');
+          for (final NamedType field in klass.fields) {
+            final String type = columnType(field);
+            indent.writeln(
+                '$type ${field.name}Column = new ${type.replaceFirst('[]', '[size]')};');
+            if (isString(field)) {
+              indent.writeln(
+                  'ArrayList<String> ${field.name}Table = new ArrayList<>();');
+              indent.writeln(
+                  'Map<String, Integer> ${field.name}Indices = new HashMap<>();');
+            }
+            if (field.type.isNullable) {
+              indent.writeln(
+                  'byte[] ${field.name}Presence = new byte[(size + 7) >> 3];');
+            }
+          }
+          indent.writeln('int row = 0;');
+          indent.write('for ($className value : rows) ');
+          indent.scoped('{', '}', () {
+            indent.write('if (value != null) ');
+            indent.scoped('{', '}', () {
+              indent.writeln('setPresent(presence, row);');
+              for (final NamedType field in klass.fields) {
+                final String source = 'value.${field.name}';
+                final String column = '${field.name}Column[row]';
+                String assignment;
+                if (rootEnumNameSet.contains(field.type.baseName)) {
+                  assignment = '$column = $source.index;';
+                } else if (isString(field)) {
+                  assignment =
+                      '$column = indexInTable(${field.name}Table, ${field.name}Indices, $source);';
+                } else if (field.type.baseName == 'bool') {
+                  assignment = '$column = (byte) ($source ? 1 : 0);';
+                } else {
+                  assignment = '$column = $source;';
+                }
+                if (field.type.isNullable) {
+                  indent.write('if ($source != null) ');
+                  indent.scoped('{', '}', () {
+                    indent.writeln('setPresent(${field.name}Presence, row);');
+                    indent.writeln(assignment);
+                  });
+                } else {
+                  indent.writeln(assignment);
+                }
+              }
+            });
+            indent.writeln('row++;');
+          });
+          indent.writeln('List<Object> columns = new ArrayList<>();');
+          indent.writeln('columns.add(size);');
+          indent.writeln('columns.add(presence);');
+          for (final NamedType field in klass.fields) {
+            if (isString(field)) {
+              indent.writeln(
+                  'columns.add(new ArrayList<Object>(Arrays.asList(${field.name}Table, ${field.name}Column)));');
+            } else {
+              indent.writeln('columns.add(${field.name}Column);');
+            }
+            indent.writeln(
+                'columns.add(${field.type.isNullable ? '${field.name}Presence' : 'null'});');
+          }
+          indent.writeln('return columns;');
+        });
+        indent.addln('');
+        indent.write('static @NonNull Columns decode(@NonNull Object columns) ');
+        indent.scoped('{', '}', () {
+          indent.writeln('return new Columns((List<Object>) columns);');
+        });
       });
     }
 
@@ -682,24 +3987,37 @@ void generateJava(JavaOptions options, Root root, StringSink sink) {
         indent, klass.documentationComments, _docCommentSpec,
         generatorComments: generatedMessages);
 
-    indent.write('public static class ${klass.name} ');
+    indent.write(
+        'public static ${isImmutable ? 'final ' : ''}class ${klass.name} ');
     indent.scoped('{', '}', () {
       for (final NamedType field in klass.fields) {
         writeField(field);
         indent.addln('');
       }
 
-      if (klass.fields
-          .map((NamedType e) => !e.type.isNullable)
-          .any((bool e) => e)) {
-        indent.writeln(
-            '${_docCommentPrefix}Constructor is private to enforce null safety; use Builder.$_docCommentSuffix');
-        indent.writeln('private ${klass.name}() {}');
-      }
+      if (isImmutable) {
+        writeConstructor();
+      } else {
+        if (klass.fields
+            .map((NamedType e) => !e.type.isNullable)
+            .any((bool e) => e)) {
+          indent.writeln(
+              '${_docCommentPrefix}Constructor is private to enforce null safety; use Builder.$_docCommentSuffix');
+          indent.writeln('private ${klass.name}() {}');
+        }
 
-      writeBuilder();
-      writeToMap();
-      writeFromMap();
+        writeBuilder();
+      }
+      if (columnarClassNames.contains(klass.name)) {
+        writeColumns();
+      }
+      if (klass.hasPresenceBitmap) {
+        writeToList();
+        writeFromList();
+      } else {
+        writeToMap();
+        writeFromMap();
+      }
     });
   }
 
@@ -713,9 +4031,11 @@ void generateJava(JavaOptions options, Root root, StringSink sink) {
 
   void writeApi(Api api) {
     if (api.location == ApiLocation.host) {
-      _writeHostApi(indent, api, root);
+      _writeHostApi(indent, api, root,
+          varintIntegers: options.varintIntegers ?? false,
+          traceSections: options.traceSections ?? false);
     } else if (api.location == ApiLocation.flutter) {
-      _writeFlutterApi(indent, api);
+      _writeFlutterApi(indent, api, options);
     }
   }
 
@@ -757,6 +4077,58 @@ private static Map<String, Object> wrapError(Throwable exception) {
       writeDataClass(klass);
     }
 
+    if (hasLargeBlobFields(root)) {
+      _writeLargeBlobFiles(indent);
+    }
+
+    if (hasOffsetIndexedFields(root)) {
+      _writeOffsetIndexedList(indent);
+    }
+
+    if (hasFlutterApiTimeouts) {
+      _writePendingReply(indent);
+    }
+
+    if (hasFlutterApiBackpressure) {
+      _writeInFlightWindow(indent);
+    }
+
+    if (hasFlutterApiThreadSafe) {
+      _writePlatformThreadQueue(indent);
+    }
+
+    if (hasFramedMessenger) {
+      _writeFramedBinaryMessenger(indent);
+    }
+
+    if (hasSocketMessenger) {
+      _writeSocketBinaryMessenger(indent);
+    }
+
+    if (hasSharedMemoryMessenger) {
+      _writeSharedMemoryBinaryMessenger(indent);
+    }
+
+    if (hasCoalescedMethods) {
+      _writeCoalescer(indent);
+    }
+
+    if (hasAdaptiveMethods) {
+      _writeAdaptiveDispatch(indent);
+    }
+
+    if (hasBoundedMethods) {
+      _writeBoundedDispatch(indent);
+    }
+
+    if (hasDeadlineMethods) {
+      _writeCallContext(indent);
+    }
+
+    if (hasTraceSections) {
+      _writePigeonTrace(indent);
+    }
+
     if (root.apis.any((Api api) =>
         api.location == ApiLocation.host &&
         api.methods.any((Method it) => it.isAsynchronous))) {
@@ -765,7 +4137,9 @@ private static Map<String, Object> wrapError(Throwable exception) {
     }
 
     for (final Api api in root.apis) {
-      _writeCodec(indent, api, root);
+      _writeCodec(indent, api, root,
+          varintIntegers: options.varintIntegers ?? false,
+          preserveReferences: options.preserveReferences ?? false);
       indent.addln('');
       writeApi(api);
     }
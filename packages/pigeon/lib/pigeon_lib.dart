@@ -86,6 +86,23 @@ class FlutterApi {
   const FlutterApi();
 }
 
+/// Metadata to annotate a [HostApi] whose methods share a single platform
+/// channel.
+///
+/// By default every method is registered under its own channel. With this
+/// annotation the API registers one channel, named after the API, and every
+/// message carries the index of the method being called, which the host
+/// dispatches with a `switch`. This reduces the number of handlers, and the
+/// work of registering them, for APIs with many methods.
+///
+/// Only supported by the Dart and Java generators.
+/// For example:
+///   @HostApi() @SingleChannel() abstract class Api { ... }
+class SingleChannel {
+  /// The constructor for a SingleChannel.
+  const SingleChannel();
+}
+
 /// Metadata to annotation methods to control the selector used for objc output.
 /// The number of components in the provided selector must match the number of
 /// arguments in the annotated method.
@@ -126,6 +143,163 @@ class TaskQueue {
   final TaskQueueType type;
 }
 
+/// Metadata annotation for HostApi methods that can be given a timeout.
+///
+/// The Dart method takes an optional `timeout` and sends the time at which it
+/// expires with the call. The Java handler replies with an error without
+/// calling the implementation if that time has passed when the call is
+/// handled, and passes the time left to the implementation otherwise.
+/// Generators without support for it ignore the deadline.
+///
+/// Currently only supported by the Dart and Java generators.
+/// For example:
+///   @Deadline() Result search(Query query);
+class Deadline {
+  /// The constructor for a Deadline.
+  const Deadline();
+}
+
+/// Metadata annotation for HostApi methods whose handler should move to a
+/// background task queue if it turns out to be slow.
+///
+/// The host measures how long the handler takes with a moving average and,
+/// once the average is over [budgetMicroseconds], handles later calls on a
+/// background task queue. Generators without support for it handle every call
+/// on the platform thread.
+///
+/// Currently only supported by the Java generator.
+/// For example:
+///   @AdaptiveTaskQueue(budgetMicroseconds: 4000) Result search(Query query);
+class AdaptiveTaskQueue {
+  /// The constructor for an AdaptiveTaskQueue.
+  const AdaptiveTaskQueue({this.budgetMicroseconds = 2000});
+
+  /// The average time per call, in microseconds, above which the handler is
+  /// moved to a background task queue.
+  final int budgetMicroseconds;
+}
+
+/// Metadata annotation for HostApi methods, or whole HostApis, whose handlers
+/// should run on a background executor with bounded concurrency and queue
+/// depth.
+///
+/// At most [maxConcurrentCalls] calls are handled at a time and at most
+/// [maxPendingCalls] wait for their turn. Any other call is replied to right
+/// away with an error with the code `Overloaded`, which is thrown as a
+/// `PlatformException` in Dart. On an API the limits are shared by all of its
+/// methods. Generators without support for it handle every call on the
+/// platform thread.
+///
+/// Currently only supported by the Java generator.
+/// For example:
+///   @BoundedTaskQueue(maxConcurrentCalls: 2, maxPendingCalls: 16)
+///   Thumbnail render(Page page);
+class BoundedTaskQueue {
+  /// The constructor for a BoundedTaskQueue.
+  const BoundedTaskQueue(
+      {this.maxConcurrentCalls = 1, this.maxPendingCalls = 64});
+
+  /// The number of calls handled at the same time at most.
+  final int maxConcurrentCalls;
+
+  /// The number of calls waiting to be handled at most.
+  final int maxPendingCalls;
+}
+
+/// Metadata annotation for FlutterApi methods that push state, where only the
+/// latest value matters.
+///
+/// While a call is waiting for its reply, a newer call replaces any call that
+/// hasn't been sent yet, which is then never encoded or sent and whose callback
+/// is never invoked. Generators without support for coalescing send every call.
+///
+/// Currently only supported by the Java generator.
+/// For example:
+///   @Coalesce() void onProgress(double progress);
+class Coalesce {
+  /// The constructor for a Coalesce.
+  const Coalesce();
+}
+
+/// Metadata annotation for HostApi methods whose last argument is a `List`
+/// that is too large to decode at once.
+///
+/// The Java handler receives an `Iterator` that decodes one element at a time
+/// from the message instead of a `List`. The iterator is only valid until the
+/// method returns. The format of messages doesn't change, so generators
+/// without support for it receive the whole list.
+///
+/// Currently only supported by the Java generator.
+/// For example:
+///   @StreamedList() int sum(List<int?> values);
+class StreamedList {
+  /// The constructor for a StreamedList.
+  const StreamedList();
+}
+
+/// Metadata annotation for `Uint8List` fields that may hold very large
+/// payloads.
+///
+/// Payloads of at least [threshold] bytes are written to a temporary file in
+/// the app's private storage and only a small descriptor (path, offset and
+/// length) is sent through the platform channel. The receiver reads the file
+/// and deletes it. Smaller payloads are still sent inline.
+///
+/// Only supported by the Dart and Java generators.
+/// For example:
+///   @LargeBlob(threshold: 65536) Uint8List? image;
+class LargeBlob {
+  /// The constructor for a LargeBlob.
+  const LargeBlob({this.threshold = 1048576});
+
+  /// The minimum payload size in bytes that is sent through a file.
+  final int threshold;
+}
+
+/// Metadata annotation for `List` fields whose elements are data classes with
+/// only `int`, `double`, `bool`, `String` and enum fields.
+///
+/// The list is sent as one typed array per field of the element class, with a
+/// table of distinct strings for `String` fields and a bitmap of the rows and
+/// values that are null, instead of one map per element.
+///
+/// Only supported by the Dart and Java generators.
+/// For example:
+///   @Columnar() List<SearchResult?> results;
+class Columnar {
+  /// The constructor for a Columnar.
+  const Columnar();
+}
+
+/// Metadata annotation for `List` fields that are sent with a table of the
+/// offsets of their encoded elements.
+///
+/// Each element is encoded on its own, so the Java generator can decode
+/// elements only when they are accessed, or decode all of them in parallel.
+///
+/// Only supported by the Dart and Java generators.
+/// For example:
+///   @OffsetIndexed() List<Photo?> photos;
+class OffsetIndexed {
+  /// The constructor for an OffsetIndexed.
+  const OffsetIndexed();
+}
+
+/// Metadata annotation for data classes with many nullable fields that are
+/// usually null.
+///
+/// Instances are sent as a bitmap of the fields that aren't null followed by
+/// only their values, instead of a map with the name and value of every field.
+/// Supports classes with up to 64 fields.
+///
+/// Only supported by the Dart and Java generators.
+/// For example:
+///   @PresenceBitmap() class Settings { ... }
+class PresenceBitmap {
+  /// The constructor for a PresenceBitmap.
+  const PresenceBitmap();
+}
+
 /// Represents an error as a result of parsing and generating code.
 class Error {
   /// Parametric constructor for Error.
@@ -171,7 +345,9 @@ class PigeonOptions {
       this.copyrightHeader,
       this.oneLanguage,
       this.astOut,
-      this.debugGenerators});
+      this.debugGenerators,
+      this.varintIntegers,
+      this.preserveReferences});
 
   /// Path to the file which will be processed.
   final String? input;
@@ -227,6 +403,16 @@ class PigeonOptions {
   /// True means print out line number of generators in comments at newlines.
   final bool? debugGenerators;
 
+  /// True means integers are sent as zigzag varints instead of 4 or 8 fixed
+  /// bytes, and Java reads them as `Long` without checking for `Integer`.
+  /// Only supported by the Dart and Java generators.
+  final bool? varintIntegers;
+
+  /// True means a data class instance that appears more than once in a message
+  /// is sent once and then as references, and is decoded as one shared
+  /// instance. Only supported by the Dart and Java generators.
+  final bool? preserveReferences;
+
   /// Creates a [PigeonOptions] from a Map representation where:
   /// `x = PigeonOptions.fromMap(x.toMap())`.
   static PigeonOptions fromMap(Map<String, Object> map) {
@@ -260,6 +446,8 @@ class PigeonOptions {
       oneLanguage: map['oneLanguage'] as bool?,
       astOut: map['astOut'] as String?,
       debugGenerators: map['debugGenerators'] as bool?,
+      varintIntegers: map['varintIntegers'] as bool?,
+      preserveReferences: map['preserveReferences'] as bool?,
     );
   }
 
@@ -285,6 +473,9 @@ class PigeonOptions {
       if (astOut != null) 'astOut': astOut!,
       if (oneLanguage != null) 'oneLanguage': oneLanguage!,
       if (debugGenerators != null) 'debugGenerators': debugGenerators!,
+      if (varintIntegers != null) 'varintIntegers': varintIntegers!,
+      if (preserveReferences != null)
+        'preserveReferences': preserveReferences!,
     };
     return result;
   }
@@ -356,11 +547,14 @@ abstract class Generator {
 }
 
 DartOptions _dartOptionsWithCopyrightHeader(
-    DartOptions? dartOptions, String? copyrightHeader) {
+    DartOptions? dartOptions, String? copyrightHeader,
+    {bool? varintIntegers, bool? preserveReferences}) {
   dartOptions = dartOptions ?? const DartOptions();
   return dartOptions.merge(DartOptions(
       copyrightHeader:
-          copyrightHeader != null ? _lineReader(copyrightHeader) : null));
+          copyrightHeader != null ? _lineReader(copyrightHeader) : null,
+      varintIntegers: varintIntegers,
+      preserveReferences: preserveReferences));
 }
 
 /// A [Generator] that generates the AST.
@@ -388,7 +582,9 @@ class DartGenerator implements Generator {
   @override
   void generate(StringSink sink, PigeonOptions options, Root root) {
     final DartOptions dartOptionsWithHeader = _dartOptionsWithCopyrightHeader(
-        options.dartOptions, options.copyrightHeader);
+        options.dartOptions, options.copyrightHeader,
+        varintIntegers: options.varintIntegers,
+        preserveReferences: options.preserveReferences);
     generateDart(dartOptionsWithHeader, root, sink);
   }
 
@@ -396,7 +592,8 @@ class DartGenerator implements Generator {
   IOSink? shouldGenerate(PigeonOptions options) => _openSink(options.dartOut);
 
   @override
-  List<Error> validate(PigeonOptions options, Root root) => <Error>[];
+  List<Error> validate(PigeonOptions options, Root root) =>
+      _validatePreserveReferences(options, root);
 }
 
 /// A [Generator] that generates Dart test source code.
@@ -407,7 +604,9 @@ class DartTestGenerator implements Generator {
   @override
   void generate(StringSink sink, PigeonOptions options, Root root) {
     final DartOptions dartOptionsWithHeader = _dartOptionsWithCopyrightHeader(
-        options.dartOptions, options.copyrightHeader);
+        options.dartOptions, options.copyrightHeader,
+        varintIntegers: options.varintIntegers,
+        preserveReferences: options.preserveReferences);
     generateTestDart(
       dartOptionsWithHeader,
       root,
@@ -450,8 +649,10 @@ class ObjcHeaderGenerator implements Generator {
       _openSink(options.objcHeaderOut);
 
   @override
-  List<Error> validate(PigeonOptions options, Root root) =>
-      validateObjc(options.objcOptions!, root);
+  List<Error> validate(PigeonOptions options, Root root) => <Error>[
+        ...validateObjc(options.objcOptions!, root),
+        ..._validateDartAndJavaOnlyFeatures(options, root, 'Objective-C'),
+      ];
 }
 
 /// A [Generator] that generates Objective-C source code.
@@ -490,7 +691,9 @@ class JavaGenerator implements Generator {
             path.basenameWithoutExtension(options.javaOut!),
         copyrightHeader: options.copyrightHeader != null
             ? _lineReader(options.copyrightHeader!)
-            : null));
+            : null,
+        varintIntegers: options.varintIntegers,
+        preserveReferences: options.preserveReferences));
     generateJava(javaOptions, root, sink);
   }
 
@@ -520,7 +723,8 @@ class SwiftGenerator implements Generator {
   IOSink? shouldGenerate(PigeonOptions options) => _openSink(options.swiftOut);
 
   @override
-  List<Error> validate(PigeonOptions options, Root root) => <Error>[];
+  List<Error> validate(PigeonOptions options, Root root) =>
+      _validateDartAndJavaOnlyFeatures(options, root, 'Swift');
 }
 
 /// A [Generator] that generates C++ header code.
@@ -544,8 +748,10 @@ class CppHeaderGenerator implements Generator {
       _openSink(options.cppHeaderOut);
 
   @override
-  List<Error> validate(PigeonOptions options, Root root) =>
-      validateCpp(options.cppOptions!, root);
+  List<Error> validate(PigeonOptions options, Root root) => <Error>[
+        ...validateCpp(options.cppOptions!, root),
+        ..._validateDartAndJavaOnlyFeatures(options, root, 'C++'),
+      ];
 }
 
 /// A [Generator] that generates C++ source code.
@@ -571,6 +777,84 @@ class CppSourceGenerator implements Generator {
   List<Error> validate(PigeonOptions options, Root root) => <Error>[];
 }
 
+/// Returns errors for the features used in [root] that encode data classes
+/// outside of the codec and therefore can't be combined with
+/// `preserveReferences`.
+List<Error> _validatePreserveReferences(PigeonOptions options, Root root) {
+  final List<Error> result = <Error>[];
+  if (!(options.preserveReferences ?? false)) {
+    return result;
+  }
+  for (final Class klass in root.classes) {
+    for (final NamedType field in klass.fields) {
+      if (field.isColumnar || field.isOffsetIndexed) {
+        final String annotation =
+            field.isColumnar ? 'Columnar' : 'OffsetIndexed';
+        result.add(Error(
+            message:
+                "preserveReferences can't be combined with $annotation, found on field \"${field.name}\" in class \"${klass.name}\"."));
+      }
+    }
+  }
+  for (final Api api in root.apis) {
+    for (final Method method in api.methods) {
+      if (method.isLastArgumentStreamed) {
+        result.add(Error(
+            message:
+                "preserveReferences can't be combined with StreamedList, found on method \"${method.name}\" in API \"${api.name}\"."));
+      }
+    }
+  }
+  return result;
+}
+
+/// Returns errors for the features used in [root] and [options] that change
+/// the format of messages and are therefore only supported by the Dart and
+/// Java generators.
+List<Error> _validateDartAndJavaOnlyFeatures(
+    PigeonOptions options, Root root, String language) {
+  final List<Error> result = <Error>[];
+  if (options.varintIntegers ?? false) {
+    result.add(Error(message: "varintIntegers isn't supported in $language."));
+  }
+  if (options.preserveReferences ?? false) {
+    result.add(
+        Error(message: "preserveReferences isn't supported in $language."));
+  }
+  for (final Class klass in root.classes) {
+    if (klass.hasPresenceBitmap) {
+      result.add(Error(
+          message:
+              "PresenceBitmap isn't supported in $language, found on class \"${klass.name}\"."));
+    }
+    for (final NamedType field in klass.fields) {
+      if (field.largeBlobThreshold != null) {
+        result.add(Error(
+            message:
+                "LargeBlob isn't supported in $language, found on field \"${field.name}\" in class \"${klass.name}\"."));
+      }
+      if (field.isColumnar) {
+        result.add(Error(
+            message:
+                "Columnar isn't supported in $language, found on field \"${field.name}\" in class \"${klass.name}\"."));
+      }
+      if (field.isOffsetIndexed) {
+        result.add(Error(
+            message:
+                "OffsetIndexed isn't supported in $language, found on field \"${field.name}\" in class \"${klass.name}\"."));
+      }
+    }
+  }
+  for (final Api api in root.apis) {
+    if (api.isSingleChannel) {
+      result.add(Error(
+          message:
+              "SingleChannel isn't supported in $language, found on API \"${api.name}\"."));
+    }
+  }
+  return result;
+}
+
 dart_ast.Annotation? _findMetadata(
     dart_ast.NodeList<dart_ast.Annotation> metadata, String query) {
   final Iterable<dart_ast.Annotation> annotations = metadata
@@ -594,6 +878,12 @@ List<Error> _validateAst(Root root, String source) {
       root.classes.map((Class x) => x.name).toList();
   final Iterable<String> customEnums = root.enums.map((Enum x) => x.name);
   for (final Class klass in root.classes) {
+    if (klass.hasPresenceBitmap && klass.fields.length > 64) {
+      result.add(Error(
+        message:
+            'PresenceBitmap supports classes with up to 64 fields, found ${klass.fields.length} in class "${klass.name}".',
+      ));
+    }
     for (final NamedType field in klass.fields) {
       if (field.type.typeArguments != null) {
         for (final TypeDeclaration typeArgument in field.type.typeArguments) {
@@ -613,6 +903,57 @@ List<Error> _validateAst(Root root, String source) {
           }
         }
       }
+      if (field.largeBlobThreshold != null &&
+          field.type.baseName != 'Uint8List') {
+        result.add(Error(
+          message:
+              'LargeBlob is only supported on Uint8List fields, found "${field.type.baseName}" in field "${field.name}" in class "${klass.name}".',
+          lineNumber: _calculateLineNumberNullable(source, field.offset),
+        ));
+      }
+      if (field.isOffsetIndexed) {
+        if (field.type.baseName != 'List') {
+          result.add(Error(
+            message:
+                'OffsetIndexed is only supported on List fields, found "${field.type.baseName}" in field "${field.name}" in class "${klass.name}".',
+            lineNumber: _calculateLineNumberNullable(source, field.offset),
+          ));
+        } else if (field.isColumnar) {
+          result.add(Error(
+            message:
+                "OffsetIndexed can't be combined with Columnar, found on field \"${field.name}\" in class \"${klass.name}\".",
+            lineNumber: _calculateLineNumberNullable(source, field.offset),
+          ));
+        }
+      }
+      if (field.isColumnar) {
+        final Iterable<Class> elementClasses = field.type.baseName ==
+                    'List' &&
+                field.type.typeArguments.isNotEmpty
+            ? root.classes.where((Class x) =>
+                x.name == field.type.typeArguments.first.baseName)
+            : <Class>[];
+        if (elementClasses.isEmpty) {
+          result.add(Error(
+            message:
+                'Columnar is only supported on Lists of data classes, found "${field.type.baseName}" in field "${field.name}" in class "${klass.name}".',
+            lineNumber: _calculateLineNumberNullable(source, field.offset),
+          ));
+        } else {
+          final Class elementClass = elementClasses.first;
+          for (final NamedType elementField in elementClass.fields) {
+            if (!(<String>['int', 'double', 'bool', 'String']
+                    .contains(elementField.type.baseName) ||
+                customEnums.contains(elementField.type.baseName))) {
+              result.add(Error(
+                message:
+                    'Columnar elements only support int, double, bool, String and enum fields, found "${elementField.type.baseName}" in field "${elementField.name}" of class "${elementClass.name}" used by field "${field.name}" in class "${klass.name}".',
+                lineNumber: _calculateLineNumberNullable(source, field.offset),
+              ));
+            }
+          }
+        }
+      }
       if (!(validTypes.contains(field.type.baseName) ||
           customClasses.contains(field.type.baseName) ||
           customEnums.contains(field.type.baseName))) {
@@ -625,6 +966,36 @@ List<Error> _validateAst(Root root, String source) {
     }
   }
   for (final Api api in root.apis) {
+    if (api.isSingleChannel) {
+      if (api.location != ApiLocation.host) {
+        result.add(Error(
+          message:
+              'SingleChannel is only supported on HostApis, found on API: "${api.name}".',
+        ));
+      }
+      if (api.dartHostTestHandler != null) {
+        result.add(Error(
+          message:
+              'SingleChannel isn\'t supported with dartHostTestHandler, found on API: "${api.name}".',
+        ));
+      }
+      if (api.methods
+              .map((Method method) => method.taskQueueType)
+              .toSet()
+              .length >
+          1) {
+        result.add(Error(
+          message:
+              'All methods of a SingleChannel API must use the same TaskQueue, found different ones in API: "${api.name}".',
+        ));
+      }
+    }
+    if (api.boundedTaskQueue != null && api.location != ApiLocation.host) {
+      result.add(Error(
+        message:
+            'BoundedTaskQueue is only supported on HostApis, found on API: "${api.name}".',
+      ));
+    }
     for (final Method method in api.methods) {
       if (api.location == ApiLocation.flutter &&
           method.arguments.isNotEmpty &&
@@ -667,6 +1038,76 @@ List<Error> _validateAst(Root root, String source) {
           lineNumber: _calculateLineNumberNullable(source, method.offset),
         ));
       }
+      if (method.isLastArgumentStreamed) {
+        if (api.location != ApiLocation.host || api.isSingleChannel) {
+          result.add(Error(
+            message:
+                'StreamedList is only supported on methods of HostApis without SingleChannel, found on "${method.name}" in API: "${api.name}".',
+            lineNumber: _calculateLineNumberNullable(source, method.offset),
+          ));
+        }
+        if (method.isAsynchronous) {
+          result.add(Error(
+            message:
+                'StreamedList isn\'t supported on async methods, found on "${method.name}" in API: "${api.name}".',
+            lineNumber: _calculateLineNumberNullable(source, method.offset),
+          ));
+        }
+        if (method.arguments.isEmpty ||
+            method.arguments.last.type.baseName != 'List' ||
+            method.arguments.last.type.isNullable) {
+          result.add(Error(
+            message:
+                'StreamedList requires the last argument to be a non-null List, in method "${method.name}" in API: "${api.name}".',
+            lineNumber: _calculateLineNumberNullable(source, method.offset),
+          ));
+        }
+      }
+      if (method.adaptiveBudgetMicroseconds != null &&
+          (api.location != ApiLocation.host ||
+              api.isSingleChannel ||
+              method.isLastArgumentStreamed ||
+              method.taskQueueType != TaskQueueType.serial)) {
+        result.add(Error(
+          message:
+              'AdaptiveTaskQueue is only supported on methods of HostApis without SingleChannel, StreamedList or TaskQueue, found on "${method.name}" in API: "${api.name}".',
+          lineNumber: _calculateLineNumberNullable(source, method.offset),
+        ));
+      }
+      if (method.hasDeadline &&
+          (api.location != ApiLocation.host || method.isLastArgumentStreamed)) {
+        result.add(Error(
+          message:
+              'Deadline is only supported on HostApi methods without StreamedList, found on "${method.name}" in API: "${api.name}".',
+          lineNumber: _calculateLineNumberNullable(source, method.offset),
+        ));
+      }
+      if (method.boundedTaskQueue != null &&
+          (api.location != ApiLocation.host ||
+              api.isSingleChannel ||
+              api.boundedTaskQueue != null)) {
+        result.add(Error(
+          message:
+              'BoundedTaskQueue is only supported on methods of HostApis without SingleChannel or their own BoundedTaskQueue, found on "${method.name}" in API: "${api.name}".',
+          lineNumber: _calculateLineNumberNullable(source, method.offset),
+        ));
+      }
+      if ((method.boundedTaskQueue != null || api.boundedTaskQueue != null) &&
+          (method.taskQueueType != TaskQueueType.serial ||
+              method.adaptiveBudgetMicroseconds != null)) {
+        result.add(Error(
+          message:
+              'BoundedTaskQueue can\'t be combined with TaskQueue or AdaptiveTaskQueue, found on "${method.name}" in API: "${api.name}".',
+          lineNumber: _calculateLineNumberNullable(source, method.offset),
+        ));
+      }
+      if (method.isCoalesced && api.location != ApiLocation.flutter) {
+        result.add(Error(
+          message:
+              'Coalesce is only supported on FlutterApi methods, found on "${method.name}" in API: "${api.name}".',
+          lineNumber: _calculateLineNumberNullable(source, method.offset),
+        ));
+      }
     }
   }
 
@@ -867,6 +1308,8 @@ class _RootBuilder extends dart_ast_visitor.RecursiveAstVisitor<Object?> {
           location: ApiLocation.host,
           methods: <Method>[],
           dartHostTestHandler: dartHostTestHandler,
+          isSingleChannel: _hasMetadata(node.metadata, 'SingleChannel'),
+          boundedTaskQueue: _parseBoundedTaskQueue(node.metadata),
           documentationComments:
               _documentationCommentsParser(node.documentationComment?.tokens),
         );
@@ -875,6 +1318,8 @@ class _RootBuilder extends dart_ast_visitor.RecursiveAstVisitor<Object?> {
           name: node.name2.lexeme,
           location: ApiLocation.flutter,
           methods: <Method>[],
+          isSingleChannel: _hasMetadata(node.metadata, 'SingleChannel'),
+          boundedTaskQueue: _parseBoundedTaskQueue(node.metadata),
           documentationComments:
               _documentationCommentsParser(node.documentationComment?.tokens),
         );
@@ -883,6 +1328,7 @@ class _RootBuilder extends dart_ast_visitor.RecursiveAstVisitor<Object?> {
       _currentClass = Class(
         name: node.name2.lexeme,
         fields: <NamedType>[],
+        hasPresenceBitmap: _hasMetadata(node.metadata, 'PresenceBitmap'),
         documentationComments:
             _documentationCommentsParser(node.documentationComment?.tokens),
       );
@@ -949,6 +1395,89 @@ class _RootBuilder extends dart_ast_visitor.RecursiveAstVisitor<Object?> {
     return null;
   }
 
+  int? _parseAdaptiveBudget(
+      dart_ast.NodeList<dart_ast.Annotation> metadata) {
+    final dart_ast.Annotation? adaptive =
+        _findMetadata(metadata, 'AdaptiveTaskQueue');
+    if (adaptive == null) {
+      return null;
+    }
+    final dart_ast.NamedExpression? budget = adaptive.arguments == null
+        ? null
+        : getFirstChildOfType<dart_ast.NamedExpression>(adaptive.arguments!);
+    if (budget == null) {
+      return const AdaptiveTaskQueue().budgetMicroseconds;
+    }
+    final dart_ast.Expression expression = budget.expression;
+    if (expression is dart_ast.IntegerLiteral &&
+        expression.value != null &&
+        expression.value! > 0) {
+      return expression.value;
+    }
+    _errors.add(Error(
+        message:
+            'AdaptiveTaskQueue budgetMicroseconds must be a positive integer literal.',
+        lineNumber: _calculateLineNumber(source, adaptive.offset)));
+    return const AdaptiveTaskQueue().budgetMicroseconds;
+  }
+
+  BoundedTaskQueue? _parseBoundedTaskQueue(
+      dart_ast.NodeList<dart_ast.Annotation> metadata) {
+    final dart_ast.Annotation? bounded =
+        _findMetadata(metadata, 'BoundedTaskQueue');
+    if (bounded == null) {
+      return null;
+    }
+    const BoundedTaskQueue defaults = BoundedTaskQueue();
+    int maxConcurrentCalls = defaults.maxConcurrentCalls;
+    int maxPendingCalls = defaults.maxPendingCalls;
+    for (final dart_ast.Expression argument
+        in bounded.arguments?.arguments ?? <dart_ast.Expression>[]) {
+      if (argument is! dart_ast.NamedExpression) {
+        continue;
+      }
+      final dart_ast.Expression expression = argument.expression;
+      final int? value =
+          expression is dart_ast.IntegerLiteral ? expression.value : null;
+      final String name = argument.name.label.name;
+      if (name == 'maxConcurrentCalls' && value != null && value > 0) {
+        maxConcurrentCalls = value;
+      } else if (name == 'maxPendingCalls' && value != null && value >= 0) {
+        maxPendingCalls = value;
+      } else {
+        _errors.add(Error(
+            message:
+                'BoundedTaskQueue maxConcurrentCalls must be a positive integer literal and maxPendingCalls a non-negative one.',
+            lineNumber: _calculateLineNumber(source, bounded.offset)));
+      }
+    }
+    return BoundedTaskQueue(
+        maxConcurrentCalls: maxConcurrentCalls,
+        maxPendingCalls: maxPendingCalls);
+  }
+
+  int? _parseLargeBlobThreshold(
+      dart_ast.NodeList<dart_ast.Annotation> metadata) {
+    final dart_ast.Annotation? largeBlob = _findMetadata(metadata, 'LargeBlob');
+    if (largeBlob == null) {
+      return null;
+    }
+    final dart_ast.NamedExpression? threshold = largeBlob.arguments == null
+        ? null
+        : getFirstChildOfType<dart_ast.NamedExpression>(largeBlob.arguments!);
+    if (threshold == null) {
+      return const LargeBlob().threshold;
+    }
+    final dart_ast.Expression expression = threshold.expression;
+    if (expression is dart_ast.IntegerLiteral && expression.value != null) {
+      return expression.value;
+    }
+    _errors.add(Error(
+        message: 'LargeBlob threshold must be an integer literal.',
+        lineNumber: _calculateLineNumber(source, largeBlob.offset)));
+    return const LargeBlob().threshold;
+  }
+
   @override
   Object? visitMethodDeclaration(dart_ast.MethodDeclaration node) {
     final dart_ast.FormalParameterList parameters = node.parameters!;
@@ -973,6 +1502,14 @@ class _RootBuilder extends dart_ast_visitor.RecursiveAstVisitor<Object?> {
     final TaskQueueType taskQueueType =
         _stringToEnum(TaskQueueType.values, taskQueueTypeName) ??
             TaskQueueType.serial;
+    final bool isCoalesced = _hasMetadata(node.metadata, 'Coalesce');
+    final bool isLastArgumentStreamed =
+        _hasMetadata(node.metadata, 'StreamedList');
+    final int? adaptiveBudgetMicroseconds =
+        _parseAdaptiveBudget(node.metadata);
+    final bool hasDeadline = _hasMetadata(node.metadata, 'Deadline');
+    final BoundedTaskQueue? boundedTaskQueue =
+        _parseBoundedTaskQueue(node.metadata);
 
     if (_currentApi != null) {
       // Methods without named return types aren't supported.
@@ -992,6 +1529,11 @@ class _RootBuilder extends dart_ast_visitor.RecursiveAstVisitor<Object?> {
           objcSelector: objcSelector,
           offset: node.offset,
           taskQueueType: taskQueueType,
+          isCoalesced: isCoalesced,
+          isLastArgumentStreamed: isLastArgumentStreamed,
+          adaptiveBudgetMicroseconds: adaptiveBudgetMicroseconds,
+          hasDeadline: hasDeadline,
+          boundedTaskQueue: boundedTaskQueue,
           documentationComments:
               _documentationCommentsParser(node.documentationComment?.tokens),
         ),
@@ -1065,6 +1607,9 @@ class _RootBuilder extends dart_ast_visitor.RecursiveAstVisitor<Object?> {
             offset: node.offset,
             documentationComments:
                 _documentationCommentsParser(node.documentationComment?.tokens),
+            largeBlobThreshold: _parseLargeBlobThreshold(node.metadata),
+            isColumnar: _hasMetadata(node.metadata, 'Columnar'),
+            isOffsetIndexed: _hasMetadata(node.metadata, 'OffsetIndexed'),
           ));
         }
       } else {
@@ -1200,6 +1745,30 @@ ${_argParser.usage}''';
         help: 'The package that generated Java code will be in.')
     ..addFlag('java_use_generated_annotation',
         help: 'Adds the java.annotation.Generated annotation to the output.')
+    ..addFlag('java_flutter_api_timeouts',
+        help: 'Adds FlutterApi overloads that take a timeout and can be '
+            'cancelled.')
+    ..addFlag('java_flutter_api_backpressure',
+        help: 'Adds FlutterApi constructors that limit the number of calls '
+            'waiting for a reply.')
+    ..addFlag('java_flutter_api_fan_out',
+        help: 'Adds FlutterApi classes that send each call to several '
+            'messengers and encode its arguments once.')
+    ..addFlag('java_flutter_api_thread_safe',
+        help: 'Adds FlutterApi classes that can be called from any thread and '
+            'make their calls on the platform thread in batches.')
+    ..addFlag('java_immutable_data_classes',
+        help: 'Generates data classes with final fields and a constructor '
+            'instead of setters and a Builder.')
+    ..addFlag('java_socket_messenger',
+        help: 'Generates a BinaryMessenger that serves or calls the APIs '
+            'from another process over a socket.')
+    ..addFlag('java_shared_memory_messenger',
+        help: 'Generates a BinaryMessenger that serves or calls the APIs '
+            'from another process through shared memory.')
+    ..addFlag('java_trace_sections',
+        help: 'Emits trace sections for the messages of host handlers and '
+            'FlutterApi calls.')
     ..addOption('experimental_swift_out',
         help: 'Path to generated Swift file (.swift).')
     ..addOption('experimental_cpp_header_out',
@@ -1215,6 +1784,13 @@ ${_argParser.usage}''';
     ..addOption('copyright_header',
         help:
             'Path to file with copyright header to be prepended to generated code.')
+    ..addFlag('varint_integers',
+        help: 'Sends integers as zigzag varints. Only supported by the Dart '
+            'and Java generators.')
+    ..addFlag('preserve_references',
+        help: 'Sends data class instances that appear more than once in a '
+            'message as references. Only supported by the Dart and Java '
+            'generators.')
     ..addFlag('one_language',
         help: 'Allow Pigeon to only generate code for one language.')
     ..addOption('ast_out',
@@ -1245,6 +1821,14 @@ ${_argParser.usage}''';
       javaOptions: JavaOptions(
         package: results['java_package'],
         useGeneratedAnnotation: results['java_use_generated_annotation'],
+        flutterApiTimeouts: results['java_flutter_api_timeouts'],
+        flutterApiBackpressure: results['java_flutter_api_backpressure'],
+        immutableDataClasses: results['java_immutable_data_classes'],
+        flutterApiFanOut: results['java_flutter_api_fan_out'],
+        flutterApiThreadSafe: results['java_flutter_api_thread_safe'],
+        socketMessenger: results['java_socket_messenger'],
+        sharedMemoryMessenger: results['java_shared_memory_messenger'],
+        traceSections: results['java_trace_sections'],
       ),
       swiftOut: results['experimental_swift_out'],
       cppHeaderOut: results['experimental_cpp_header_out'],
@@ -1256,6 +1840,8 @@ ${_argParser.usage}''';
       oneLanguage: results['one_language'],
       astOut: results['ast_out'],
       debugGenerators: results['debug_generators'],
+      varintIntegers: results['varint_integers'],
+      preserveReferences: results['preserve_references'],
     );
     return opts;
   }
@@ -0,0 +1,19 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+import 'package:pigeon/pigeon.dart';
+
+@HostApi()
+@BoundedTaskQueue(maxConcurrentCalls: 2, maxPendingCalls: 2)
+abstract class BoundedApi {
+  int work(int id);
+  int add(int x, int y);
+}
+
+@HostApi()
+abstract class BoundedMethodApi {
+  @BoundedTaskQueue(maxConcurrentCalls: 1, maxPendingCalls: 0)
+  int work(int id);
+  int add(int x, int y);
+}
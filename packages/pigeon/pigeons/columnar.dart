@@ -0,0 +1,30 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+import 'package:pigeon/pigeon.dart';
+
+enum ColumnarState {
+  pending,
+  done,
+}
+
+class ColumnarRow {
+  ColumnarRow(this.id, this.done, this.state);
+  int id;
+  double? score;
+  bool done;
+  String? name;
+  ColumnarState state;
+}
+
+class ColumnarTable {
+  @Columnar()
+  List<ColumnarRow?>? rows;
+  List<ColumnarRow?>? mapRows;
+}
+
+@HostApi()
+abstract class ColumnarHostApi {
+  ColumnarTable echo(ColumnarTable table);
+}
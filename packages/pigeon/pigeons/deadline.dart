@@ -0,0 +1,24 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+import 'package:pigeon/pigeon.dart';
+
+@HostApi()
+abstract class DeadlineApi {
+  @Deadline()
+  int add(int x, int y);
+  @Deadline()
+  @async
+  String echo(String value);
+  @Deadline()
+  int remainingMillis();
+  int subtract(int x, int y);
+}
+
+@HostApi()
+@SingleChannel()
+abstract class DeadlineSingleChannelApi {
+  @Deadline()
+  int add(int x, int y);
+}
@@ -0,0 +1,662 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+import 'package:pigeon/pigeon.dart';
+
+// More custom classes than fit in the single-byte codec types, chained
+// together so that every one of them is reachable from the API.
+
+class Item000 {
+  int? value;
+  Item001? next;
+}
+
+class Item001 {
+  int? value;
+  Item002? next;
+}
+
+class Item002 {
+  int? value;
+  Item003? next;
+}
+
+class Item003 {
+  int? value;
+  Item004? next;
+}
+
+class Item004 {
+  int? value;
+  Item005? next;
+}
+
+class Item005 {
+  int? value;
+  Item006? next;
+}
+
+class Item006 {
+  int? value;
+  Item007? next;
+}
+
+class Item007 {
+  int? value;
+  Item008? next;
+}
+
+class Item008 {
+  int? value;
+  Item009? next;
+}
+
+class Item009 {
+  int? value;
+  Item010? next;
+}
+
+class Item010 {
+  int? value;
+  Item011? next;
+}
+
+class Item011 {
+  int? value;
+  Item012? next;
+}
+
+class Item012 {
+  int? value;
+  Item013? next;
+}
+
+class Item013 {
+  int? value;
+  Item014? next;
+}
+
+class Item014 {
+  int? value;
+  Item015? next;
+}
+
+class Item015 {
+  int? value;
+  Item016? next;
+}
+
+class Item016 {
+  int? value;
+  Item017? next;
+}
+
+class Item017 {
+  int? value;
+  Item018? next;
+}
+
+class Item018 {
+  int? value;
+  Item019? next;
+}
+
+class Item019 {
+  int? value;
+  Item020? next;
+}
+
+class Item020 {
+  int? value;
+  Item021? next;
+}
+
+class Item021 {
+  int? value;
+  Item022? next;
+}
+
+class Item022 {
+  int? value;
+  Item023? next;
+}
+
+class Item023 {
+  int? value;
+  Item024? next;
+}
+
+class Item024 {
+  int? value;
+  Item025? next;
+}
+
+class Item025 {
+  int? value;
+  Item026? next;
+}
+
+class Item026 {
+  int? value;
+  Item027? next;
+}
+
+class Item027 {
+  int? value;
+  Item028? next;
+}
+
+class Item028 {
+  int? value;
+  Item029? next;
+}
+
+class Item029 {
+  int? value;
+  Item030? next;
+}
+
+class Item030 {
+  int? value;
+  Item031? next;
+}
+
+class Item031 {
+  int? value;
+  Item032? next;
+}
+
+class Item032 {
+  int? value;
+  Item033? next;
+}
+
+class Item033 {
+  int? value;
+  Item034? next;
+}
+
+class Item034 {
+  int? value;
+  Item035? next;
+}
+
+class Item035 {
+  int? value;
+  Item036? next;
+}
+
+class Item036 {
+  int? value;
+  Item037? next;
+}
+
+class Item037 {
+  int? value;
+  Item038? next;
+}
+
+class Item038 {
+  int? value;
+  Item039? next;
+}
+
+class Item039 {
+  int? value;
+  Item040? next;
+}
+
+class Item040 {
+  int? value;
+  Item041? next;
+}
+
+class Item041 {
+  int? value;
+  Item042? next;
+}
+
+class Item042 {
+  int? value;
+  Item043? next;
+}
+
+class Item043 {
+  int? value;
+  Item044? next;
+}
+
+class Item044 {
+  int? value;
+  Item045? next;
+}
+
+class Item045 {
+  int? value;
+  Item046? next;
+}
+
+class Item046 {
+  int? value;
+  Item047? next;
+}
+
+class Item047 {
+  int? value;
+  Item048? next;
+}
+
+class Item048 {
+  int? value;
+  Item049? next;
+}
+
+class Item049 {
+  int? value;
+  Item050? next;
+}
+
+class Item050 {
+  int? value;
+  Item051? next;
+}
+
+class Item051 {
+  int? value;
+  Item052? next;
+}
+
+class Item052 {
+  int? value;
+  Item053? next;
+}
+
+class Item053 {
+  int? value;
+  Item054? next;
+}
+
+class Item054 {
+  int? value;
+  Item055? next;
+}
+
+class Item055 {
+  int? value;
+  Item056? next;
+}
+
+class Item056 {
+  int? value;
+  Item057? next;
+}
+
+class Item057 {
+  int? value;
+  Item058? next;
+}
+
+class Item058 {
+  int? value;
+  Item059? next;
+}
+
+class Item059 {
+  int? value;
+  Item060? next;
+}
+
+class Item060 {
+  int? value;
+  Item061? next;
+}
+
+class Item061 {
+  int? value;
+  Item062? next;
+}
+
+class Item062 {
+  int? value;
+  Item063? next;
+}
+
+class Item063 {
+  int? value;
+  Item064? next;
+}
+
+class Item064 {
+  int? value;
+  Item065? next;
+}
+
+class Item065 {
+  int? value;
+  Item066? next;
+}
+
+class Item066 {
+  int? value;
+  Item067? next;
+}
+
+class Item067 {
+  int? value;
+  Item068? next;
+}
+
+class Item068 {
+  int? value;
+  Item069? next;
+}
+
+class Item069 {
+  int? value;
+  Item070? next;
+}
+
+class Item070 {
+  int? value;
+  Item071? next;
+}
+
+class Item071 {
+  int? value;
+  Item072? next;
+}
+
+class Item072 {
+  int? value;
+  Item073? next;
+}
+
+class Item073 {
+  int? value;
+  Item074? next;
+}
+
+class Item074 {
+  int? value;
+  Item075? next;
+}
+
+class Item075 {
+  int? value;
+  Item076? next;
+}
+
+class Item076 {
+  int? value;
+  Item077? next;
+}
+
+class Item077 {
+  int? value;
+  Item078? next;
+}
+
+class Item078 {
+  int? value;
+  Item079? next;
+}
+
+class Item079 {
+  int? value;
+  Item080? next;
+}
+
+class Item080 {
+  int? value;
+  Item081? next;
+}
+
+class Item081 {
+  int? value;
+  Item082? next;
+}
+
+class Item082 {
+  int? value;
+  Item083? next;
+}
+
+class Item083 {
+  int? value;
+  Item084? next;
+}
+
+class Item084 {
+  int? value;
+  Item085? next;
+}
+
+class Item085 {
+  int? value;
+  Item086? next;
+}
+
+class Item086 {
+  int? value;
+  Item087? next;
+}
+
+class Item087 {
+  int? value;
+  Item088? next;
+}
+
+class Item088 {
+  int? value;
+  Item089? next;
+}
+
+class Item089 {
+  int? value;
+  Item090? next;
+}
+
+class Item090 {
+  int? value;
+  Item091? next;
+}
+
+class Item091 {
+  int? value;
+  Item092? next;
+}
+
+class Item092 {
+  int? value;
+  Item093? next;
+}
+
+class Item093 {
+  int? value;
+  Item094? next;
+}
+
+class Item094 {
+  int? value;
+  Item095? next;
+}
+
+class Item095 {
+  int? value;
+  Item096? next;
+}
+
+class Item096 {
+  int? value;
+  Item097? next;
+}
+
+class Item097 {
+  int? value;
+  Item098? next;
+}
+
+class Item098 {
+  int? value;
+  Item099? next;
+}
+
+class Item099 {
+  int? value;
+  Item100? next;
+}
+
+class Item100 {
+  int? value;
+  Item101? next;
+}
+
+class Item101 {
+  int? value;
+  Item102? next;
+}
+
+class Item102 {
+  int? value;
+  Item103? next;
+}
+
+class Item103 {
+  int? value;
+  Item104? next;
+}
+
+class Item104 {
+  int? value;
+  Item105? next;
+}
+
+class Item105 {
+  int? value;
+  Item106? next;
+}
+
+class Item106 {
+  int? value;
+  Item107? next;
+}
+
+class Item107 {
+  int? value;
+  Item108? next;
+}
+
+class Item108 {
+  int? value;
+  Item109? next;
+}
+
+class Item109 {
+  int? value;
+  Item110? next;
+}
+
+class Item110 {
+  int? value;
+  Item111? next;
+}
+
+class Item111 {
+  int? value;
+  Item112? next;
+}
+
+class Item112 {
+  int? value;
+  Item113? next;
+}
+
+class Item113 {
+  int? value;
+  Item114? next;
+}
+
+class Item114 {
+  int? value;
+  Item115? next;
+}
+
+class Item115 {
+  int? value;
+  Item116? next;
+}
+
+class Item116 {
+  int? value;
+  Item117? next;
+}
+
+class Item117 {
+  int? value;
+  Item118? next;
+}
+
+class Item118 {
+  int? value;
+  Item119? next;
+}
+
+class Item119 {
+  int? value;
+  Item120? next;
+}
+
+class Item120 {
+  int? value;
+  Item121? next;
+}
+
+class Item121 {
+  int? value;
+  Item122? next;
+}
+
+class Item122 {
+  int? value;
+  Item123? next;
+}
+
+class Item123 {
+  int? value;
+  Item124? next;
+}
+
+class Item124 {
+  int? value;
+  Item125? next;
+}
+
+class Item125 {
+  int? value;
+  Item126? next;
+}
+
+class Item126 {
+  int? value;
+  Item127? next;
+}
+
+class Item127 {
+  int? value;
+  Item128? next;
+}
+
+class Item128 {
+  int? value;
+  Item129? next;
+}
+
+class Item129 {
+  int? value;
+}
+
+@HostApi()
+abstract class ExtendedTypeTagsApi {
+  Item000 echo(Item000 item);
+}
@@ -0,0 +1,16 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+import 'package:pigeon/pigeon.dart';
+
+@ConfigurePigeon(PigeonOptions(
+  javaOptions: JavaOptions(
+    flutterApiBackpressure: true,
+    flutterApiTimeouts: true,
+  ),
+))
+@FlutterApi()
+abstract class BackpressureTimeoutsFlutterApi {
+  int emit(int value);
+}
@@ -0,0 +1,21 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+import 'package:pigeon/pigeon.dart';
+
+class FanOutUpdate {
+  String? name;
+  int? version;
+  List<int?>? values;
+}
+
+@ConfigurePigeon(PigeonOptions(
+  javaOptions: JavaOptions(flutterApiFanOut: true),
+))
+@FlutterApi()
+abstract class FanOutFlutterApi {
+  int add(int x, int y);
+  FanOutUpdate update(FanOutUpdate update);
+  void ping();
+}
@@ -0,0 +1,19 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+import 'package:pigeon/pigeon.dart';
+
+class ThreadSafeEvent {
+  String? name;
+  int? sequence;
+}
+
+@ConfigurePigeon(PigeonOptions(
+  javaOptions: JavaOptions(flutterApiThreadSafe: true),
+))
+@FlutterApi()
+abstract class ThreadSafeFlutterApi {
+  void onEvent(ThreadSafeEvent event);
+  int add(int x, int y);
+}
@@ -0,0 +1,14 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+import 'package:pigeon/pigeon.dart';
+
+@ConfigurePigeon(PigeonOptions(
+  javaOptions: JavaOptions(flutterApiTimeouts: true),
+))
+@FlutterApi()
+abstract class TimeoutFlutterApi {
+  String echo(String value);
+  void ping();
+}
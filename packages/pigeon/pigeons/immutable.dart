@@ -0,0 +1,31 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+import 'package:pigeon/pigeon.dart';
+
+enum ImmutableState {
+  pending,
+  done,
+}
+
+class ImmutableInner {
+  String? name;
+}
+
+class ImmutableMessage {
+  ImmutableMessage(this.id, this.state, this.values);
+  int id;
+  ImmutableState state;
+  List<int?> values;
+  String? label;
+  ImmutableInner? inner;
+}
+
+@ConfigurePigeon(PigeonOptions(
+  javaOptions: JavaOptions(immutableDataClasses: true),
+))
+@HostApi()
+abstract class ImmutableHostApi {
+  ImmutableMessage echo(ImmutableMessage message);
+}
@@ -0,0 +1,16 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+import 'package:pigeon/pigeon.dart';
+
+class LargeBlobMessage {
+  @LargeBlob(threshold: 1024)
+  Uint8List? data;
+  String? name;
+}
+
+@HostApi()
+abstract class LargeBlobHostApi {
+  LargeBlobMessage echo(LargeBlobMessage message);
+}
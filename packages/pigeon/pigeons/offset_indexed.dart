@@ -0,0 +1,24 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+import 'package:pigeon/pigeon.dart';
+
+class OffsetIndexedItem {
+  OffsetIndexedItem(this.id);
+  int id;
+  String? name;
+  List<double?>? values;
+}
+
+class OffsetIndexedPage {
+  @OffsetIndexed()
+  List<OffsetIndexedItem?>? items;
+  @OffsetIndexed()
+  List<int?>? ids;
+}
+
+@HostApi()
+abstract class OffsetIndexedHostApi {
+  OffsetIndexedPage echo(OffsetIndexedPage page);
+}
@@ -0,0 +1,17 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+import 'package:pigeon/pigeon.dart';
+
+@ConfigurePigeon(PigeonOptions(
+  javaOptions: JavaOptions(socketMessenger: true),
+))
+@HostApi()
+@SingleChannel()
+abstract class PipelinedApi {
+  @async
+  int add(int x, int y);
+  @async
+  String echo(String value);
+}
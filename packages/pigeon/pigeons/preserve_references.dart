@@ -0,0 +1,29 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+import 'package:pigeon/pigeon.dart';
+
+class SharedRequest {
+  String? query;
+  int? anInt;
+  bool? aBool;
+}
+
+class SharedNested {
+  SharedRequest? request;
+  int? page;
+}
+
+class SharedBatch {
+  List<SharedNested?>? nested;
+  SharedRequest? defaultRequest;
+}
+
+@ConfigurePigeon(PigeonOptions(
+  preserveReferences: true,
+))
+@HostApi()
+abstract class SharedReferencesApi {
+  SharedBatch echo(SharedBatch batch);
+}
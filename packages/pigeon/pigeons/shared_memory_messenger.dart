@@ -0,0 +1,20 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+import 'package:pigeon/pigeon.dart';
+
+@ConfigurePigeon(PigeonOptions(
+  javaOptions: JavaOptions(sharedMemoryMessenger: true),
+))
+@HostApi()
+abstract class SharedMemoryHostApi {
+  int add(int x, int y);
+  @TaskQueue(type: TaskQueueType.serialBackgroundThread)
+  String echo(String value);
+}
+
+@FlutterApi()
+abstract class SharedMemoryFlutterApi {
+  String greet(String name);
+}
@@ -0,0 +1,34 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+import 'package:pigeon/pigeon.dart';
+
+@HostApi()
+@SingleChannel()
+abstract class SingleChannelApi {
+  int add(int x, int y);
+  String echo(String value);
+  String? echoNullable(String? value);
+  void reset();
+  @async
+  int addAsync(int x, int y);
+  bool negate(bool value);
+  double half(double value);
+  List<int?> repeat(int value, int count);
+}
+
+/// The same methods as [SingleChannelApi], registered one channel each, to
+/// compare against.
+@HostApi()
+abstract class MultiChannelApi {
+  int add(int x, int y);
+  String echo(String value);
+  String? echoNullable(String? value);
+  void reset();
+  @async
+  int addAsync(int x, int y);
+  bool negate(bool value);
+  double half(double value);
+  List<int?> repeat(int value, int count);
+}
@@ -0,0 +1,17 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+import 'package:pigeon/pigeon.dart';
+
+class StreamedListItem {
+  String? name;
+}
+
+@HostApi()
+abstract class StreamedListApi {
+  @StreamedList()
+  int sum(String label, List<int?> values);
+  @StreamedList()
+  String joinNames(List<StreamedListItem?> items);
+}
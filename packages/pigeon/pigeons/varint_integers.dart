@@ -0,0 +1,47 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+import 'package:pigeon/pigeon.dart';
+
+// The types of all_datatypes.dart and an enum, sent with varint integers.
+// The size of messages is compared on all_datatypes.dart and primitive.dart
+// generated with --varint_integers.
+
+enum VarintColor {
+  red,
+  green,
+  blue,
+}
+
+class VarintEverything {
+  bool? aBool;
+  int? anInt;
+  double? aDouble;
+  String? aString;
+  Uint8List? aByteArray;
+  Int32List? a4ByteArray;
+  Int64List? a8ByteArray;
+  Float64List? aFloatArray;
+  // ignore: always_specify_types, strict_raw_type
+  List? aList;
+  // ignore: always_specify_types, strict_raw_type
+  Map? aMap;
+  List<List<bool?>?>? nestedList;
+  Map<String?, String?>? mapWithAnnotations;
+  Map<String?, Object?>? mapWithObject;
+  VarintColor? aColor;
+}
+
+@ConfigurePigeon(PigeonOptions(
+  varintIntegers: true,
+))
+@HostApi()
+abstract class VarintHostApi {
+  VarintEverything echo(VarintEverything everything);
+  int anInt(int value);
+  // ignore: always_specify_types, strict_raw_type
+  List aList(List value);
+  Map<String?, int?> aStringIntMap(Map<String?, int?> value);
+  void setColor(VarintColor color);
+}
@@ -0,0 +1,208 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+
+import com.example.android_unit_tests.AdaptiveTaskQueue.AdaptiveApi;
+import com.example.android_unit_tests.AdaptiveTaskQueue.AdaptiveDispatch;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MessageCodec;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Test;
+
+public class AdaptiveTaskQueueTest {
+  private static final String WORK_CHANNEL = "dev.flutter.pigeon.AdaptiveApi.work";
+  private static final String ADD_CHANNEL = "dev.flutter.pigeon.AdaptiveApi.add";
+
+  /** A clock that only moves when the handler does work. */
+  private static class FakeClock implements AdaptiveDispatch.Clock {
+    long nanos = 0;
+
+    @Override
+    public long nanoTime() {
+      return nanos;
+    }
+  }
+
+  /**
+   * A messenger that calls handlers directly and remembers which task queue each handler was
+   * registered with.
+   */
+  private static class EngineBinaryMessenger implements BinaryMessenger {
+    final Map<String, BinaryMessageHandler> handlers = new HashMap<>();
+    final Map<String, TaskQueue> taskQueues = new HashMap<>();
+    int taskQueueCount = 0;
+
+    @Override
+    public void send(String channel, ByteBuffer message) {}
+
+    @Override
+    public void send(String channel, ByteBuffer message, BinaryReply callback) {}
+
+    @Override
+    public void setMessageHandler(String channel, BinaryMessageHandler handler) {
+      setMessageHandler(channel, handler, null);
+    }
+
+    @Override
+    public TaskQueue makeBackgroundTaskQueue() {
+      taskQueueCount++;
+      return new TaskQueue() {};
+    }
+
+    @Override
+    public void setMessageHandler(
+        String channel, BinaryMessageHandler handler, TaskQueue taskQueue) {
+      if (handler == null) {
+        handlers.remove(channel);
+        taskQueues.remove(channel);
+      } else {
+        handlers.put(channel, handler);
+        taskQueues.put(channel, taskQueue);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    Object call(String channel, Object... args) {
+      MessageCodec<Object> codec = AdaptiveApi.getCodec();
+      ByteBuffer message = codec.encodeMessage(new ArrayList<Object>(Arrays.asList(args)));
+      message.rewind();
+      Object[] result = {null};
+      handlers
+          .get(channel)
+          .onMessage(
+              message,
+              reply -> {
+                reply.rewind();
+                result[0] = ((Map<String, Object>) codec.decodeMessage(reply)).get("result");
+              });
+      return result[0];
+    }
+  }
+
+  /** An implementation whose {@code work} takes as long on the fake clock as it is told to. */
+  private static class Worker implements AdaptiveApi {
+    final FakeClock clock;
+
+    Worker(FakeClock clock) {
+      this.clock = clock;
+    }
+
+    @Override
+    public Long work(Long costMicroseconds) {
+      clock.nanos += costMicroseconds * 1000;
+      return costMicroseconds;
+    }
+
+    @Override
+    public Long add(Long x, Long y) {
+      return x + y;
+    }
+  }
+
+  private final FakeClock clock = new FakeClock();
+  private final EngineBinaryMessenger binaryMessenger = new EngineBinaryMessenger();
+
+  private AdaptiveDispatch setup() {
+    AdaptiveDispatch.setClock(clock);
+    AdaptiveApi.setup(binaryMessenger, new Worker(clock));
+    return AdaptiveDispatch.forChannel(WORK_CHANNEL);
+  }
+
+  @After
+  public void tearDown() {
+    AdaptiveApi.setup(binaryMessenger, null);
+    AdaptiveDispatch.setClock(null);
+  }
+
+  @Test
+  public void fastHandlerStaysOnPlatformThread() {
+    AdaptiveDispatch dispatch = setup();
+    assertEquals(2000000L, dispatch.getBudgetNanos());
+    for (long i = 0; i < 100; i++) {
+      assertEquals(1500L, ((Number) binaryMessenger.call(WORK_CHANNEL, 1500L)).longValue());
+    }
+    assertFalse(dispatch.isOffloaded());
+    assertEquals(1500000L, dispatch.getAverageNanos());
+    assertEquals(100, dispatch.getCallCount());
+    assertEquals(0, dispatch.getOffloadedCallCount());
+    assertNull(binaryMessenger.taskQueues.get(WORK_CHANNEL));
+    assertEquals(0, binaryMessenger.taskQueueCount);
+  }
+
+  @Test
+  public void slowHandlerMovesToBackgroundTaskQueue() {
+    AdaptiveDispatch dispatch = setup();
+    // One call at 20 ms after eight at 0.5 ms moves the average to about 2.9 ms, over the 2 ms
+    // budget.
+    for (int i = 0; i < 8; i++) {
+      binaryMessenger.call(WORK_CHANNEL, 500L);
+    }
+    binaryMessenger.call(WORK_CHANNEL, 20000L);
+    assertTrue(dispatch.isOffloaded());
+    assertEquals(500000L + (20000000L - 500000L) / 8, dispatch.getAverageNanos());
+    assertNotNull(binaryMessenger.taskQueues.get(WORK_CHANNEL));
+    assertEquals(1, binaryMessenger.taskQueueCount);
+    binaryMessenger.call(WORK_CHANNEL, 500L);
+    binaryMessenger.call(WORK_CHANNEL, 500L);
+    // Calls on the background task queue aren't measured, so the handler stays there.
+    assertEquals(500000L + (20000000L - 500000L) / 8, dispatch.getAverageNanos());
+    assertEquals(11, dispatch.getCallCount());
+    assertEquals(2, dispatch.getOffloadedCallCount());
+    assertEquals(1, binaryMessenger.taskQueueCount);
+  }
+
+  @Test
+  public void averageSmoothsOutSpikes() {
+    AdaptiveDispatch dispatch = setup();
+    for (int i = 0; i < 20; i++) {
+      binaryMessenger.call(WORK_CHANNEL, 100L);
+    }
+    // One call at 10 ms moves the average to about 1.3 ms, within the budget.
+    binaryMessenger.call(WORK_CHANNEL, 10000L);
+    assertFalse(dispatch.isOffloaded());
+    for (int i = 0; i < 20; i++) {
+      binaryMessenger.call(WORK_CHANNEL, 100L);
+    }
+    assertFalse(dispatch.isOffloaded());
+    assertTrue(dispatch.getAverageNanos() < 200000L);
+  }
+
+  @Test
+  public void slowFirstCallsDoNotMoveHandler() {
+    AdaptiveDispatch dispatch = setup();
+    for (int i = 0; i < AdaptiveDispatch.WARM_UP_CALLS - 1; i++) {
+      binaryMessenger.call(WORK_CHANNEL, 50000L);
+    }
+    assertFalse(dispatch.isOffloaded());
+    binaryMessenger.call(WORK_CHANNEL, 50000L);
+    assertTrue(dispatch.isOffloaded());
+  }
+
+  @Test
+  public void otherMethodsAreNotAdaptive() {
+    setup();
+    assertNull(AdaptiveDispatch.forChannel(ADD_CHANNEL));
+    assertEquals(3L, ((Number) binaryMessenger.call(ADD_CHANNEL, 1L, 2L)).longValue());
+  }
+
+  @Test
+  public void removingHandler() {
+    AdaptiveDispatch dispatch = setup();
+    for (int i = 0; i < 10; i++) {
+      binaryMessenger.call(WORK_CHANNEL, 5000L);
+    }
+    assertTrue(dispatch.isOffloaded());
+    AdaptiveApi.setup(binaryMessenger, null);
+    assertNull(AdaptiveDispatch.forChannel(WORK_CHANNEL));
+    assertNull(binaryMessenger.handlers.get(WORK_CHANNEL));
+  }
+}
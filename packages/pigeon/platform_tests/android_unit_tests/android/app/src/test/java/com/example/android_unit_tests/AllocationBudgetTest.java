@@ -0,0 +1,153 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import com.example.android_unit_tests.MultipleArity.MultipleArityFlutterApi;
+import com.example.android_unit_tests.MultipleArity.MultipleArityHostApi;
+import com.example.android_unit_tests.NullFields.NullFieldsHostApi;
+import com.example.android_unit_tests.NullFields.NullFieldsSearchReply;
+import com.example.android_unit_tests.NullFields.NullFieldsSearchReplyType;
+import com.example.android_unit_tests.NullFields.NullFieldsSearchRequest;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MessageCodec;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the bytes allocated per call by the generated code against budgets.
+ *
+ * <p>The budgets are about one and a half times what the calls allocated when they were last
+ * measured, so a change that doubles the allocation of a call fails here. When a change to the
+ * generator lowers a measurement, lower its budget too.
+ */
+public class AllocationBudgetTest {
+  private static final long MULTIPLE_ARITY_HOST_DISPATCH_BUDGET = 768;
+  private static final long MULTIPLE_ARITY_FLUTTER_SEND_BUDGET = 672;
+  private static final long NULL_FIELDS_ENCODE_BUDGET = 1856;
+  private static final long NULL_FIELDS_DECODE_BUDGET = 1920;
+  private static final long NULL_FIELDS_HOST_DISPATCH_BUDGET = 3456;
+
+  /**
+   * A messenger that calls handlers directly and answers sends with a fixed reply, dropping the
+   * replies of handlers.
+   */
+  private static class EngineBinaryMessenger implements BinaryMessenger {
+    final Map<String, BinaryMessageHandler> handlers = new HashMap<>();
+    ByteBuffer sendReply;
+
+    @Override
+    public void send(String channel, ByteBuffer message) {}
+
+    @Override
+    public void send(String channel, ByteBuffer message, BinaryReply callback) {
+      sendReply.rewind();
+      callback.reply(sendReply);
+    }
+
+    @Override
+    public void setMessageHandler(String channel, BinaryMessageHandler handler) {
+      handlers.put(channel, handler);
+    }
+
+    /** Returns a task that calls the handler of {@code channel} with {@code message}. */
+    Runnable dispatch(String channel, ByteBuffer message) {
+      BinaryMessageHandler handler = handlers.get(channel);
+      return () -> {
+        message.rewind();
+        handler.onMessage(message, reply -> {});
+      };
+    }
+  }
+
+  private static ByteBuffer encode(MessageCodec<Object> codec, Object... args) {
+    return codec.encodeMessage(new ArrayList<Object>(Arrays.asList(args)));
+  }
+
+  private static NullFieldsSearchReply makeReply() {
+    NullFieldsSearchRequest request =
+        new NullFieldsSearchRequest.Builder().setQuery("hello").setIdentifier(1L).build();
+    return new NullFieldsSearchReply.Builder()
+        .setResult("result")
+        .setIndices(Arrays.asList(1L, 2L, 3L))
+        .setRequest(request)
+        .setType(NullFieldsSearchReplyType.SUCCESS)
+        .build();
+  }
+
+  private final EngineBinaryMessenger binaryMessenger = new EngineBinaryMessenger();
+
+  @Before
+  public void setUp() {
+    assumeTrue(AllocationMeter.isSupported());
+  }
+
+  @Test
+  public void multipleArityHostDispatch() {
+    MultipleArityHostApi.setup(binaryMessenger, (x, y) -> x - y);
+    AllocationMeter.assertWithinBudget(
+        "MultipleArityHostApi.subtract",
+        MULTIPLE_ARITY_HOST_DISPATCH_BUDGET,
+        binaryMessenger.dispatch(
+            "dev.flutter.pigeon.MultipleArityHostApi.subtract",
+            encode(MultipleArityHostApi.getCodec(), 30L, 20L)));
+  }
+
+  @Test
+  public void multipleArityFlutterSend() {
+    MultipleArityFlutterApi api = new MultipleArityFlutterApi(binaryMessenger);
+    binaryMessenger.sendReply = MultipleArityFlutterApi.getCodec().encodeMessage(10L);
+    long[] result = {0};
+    AllocationMeter.assertWithinBudget(
+        "MultipleArityFlutterApi.subtract",
+        MULTIPLE_ARITY_FLUTTER_SEND_BUDGET,
+        () -> api.subtract(30L, 20L, reply -> result[0] = reply));
+    assertEquals(10L, result[0]);
+  }
+
+  @Test
+  public void nullFieldsEncode() {
+    MessageCodec<Object> codec = NullFieldsHostApi.getCodec();
+    NullFieldsSearchReply reply = makeReply();
+    AllocationMeter.assertWithinBudget(
+        "NullFieldsSearchReply encode",
+        NULL_FIELDS_ENCODE_BUDGET,
+        () -> codec.encodeMessage(reply));
+  }
+
+  @Test
+  public void nullFieldsDecode() {
+    MessageCodec<Object> codec = NullFieldsHostApi.getCodec();
+    ByteBuffer message = codec.encodeMessage(makeReply());
+    AllocationMeter.assertWithinBudget(
+        "NullFieldsSearchReply decode",
+        NULL_FIELDS_DECODE_BUDGET,
+        () -> {
+          message.rewind();
+          codec.decodeMessage(message);
+        });
+  }
+
+  @Test
+  public void nullFieldsHostDispatch() {
+    NullFieldsSearchReply reply = makeReply();
+    NullFieldsHostApi.setup(binaryMessenger, request -> reply);
+    NullFieldsSearchRequest request =
+        new NullFieldsSearchRequest.Builder().setQuery("hello").setIdentifier(1L).build();
+    AllocationMeter.assertWithinBudget(
+        "NullFieldsHostApi.search",
+        NULL_FIELDS_HOST_DISPATCH_BUDGET,
+        binaryMessenger.dispatch(
+            "dev.flutter.pigeon.NullFieldsHostApi.search",
+            encode(NullFieldsHostApi.getCodec(), request)));
+  }
+}
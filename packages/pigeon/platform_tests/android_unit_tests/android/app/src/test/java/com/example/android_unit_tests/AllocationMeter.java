@@ -0,0 +1,69 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures how many bytes the current thread allocates per call of a task.
+ *
+ * <p>The task is run enough times to be compiled before anything is measured, then measured over
+ * a few rounds of iterations, keeping the lowest average so that a one-off allocation, like a
+ * class being loaded, doesn't count against it.
+ */
+final class AllocationMeter {
+  static final int WARM_UP_ITERATIONS = 20000;
+  static final int MEASURED_ITERATIONS = 10000;
+  static final int ROUNDS = 3;
+
+  private AllocationMeter() {}
+
+  private static com.sun.management.ThreadMXBean threadMXBean() {
+    return (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  }
+
+  /** Returns true if the JVM can report the bytes allocated by a thread. */
+  static boolean isSupported() {
+    if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+      return false;
+    }
+    com.sun.management.ThreadMXBean threadMXBean = threadMXBean();
+    if (!threadMXBean.isThreadAllocatedMemorySupported()) {
+      return false;
+    }
+    threadMXBean.setThreadAllocatedMemoryEnabled(true);
+    return threadMXBean.isThreadAllocatedMemoryEnabled();
+  }
+
+  private static long allocatedBytes() {
+    return threadMXBean().getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /** Returns the bytes the current thread allocates per call of {@code task}. */
+  static long bytesPerCall(Runnable task) {
+    for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+      task.run();
+    }
+    long lowest = Long.MAX_VALUE;
+    for (int round = 0; round < ROUNDS; round++) {
+      long start = allocatedBytes();
+      for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+        task.run();
+      }
+      lowest = Math.min(lowest, (allocatedBytes() - start) / MEASURED_ITERATIONS);
+    }
+    return lowest;
+  }
+
+  /** Fails if a call of {@code task} allocates more than {@code budgetBytes}. */
+  static void assertWithinBudget(String name, long budgetBytes, Runnable task) {
+    long bytes = bytesPerCall(task);
+    assertTrue(
+        name + " allocated " + bytes + " bytes per call, over its budget of " + budgetBytes,
+        bytes <= budgetBytes);
+  }
+}
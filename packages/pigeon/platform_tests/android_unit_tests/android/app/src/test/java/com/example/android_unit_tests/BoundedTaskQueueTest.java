@@ -0,0 +1,191 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+
+import com.example.android_unit_tests.BoundedTaskQueue.BoundedApi;
+import com.example.android_unit_tests.BoundedTaskQueue.BoundedDispatch;
+import com.example.android_unit_tests.BoundedTaskQueue.BoundedMethodApi;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MessageCodec;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class BoundedTaskQueueTest {
+  private static final String WORK_CHANNEL = "dev.flutter.pigeon.BoundedApi.work";
+  private static final String ADD_CHANNEL = "dev.flutter.pigeon.BoundedApi.add";
+  private static final String METHOD_WORK_CHANNEL = "dev.flutter.pigeon.BoundedMethodApi.work";
+  private static final String METHOD_ADD_CHANNEL = "dev.flutter.pigeon.BoundedMethodApi.add";
+
+  /**
+   * A messenger that calls handlers directly and, like the engine, overwrites each message once
+   * its handler returns.
+   */
+  private static class EngineBinaryMessenger implements BinaryMessenger {
+    final Map<String, BinaryMessageHandler> handlers = new HashMap<>();
+
+    @Override
+    public void send(String channel, ByteBuffer message) {}
+
+    @Override
+    public void send(String channel, ByteBuffer message, BinaryReply callback) {}
+
+    @Override
+    public void setMessageHandler(String channel, BinaryMessageHandler handler) {
+      if (handler == null) {
+        handlers.remove(channel);
+      } else {
+        handlers.put(channel, handler);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    CompletableFuture<Map<String, Object>> call(String channel, Object... args) {
+      MessageCodec<Object> codec = BoundedApi.getCodec();
+      ByteBuffer message = codec.encodeMessage(new ArrayList<Object>(Arrays.asList(args)));
+      message.rewind();
+      CompletableFuture<Map<String, Object>> result = new CompletableFuture<>();
+      handlers
+          .get(channel)
+          .onMessage(
+              message,
+              reply -> {
+                reply.rewind();
+                result.complete((Map<String, Object>) codec.decodeMessage(reply));
+              });
+      message.clear();
+      while (message.hasRemaining()) {
+        message.put((byte) 0);
+      }
+      return result;
+    }
+  }
+
+  /** An implementation whose {@code work} waits until the test releases it. */
+  private static class BlockingApi implements BoundedApi, BoundedMethodApi {
+    final CountDownLatch release = new CountDownLatch(1);
+    final Semaphore started = new Semaphore(0);
+
+    @Override
+    public Long work(Long id) {
+      started.release();
+      try {
+        release.await();
+      } catch (InterruptedException exception) {
+        throw new RuntimeException(exception);
+      }
+      return id;
+    }
+
+    @Override
+    public Long add(Long x, Long y) {
+      return x + y;
+    }
+
+    void awaitStarted(int count) throws InterruptedException {
+      assertTrue(started.tryAcquire(count, 10, TimeUnit.SECONDS));
+    }
+  }
+
+  private final EngineBinaryMessenger binaryMessenger = new EngineBinaryMessenger();
+  private final BlockingApi api = new BlockingApi();
+
+  @After
+  public void tearDown() {
+    api.release.countDown();
+    BoundedApi.setup(binaryMessenger, null);
+    BoundedMethodApi.setup(binaryMessenger, null);
+  }
+
+  private static Object result(CompletableFuture<Map<String, Object>> reply) throws Exception {
+    return reply.get(10, TimeUnit.SECONDS).get("result");
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void assertOverloaded(CompletableFuture<Map<String, Object>> reply) {
+    // Rejected calls are replied to before the handler returns.
+    assertTrue(reply.isDone());
+    Map<String, Object> error = (Map<String, Object>) reply.join().get("error");
+    assertEquals("Overloaded", error.get("code"));
+  }
+
+  @Test
+  public void callsAreHandled() throws Exception {
+    BoundedApi.setup(binaryMessenger, api);
+    api.release.countDown();
+    assertEquals(3L, ((Number) result(binaryMessenger.call(ADD_CHANNEL, 1L, 2L))).longValue());
+    assertEquals(7L, ((Number) result(binaryMessenger.call(WORK_CHANNEL, 7L))).longValue());
+  }
+
+  @Test
+  public void callsOverLimitsAreRejected() throws Exception {
+    BoundedApi.setup(binaryMessenger, api);
+    BoundedDispatch dispatch = BoundedDispatch.forChannel(WORK_CHANNEL);
+    assertEquals(2, dispatch.getMaxConcurrentCalls());
+    assertEquals(2, dispatch.getMaxPendingCalls());
+    ArrayList<CompletableFuture<Map<String, Object>>> replies = new ArrayList<>();
+    for (long i = 0; i < 4; i++) {
+      replies.add(binaryMessenger.call(WORK_CHANNEL, i));
+    }
+    api.awaitStarted(2);
+    assertEquals(2, dispatch.getActiveCount());
+    assertEquals(2, dispatch.getQueueDepth());
+    assertOverloaded(binaryMessenger.call(WORK_CHANNEL, 4L));
+    // The limits are shared by all methods of the API.
+    assertOverloaded(binaryMessenger.call(ADD_CHANNEL, 1L, 2L));
+    assertEquals(2, dispatch.getRejectedCount());
+    api.release.countDown();
+    // Queued calls are decoded from a copy of their message.
+    for (int i = 0; i < 4; i++) {
+      assertEquals((long) i, ((Number) result(replies.get(i))).longValue());
+    }
+    assertEquals(0, dispatch.getQueueDepth());
+    assertEquals(2, dispatch.getRejectedCount());
+  }
+
+  @Test
+  public void methodsOfApiShareDispatch() {
+    BoundedApi.setup(binaryMessenger, api);
+    assertNotNull(BoundedDispatch.forChannel(WORK_CHANNEL));
+    assertSame(BoundedDispatch.forChannel(WORK_CHANNEL), BoundedDispatch.forChannel(ADD_CHANNEL));
+  }
+
+  @Test
+  public void methodWithoutPendingCalls() throws Exception {
+    BoundedMethodApi.setup(binaryMessenger, api);
+    BoundedDispatch dispatch = BoundedDispatch.forChannel(METHOD_WORK_CHANNEL);
+    assertEquals(1, dispatch.getMaxConcurrentCalls());
+    assertEquals(0, dispatch.getMaxPendingCalls());
+    CompletableFuture<Map<String, Object>> first = binaryMessenger.call(METHOD_WORK_CHANNEL, 1L);
+    api.awaitStarted(1);
+    assertOverloaded(binaryMessenger.call(METHOD_WORK_CHANNEL, 2L));
+    assertEquals(1, dispatch.getRejectedCount());
+    // Other methods are handled on the platform thread as usual.
+    assertNull(BoundedDispatch.forChannel(METHOD_ADD_CHANNEL));
+    CompletableFuture<Map<String, Object>> add = binaryMessenger.call(METHOD_ADD_CHANNEL, 1L, 2L);
+    assertTrue(add.isDone());
+    assertEquals(3L, ((Number) result(add)).longValue());
+    api.release.countDown();
+    assertEquals(1L, ((Number) result(first)).longValue());
+  }
+
+  @Test
+  public void removingHandler() {
+    BoundedApi.setup(binaryMessenger, api);
+    BoundedApi.setup(binaryMessenger, null);
+    assertNull(BoundedDispatch.forChannel(WORK_CHANNEL));
+    assertNull(binaryMessenger.handlers.get(WORK_CHANNEL));
+  }
+}
@@ -0,0 +1,137 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.example.android_unit_tests.Coalesce.CoalesceFlutterApi;
+import com.example.android_unit_tests.CoalesceTimeouts.CoalesceTimeoutsFlutterApi;
+import com.example.android_unit_tests.CoalesceTimeouts.PendingReply;
+import io.flutter.plugin.common.BinaryMessenger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class CoalesceTest {
+  /** Makes a messenger that records sent values and holds on to replies. */
+  private static BinaryMessenger makeSilentBinaryMessenger(
+      List<Object> sent, List<BinaryMessenger.BinaryReply> replies) {
+    BinaryMessenger binaryMessenger = mock(BinaryMessenger.class);
+    doAnswer(
+            invocation -> {
+              ByteBuffer message = invocation.getArgument(1);
+              message.position(0);
+              ArrayList<Object> args =
+                  (ArrayList<Object>) CoalesceFlutterApi.getCodec().decodeMessage(message);
+              sent.add(args.get(0));
+              replies.add(invocation.getArgument(2));
+              return null;
+            })
+        .when(binaryMessenger)
+        .send(anyString(), any(), any());
+    return binaryMessenger;
+  }
+
+  @Test
+  public void latestValueWins() {
+    List<Object> sent = new ArrayList<>();
+    List<BinaryMessenger.BinaryReply> replies = new ArrayList<>();
+    CoalesceFlutterApi api = new CoalesceFlutterApi(makeSilentBinaryMessenger(sent, replies));
+    List<Long> replied = new ArrayList<>();
+    for (long i = 0; i < 5; i++) {
+      final long value = i;
+      api.setProgress(i, reply -> replied.add(value));
+    }
+    assertEquals(Arrays.asList(0L), sent);
+    replies.get(0).reply(null);
+    assertEquals(Arrays.asList(0L, 4L), sent);
+    assertEquals(Arrays.asList(0L), replied);
+    replies.get(1).reply(null);
+    assertEquals(Arrays.asList(0L, 4L), replied);
+    api.setProgress(5L, reply -> replied.add(5L));
+    assertEquals(Arrays.asList(0L, 4L, 5L), sent);
+  }
+
+  @Test
+  public void otherMethodsAreNotCoalesced() {
+    List<Object> sent = new ArrayList<>();
+    List<BinaryMessenger.BinaryReply> replies = new ArrayList<>();
+    CoalesceFlutterApi api = new CoalesceFlutterApi(makeSilentBinaryMessenger(sent, replies));
+    for (long i = 0; i < 3; i++) {
+      api.log(i, reply -> {});
+    }
+    assertEquals(Arrays.asList(0L, 1L, 2L), sent);
+  }
+
+  @Test
+  public void synchronousReplies() {
+    BinaryMessenger binaryMessenger = mock(BinaryMessenger.class);
+    doAnswer(
+            invocation -> {
+              BinaryMessenger.BinaryReply reply = invocation.getArgument(2);
+              reply.reply(null);
+              return null;
+            })
+        .when(binaryMessenger)
+        .send(anyString(), any(), any());
+    CoalesceFlutterApi api = new CoalesceFlutterApi(binaryMessenger);
+    int[] count = {0};
+    for (long i = 0; i < 3; i++) {
+      api.setProgress(i, reply -> count[0]++);
+    }
+    assertEquals(3, count[0]);
+  }
+
+  @Test
+  public void replyThatNeverArrives() throws InterruptedException {
+    List<Object> sent = Collections.synchronizedList(new ArrayList<>());
+    List<BinaryMessenger.BinaryReply> replies = Collections.synchronizedList(new ArrayList<>());
+    CoalesceTimeoutsFlutterApi api =
+        new CoalesceTimeoutsFlutterApi(makeSilentBinaryMessenger(sent, replies));
+    CountDownLatch timedOut = new CountDownLatch(1);
+    api.setProgress(0L, 50, reply -> fail(), timedOut::countDown);
+    PendingReply dropped = api.setProgress(1L, 0, reply -> fail(), null);
+    api.setProgress(2L, 0, reply -> {}, null);
+    assertTrue(dropped.isDone());
+    assertEquals(1, api.getPendingReplyCount());
+    // The held back call is sent once the call in flight times out.
+    assertTrue(timedOut.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(0L, 2L), sent);
+    assertEquals(1, api.getPendingReplyCount());
+    // A late reply to the call that timed out doesn't release the next one.
+    replies.get(0).reply(null);
+    api.setProgress(3L, 0, reply -> {}, null);
+    assertEquals(Arrays.asList(0L, 2L), sent);
+    replies.get(1).reply(null);
+    assertEquals(Arrays.asList(0L, 2L, 3L), sent);
+  }
+
+  @Test
+  public void cancelledCalls() {
+    List<Object> sent = new ArrayList<>();
+    List<BinaryMessenger.BinaryReply> replies = new ArrayList<>();
+    CoalesceTimeoutsFlutterApi api =
+        new CoalesceTimeoutsFlutterApi(makeSilentBinaryMessenger(sent, replies));
+    PendingReply inFlight = api.setProgress(0L, 0, reply -> fail(), null);
+    api.setProgress(1L, 0, reply -> {}, null);
+    // Cancelling the call in flight sends the held back call.
+    assertTrue(inFlight.cancel());
+    assertEquals(Arrays.asList(0L, 1L), sent);
+    // A held back call that is cancelled isn't sent.
+    PendingReply held = api.setProgress(2L, 0, reply -> fail(), null);
+    assertTrue(held.cancel());
+    replies.get(1).reply(null);
+    assertEquals(Arrays.asList(0L, 1L), sent);
+    assertEquals(0, api.getPendingReplyCount());
+    api.setProgress(3L, 0, reply -> {}, null);
+    assertEquals(Arrays.asList(0L, 1L, 3L), sent);
+  }
+}
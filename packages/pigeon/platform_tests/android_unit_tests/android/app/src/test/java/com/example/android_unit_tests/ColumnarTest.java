@@ -0,0 +1,140 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+
+import com.example.android_unit_tests.Columnar.ColumnarHostApi;
+import com.example.android_unit_tests.Columnar.ColumnarRow;
+import com.example.android_unit_tests.Columnar.ColumnarState;
+import com.example.android_unit_tests.Columnar.ColumnarTable;
+import io.flutter.plugin.common.MessageCodec;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class ColumnarTest {
+  private static List<ColumnarRow> makeRows(int count) {
+    List<ColumnarRow> rows = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      if (i % 7 == 3) {
+        rows.add(null);
+        continue;
+      }
+      rows.add(
+          new ColumnarRow.Builder()
+              .setId((long) i)
+              .setScore(i % 3 == 0 ? null : i * 0.5)
+              .setDone(i % 2 == 0)
+              .setName(i % 5 == 0 ? null : "name" + (i % 10))
+              .setState(i % 2 == 0 ? ColumnarState.PENDING : ColumnarState.DONE)
+              .build());
+    }
+    return rows;
+  }
+
+  private static void assertRowsEqual(List<ColumnarRow> expected, List<ColumnarRow> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      ColumnarRow expectedRow = expected.get(i);
+      ColumnarRow actualRow = actual.get(i);
+      if (expectedRow == null) {
+        assertNull(actualRow);
+        continue;
+      }
+      assertEquals(expectedRow.getId(), actualRow.getId());
+      assertEquals(expectedRow.getScore(), actualRow.getScore());
+      assertEquals(expectedRow.getDone(), actualRow.getDone());
+      assertEquals(expectedRow.getName(), actualRow.getName());
+      assertEquals(expectedRow.getState(), actualRow.getState());
+    }
+  }
+
+  private static int encodedSize(ColumnarTable table) {
+    MessageCodec<Object> codec = ColumnarHostApi.getCodec();
+    ByteBuffer message = codec.encodeMessage(table);
+    return message.position();
+  }
+
+  @Test
+  public void toMapAndBack() {
+    List<ColumnarRow> rows = makeRows(100);
+    ColumnarTable table = new ColumnarTable();
+    table.setRows(rows);
+    Map<String, Object> map = table.toMap();
+    assertTrue(map.get("rows") instanceof List);
+    ColumnarTable readTable = ColumnarTable.fromMap(map);
+    assertTrue(readTable.getRows() instanceof ColumnarRow.Columns);
+    assertRowsEqual(rows, readTable.getRows());
+  }
+
+  @Test
+  public void throughCodec() {
+    List<ColumnarRow> rows = makeRows(100);
+    ColumnarTable table = new ColumnarTable();
+    table.setRows(rows);
+    MessageCodec<Object> codec = ColumnarHostApi.getCodec();
+    ByteBuffer message = codec.encodeMessage(table);
+    message.rewind();
+    ColumnarTable readTable = (ColumnarTable) codec.decodeMessage(message);
+    assertRowsEqual(rows, readTable.getRows());
+  }
+
+  @Test
+  public void rowAccessors() {
+    ColumnarTable table = new ColumnarTable();
+    table.setRows(makeRows(10));
+    ColumnarRow.Columns columns = (ColumnarRow.Columns) ColumnarTable.fromMap(table.toMap()).getRows();
+    assertEquals(10, columns.size());
+    assertTrue(columns.isNull(3));
+    assertFalse(columns.isNull(4));
+    assertEquals(4L, columns.getId(4));
+    assertTrue(columns.hasScore(4));
+    assertEquals(2.0, columns.getScore(4), 0.0);
+    assertFalse(columns.hasScore(6));
+    assertTrue(columns.getDone(4));
+    assertEquals("name4", columns.getName(4));
+    assertNull(columns.getName(5));
+    assertEquals(ColumnarState.DONE, columns.getState(5));
+  }
+
+  @Test
+  public void emptyAndNull() {
+    ColumnarTable table = new ColumnarTable();
+    assertNull(ColumnarTable.fromMap(table.toMap()).getRows());
+    table.setRows(new ArrayList<>());
+    assertTrue(ColumnarTable.fromMap(table.toMap()).getRows().isEmpty());
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void outOfBounds() {
+    ColumnarTable table = new ColumnarTable();
+    table.setRows(makeRows(3));
+    ColumnarTable.fromMap(table.toMap()).getRows().get(3);
+  }
+
+  @Test
+  public void reencodingDecodedRowsReusesColumns() {
+    ColumnarTable table = new ColumnarTable();
+    table.setRows(makeRows(10));
+    Map<String, Object> map = table.toMap();
+    ColumnarTable readTable = ColumnarTable.fromMap(map);
+    assertSame(map.get("rows"), readTable.toMap().get("rows"));
+  }
+
+  @Test
+  public void smallerThanMaps() {
+    List<ColumnarRow> rows = makeRows(10000);
+    ColumnarTable columnar = new ColumnarTable();
+    columnar.setRows(rows);
+    ColumnarTable maps = new ColumnarTable();
+    maps.setMapRows(rows);
+    int columnarSize = encodedSize(columnar);
+    int mapsSize = encodedSize(maps);
+    assertTrue(columnarSize * 2 < mapsSize);
+  }
+}
@@ -0,0 +1,175 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+
+import com.example.android_unit_tests.Deadline.CallContext;
+import com.example.android_unit_tests.Deadline.DeadlineApi;
+import com.example.android_unit_tests.Deadline.DeadlineSingleChannelApi;
+import com.example.android_unit_tests.Deadline.Result;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MessageCodec;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class DeadlineTest {
+  private static final String ADD_CHANNEL = "dev.flutter.pigeon.DeadlineApi.add";
+
+  /** A messenger that calls handlers directly and returns their decoded replies. */
+  private static class EngineBinaryMessenger implements BinaryMessenger {
+    final Map<String, BinaryMessageHandler> handlers = new HashMap<>();
+
+    @Override
+    public void send(String channel, ByteBuffer message) {}
+
+    @Override
+    public void send(String channel, ByteBuffer message, BinaryReply callback) {}
+
+    @Override
+    public void setMessageHandler(String channel, BinaryMessageHandler handler) {
+      handlers.put(channel, handler);
+    }
+
+    @SuppressWarnings("unchecked")
+    Map<String, Object> call(String channel, Object... args) {
+      MessageCodec<Object> codec = DeadlineApi.getCodec();
+      ByteBuffer message = codec.encodeMessage(new ArrayList<Object>(Arrays.asList(args)));
+      message.rewind();
+      Object[] result = {null};
+      handlers
+          .get(channel)
+          .onMessage(
+              message,
+              reply -> {
+                reply.rewind();
+                result[0] = codec.decodeMessage(reply);
+              });
+      return (Map<String, Object>) result[0];
+    }
+  }
+
+  /** An implementation that counts the calls that reach it. */
+  private static class CountingApi implements DeadlineApi, DeadlineSingleChannelApi {
+    int callCount = 0;
+    Result<String> pendingEcho;
+
+    @Override
+    public Long add(Long x, Long y, CallContext context) {
+      callCount++;
+      return x + y;
+    }
+
+    @Override
+    public void echo(String value, CallContext context, Result<String> result) {
+      callCount++;
+      pendingEcho = result;
+    }
+
+    @Override
+    public Long remainingMillis(CallContext context) {
+      callCount++;
+      return context.getRemainingMillis();
+    }
+
+    @Override
+    public Long subtract(Long x, Long y) {
+      callCount++;
+      return x - y;
+    }
+  }
+
+  private static long now() {
+    return System.currentTimeMillis();
+  }
+
+  private static void assertShed(Map<String, Object> reply) {
+    assertNull(reply.get("result"));
+    @SuppressWarnings("unchecked")
+    Map<String, Object> error = (Map<String, Object>) reply.get("error");
+    assertEquals("DeadlineExceeded", error.get("code"));
+  }
+
+  @Test
+  public void callWithoutDeadline() {
+    EngineBinaryMessenger binaryMessenger = new EngineBinaryMessenger();
+    CountingApi api = new CountingApi();
+    DeadlineApi.setup(binaryMessenger, api);
+    assertEquals(
+        3L, ((Number) binaryMessenger.call(ADD_CHANNEL, 1L, 2L, null).get("result")).longValue());
+    Map<String, Object> reply =
+        binaryMessenger.call("dev.flutter.pigeon.DeadlineApi.remainingMillis", (Object) null);
+    assertEquals(Long.MAX_VALUE, ((Number) reply.get("result")).longValue());
+  }
+
+  @Test
+  public void callBeforeDeadline() {
+    EngineBinaryMessenger binaryMessenger = new EngineBinaryMessenger();
+    CountingApi api = new CountingApi();
+    DeadlineApi.setup(binaryMessenger, api);
+    assertEquals(
+        3L,
+        ((Number) binaryMessenger.call(ADD_CHANNEL, 1L, 2L, now() + 60000).get("result"))
+            .longValue());
+    Map<String, Object> reply =
+        binaryMessenger.call("dev.flutter.pigeon.DeadlineApi.remainingMillis", now() + 60000);
+    long remaining = ((Number) reply.get("result")).longValue();
+    assertTrue(remaining > 50000 && remaining <= 60000);
+    assertEquals(2, api.callCount);
+  }
+
+  @Test
+  public void expiredCallIsShed() {
+    EngineBinaryMessenger binaryMessenger = new EngineBinaryMessenger();
+    CountingApi api = new CountingApi();
+    DeadlineApi.setup(binaryMessenger, api);
+    long shedCount = CallContext.getShedCount(ADD_CHANNEL);
+    long totalShedCount = CallContext.getTotalShedCount();
+    assertShed(binaryMessenger.call(ADD_CHANNEL, 1L, 2L, now() - 1));
+    // Arguments aren't read once the call is shed.
+    assertShed(binaryMessenger.call(ADD_CHANNEL, null, null, now() - 1));
+    assertEquals(0, api.callCount);
+    assertEquals(shedCount + 2, CallContext.getShedCount(ADD_CHANNEL));
+    assertEquals(totalShedCount + 2, CallContext.getTotalShedCount());
+  }
+
+  @Test
+  public void expiredAsyncCallIsShed() {
+    EngineBinaryMessenger binaryMessenger = new EngineBinaryMessenger();
+    CountingApi api = new CountingApi();
+    DeadlineApi.setup(binaryMessenger, api);
+    assertShed(binaryMessenger.call("dev.flutter.pigeon.DeadlineApi.echo", "hello", now() - 1));
+    assertEquals(0, api.callCount);
+    assertNull(api.pendingEcho);
+  }
+
+  @Test
+  public void methodWithoutDeadline() {
+    EngineBinaryMessenger binaryMessenger = new EngineBinaryMessenger();
+    CountingApi api = new CountingApi();
+    DeadlineApi.setup(binaryMessenger, api);
+    Map<String, Object> reply =
+        binaryMessenger.call("dev.flutter.pigeon.DeadlineApi.subtract", 3L, 2L);
+    assertEquals(1L, ((Number) reply.get("result")).longValue());
+  }
+
+  @Test
+  public void singleChannel() {
+    EngineBinaryMessenger binaryMessenger = new EngineBinaryMessenger();
+    CountingApi api = new CountingApi();
+    DeadlineSingleChannelApi.setup(binaryMessenger, api);
+    String channel = "dev.flutter.pigeon.DeadlineSingleChannelApi";
+    long shedCount = CallContext.getShedCount(channel + ".add");
+    assertEquals(
+        3L, ((Number) binaryMessenger.call(channel, 0, 1L, 2L, null).get("result")).longValue());
+    assertShed(binaryMessenger.call(channel, 0, 1L, 2L, now() - 1));
+    assertEquals(1, api.callCount);
+    assertEquals(shedCount + 1, CallContext.getShedCount(channel + ".add"));
+  }
+}
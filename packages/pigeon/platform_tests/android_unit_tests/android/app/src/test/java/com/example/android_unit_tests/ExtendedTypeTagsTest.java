@@ -0,0 +1,117 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+
+import com.example.android_unit_tests.ExtendedTypeTags.ExtendedTypeTagsApi;
+import com.example.android_unit_tests.ExtendedTypeTags.Item000;
+import com.example.android_unit_tests.ExtendedTypeTags.Item126;
+import com.example.android_unit_tests.ExtendedTypeTags.Item127;
+import com.example.android_unit_tests.ExtendedTypeTags.Item129;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MessageCodec;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Test;
+
+public class ExtendedTypeTagsTest {
+  private static final MessageCodec<Object> codec = ExtendedTypeTagsApi.getCodec();
+
+  private static ByteBuffer encode(Object value) {
+    ByteBuffer message = codec.encodeMessage(value);
+    message.rewind();
+    return message.order(ByteOrder.nativeOrder());
+  }
+
+  private static Object decode(ByteBuffer message) {
+    message.rewind();
+    return codec.decodeMessage(message);
+  }
+
+  @Test
+  public void classesInSingleByteTypes() {
+    assertEquals((byte) 128, encode(new Item000.Builder().setValue(1L).build()).get(0));
+    assertEquals((byte) 254, encode(new Item126.Builder().setValue(1L).build()).get(0));
+  }
+
+  @Test
+  public void classesInExtendedTypes() {
+    ByteBuffer first = encode(new Item127.Builder().setValue(1L).build());
+    assertEquals((byte) 255, first.get(0));
+    assertEquals(0, first.getChar(1));
+    ByteBuffer last = encode(new Item129.Builder().setValue(2L).build());
+    assertEquals((byte) 255, last.get(0));
+    assertEquals(2, last.getChar(1));
+    Item129 decoded = (Item129) decode(last);
+    assertEquals(2L, (long) decoded.getValue());
+  }
+
+  /** Returns an {@code Item000} with {@code next} set through to an {@code Item129}. */
+  private static Item000 makeChain() throws Exception {
+    Object next = null;
+    for (int i = 129; i >= 0; i--) {
+      Class<?> builderClass =
+          Class.forName(String.format("%s$Item%03d$Builder", ExtendedTypeTags.class.getName(), i));
+      Object builder = builderClass.getDeclaredConstructor().newInstance();
+      builderClass.getMethod("setValue", Long.class).invoke(builder, (long) i);
+      if (next != null) {
+        builderClass.getMethod("setNext", next.getClass()).invoke(builder, next);
+      }
+      next = builderClass.getMethod("build").invoke(builder);
+    }
+    return (Item000) next;
+  }
+
+  private static void assertChain(Object item) throws Exception {
+    for (int i = 0; i < 130; i++) {
+      assertEquals(String.format("Item%03d", i), item.getClass().getSimpleName());
+      assertEquals(i, ((Number) item.getClass().getMethod("getValue").invoke(item)).intValue());
+      item = i < 129 ? item.getClass().getMethod("getNext").invoke(item) : null;
+    }
+  }
+
+  @Test
+  public void allClassesRoundTrip() throws Exception {
+    assertChain(decode(encode(makeChain())));
+  }
+
+  @Test
+  public void unknownExtendedType() {
+    ByteBuffer message = ByteBuffer.allocateDirect(3).order(ByteOrder.nativeOrder());
+    message.put((byte) 255);
+    message.putChar((char) 200);
+    IllegalArgumentException exception =
+        assertThrows(IllegalArgumentException.class, () -> decode(message));
+    assertEquals("Message corrupted", exception.getMessage());
+  }
+
+  @Test
+  public void echo() throws Exception {
+    BinaryMessenger.BinaryMessageHandler[] handler = {null};
+    BinaryMessenger binaryMessenger =
+        new BinaryMessenger() {
+          @Override
+          public void send(String channel, ByteBuffer message) {}
+
+          @Override
+          public void send(String channel, ByteBuffer message, BinaryReply callback) {}
+
+          @Override
+          public void setMessageHandler(String channel, BinaryMessageHandler messageHandler) {
+            handler[0] = messageHandler;
+          }
+        };
+    ExtendedTypeTagsApi.setup(binaryMessenger, item -> item);
+    Object[] result = {null};
+    handler[0].onMessage(
+        encode(new ArrayList<Object>(Arrays.asList(makeChain()))),
+        reply -> result[0] = ((Map<?, ?>) decode(reply)).get("result"));
+    assertChain(result[0]);
+  }
+}
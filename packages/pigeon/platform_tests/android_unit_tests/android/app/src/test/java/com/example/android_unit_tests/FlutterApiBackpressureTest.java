@@ -0,0 +1,141 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.example.android_unit_tests.FlutterApiBackpressure.BackpressureFlutterApi;
+import com.example.android_unit_tests.FlutterApiBackpressure.InFlightWindow;
+import com.example.android_unit_tests.FlutterApiBackpressure.OverflowPolicy;
+import io.flutter.plugin.common.BinaryMessenger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.Test;
+
+public class FlutterApiBackpressureTest {
+  /** Makes a messenger that holds on to replies instead of answering. */
+  private static BinaryMessenger makeSilentBinaryMessenger(
+      List<BinaryMessenger.BinaryReply> replies) {
+    BinaryMessenger binaryMessenger = mock(BinaryMessenger.class);
+    doAnswer(
+            invocation -> {
+              replies.add(invocation.getArgument(2));
+              return null;
+            })
+        .when(binaryMessenger)
+        .send(anyString(), any(), any());
+    return binaryMessenger;
+  }
+
+  private static ByteBuffer encodeReply(Object reply) {
+    ByteBuffer replyData = BackpressureFlutterApi.getCodec().encodeMessage(reply);
+    replyData.position(0);
+    return replyData;
+  }
+
+  @Test
+  public void unlimitedByDefault() {
+    List<BinaryMessenger.BinaryReply> replies = new ArrayList<>();
+    BackpressureFlutterApi api = new BackpressureFlutterApi(makeSilentBinaryMessenger(replies));
+    for (int i = 0; i < 100; i++) {
+      api.emit((long) i, reply -> {});
+    }
+    assertEquals(100, replies.size());
+  }
+
+  @Test
+  public void failFast() {
+    List<BinaryMessenger.BinaryReply> replies = new ArrayList<>();
+    InFlightWindow window = new InFlightWindow(2, OverflowPolicy.FAIL_FAST);
+    BackpressureFlutterApi api =
+        new BackpressureFlutterApi(makeSilentBinaryMessenger(replies), window);
+    api.emit(1L, reply -> {});
+    api.emit(2L, reply -> {});
+    assertEquals(2, window.getInFlightCount());
+    assertThrows(RejectedExecutionException.class, () -> api.emit(3L, reply -> {}));
+    assertEquals(2, replies.size());
+    replies.get(0).reply(encodeReply(1));
+    assertEquals(1, window.getInFlightCount());
+    api.emit(3L, reply -> {});
+    assertEquals(3, replies.size());
+  }
+
+  @Test
+  public void queue() {
+    List<BinaryMessenger.BinaryReply> replies = new ArrayList<>();
+    InFlightWindow window = new InFlightWindow(1, OverflowPolicy.QUEUE, 2);
+    BackpressureFlutterApi api =
+        new BackpressureFlutterApi(makeSilentBinaryMessenger(replies), window);
+    List<Long> results = new ArrayList<>();
+    api.emit(1L, results::add);
+    api.emit(2L, results::add);
+    api.emit(3L, results::add);
+    assertThrows(RejectedExecutionException.class, () -> api.emit(4L, results::add));
+    assertEquals(1, replies.size());
+    assertEquals(2, window.getQueuedCount());
+    replies.get(0).reply(encodeReply(1));
+    assertEquals(2, replies.size());
+    replies.get(1).reply(encodeReply(2));
+    replies.get(2).reply(encodeReply(3));
+    assertEquals(3, replies.size());
+    assertEquals(0, window.getInFlightCount());
+    assertEquals(0, window.getQueuedCount());
+    assertEquals(Arrays.asList(1L, 2L, 3L), results);
+  }
+
+  @Test
+  public void queueWithSynchronousReplies() {
+    BinaryMessenger binaryMessenger = mock(BinaryMessenger.class);
+    doAnswer(
+            invocation -> {
+              BinaryMessenger.BinaryReply reply = invocation.getArgument(2);
+              reply.reply(encodeReply(0));
+              return null;
+            })
+        .when(binaryMessenger)
+        .send(anyString(), any(), any());
+    InFlightWindow window = new InFlightWindow(1, OverflowPolicy.QUEUE, 10);
+    BackpressureFlutterApi api = new BackpressureFlutterApi(binaryMessenger, window);
+    int[] count = {0};
+    for (int i = 0; i < 10; i++) {
+      api.emit((long) i, reply -> count[0]++);
+    }
+    assertEquals(10, count[0]);
+    assertEquals(0, window.getInFlightCount());
+  }
+
+  @Test
+  public void block() throws InterruptedException {
+    List<BinaryMessenger.BinaryReply> replies = Collections.synchronizedList(new ArrayList<>());
+    InFlightWindow window = new InFlightWindow(4, OverflowPolicy.BLOCK);
+    BackpressureFlutterApi api =
+        new BackpressureFlutterApi(makeSilentBinaryMessenger(replies), window);
+    final int count = 100;
+    Thread replier =
+        new Thread(
+            () -> {
+              int replied = 0;
+              while (replied < count) {
+                if (replies.size() > replied) {
+                  replies.get(replied++).reply(encodeReply(0));
+                } else {
+                  Thread.yield();
+                }
+              }
+            });
+    replier.start();
+    for (int i = 0; i < count; i++) {
+      api.emit((long) i, reply -> {});
+      assertTrue(window.getInFlightCount() <= 4);
+    }
+    replier.join();
+    assertEquals(0, window.getInFlightCount());
+  }
+}
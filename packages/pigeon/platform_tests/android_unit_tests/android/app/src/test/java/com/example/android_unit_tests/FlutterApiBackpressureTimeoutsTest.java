@@ -0,0 +1,124 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.example.android_unit_tests.FlutterApiBackpressureTimeouts.BackpressureTimeoutsFlutterApi;
+import com.example.android_unit_tests.FlutterApiBackpressureTimeouts.InFlightWindow;
+import com.example.android_unit_tests.FlutterApiBackpressureTimeouts.OverflowPolicy;
+import com.example.android_unit_tests.FlutterApiBackpressureTimeouts.PendingReply;
+import io.flutter.plugin.common.BinaryMessenger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class FlutterApiBackpressureTimeoutsTest {
+  /** Makes a messenger that records sent values and holds on to replies. */
+  private static BinaryMessenger makeSilentBinaryMessenger(
+      List<Object> sent, List<BinaryMessenger.BinaryReply> replies) {
+    BinaryMessenger binaryMessenger = mock(BinaryMessenger.class);
+    doAnswer(
+            invocation -> {
+              ByteBuffer message = invocation.getArgument(1);
+              message.position(0);
+              ArrayList<Object> args =
+                  (ArrayList<Object>)
+                      BackpressureTimeoutsFlutterApi.getCodec().decodeMessage(message);
+              sent.add(args.get(0));
+              replies.add(invocation.getArgument(2));
+              return null;
+            })
+        .when(binaryMessenger)
+        .send(anyString(), any(), any());
+    return binaryMessenger;
+  }
+
+  private static ByteBuffer encodeReply(Object reply) {
+    ByteBuffer replyData = BackpressureTimeoutsFlutterApi.getCodec().encodeMessage(reply);
+    replyData.position(0);
+    return replyData;
+  }
+
+  @Test
+  public void rejectedCallIsNotPending() {
+    List<Object> sent = new ArrayList<>();
+    List<BinaryMessenger.BinaryReply> replies = new ArrayList<>();
+    InFlightWindow window = new InFlightWindow(1, OverflowPolicy.FAIL_FAST);
+    BackpressureTimeoutsFlutterApi api =
+        new BackpressureTimeoutsFlutterApi(makeSilentBinaryMessenger(sent, replies), window);
+    api.emit(1L, 10000, reply -> {}, null);
+    assertThrows(
+        RejectedExecutionException.class, () -> api.emit(2L, 10000, reply -> fail(), null));
+    assertEquals(1, api.getPendingReplyCount());
+    replies.get(0).reply(encodeReply(1L));
+    assertEquals(0, api.getPendingReplyCount());
+    assertEquals(0, window.getInFlightCount());
+  }
+
+  @Test
+  public void timeoutFreesWindow() throws InterruptedException {
+    List<Object> sent = Collections.synchronizedList(new ArrayList<>());
+    List<BinaryMessenger.BinaryReply> replies = Collections.synchronizedList(new ArrayList<>());
+    InFlightWindow window = new InFlightWindow(1, OverflowPolicy.QUEUE, 1);
+    BackpressureTimeoutsFlutterApi api =
+        new BackpressureTimeoutsFlutterApi(makeSilentBinaryMessenger(sent, replies), window);
+    CountDownLatch timedOut = new CountDownLatch(1);
+    api.emit(1L, 50, reply -> fail(), timedOut::countDown);
+    api.emit(2L, 0, reply -> {}, null);
+    // Only the call that was sent is waiting for a reply.
+    assertEquals(1, api.getPendingReplyCount());
+    assertEquals(1, window.getQueuedCount());
+    // The window is released before onTimeout runs, so the queued call has
+    // been sent by then.
+    assertTrue(timedOut.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(1L, 2L), sent);
+    assertEquals(1, window.getInFlightCount());
+    // A late reply to the call that timed out doesn't release the window again.
+    replies.get(0).reply(encodeReply(1L));
+    assertEquals(1, window.getInFlightCount());
+    replies.get(1).reply(encodeReply(2L));
+    assertEquals(0, window.getInFlightCount());
+  }
+
+  @Test
+  public void cancelFreesWindow() {
+    List<Object> sent = new ArrayList<>();
+    List<BinaryMessenger.BinaryReply> replies = new ArrayList<>();
+    InFlightWindow window = new InFlightWindow(1, OverflowPolicy.QUEUE, 1);
+    BackpressureTimeoutsFlutterApi api =
+        new BackpressureTimeoutsFlutterApi(makeSilentBinaryMessenger(sent, replies), window);
+    PendingReply pending = api.emit(1L, 0, reply -> fail(), null);
+    api.emit(2L, 0, reply -> {}, null);
+    assertTrue(pending.cancel());
+    assertEquals(Arrays.asList(1L, 2L), sent);
+    assertEquals(1, window.getInFlightCount());
+    assertEquals(1, api.getPendingReplyCount());
+  }
+
+  @Test
+  public void cancelledQueuedCallIsNotSent() {
+    List<Object> sent = new ArrayList<>();
+    List<BinaryMessenger.BinaryReply> replies = new ArrayList<>();
+    InFlightWindow window = new InFlightWindow(1, OverflowPolicy.QUEUE, 1);
+    BackpressureTimeoutsFlutterApi api =
+        new BackpressureTimeoutsFlutterApi(makeSilentBinaryMessenger(sent, replies), window);
+    api.emit(1L, 0, reply -> {}, null);
+    PendingReply queued = api.emit(2L, 0, reply -> fail(), null);
+    assertTrue(queued.cancel());
+    replies.get(0).reply(encodeReply(1L));
+    assertEquals(Arrays.asList(1L), sent);
+    assertEquals(0, window.getInFlightCount());
+    assertEquals(0, window.getQueuedCount());
+    assertEquals(0, api.getPendingReplyCount());
+  }
+}
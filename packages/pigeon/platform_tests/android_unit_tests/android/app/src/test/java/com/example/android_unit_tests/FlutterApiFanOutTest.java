@@ -0,0 +1,148 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+
+import com.example.android_unit_tests.FlutterApiFanOut.FanOutFlutterApi;
+import com.example.android_unit_tests.FlutterApiFanOut.FanOutUpdate;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MessageCodec;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class FlutterApiFanOutTest {
+  /** A messenger that holds on to the messages it is sent and their replies. */
+  private static class EngineBinaryMessenger implements BinaryMessenger {
+    final List<ByteBuffer> messages = new ArrayList<>();
+    final List<BinaryReply> replies = new ArrayList<>();
+
+    @Override
+    public void send(String channel, ByteBuffer message) {}
+
+    @Override
+    public void send(String channel, ByteBuffer message, BinaryReply callback) {
+      messages.add(message);
+      replies.add(callback);
+    }
+
+    @Override
+    public void setMessageHandler(String channel, BinaryMessageHandler handler) {}
+
+    /** Decodes the arguments of the last message. */
+    @SuppressWarnings("unchecked")
+    List<Object> lastArguments() {
+      ByteBuffer message = messages.get(messages.size() - 1).duplicate();
+      message.position(0);
+      return (List<Object>) FanOutFlutterApi.getCodec().decodeMessage(message);
+    }
+
+    void reply(Object reply) {
+      ByteBuffer replyData = FanOutFlutterApi.getCodec().encodeMessage(reply);
+      if (replyData != null) {
+        replyData.position(0);
+      }
+      replies.get(replies.size() - 1).reply(replyData);
+    }
+  }
+
+  /** An update that counts how many times it is encoded. */
+  private static class CountingUpdate extends FanOutUpdate {
+    int encodeCount = 0;
+
+    @Override
+    Map<String, Object> toMap() {
+      encodeCount++;
+      return super.toMap();
+    }
+  }
+
+  private static List<EngineBinaryMessenger> makeBinaryMessengers(int count) {
+    List<EngineBinaryMessenger> binaryMessengers = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      binaryMessengers.add(new EngineBinaryMessenger());
+    }
+    return binaryMessengers;
+  }
+
+  @Test
+  public void repliesInOrderOfMessengers() {
+    List<EngineBinaryMessenger> binaryMessengers = makeBinaryMessengers(3);
+    FanOutFlutterApi.FanOut fanOut = new FanOutFlutterApi.FanOut(new ArrayList<>(binaryMessengers));
+    List<List<Long>> result = new ArrayList<>();
+    fanOut.add(1L, 2L, result::add);
+    for (EngineBinaryMessenger binaryMessenger : binaryMessengers) {
+      assertEquals(Arrays.asList((Object) 1L, 2L), binaryMessenger.lastArguments());
+    }
+    binaryMessengers.get(2).reply(32);
+    binaryMessengers.get(0).reply(3L);
+    assertTrue(result.isEmpty());
+    binaryMessengers.get(1).reply(1L << 40);
+    assertEquals(1, result.size());
+    assertEquals(Arrays.asList(3L, 1L << 40, 32L), result.get(0));
+  }
+
+  @Test
+  public void argumentsAreEncodedOnce() {
+    List<EngineBinaryMessenger> binaryMessengers = makeBinaryMessengers(4);
+    FanOutFlutterApi.FanOut fanOut = new FanOutFlutterApi.FanOut(new ArrayList<>(binaryMessengers));
+    CountingUpdate update = new CountingUpdate();
+    update.setName("settings");
+    update.setVersion(7L);
+    fanOut.update(update, reply -> {});
+    assertEquals(1, update.encodeCount);
+    for (EngineBinaryMessenger binaryMessenger : binaryMessengers) {
+      ByteBuffer message = binaryMessenger.messages.get(0);
+      assertTrue(message.isReadOnly());
+      assertTrue(message.isDirect());
+      FanOutUpdate received = (FanOutUpdate) binaryMessenger.lastArguments().get(0);
+      assertEquals("settings", received.getName());
+      assertEquals(Long.valueOf(7L), received.getVersion());
+    }
+  }
+
+  @Test
+  public void voidMethodRepliesOnceAllReplied() {
+    List<EngineBinaryMessenger> binaryMessengers = makeBinaryMessengers(2);
+    FanOutFlutterApi.FanOut fanOut = new FanOutFlutterApi.FanOut(new ArrayList<>(binaryMessengers));
+    int[] replyCount = {0};
+    fanOut.ping(reply -> replyCount[0]++);
+    binaryMessengers.get(0).reply(null);
+    assertEquals(0, replyCount[0]);
+    binaryMessengers.get(1).reply(null);
+    assertEquals(1, replyCount[0]);
+  }
+
+  @Test
+  public void noMessengers() {
+    FanOutFlutterApi.FanOut fanOut = new FanOutFlutterApi.FanOut(new ArrayList<>());
+    List<List<Long>> result = new ArrayList<>();
+    fanOut.add(1L, 2L, result::add);
+    assertEquals(Arrays.asList(new ArrayList<Long>()), result);
+  }
+
+  @Test
+  public void largeUpdateMatchesSingleMessage() {
+    List<Long> values = new ArrayList<>();
+    for (int i = 0; i < 100000; i++) {
+      values.add((long) i);
+    }
+    FanOutUpdate update = new FanOutUpdate();
+    update.setName("settings");
+    update.setValues(values);
+    List<EngineBinaryMessenger> binaryMessengers = makeBinaryMessengers(8);
+    FanOutFlutterApi.FanOut fanOut = new FanOutFlutterApi.FanOut(new ArrayList<>(binaryMessengers));
+    fanOut.update(update, reply -> {});
+    MessageCodec<Object> codec = FanOutFlutterApi.getCodec();
+    int size = codec.encodeMessage(new ArrayList<Object>(Arrays.asList(update))).position();
+    for (EngineBinaryMessenger binaryMessenger : binaryMessengers) {
+      assertEquals(size, binaryMessenger.messages.get(0).position());
+    }
+  }
+}
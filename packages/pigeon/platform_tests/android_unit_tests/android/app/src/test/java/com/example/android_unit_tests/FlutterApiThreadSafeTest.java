@@ -0,0 +1,201 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+
+import com.example.android_unit_tests.FlutterApiThreadSafe.PlatformThreadQueue;
+import com.example.android_unit_tests.FlutterApiThreadSafe.ThreadSafeEvent;
+import com.example.android_unit_tests.FlutterApiThreadSafe.ThreadSafeFlutterApi;
+import io.flutter.plugin.common.BinaryMessenger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class FlutterApiThreadSafeTest {
+  /** A messenger that decodes the arguments it is sent and replies with {@code null}. */
+  private static class RecordingBinaryMessenger implements BinaryMessenger {
+    final List<List<Object>> arguments = new ArrayList<>();
+    final List<Thread> threads = new ArrayList<>();
+
+    @Override
+    public void send(String channel, ByteBuffer message) {}
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void send(String channel, ByteBuffer message, BinaryReply callback) {
+      message.position(0);
+      arguments.add((List<Object>) ThreadSafeFlutterApi.getCodec().decodeMessage(message));
+      threads.add(Thread.currentThread());
+      callback.reply(null);
+    }
+
+    @Override
+    public void setMessageHandler(String channel, BinaryMessageHandler handler) {}
+  }
+
+  /** An executor that holds on to its tasks until they are run by the test. */
+  private static class ManualExecutor implements Executor {
+    final List<Runnable> tasks = new ArrayList<>();
+
+    @Override
+    public void execute(Runnable task) {
+      tasks.add(task);
+    }
+
+    void runAll() {
+      List<Runnable> running = new ArrayList<>(tasks);
+      tasks.clear();
+      for (Runnable task : running) {
+        task.run();
+      }
+    }
+  }
+
+  private static ThreadSafeEvent makeEvent(String name, long sequence) {
+    ThreadSafeEvent event = new ThreadSafeEvent();
+    event.setName(name);
+    event.setSequence(sequence);
+    return event;
+  }
+
+  @Test
+  public void callsAreBatchedIntoOneHop() {
+    RecordingBinaryMessenger binaryMessenger = new RecordingBinaryMessenger();
+    ManualExecutor executor = new ManualExecutor();
+    ThreadSafeFlutterApi.ThreadSafe api =
+        new ThreadSafeFlutterApi.ThreadSafe(
+            new ThreadSafeFlutterApi(binaryMessenger), new PlatformThreadQueue(executor));
+    for (int i = 0; i < 100; i++) {
+      api.onEvent(makeEvent("event", i), reply -> {});
+    }
+    assertEquals(1, executor.tasks.size());
+    assertTrue(binaryMessenger.arguments.isEmpty());
+    executor.runAll();
+    assertEquals(100, binaryMessenger.arguments.size());
+    for (int i = 0; i < 100; i++) {
+      ThreadSafeEvent event = (ThreadSafeEvent) binaryMessenger.arguments.get(i).get(0);
+      assertEquals(Long.valueOf(i), event.getSequence());
+    }
+    // The next call after a drain needs a new hop.
+    api.onEvent(makeEvent("event", 100), reply -> {});
+    assertEquals(1, executor.tasks.size());
+  }
+
+  @Test
+  public void sharedQueueKeepsOrder() {
+    RecordingBinaryMessenger binaryMessenger = new RecordingBinaryMessenger();
+    ManualExecutor executor = new ManualExecutor();
+    PlatformThreadQueue queue = new PlatformThreadQueue(executor);
+    ThreadSafeFlutterApi flutterApi = new ThreadSafeFlutterApi(binaryMessenger);
+    ThreadSafeFlutterApi.ThreadSafe first = new ThreadSafeFlutterApi.ThreadSafe(flutterApi, queue);
+    ThreadSafeFlutterApi.ThreadSafe second = new ThreadSafeFlutterApi.ThreadSafe(flutterApi, queue);
+    List<Long> sums = new ArrayList<>();
+    first.add(1L, 2L, sums::add);
+    second.onEvent(makeEvent("second", 0), reply -> {});
+    first.add(3L, 4L, sums::add);
+    assertEquals(1, executor.tasks.size());
+    executor.runAll();
+    assertEquals(Arrays.asList((Object) 1L, 2L), binaryMessenger.arguments.get(0));
+    assertEquals(
+        "second", ((ThreadSafeEvent) binaryMessenger.arguments.get(1).get(0)).getName());
+    assertEquals(Arrays.asList((Object) 3L, 4L), binaryMessenger.arguments.get(2));
+    assertEquals(Arrays.asList(null, null), sums);
+  }
+
+  @Test
+  public void throwingTaskDoesNotStopDrain() {
+    ManualExecutor executor = new ManualExecutor();
+    PlatformThreadQueue queue = new PlatformThreadQueue(executor);
+    int[] runCount = {0};
+    queue.submit(
+        () -> {
+          throw new IllegalStateException("thrown by a task");
+        });
+    queue.submit(() -> runCount[0]++);
+    executor.runAll();
+    assertEquals(1, runCount[0]);
+  }
+
+  /** Sends {@code perThread} events from each of {@code threadCount} threads. */
+  private static void sendFromThreads(
+      int threadCount, int perThread, ThreadSafeFlutterApi.ThreadSafe api) throws Exception {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < threadCount; t++) {
+      final String name = "thread" + t;
+      Thread thread =
+          new Thread(
+              () -> {
+                try {
+                  start.await();
+                } catch (InterruptedException exception) {
+                  return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                  api.onEvent(makeEvent(name, i), reply -> {});
+                }
+              });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+
+  @Test
+  public void callsFromManyThreadsRunOnThePlatformThread() throws Exception {
+    RecordingBinaryMessenger binaryMessenger = new RecordingBinaryMessenger();
+    ExecutorService platformThread = Executors.newSingleThreadExecutor();
+    ThreadSafeFlutterApi.ThreadSafe api =
+        new ThreadSafeFlutterApi.ThreadSafe(
+            new ThreadSafeFlutterApi(binaryMessenger), new PlatformThreadQueue(platformThread));
+    sendFromThreads(8, 1000, api);
+    platformThread.shutdown();
+    assertTrue(platformThread.awaitTermination(10, TimeUnit.SECONDS));
+
+    assertEquals(8000, binaryMessenger.arguments.size());
+    Thread drainThread = binaryMessenger.threads.get(0);
+    long[] nextSequence = new long[8];
+    for (int i = 0; i < 8000; i++) {
+      assertSame(drainThread, binaryMessenger.threads.get(i));
+      ThreadSafeEvent event = (ThreadSafeEvent) binaryMessenger.arguments.get(i).get(0);
+      int thread = Integer.parseInt(event.getName().substring("thread".length()));
+      // Calls from one thread arrive in the order they were made.
+      assertEquals(nextSequence[thread]++, (long) event.getSequence());
+    }
+  }
+
+  @Test
+  public void callsShareHops() throws Exception {
+    int threadCount = 8;
+    int perThread = 20000;
+    ExecutorService platformThread = Executors.newSingleThreadExecutor();
+    AtomicInteger hopCount = new AtomicInteger();
+    PlatformThreadQueue queue =
+        new PlatformThreadQueue(
+            task -> {
+              hopCount.incrementAndGet();
+              platformThread.execute(task);
+            });
+    ThreadSafeFlutterApi.ThreadSafe api =
+        new ThreadSafeFlutterApi.ThreadSafe(
+            new ThreadSafeFlutterApi(new RecordingBinaryMessenger()), queue);
+    sendFromThreads(threadCount, perThread, api);
+    platformThread.shutdown();
+    assertTrue(platformThread.awaitTermination(10, TimeUnit.SECONDS));
+    assertTrue(hopCount.get() < threadCount * perThread);
+  }
+}
@@ -0,0 +1,124 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.example.android_unit_tests.FlutterApiTimeouts.PendingReply;
+import com.example.android_unit_tests.FlutterApiTimeouts.TimeoutFlutterApi;
+import io.flutter.plugin.common.BinaryMessenger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class FlutterApiTimeoutsTest {
+  /** Makes a messenger that holds on to replies instead of answering. */
+  private static BinaryMessenger makeSilentBinaryMessenger(
+      List<BinaryMessenger.BinaryReply> replies) {
+    BinaryMessenger binaryMessenger = mock(BinaryMessenger.class);
+    doAnswer(
+            invocation -> {
+              replies.add(invocation.getArgument(2));
+              return null;
+            })
+        .when(binaryMessenger)
+        .send(anyString(), any(), any());
+    return binaryMessenger;
+  }
+
+  private static ByteBuffer encodeReply(Object reply) {
+    ByteBuffer replyData = TimeoutFlutterApi.getCodec().encodeMessage(reply);
+    replyData.position(0);
+    return replyData;
+  }
+
+  @Test
+  public void replyBeforeTimeout() {
+    List<BinaryMessenger.BinaryReply> replies = new ArrayList<>();
+    TimeoutFlutterApi api = new TimeoutFlutterApi(makeSilentBinaryMessenger(replies));
+    String[] result = {null};
+    PendingReply pending = api.echo("hello", 10000, reply -> result[0] = reply, () -> fail());
+    assertFalse(pending.isDone());
+    assertEquals(1, api.getPendingReplyCount());
+    replies.get(0).reply(encodeReply("hello"));
+    assertEquals("hello", result[0]);
+    assertTrue(pending.isDone());
+    assertEquals(0, api.getPendingReplyCount());
+    assertFalse(pending.cancel());
+  }
+
+  @Test
+  public void timeout() throws InterruptedException {
+    List<BinaryMessenger.BinaryReply> replies = new ArrayList<>();
+    TimeoutFlutterApi api = new TimeoutFlutterApi(makeSilentBinaryMessenger(replies));
+    CountDownLatch timedOut = new CountDownLatch(1);
+    boolean[] didReply = {false};
+    long start = System.nanoTime();
+    PendingReply pending =
+        api.echo("hello", 50, reply -> didReply[0] = true, timedOut::countDown);
+    assertTrue(timedOut.await(5, TimeUnit.SECONDS));
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+    assertTrue(pending.isDone());
+    assertEquals(0, api.getPendingReplyCount());
+    // A reply arriving after the timeout is dropped.
+    replies.get(0).reply(encodeReply("hello"));
+    assertFalse(didReply[0]);
+  }
+
+  @Test
+  public void cancel() {
+    List<BinaryMessenger.BinaryReply> replies = new ArrayList<>();
+    TimeoutFlutterApi api = new TimeoutFlutterApi(makeSilentBinaryMessenger(replies));
+    boolean[] didReply = {false};
+    PendingReply pending = api.ping(10000, reply -> didReply[0] = true, () -> fail());
+    assertEquals(1, api.getPendingReplyCount());
+    assertTrue(pending.cancel());
+    assertFalse(pending.cancel());
+    assertEquals(0, api.getPendingReplyCount());
+    replies.get(0).reply(encodeReply(null));
+    assertFalse(didReply[0]);
+  }
+
+  @Test
+  public void failedSendIsNotPending() {
+    BinaryMessenger binaryMessenger = mock(BinaryMessenger.class);
+    doThrow(new IllegalStateException("No engine"))
+        .when(binaryMessenger)
+        .send(anyString(), any(), any());
+    TimeoutFlutterApi api = new TimeoutFlutterApi(binaryMessenger);
+    assertThrows(
+        IllegalStateException.class, () -> api.echo("hello", 10000, reply -> fail(), () -> fail()));
+    assertEquals(0, api.getPendingReplyCount());
+  }
+
+  @Test
+  public void callWithoutTimeoutIsCounted() {
+    List<BinaryMessenger.BinaryReply> replies = new ArrayList<>();
+    TimeoutFlutterApi api = new TimeoutFlutterApi(makeSilentBinaryMessenger(replies));
+    boolean[] didReply = {false};
+    api.ping(reply -> didReply[0] = true);
+    assertEquals(1, api.getPendingReplyCount());
+    replies.get(0).reply(encodeReply(null));
+    assertTrue(didReply[0]);
+    assertEquals(0, api.getPendingReplyCount());
+  }
+
+  @Test
+  public void manyTimeouts() throws InterruptedException {
+    List<BinaryMessenger.BinaryReply> replies = new ArrayList<>();
+    TimeoutFlutterApi api = new TimeoutFlutterApi(makeSilentBinaryMessenger(replies));
+    final int count = 10000;
+    CountDownLatch timedOut = new CountDownLatch(count);
+    for (int i = 0; i < count; i++) {
+      api.ping(1 + i % 200, reply -> fail(), timedOut::countDown);
+    }
+    assertTrue(timedOut.await(10, TimeUnit.SECONDS));
+    assertEquals(0, api.getPendingReplyCount());
+  }
+}
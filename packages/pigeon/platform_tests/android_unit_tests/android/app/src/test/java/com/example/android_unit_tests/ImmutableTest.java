@@ -0,0 +1,144 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.example.android_unit_tests.Immutable.ImmutableHostApi;
+import com.example.android_unit_tests.Immutable.ImmutableInner;
+import com.example.android_unit_tests.Immutable.ImmutableMessage;
+import com.example.android_unit_tests.Immutable.ImmutableState;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MessageCodec;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class ImmutableTest {
+  private static ImmutableMessage makeMessage() {
+    return new ImmutableMessage(
+        1L, ImmutableState.DONE, Arrays.asList(1L, 2L), "label", new ImmutableInner("inner"));
+  }
+
+  @Test
+  public void fieldsAreFinal() {
+    for (Field field : ImmutableMessage.class.getDeclaredFields()) {
+      assertTrue(field.getName(), Modifier.isFinal(field.getModifiers()));
+    }
+    assertTrue(Modifier.isFinal(ImmutableMessage.class.getModifiers()));
+  }
+
+  @Test
+  public void nullCheck() {
+    try {
+      new ImmutableMessage(null, ImmutableState.DONE, new ArrayList<>(), null, null);
+      fail();
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("id"));
+    }
+  }
+
+  @Test
+  public void nullableFields() {
+    ImmutableMessage message =
+        new ImmutableMessage(1L, ImmutableState.PENDING, new ArrayList<>(), null, null);
+    assertNull(message.getLabel());
+    assertNull(message.getInner());
+  }
+
+  @Test
+  public void toMapAndBack() {
+    ImmutableMessage message = makeMessage();
+    ImmutableMessage readMessage = ImmutableMessage.fromMap(message.toMap());
+    assertEquals(message.getId(), readMessage.getId());
+    assertEquals(message.getState(), readMessage.getState());
+    assertEquals(message.getValues(), readMessage.getValues());
+    assertEquals(message.getLabel(), readMessage.getLabel());
+    assertEquals("inner", readMessage.getInner().getName());
+  }
+
+  @Test
+  public void fromMapWithIntegers() {
+    // Dart sends small integers as 32-bit values.
+    Map<String, Object> map = new HashMap<>();
+    map.put("id", 1);
+    map.put("state", 0);
+    map.put("values", new ArrayList<>());
+    ImmutableMessage message = ImmutableMessage.fromMap(map);
+    assertEquals(1L, message.getId().longValue());
+    assertEquals(ImmutableState.PENDING, message.getState());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void fromMapMissingField() {
+    Map<String, Object> map = new HashMap<>();
+    map.put("state", 0);
+    map.put("values", new ArrayList<>());
+    ImmutableMessage.fromMap(map);
+  }
+
+  @Test
+  public void hostApiRoundTrip() {
+    ImmutableHostApi mockApi = mock(ImmutableHostApi.class);
+    when(mockApi.echo(any())).thenAnswer(invocation -> invocation.getArgument(0));
+    BinaryMessenger binaryMessenger = mock(BinaryMessenger.class);
+    ImmutableHostApi.setup(binaryMessenger, mockApi);
+    ArgumentCaptor<BinaryMessenger.BinaryMessageHandler> handler =
+        ArgumentCaptor.forClass(BinaryMessenger.BinaryMessageHandler.class);
+    verify(binaryMessenger).setMessageHandler(anyString(), handler.capture());
+    MessageCodec<Object> codec = ImmutableHostApi.getCodec();
+    ByteBuffer message =
+        codec.encodeMessage(new ArrayList<Object>(Arrays.asList(makeMessage())));
+    message.rewind();
+    boolean[] didReply = {false};
+    handler
+        .getValue()
+        .onMessage(
+            message,
+            (bytes) -> {
+              bytes.rewind();
+              @SuppressWarnings("unchecked")
+              Map<String, Object> wrapped = (Map<String, Object>) codec.decodeMessage(bytes);
+              ImmutableMessage result = (ImmutableMessage) wrapped.get("result");
+              assertEquals(1L, result.getId().longValue());
+              assertEquals("label", result.getLabel());
+              didReply[0] = true;
+            });
+    assertTrue(didReply[0]);
+  }
+
+  @Test
+  public void sharedAcrossThreads() throws InterruptedException {
+    final ImmutableMessage message = makeMessage();
+    Thread[] threads = new Thread[4];
+    boolean[] matches = new boolean[threads.length];
+    for (int i = 0; i < threads.length; i++) {
+      final int index = i;
+      threads[i] =
+          new Thread(
+              () -> {
+                boolean match = true;
+                for (int j = 0; j < 1000; j++) {
+                  match &= ImmutableMessage.fromMap(message.toMap()).getId() == 1L;
+                }
+                matches[index] = match;
+              });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    for (boolean match : matches) {
+      assertTrue(match);
+    }
+  }
+}
@@ -0,0 +1,175 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MessageCodec;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+public class LargeBlobTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+  private String tmpdir;
+  private File blobs;
+
+  @Before
+  public void setUp() {
+    tmpdir = System.getProperty("java.io.tmpdir");
+    System.setProperty("java.io.tmpdir", folder.getRoot().getPath());
+    blobs = new File(folder.getRoot(), "pigeon_blobs");
+    assertTrue(blobs.mkdir());
+  }
+
+  @After
+  public void tearDown() {
+    System.setProperty("java.io.tmpdir", tmpdir);
+  }
+
+  private File newBlob(String name, byte[] data) throws IOException {
+    File file = new File(blobs, name);
+    FileOutputStream output = new FileOutputStream(file);
+    output.write(data);
+    output.close();
+    return file;
+  }
+
+  private static Map<String, Object> makeDescriptor(String path, int length) {
+    // Dart sends small integers as 32-bit values.
+    Map<String, Object> descriptor = new HashMap<>();
+    descriptor.put("path", path);
+    descriptor.put("offset", 0);
+    descriptor.put("length", length);
+    return descriptor;
+  }
+
+  private static byte[] makeData(int length) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) i;
+    }
+    return data;
+  }
+
+  @Test
+  public void smallDataIsInline() {
+    LargeBlob.LargeBlobMessage message = new LargeBlob.LargeBlobMessage();
+    byte[] data = makeData(1023);
+    message.setData(data);
+    Map<String, Object> map = message.toMap();
+    assertSame(data, map.get("data"));
+    assertEquals(0, blobs.listFiles().length);
+  }
+
+  @Test
+  public void largeDataGoesThroughFile() {
+    LargeBlob.LargeBlobMessage message = new LargeBlob.LargeBlobMessage();
+    byte[] data = makeData(1024);
+    message.setData(data);
+    message.setName("blob");
+    Map<String, Object> map = message.toMap();
+    assertTrue(map.get("data") instanceof Map);
+    Map<String, Object> descriptor = (Map<String, Object>) map.get("data");
+    assertEquals(1024L, descriptor.get("length"));
+    assertEquals(1, blobs.listFiles().length);
+
+    LargeBlob.LargeBlobMessage readMessage = LargeBlob.LargeBlobMessage.fromMap(map);
+    assertArrayEquals(data, readMessage.getData());
+    assertEquals("blob", readMessage.getName());
+    assertEquals(0, blobs.listFiles().length);
+  }
+
+  @Test
+  public void nullData() {
+    LargeBlob.LargeBlobMessage message = new LargeBlob.LargeBlobMessage();
+    LargeBlob.LargeBlobMessage readMessage = LargeBlob.LargeBlobMessage.fromMap(message.toMap());
+    assertNull(readMessage.getData());
+  }
+
+  @Test
+  public void handlerReadsFileFromDart() throws IOException {
+    byte[] data = makeData(4096);
+    File file = newBlob("pigeon1234_0.blob", data);
+    Map<String, Object> messageMap = new HashMap<>();
+    messageMap.put("data", makeDescriptor(file.getAbsolutePath(), data.length));
+    messageMap.put("name", "dart");
+
+    LargeBlob.LargeBlobHostApi mockApi = mock(LargeBlob.LargeBlobHostApi.class);
+    when(mockApi.echo(any())).thenAnswer(invocation -> invocation.getArgument(0));
+    BinaryMessenger binaryMessenger = mock(BinaryMessenger.class);
+    LargeBlob.LargeBlobHostApi.setup(binaryMessenger, mockApi);
+    ArgumentCaptor<BinaryMessenger.BinaryMessageHandler> handler =
+        ArgumentCaptor.forClass(BinaryMessenger.BinaryMessageHandler.class);
+    verify(binaryMessenger).setMessageHandler(anyString(), handler.capture());
+    MessageCodec<Object> codec = LargeBlob.LargeBlobHostApi.getCodec();
+    ByteBuffer message = codec.encodeMessage(new ArrayList<Object>(Arrays.asList(messageMap)));
+    message.rewind();
+    ArgumentCaptor<LargeBlob.LargeBlobMessage> received =
+        ArgumentCaptor.forClass(LargeBlob.LargeBlobMessage.class);
+    handler
+        .getValue()
+        .onMessage(
+            message,
+            (bytes) -> {
+              bytes.rewind();
+              @SuppressWarnings("unchecked")
+              Map<String, Object> wrapped = (Map<String, Object>) codec.decodeMessage(bytes);
+              assertTrue(wrapped.containsKey("result"));
+            });
+    verify(mockApi).echo(received.capture());
+    assertArrayEquals(data, received.getValue().getData());
+    assertEquals("dart", received.getValue().getName());
+    assertFalse(file.exists());
+  }
+
+  @Test
+  public void rejectsFilesOutsideDirectory() throws IOException {
+    File outside = folder.newFile("pigeon1.blob");
+    File notPayload = newBlob("settings.txt", makeData(16));
+    String[] paths = {
+      outside.getAbsolutePath(),
+      new File(blobs, "../pigeon1.blob").getPath(),
+      notPayload.getAbsolutePath(),
+    };
+    for (String path : paths) {
+      Map<String, Object> messageMap = new HashMap<>();
+      messageMap.put("data", makeDescriptor(path, 16));
+      assertThrows(
+          IllegalArgumentException.class, () -> LargeBlob.LargeBlobMessage.fromMap(messageMap));
+    }
+    assertTrue(outside.exists());
+    assertTrue(notPayload.exists());
+  }
+
+  @Test
+  public void deleteAll() throws IOException {
+    newBlob("pigeon123.blob", makeData(1));
+    newBlob("other.txt", makeData(1));
+    File shared = folder.newFile("pigeon456.blob");
+    LargeBlob.LargeBlobFiles.deleteAll();
+    assertArrayEquals(new String[] {"other.txt"}, blobs.list());
+    // Files outside the subdirectory may belong to someone else.
+    assertTrue(shared.exists());
+  }
+
+  @Test
+  public void directoryIsPrivateSubdirectory() {
+    assertEquals(blobs, LargeBlob.LargeBlobFiles.getDirectory());
+  }
+}
@@ -0,0 +1,103 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds that many threads can record into without locking.
+ *
+ * <p>Like HdrHistogram, values are counted in buckets that are exact below 128 and within 1/64 of
+ * the value above that, so percentiles are reported with two significant digits at any scale.
+ */
+final class LatencyHistogram {
+  private static final int SUB_BUCKET_COUNT = 64;
+  private static final int BUCKET_COUNT = 2 * SUB_BUCKET_COUNT + 56 * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+  private static int indexOf(long value) {
+    if (value < 2 * SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+    return 2 * SUB_BUCKET_COUNT
+        + (shift - 1) * SUB_BUCKET_COUNT
+        + (int) (value >> shift)
+        - SUB_BUCKET_COUNT;
+  }
+
+  /** Returns the highest value counted in the same bucket as the values at {@code index}. */
+  private static long highestValueAt(int index) {
+    if (index < 2 * SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = (index - 2 * SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT + 1;
+    long subBucket = (index - 2 * SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  /** Counts one latency of {@code nanos}, treating negative values as 0. */
+  void record(long nanos) {
+    counts.incrementAndGet(indexOf(Math.max(0, nanos)));
+  }
+
+  /** Returns a copy of the counts recorded so far. */
+  LatencyHistogram copy() {
+    LatencyHistogram copy = new LatencyHistogram();
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      copy.counts.set(i, counts.get(i));
+    }
+    return copy;
+  }
+
+  /** Returns the counts recorded since {@code earlier}, an earlier copy of this histogram. */
+  LatencyHistogram since(LatencyHistogram earlier) {
+    LatencyHistogram difference = new LatencyHistogram();
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      difference.counts.set(i, counts.get(i) - earlier.counts.get(i));
+    }
+    return difference;
+  }
+
+  /** Returns the number of latencies recorded. */
+  long getCount() {
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * Returns the latency that {@code percentile} percent of the recorded latencies are at or
+   * below, or 0 if nothing was recorded.
+   */
+  long getValueAtPercentile(double percentile) {
+    long count = getCount();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return highestValueAt(i);
+      }
+    }
+    return getMax();
+  }
+
+  /** Returns the highest latency recorded, to within its bucket, or 0 if nothing was recorded. */
+  long getMax() {
+    for (int i = BUCKET_COUNT - 1; i >= 0; i--) {
+      if (counts.get(i) != 0) {
+        return highestValueAt(i);
+      }
+    }
+    return 0;
+  }
+}
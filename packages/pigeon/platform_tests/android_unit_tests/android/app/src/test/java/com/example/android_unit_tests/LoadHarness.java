@@ -0,0 +1,937 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MessageCodec;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Calls the APIs generated from a schema from many threads for a while and reports how their
+ * latency and throughput hold up.
+ *
+ * <p>The generated class of a schema is read by reflection, so any schema in {@code pigeons/} can
+ * be run without code written for it. Each HostApi is set up with an implementation that answers
+ * with random values, and each FlutterApi channel is answered the same way in place of Dart. Calls
+ * with random arguments are then made to all of their methods through an {@link
+ * InMemoryBinaryMessenger}, printing latency percentiles, throughput, garbage collection and the
+ * number of queued messages at every report interval.
+ *
+ * <p>Methods the harness can't call, like those of a {@code @SingleChannel} API or with arguments
+ * of a type it can't make, are skipped and listed in the {@link Summary}. The unit tests only run
+ * it for a moment; run {@link #main} to soak a schema for minutes.
+ */
+final class LoadHarness {
+  private static final String CHANNEL_PREFIX = "dev.flutter.pigeon.";
+  private static final int PAYLOADS_PER_METHOD = 16;
+  private static final int MAX_DEPTH = 3;
+
+  /**
+   * A messenger that connects both ends of every channel in memory, delivering each message and
+   * reply on a pool of threads after a simulated latency.
+   */
+  static final class InMemoryBinaryMessenger implements BinaryMessenger {
+    private final Map<String, BinaryMessageHandler> handlers = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor executor;
+    private final long latencyMicros;
+    private final AtomicLong uncaughtCount = new AtomicLong();
+
+    InMemoryBinaryMessenger(int threads, long latencyMicros) {
+      this.executor = new ScheduledThreadPoolExecutor(threads);
+      this.latencyMicros = latencyMicros;
+    }
+
+    /** Returns the number of messages and replies waiting to be delivered. */
+    int getQueuedCount() {
+      return executor.getQueue().size();
+    }
+
+    /** Returns the number of handlers and reply callbacks that threw. */
+    long getUncaughtCount() {
+      return uncaughtCount.get();
+    }
+
+    boolean hasHandler(String channel) {
+      return handlers.containsKey(channel);
+    }
+
+    void shutdown() {
+      executor.shutdownNow();
+    }
+
+    /** Copies the bytes an engine would send, those before the position of {@code message}. */
+    private static ByteBuffer copy(ByteBuffer message) {
+      if (message == null) {
+        return null;
+      }
+      ByteBuffer source = message.duplicate();
+      source.flip();
+      ByteBuffer copy = ByteBuffer.allocateDirect(source.remaining());
+      copy.put(source);
+      copy.rewind();
+      return copy;
+    }
+
+    private void deliver(Runnable task) {
+      executor.schedule(
+          () -> {
+            try {
+              task.run();
+            } catch (RuntimeException | Error exception) {
+              uncaughtCount.incrementAndGet();
+            }
+          },
+          latencyMicros,
+          TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public void send(String channel, ByteBuffer message) {
+      send(channel, message, null);
+    }
+
+    @Override
+    public void send(String channel, ByteBuffer message, BinaryReply callback) {
+      ByteBuffer sent = copy(message);
+      deliver(
+          () -> {
+            BinaryMessageHandler handler = handlers.get(channel);
+            if (handler == null) {
+              if (callback != null) {
+                deliver(() -> callback.reply(null));
+              }
+              return;
+            }
+            handler.onMessage(
+                sent,
+                reply -> {
+                  if (callback != null) {
+                    ByteBuffer replied = copy(reply);
+                    deliver(() -> callback.reply(replied));
+                  }
+                });
+          });
+    }
+
+    @Override
+    public TaskQueue makeBackgroundTaskQueue() {
+      return new TaskQueue() {};
+    }
+
+    @Override
+    public void setMessageHandler(String channel, BinaryMessageHandler handler) {
+      if (handler == null) {
+        handlers.remove(channel);
+      } else {
+        handlers.put(channel, handler);
+      }
+    }
+
+    @Override
+    public void setMessageHandler(
+        String channel, BinaryMessageHandler handler, TaskQueue taskQueue) {
+      setMessageHandler(channel, handler);
+    }
+  }
+
+  /** What happened during a run. */
+  static final class Summary {
+    final String schema;
+    final List<String> calledMethods;
+    final List<String> skippedMethods;
+    final LatencyHistogram latencies;
+    final long callCount;
+    final long errorCount;
+    final long unansweredCount;
+    final long elapsedNanos;
+    final long gcCount;
+    final long gcMillis;
+    final int maxQueuedCount;
+
+    private Summary(
+        String schema,
+        List<String> calledMethods,
+        List<String> skippedMethods,
+        LatencyHistogram latencies,
+        long callCount,
+        long errorCount,
+        long unansweredCount,
+        long elapsedNanos,
+        long gcCount,
+        long gcMillis,
+        int maxQueuedCount) {
+      this.schema = schema;
+      this.calledMethods = calledMethods;
+      this.skippedMethods = skippedMethods;
+      this.latencies = latencies;
+      this.callCount = callCount;
+      this.errorCount = errorCount;
+      this.unansweredCount = unansweredCount;
+      this.elapsedNanos = elapsedNanos;
+      this.gcCount = gcCount;
+      this.gcMillis = gcMillis;
+      this.maxQueuedCount = maxQueuedCount;
+    }
+
+    double getCallsPerSecond() {
+      return elapsedNanos == 0 ? 0 : callCount * 1e9 / elapsedNanos;
+    }
+  }
+
+  /** The options of a {@link LoadHarness}. */
+  static final class Builder {
+    private int threads = 4;
+    private int outstandingCalls = 1;
+    private int deliveryThreads = 2;
+    private long durationMillis = 1000;
+    private long latencyMicros = 0;
+    private long reportIntervalMillis = 1000;
+    private long seed = 0;
+    private PrintStream out = System.out;
+
+    /** Sets the number of threads that make calls. */
+    Builder setThreads(int setterArg) {
+      this.threads = setterArg;
+      return this;
+    }
+
+    /** Sets the number of calls each thread waits on before making another. */
+    Builder setOutstandingCalls(int setterArg) {
+      this.outstandingCalls = setterArg;
+      return this;
+    }
+
+    /** Sets the number of threads that deliver messages and replies. */
+    Builder setDeliveryThreads(int setterArg) {
+      this.deliveryThreads = setterArg;
+      return this;
+    }
+
+    /** Sets how long calls are made for. */
+    Builder setDurationMillis(long setterArg) {
+      this.durationMillis = setterArg;
+      return this;
+    }
+
+    /** Sets the time each message and reply takes to be delivered. */
+    Builder setLatencyMicros(long setterArg) {
+      this.latencyMicros = setterArg;
+      return this;
+    }
+
+    /** Sets how often a line of statistics is printed. */
+    Builder setReportIntervalMillis(long setterArg) {
+      this.reportIntervalMillis = setterArg;
+      return this;
+    }
+
+    /** Sets the seed of the random arguments and return values. */
+    Builder setSeed(long setterArg) {
+      this.seed = setterArg;
+      return this;
+    }
+
+    /** Sets where reports are printed. */
+    Builder setOut(PrintStream setterArg) {
+      this.out = setterArg;
+      return this;
+    }
+
+    LoadHarness build() {
+      return new LoadHarness(this);
+    }
+  }
+
+  /** Called once a call is answered, with whether it failed. */
+  private interface Completion {
+    void complete(boolean failed);
+  }
+
+  /** A method the harness calls, with the arguments it calls it with. */
+  private abstract static class Call {
+    final List<Object> payloads = new ArrayList<>();
+
+    abstract void send(Object payload, Completion completion) throws Exception;
+  }
+
+  private final Builder options;
+
+  private LoadHarness(Builder options) {
+    this.options = options;
+  }
+
+  /** Makes random values of the types the generated code uses. */
+  private static final class RandomValues {
+    private static final int[] CODE_POINTS =
+        ("abcdefghijklmnopqrstuvwxyz ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789"
+                + "\u00e9\u00df\u6f22\u5b57\ud83d\ude00")
+            .codePoints()
+            .toArray();
+
+    private final Random random;
+
+    RandomValues(long seed) {
+      this.random = new Random(seed);
+    }
+
+    private int size(int depth) {
+      return depth >= MAX_DEPTH ? 0 : random.nextInt(8);
+    }
+
+    private Object makePlain() {
+      switch (random.nextInt(4)) {
+        case 0:
+          return random.nextBoolean();
+        case 1:
+          return makeLong();
+        case 2:
+          return random.nextDouble();
+        default:
+          return makeString();
+      }
+    }
+
+    private long makeLong() {
+      return random.nextBoolean() ? random.nextInt(1000) : random.nextLong();
+    }
+
+    private String makeString() {
+      StringBuilder builder = new StringBuilder();
+      int length = random.nextInt(32);
+      for (int i = 0; i < length; i++) {
+        builder.appendCodePoint(CODE_POINTS[random.nextInt(CODE_POINTS.length)]);
+      }
+      return builder.toString();
+    }
+
+    private List<Object> makeList(Type elementType, int depth) throws ReflectiveOperationException {
+      List<Object> list = new ArrayList<>();
+      for (int i = size(depth); i > 0; i--) {
+        list.add(make(elementType, depth + 1));
+      }
+      return list;
+    }
+
+    private Map<Object, Object> makeMap(Type keyType, Type valueType, int depth)
+        throws ReflectiveOperationException {
+      Map<Object, Object> map = new HashMap<>();
+      for (int i = size(depth); i > 0; i--) {
+        map.put(make(keyType, depth + 1), make(valueType, depth + 1));
+      }
+      return map;
+    }
+
+    private static boolean isDataClass(Class<?> type) {
+      for (Method method : type.getDeclaredMethods()) {
+        if (Modifier.isStatic(method.getModifiers())
+            && (method.getName().equals("fromMap") || method.getName().equals("fromList"))) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /** Makes a data class with its {@code Builder}, or its constructor if it's immutable. */
+    private Object makeDataClass(Class<?> type, int depth) throws ReflectiveOperationException {
+      if (!isDataClass(type)) {
+        throw new UnsupportedOperationException("can't make a " + type.getSimpleName());
+      }
+      for (Class<?> nested : type.getDeclaredClasses()) {
+        if (!nested.getSimpleName().equals("Builder")) {
+          continue;
+        }
+        Object builder = nested.getDeclaredConstructor().newInstance();
+        for (Method setter : sortedMethods(nested)) {
+          if (setter.getName().startsWith("set") && setter.getParameterTypes().length == 1) {
+            setter.invoke(builder, make(setter.getGenericParameterTypes()[0], depth + 1));
+          }
+        }
+        return nested.getDeclaredMethod("build").invoke(builder);
+      }
+      Constructor<?>[] constructors = type.getConstructors();
+      if (constructors.length != 1) {
+        throw new UnsupportedOperationException("can't make a " + type.getSimpleName());
+      }
+      Constructor<?> constructor = constructors[0];
+      Type[] parameterTypes = constructor.getGenericParameterTypes();
+      Object[] arguments = new Object[parameterTypes.length];
+      for (int i = 0; i < arguments.length; i++) {
+        arguments[i] = make(parameterTypes[i], depth + 1);
+      }
+      return constructor.newInstance(arguments);
+    }
+
+    /** Returns a random value of {@code type}. */
+    Object make(Type type, int depth) throws ReflectiveOperationException {
+      if (depth > 2 * MAX_DEPTH) {
+        throw new UnsupportedOperationException("nested too deeply");
+      }
+      if (type instanceof WildcardType) {
+        return make(((WildcardType) type).getUpperBounds()[0], depth);
+      }
+      if (type instanceof ParameterizedType) {
+        Class<?> rawType = (Class<?>) ((ParameterizedType) type).getRawType();
+        Type[] typeArguments = ((ParameterizedType) type).getActualTypeArguments();
+        if (rawType == List.class) {
+          return makeList(typeArguments[0], depth);
+        } else if (rawType == Map.class) {
+          return makeMap(typeArguments[0], typeArguments[1], depth);
+        }
+        throw new UnsupportedOperationException("unknown type " + type);
+      }
+      if (!(type instanceof Class)) {
+        throw new UnsupportedOperationException("unknown type " + type);
+      }
+      Class<?> c = (Class<?>) type;
+      if (c == Boolean.class || c == boolean.class) {
+        return random.nextBoolean();
+      } else if (c == Long.class || c == long.class) {
+        return makeLong();
+      } else if (c == Double.class || c == double.class) {
+        return random.nextDouble() * 2000000 - 1000000;
+      } else if (c == String.class) {
+        return makeString();
+      } else if (c == Object.class) {
+        return makePlain();
+      } else if (c == List.class) {
+        return makeList(Object.class, depth);
+      } else if (c == Map.class) {
+        return makeMap(Object.class, Object.class, depth);
+      } else if (c == byte[].class) {
+        byte[] array = new byte[random.nextInt(256)];
+        random.nextBytes(array);
+        return array;
+      } else if (c == int[].class) {
+        int[] array = new int[random.nextInt(64)];
+        for (int i = 0; i < array.length; i++) {
+          array[i] = random.nextInt();
+        }
+        return array;
+      } else if (c == long[].class) {
+        long[] array = new long[random.nextInt(64)];
+        for (int i = 0; i < array.length; i++) {
+          array[i] = random.nextLong();
+        }
+        return array;
+      } else if (c == double[].class) {
+        double[] array = new double[random.nextInt(64)];
+        for (int i = 0; i < array.length; i++) {
+          array[i] = random.nextDouble();
+        }
+        return array;
+      } else if (c.isEnum()) {
+        Object[] constants = c.getEnumConstants();
+        return constants[random.nextInt(constants.length)];
+      }
+      return makeDataClass(c, depth);
+    }
+  }
+
+  private static boolean isDeclaredIn(Class<?> type, Class<?> schema) {
+    for (Class<?> c = type; c != null; c = c.getEnclosingClass()) {
+      if (c == schema) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the callback method of {@code method}'s last parameter, like {@code Result.success} or
+   * {@code Reply.reply}, or null if it doesn't take a generated callback.
+   */
+  private static Method callbackOf(Method method, Class<?> schema, String name) {
+    Class<?>[] parameterTypes = method.getParameterTypes();
+    if (parameterTypes.length == 0) {
+      return null;
+    }
+    Class<?> last = parameterTypes[parameterTypes.length - 1];
+    if (!last.isInterface() || !isDeclaredIn(last, schema)) {
+      return null;
+    }
+    for (Method callback : last.getMethods()) {
+      if (callback.getName().equals(name) && callback.getParameterTypes().length == 1) {
+        return callback;
+      }
+    }
+    return null;
+  }
+
+  private static Type callbackValueType(Method method) {
+    Type[] parameterTypes = method.getGenericParameterTypes();
+    return ((ParameterizedType) parameterTypes[parameterTypes.length - 1])
+        .getActualTypeArguments()[0];
+  }
+
+  private static List<Method> sortedMethods(Class<?> type) {
+    List<Method> methods = new ArrayList<>(Arrays.asList(type.getDeclaredMethods()));
+    methods.sort(Comparator.comparing(Method::toGenericString));
+    return methods;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static MessageCodec<Object> codecOf(Class<?> api) throws ReflectiveOperationException {
+    Method getCodec = api.getDeclaredMethod("getCodec");
+    getCodec.setAccessible(true);
+    return (MessageCodec<Object>) getCodec.invoke(null);
+  }
+
+  /** Makes {@link #PAYLOADS_PER_METHOD} random values, or none for {@code void}. */
+  private static List<Object> makeValues(RandomValues values, Type type)
+      throws ReflectiveOperationException {
+    List<Object> made = new ArrayList<>();
+    if (type == void.class || type == Void.class) {
+      made.add(null);
+      return made;
+    }
+    for (int i = 0; i < PAYLOADS_PER_METHOD; i++) {
+      made.add(values.make(type, 0));
+    }
+    return made;
+  }
+
+  /** Makes {@link #PAYLOADS_PER_METHOD} random argument lists for {@code parameterTypes}. */
+  private static List<Object> makeArguments(RandomValues values, Type[] parameterTypes, int count)
+      throws ReflectiveOperationException {
+    List<Object> made = new ArrayList<>();
+    for (int i = 0; i < PAYLOADS_PER_METHOD; i++) {
+      ArrayList<Object> arguments = new ArrayList<>();
+      for (int j = 0; j < count; j++) {
+        arguments.add(values.make(parameterTypes[j], 0));
+      }
+      made.add(arguments);
+    }
+    return made;
+  }
+
+  private static <T> T pick(List<T> list) {
+    return list.get(ThreadLocalRandom.current().nextInt(list.size()));
+  }
+
+  /**
+   * Sets up {@code api}, a generated HostApi, with an implementation that answers with random
+   * values, and adds a call for each of its methods that has a handler.
+   */
+  private static void addHostApi(
+      Class<?> schema,
+      Class<?> api,
+      Method setup,
+      InMemoryBinaryMessenger messenger,
+      RandomValues values,
+      Map<String, Call> calls,
+      List<String> skipped)
+      throws ReflectiveOperationException {
+    MessageCodec<Object> codec = codecOf(api);
+    Map<Method, List<Object>> returns = new HashMap<>();
+    Map<Method, Call> methodCalls = new HashMap<>();
+    for (Method method : sortedMethods(api)) {
+      if (Modifier.isStatic(method.getModifiers())) {
+        continue;
+      }
+      String name = api.getSimpleName() + "." + method.getName();
+      Method success = callbackOf(method, schema, "success");
+      int argumentCount = method.getParameterTypes().length - (success == null ? 0 : 1);
+      Call call =
+          new Call() {
+            @Override
+            void send(Object payload, Completion completion) {
+              messenger.send(
+                  CHANNEL_PREFIX + name,
+                  codec.encodeMessage(payload),
+                  reply -> {
+                    Object decoded = reply == null ? null : codec.decodeMessage(reply);
+                    completion.complete(
+                        !(decoded instanceof Map) || ((Map<?, ?>) decoded).get("error") != null);
+                  });
+            }
+          };
+      try {
+        returns.put(
+            method,
+            makeValues(
+                values,
+                success == null ? method.getGenericReturnType() : callbackValueType(method)));
+        if (argumentCount == 0) {
+          call.payloads.add(null);
+        } else {
+          call.payloads.addAll(
+              makeArguments(values, method.getGenericParameterTypes(), argumentCount));
+        }
+      } catch (UnsupportedOperationException exception) {
+        skipped.add(name + " (" + exception.getMessage() + ")");
+        continue;
+      }
+      methodCalls.put(method, call);
+    }
+    Object implementation =
+        Proxy.newProxyInstance(
+            api.getClassLoader(),
+            new Class<?>[] {api},
+            (proxy, method, arguments) -> {
+              if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                  case "equals":
+                    return proxy == arguments[0];
+                  case "hashCode":
+                    return System.identityHashCode(proxy);
+                  default:
+                    return api.getSimpleName();
+                }
+              }
+              Object value = pick(returns.get(method));
+              Method success = callbackOf(method, schema, "success");
+              if (success == null) {
+                return value;
+              }
+              success.invoke(arguments[arguments.length - 1], value);
+              return null;
+            });
+    setup.invoke(null, messenger, implementation);
+    for (Map.Entry<Method, Call> entry : methodCalls.entrySet()) {
+      String name = api.getSimpleName() + "." + entry.getKey().getName();
+      if (messenger.hasHandler(CHANNEL_PREFIX + name)) {
+        calls.put(name, entry.getValue());
+      } else {
+        skipped.add(name + " (no handler on its channel)");
+      }
+    }
+  }
+
+  /**
+   * Answers the channels of {@code api}, a generated FlutterApi, with random values in place of
+   * Dart, and adds a call for each of its methods.
+   */
+  private static void addFlutterApi(
+      Class<?> schema,
+      Class<?> api,
+      Constructor<?> constructor,
+      InMemoryBinaryMessenger messenger,
+      RandomValues values,
+      Map<String, Call> calls,
+      List<String> skipped)
+      throws ReflectiveOperationException {
+    MessageCodec<Object> codec = codecOf(api);
+    Object instance = constructor.newInstance(messenger);
+    for (Method method : sortedMethods(api)) {
+      Method reply = callbackOf(method, schema, "reply");
+      if (Modifier.isStatic(method.getModifiers())
+          || !Modifier.isPublic(method.getModifiers())
+          || reply == null) {
+        continue;
+      }
+      String name = api.getSimpleName() + "." + method.getName();
+      Class<?> replyType = reply.getDeclaringClass();
+      int argumentCount = method.getParameterTypes().length - 1;
+      List<Object> returns;
+      Call call =
+          new Call() {
+            @Override
+            void send(Object payload, Completion completion) throws Exception {
+              Object[] arguments = ((List<?>) payload).toArray(new Object[argumentCount + 1]);
+              arguments[argumentCount] =
+                  Proxy.newProxyInstance(
+                      replyType.getClassLoader(),
+                      new Class<?>[] {replyType},
+                      (proxy, replyMethod, replyArguments) -> {
+                        if (replyMethod.equals(reply)) {
+                          completion.complete(false);
+                        }
+                        return null;
+                      });
+              method.invoke(instance, arguments);
+            }
+          };
+      try {
+        returns = makeValues(values, callbackValueType(method));
+        if (argumentCount == 0) {
+          call.payloads.add(new ArrayList<>());
+        } else {
+          call.payloads.addAll(
+              makeArguments(values, method.getGenericParameterTypes(), argumentCount));
+        }
+      } catch (UnsupportedOperationException exception) {
+        skipped.add(name + " (" + exception.getMessage() + ")");
+        continue;
+      }
+      messenger.setMessageHandler(
+          CHANNEL_PREFIX + name,
+          (message, binaryReply) -> {
+            codec.decodeMessage(message);
+            Object value = pick(returns);
+            binaryReply.reply(value == null ? null : codec.encodeMessage(value));
+          });
+      calls.put(name, call);
+    }
+  }
+
+  private static long[] gcTotals() {
+    long[] totals = new long[2];
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      totals[0] += Math.max(0, collector.getCollectionCount());
+      totals[1] += Math.max(0, collector.getCollectionTime());
+    }
+    return totals;
+  }
+
+  private static String formatNanos(long nanos) {
+    if (nanos < 1000) {
+      return nanos + "ns";
+    } else if (nanos < 1000000) {
+      return String.format(Locale.ROOT, "%.1fus", nanos / 1e3);
+    } else if (nanos < 1000000000) {
+      return String.format(Locale.ROOT, "%.1fms", nanos / 1e6);
+    }
+    return String.format(Locale.ROOT, "%.2fs", nanos / 1e9);
+  }
+
+  private static String formatPercentiles(LatencyHistogram latencies) {
+    return String.format(
+        Locale.ROOT,
+        "p50 %s  p99 %s  p99.9 %s  max %s",
+        formatNanos(latencies.getValueAtPercentile(50)),
+        formatNanos(latencies.getValueAtPercentile(99)),
+        formatNanos(latencies.getValueAtPercentile(99.9)),
+        formatNanos(latencies.getMax()));
+  }
+
+  /** Calls the APIs of {@code schema}, a class generated by Pigeon, until the duration is up. */
+  Summary run(Class<?> schema) throws ReflectiveOperationException, InterruptedException {
+    PrintStream out = options.out;
+    InMemoryBinaryMessenger messenger =
+        new InMemoryBinaryMessenger(options.deliveryThreads, options.latencyMicros);
+    RandomValues values = new RandomValues(options.seed);
+    Map<String, Call> callsByName = new TreeMap<>();
+    List<String> skipped = new ArrayList<>();
+    Class<?>[] nestedTypes = schema.getDeclaredClasses();
+    Arrays.sort(nestedTypes, Comparator.comparing(Class::getName));
+    for (Class<?> nested : nestedTypes) {
+      if (nested.isInterface()) {
+        for (Method method : nested.getDeclaredMethods()) {
+          if (method.getName().equals("setup")
+              && Arrays.equals(
+                  method.getParameterTypes(), new Class<?>[] {BinaryMessenger.class, nested})) {
+            addHostApi(schema, nested, method, messenger, values, callsByName, skipped);
+          }
+        }
+        continue;
+      }
+      Constructor<?> constructor;
+      try {
+        constructor = nested.getConstructor(BinaryMessenger.class);
+        nested.getDeclaredMethod("getCodec");
+      } catch (NoSuchMethodException exception) {
+        continue;
+      }
+      addFlutterApi(schema, nested, constructor, messenger, values, callsByName, skipped);
+    }
+    List<String> calledMethods = new ArrayList<>(callsByName.keySet());
+    List<Call> calls = new ArrayList<>(callsByName.values());
+    out.println(schema.getSimpleName() + ": calling " + String.join(", ", calledMethods));
+    for (String method : skipped) {
+      out.println(schema.getSimpleName() + ": skipping " + method);
+    }
+
+    LatencyHistogram latencies = new LatencyHistogram();
+    AtomicLong errorCount = new AtomicLong();
+    Semaphore[] permits = new Semaphore[options.threads];
+    ExecutorService callers = Executors.newFixedThreadPool(options.threads);
+    long[] startGc = gcTotals();
+    long start = System.nanoTime();
+    long end = start + TimeUnit.MILLISECONDS.toNanos(options.durationMillis);
+    for (int i = 0; i < options.threads && !calls.isEmpty(); i++) {
+      Semaphore threadPermits = new Semaphore(options.outstandingCalls);
+      permits[i] = threadPermits;
+      callers.execute(
+          () -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            try {
+              while (System.nanoTime() < end) {
+                if (!threadPermits.tryAcquire(10, TimeUnit.MILLISECONDS)) {
+                  continue;
+                }
+                Call call = calls.get(random.nextInt(calls.size()));
+                long callStart = System.nanoTime();
+                Completion completion =
+                    failed -> {
+                      latencies.record(System.nanoTime() - callStart);
+                      if (failed) {
+                        errorCount.incrementAndGet();
+                      }
+                      threadPermits.release();
+                    };
+                try {
+                  call.send(pick(call.payloads), completion);
+                } catch (Exception exception) {
+                  completion.complete(true);
+                }
+              }
+            } catch (InterruptedException exception) {
+              Thread.currentThread().interrupt();
+            }
+          });
+    }
+
+    out.println(
+        String.format(
+            Locale.ROOT,
+            "%s: %d threads, %d outstanding calls each, %dus latency",
+            schema.getSimpleName(),
+            options.threads,
+            options.outstandingCalls,
+            options.latencyMicros));
+    LatencyHistogram previous = new LatencyHistogram();
+    long previousTime = start;
+    long[] previousGc = startGc;
+    int maxQueuedCount = 0;
+    while (System.nanoTime() < end) {
+      long remaining = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime());
+      Thread.sleep(Math.max(1, Math.min(options.reportIntervalMillis, remaining)));
+      long now = System.nanoTime();
+      LatencyHistogram current = latencies.copy();
+      LatencyHistogram interval = current.since(previous);
+      long[] gc = gcTotals();
+      int queuedCount = messenger.getQueuedCount();
+      maxQueuedCount = Math.max(maxQueuedCount, queuedCount);
+      out.println(
+          String.format(
+              Locale.ROOT,
+              "%7.1fs %10.0f calls/s  %s  gc %d (%dms)  queued %d",
+              (now - start) / 1e9,
+              interval.getCount() * 1e9 / (now - previousTime),
+              formatPercentiles(interval),
+              gc[0] - previousGc[0],
+              gc[1] - previousGc[1],
+              queuedCount));
+      previous = current;
+      previousTime = now;
+      previousGc = gc;
+    }
+    callers.shutdown();
+    callers.awaitTermination(10, TimeUnit.SECONDS);
+    long elapsedNanos = System.nanoTime() - start;
+    long unansweredCount = 0;
+    long drainEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    for (Semaphore threadPermits : permits) {
+      if (threadPermits != null
+          && !threadPermits.tryAcquire(
+              options.outstandingCalls,
+              Math.max(0, drainEnd - System.nanoTime()),
+              TimeUnit.NANOSECONDS)) {
+        unansweredCount += options.outstandingCalls - threadPermits.availablePermits();
+      }
+    }
+    messenger.shutdown();
+    long[] endGc = gcTotals();
+    Summary summary =
+        new Summary(
+            schema.getSimpleName(),
+            calledMethods,
+            skipped,
+            latencies,
+            latencies.getCount(),
+            errorCount.get() + messenger.getUncaughtCount(),
+            unansweredCount,
+            elapsedNanos,
+            endGc[0] - startGc[0],
+            endGc[1] - startGc[1],
+            maxQueuedCount);
+    out.println(
+        String.format(
+            Locale.ROOT,
+            "%s: %d calls in %.1fs, %.0f calls/s, %d errors, %d unanswered, gc %d (%dms), at most"
+                + " %d queued",
+            summary.schema,
+            summary.callCount,
+            elapsedNanos / 1e9,
+            summary.getCallsPerSecond(),
+            summary.errorCount,
+            summary.unansweredCount,
+            summary.gcCount,
+            summary.gcMillis,
+            summary.maxQueuedCount));
+    out.println(summary.schema + ": " + formatPercentiles(latencies));
+    return summary;
+  }
+
+  /**
+   * Runs the harness on the schemas named by their generated classes, like {@code NullFields}.
+   *
+   * <p>Takes the options {@code --threads}, {@code --outstanding-calls}, {@code
+   * --delivery-threads}, {@code --seconds}, {@code --latency-micros}, {@code
+   * --report-interval-millis} and {@code --seed}, each followed by a number.
+   */
+  public static void main(String[] args) throws Exception {
+    Builder builder = new Builder().setDurationMillis(60000);
+    List<Class<?>> schemas = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      if (!arg.startsWith("--")) {
+        String className = arg.contains(".") ? arg : "com.example.android_unit_tests." + arg;
+        schemas.add(Class.forName(className));
+        continue;
+      }
+      if (i + 1 == args.length) {
+        throw new IllegalArgumentException("Missing value for " + arg);
+      }
+      long value = Long.parseLong(args[++i]);
+      switch (arg) {
+        case "--threads":
+          builder.setThreads((int) value);
+          break;
+        case "--outstanding-calls":
+          builder.setOutstandingCalls((int) value);
+          break;
+        case "--delivery-threads":
+          builder.setDeliveryThreads((int) value);
+          break;
+        case "--seconds":
+          builder.setDurationMillis(value * 1000);
+          break;
+        case "--latency-micros":
+          builder.setLatencyMicros(value);
+          break;
+        case "--report-interval-millis":
+          builder.setReportIntervalMillis(value);
+          break;
+        case "--seed":
+          builder.setSeed(value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + arg);
+      }
+    }
+    LoadHarness harness = builder.build();
+    for (Class<?> schema : schemas) {
+      harness.run(schema);
+    }
+  }
+}
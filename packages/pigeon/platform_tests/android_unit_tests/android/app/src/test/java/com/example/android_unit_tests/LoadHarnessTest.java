@@ -0,0 +1,130 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class LoadHarnessTest {
+  private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+  private LoadHarness.Summary run(Class<?> schema) throws Exception {
+    return new LoadHarness.Builder()
+        .setThreads(4)
+        .setOutstandingCalls(4)
+        .setLatencyMicros(50)
+        .setDurationMillis(300)
+        .setReportIntervalMillis(100)
+        .setOut(new PrintStream(output))
+        .build()
+        .run(schema);
+  }
+
+  private static void assertAllAnswered(LoadHarness.Summary summary) {
+    assertTrue(summary.callCount > 0);
+    assertEquals(0, summary.errorCount);
+    assertEquals(0, summary.unansweredCount);
+  }
+
+  @Test
+  public void histogramPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000);
+    }
+    assertEquals(1000, histogram.getCount());
+    // Values over 128 are counted to within 1/64.
+    assertEquals(500000, histogram.getValueAtPercentile(50), 500000 / 64);
+    assertEquals(990000, histogram.getValueAtPercentile(99), 990000 / 64);
+    assertEquals(1000000, histogram.getMax(), 1000000 / 64);
+    assertTrue(histogram.getValueAtPercentile(50) >= 500000);
+  }
+
+  @Test
+  public void histogramSmallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long i = 0; i < 100; i++) {
+      histogram.record(i);
+    }
+    assertEquals(49, histogram.getValueAtPercentile(50));
+    assertEquals(99, histogram.getMax());
+    assertEquals(0, new LatencyHistogram().getValueAtPercentile(99));
+  }
+
+  @Test
+  public void histogramSince() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(1000000000L);
+    LatencyHistogram earlier = histogram.copy();
+    histogram.record(10);
+    histogram.record(20);
+    LatencyHistogram interval = histogram.since(earlier);
+    assertEquals(2, interval.getCount());
+    assertEquals(20, interval.getMax());
+    assertEquals(3, histogram.getCount());
+  }
+
+  @Test
+  public void multipleArity() throws Exception {
+    LoadHarness.Summary summary = run(MultipleArity.class);
+    assertAllAnswered(summary);
+    assertEquals(
+        Arrays.asList("MultipleArityFlutterApi.subtract", "MultipleArityHostApi.subtract"),
+        summary.calledMethods);
+    assertTrue(summary.skippedMethods.isEmpty());
+  }
+
+  @Test
+  public void dataClasses() throws Exception {
+    LoadHarness.Summary summary = run(NullFields.class);
+    assertAllAnswered(summary);
+    assertEquals(
+        Arrays.asList("NullFieldsFlutterApi.search", "NullFieldsHostApi.search"),
+        summary.calledMethods);
+  }
+
+  @Test
+  public void allDatatypes() throws Exception {
+    LoadHarness.Summary summary = run(AllDatatypes.class);
+    assertAllAnswered(summary);
+    assertEquals(
+        Arrays.asList(
+            "FlutterEverything.echo",
+            "FlutterEverything.giveMeEverything",
+            "HostEverything.echo",
+            "HostEverything.giveMeEverything"),
+        summary.calledMethods);
+  }
+
+  @Test
+  public void asyncHandlers() throws Exception {
+    LoadHarness.Summary summary = run(TraceSections.class);
+    assertAllAnswered(summary);
+    assertEquals(
+        Arrays.asList("TraceFlutterApi.greet", "TraceHostApi.add", "TraceHostApi.echo"),
+        summary.calledMethods);
+  }
+
+  @Test
+  public void unsupportedMethodsAreSkipped() throws Exception {
+    LoadHarness.Summary summary = run(Deadline.class);
+    assertAllAnswered(summary);
+    assertEquals(Arrays.asList("DeadlineApi.subtract"), summary.calledMethods);
+    assertTrue(summary.skippedMethods.contains("DeadlineApi.add (can't make a CallContext)"));
+  }
+
+  @Test
+  public void reportsEveryInterval() throws Exception {
+    run(MultipleArity.class);
+    String report = output.toString();
+    assertTrue(report.contains("calls/s"));
+    assertTrue(report.contains("p99.9"));
+    assertTrue(report.contains("MultipleArity: p50"));
+  }
+}
@@ -0,0 +1,144 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+
+import com.example.android_unit_tests.OffsetIndexed.OffsetIndexedItem;
+import com.example.android_unit_tests.OffsetIndexed.OffsetIndexedList;
+import com.example.android_unit_tests.OffsetIndexed.OffsetIndexedPage;
+import io.flutter.plugin.common.StandardMessageCodec;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+public class OffsetIndexedTest {
+  private static OffsetIndexedItem makeItem(long id) {
+    return new OffsetIndexedItem.Builder()
+        .setId(id)
+        .setName("item" + id)
+        .setValues(Arrays.asList(id * 0.5, null, 1.0))
+        .build();
+  }
+
+  private static OffsetIndexedPage makePage(int count) {
+    List<OffsetIndexedItem> items = new ArrayList<>();
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      items.add(i % 7 == 3 ? null : makeItem(i));
+      ids.add(i % 5 == 2 ? null : (long) i << 33);
+    }
+    return new OffsetIndexedPage.Builder().setItems(items).setIds(ids).build();
+  }
+
+  /** Sends [page] through the codec the way a message is sent to Dart and back. */
+  private static OffsetIndexedPage roundTrip(OffsetIndexedPage page) {
+    StandardMessageCodec codec = new StandardMessageCodec();
+    ByteBuffer message = codec.encodeMessage(page.toMap());
+    message.rewind();
+    @SuppressWarnings("unchecked")
+    Map<String, Object> map = (Map<String, Object>) codec.decodeMessage(message);
+    return OffsetIndexedPage.fromMap(map);
+  }
+
+  private static void assertItemEquals(OffsetIndexedItem expected, OffsetIndexedItem actual) {
+    if (expected == null) {
+      assertNull(actual);
+      return;
+    }
+    assertEquals(expected.getId(), actual.getId());
+    assertEquals(expected.getName(), actual.getName());
+    assertEquals(expected.getValues(), actual.getValues());
+  }
+
+  @Test
+  public void roundTripsThroughCodec() {
+    OffsetIndexedPage page = makePage(100);
+    OffsetIndexedPage readPage = roundTrip(page);
+    assertEquals(100, readPage.getItems().size());
+    for (int i = 0; i < 100; i++) {
+      assertItemEquals(page.getItems().get(i), readPage.getItems().get(i));
+    }
+    assertEquals(page.getIds(), readPage.getIds());
+  }
+
+  @Test
+  public void encodedAsOffsetsAndPayload() {
+    Map<String, Object> map = makePage(10).toMap();
+    @SuppressWarnings("unchecked")
+    List<Object> items = (List<Object>) map.get("items");
+    assertEquals(2, items.size());
+    int[] offsets = (int[]) items.get(0);
+    byte[] payload = (byte[]) items.get(1);
+    assertEquals(11, offsets.length);
+    assertEquals(0, offsets[0]);
+    assertEquals(payload.length, offsets[10]);
+    for (int i = 0; i < 10; i++) {
+      assertEquals(0, offsets[i] % 8);
+      assertTrue(offsets[i] < offsets[i + 1]);
+    }
+    // Null elements are a single null tag.
+    assertEquals(0, payload[offsets[3]]);
+  }
+
+  @Test
+  public void randomAccess() {
+    OffsetIndexedPage page = makePage(1000);
+    List<OffsetIndexedItem> items = roundTrip(page).getItems();
+    assertTrue(items instanceof OffsetIndexedList);
+    assertItemEquals(page.getItems().get(999), items.get(999));
+    assertItemEquals(page.getItems().get(500), items.get(500));
+    assertItemEquals(page.getItems().get(3), items.get(3));
+    // Elements are decoded once.
+    assertSame(items.get(500), items.get(500));
+  }
+
+  @Test
+  public void decodeAll() {
+    OffsetIndexedPage page = makePage(5000);
+    List<OffsetIndexedItem> items = roundTrip(page).getItems();
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      ((OffsetIndexedList<OffsetIndexedItem>) items).decodeAll(pool);
+    } finally {
+      pool.shutdown();
+    }
+    for (int i = 0; i < 5000; i++) {
+      assertItemEquals(page.getItems().get(i), items.get(i));
+    }
+  }
+
+  @Test
+  public void decodeAllOnDefaultPool() {
+    OffsetIndexedPage page = makePage(5000);
+    List<OffsetIndexedItem> items = roundTrip(page).getItems();
+    // Unit tests see API level 0, so this decodes on the calling thread.
+    ((OffsetIndexedList<OffsetIndexedItem>) items).decodeAll();
+    for (int i = 0; i < 5000; i++) {
+      assertItemEquals(page.getItems().get(i), items.get(i));
+    }
+  }
+
+  @Test
+  public void reencodingReusesPayload() {
+    Map<String, Object> map = makePage(10).toMap();
+    OffsetIndexedPage readPage = OffsetIndexedPage.fromMap(map);
+    assertSame(map.get("items"), readPage.toMap().get("items"));
+    assertSame(map.get("ids"), readPage.toMap().get("ids"));
+  }
+
+  @Test
+  public void emptyAndNullLists() {
+    OffsetIndexedPage page =
+        new OffsetIndexedPage.Builder().setItems(new ArrayList<>()).setIds(null).build();
+    OffsetIndexedPage readPage = roundTrip(page);
+    assertTrue(readPage.getItems().isEmpty());
+    assertNull(readPage.getIds());
+  }
+}
@@ -0,0 +1,171 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+
+import com.example.android_unit_tests.PipelinedAsync.PipelinedApi;
+import com.example.android_unit_tests.PipelinedAsync.Result;
+import com.example.android_unit_tests.PipelinedAsync.SocketBinaryMessenger;
+import io.flutter.plugin.common.BasicMessageChannel;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PipelinedAsyncTest {
+  /** An implementation that holds on to its results so the test can complete them. */
+  private static class HeldApi implements PipelinedApi {
+    final Map<Object, Runnable> completions = new ConcurrentHashMap<>();
+    final Semaphore calls = new Semaphore(0);
+
+    @Override
+    public void add(Long x, Long y, Result<Long> result) {
+      completions.put(x, () -> result.success(x + y));
+      calls.release();
+    }
+
+    @Override
+    public void echo(String value, Result<String> result) {
+      completions.put(value, () -> result.success(value));
+      calls.release();
+    }
+
+    /** Waits until {@code count} calls are held. */
+    void awaitCalls(int count) throws InterruptedException {
+      assertTrue(calls.tryAcquire(count, 10, TimeUnit.SECONDS));
+    }
+
+    /** Completes the call whose first argument is {@code key}. */
+    void complete(Object key) {
+      completions.remove(key).run();
+    }
+  }
+
+  private ExecutorService executor;
+  private SocketBinaryMessenger host;
+  private SocketBinaryMessenger client;
+  private BasicMessageChannel<Object> channel;
+
+  @Before
+  public void connect() throws IOException {
+    executor = Executors.newFixedThreadPool(4);
+    try (ServerSocketChannel server = ServerSocketChannel.open()) {
+      server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      SocketChannel clientChannel = SocketChannel.open(server.getLocalAddress());
+      host = new SocketBinaryMessenger(server.accept(), executor);
+      client = new SocketBinaryMessenger(clientChannel, executor);
+    }
+    channel =
+        new BasicMessageChannel<>(
+            client, "dev.flutter.pigeon.PipelinedApi", PipelinedApi.getCodec());
+  }
+
+  @After
+  public void close() {
+    client.close();
+    host.close();
+    executor.shutdown();
+  }
+
+  /** Calls the method at {@code index} of the single channel without waiting for its reply. */
+  @SuppressWarnings("unchecked")
+  private CompletableFuture<Object> call(int index, Object... args) {
+    ArrayList<Object> message = new ArrayList<>();
+    message.add(index);
+    message.addAll(Arrays.asList(args));
+    CompletableFuture<Object> result = new CompletableFuture<>();
+    channel.send(message, reply -> result.complete(((Map<String, Object>) reply).get("result")));
+    return result;
+  }
+
+  private static Object await(CompletableFuture<Object> future) throws Exception {
+    return future.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void repliesCompletedInReverseOrder() throws Exception {
+    HeldApi api = new HeldApi();
+    PipelinedApi.setup(host, api);
+    List<CompletableFuture<Object>> replies = new ArrayList<>();
+    for (long i = 0; i < 100; i++) {
+      replies.add(call(0, i, 1000L));
+    }
+    api.awaitCalls(100);
+    for (long i = 99; i >= 0; i--) {
+      api.complete(i);
+    }
+    for (int i = 0; i < replies.size(); i++) {
+      assertEquals(1000L + i, ((Number) await(replies.get(i))).longValue());
+    }
+  }
+
+  @Test
+  public void slowCallDoesNotDelayFastCall() throws Exception {
+    HeldApi api = new HeldApi();
+    PipelinedApi.setup(host, api);
+    CompletableFuture<Object> slow = call(0, 1L, 2L);
+    CompletableFuture<Object> fast = call(1, "fast");
+    api.awaitCalls(2);
+    api.complete("fast");
+    assertEquals("fast", await(fast));
+    assertFalse(slow.isDone());
+    api.complete(1L);
+    assertEquals(3L, ((Number) await(slow)).longValue());
+  }
+
+  @Test
+  public void repliesCompletedFromManyThreads() throws Exception {
+    HeldApi api = new HeldApi();
+    PipelinedApi.setup(host, api);
+    int count = 1000;
+    List<CompletableFuture<Object>> replies = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      replies.add(i % 2 == 0 ? call(0, (long) i, 0L) : call(1, "echo " + i));
+    }
+    api.awaitCalls(count);
+    ExecutorService completers = Executors.newFixedThreadPool(8);
+    CountDownLatch start = new CountDownLatch(1);
+    for (int thread = 0; thread < 8; thread++) {
+      int first = thread;
+      completers.execute(
+          () -> {
+            try {
+              start.await();
+            } catch (InterruptedException exception) {
+              return;
+            }
+            for (int i = count - 1 - first; i >= 0; i -= 8) {
+              api.complete(i % 2 == 0 ? (Object) (long) i : "echo " + i);
+            }
+          });
+    }
+    start.countDown();
+    for (int i = 0; i < count; i++) {
+      Object reply = await(replies.get(i));
+      if (i % 2 == 0) {
+        assertEquals((long) i, ((Number) reply).longValue());
+      } else {
+        assertEquals("echo " + i, reply);
+      }
+    }
+    completers.shutdown();
+  }
+}
@@ -0,0 +1,125 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+
+import com.example.android_unit_tests.AllDatatypes.Everything;
+import com.example.android_unit_tests.AllDatatypes.HostEverything;
+import com.example.android_unit_tests.PresenceBitmap.SparseEverything;
+import com.example.android_unit_tests.PresenceBitmap.SparseHostApi;
+import com.example.android_unit_tests.PresenceBitmap.SparseMode;
+import com.example.android_unit_tests.PresenceBitmap.SparseNested;
+import io.flutter.plugin.common.MessageCodec;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class PresenceBitmapTest {
+  private static SparseEverything roundTrip(SparseEverything everything) {
+    MessageCodec<Object> codec = SparseHostApi.getCodec();
+    ByteBuffer message = codec.encodeMessage(everything);
+    message.rewind();
+    return (SparseEverything) codec.decodeMessage(message);
+  }
+
+  private static int encodedSize(MessageCodec<Object> codec, Object value) {
+    return codec.encodeMessage(value).limit();
+  }
+
+  @Test
+  public void onlyNonNullFieldsAreWritten() {
+    SparseEverything everything = new SparseEverything();
+    everything.setId(1L);
+    everything.setAString("hello");
+    everything.setMode(SparseMode.on);
+    List<Object> list = everything.toList();
+    // Bits 0, 4 and 14 are id, aString and mode.
+    assertEquals((1L << 0) | (1L << 4) | (1L << 14), list.get(0));
+    assertEquals(Arrays.asList((Object) 1L, "hello", 1), list.subList(1, list.size()));
+  }
+
+  @Test
+  public void roundTripsSparseFields() {
+    SparseEverything everything = new SparseEverything();
+    everything.setId(7L);
+    everything.setADouble(2.5);
+    SparseNested nested = new SparseNested();
+    nested.setValue(3L);
+    everything.setNested(nested);
+    SparseEverything readEverything = roundTrip(everything);
+    assertEquals(7L, (long) readEverything.getId());
+    assertEquals(2.5, readEverything.getADouble(), 0.0);
+    assertEquals(3L, (long) readEverything.getNested().getValue());
+    assertNull(readEverything.getABool());
+    assertNull(readEverything.getAString());
+    assertNull(readEverything.getMode());
+  }
+
+  @Test
+  public void roundTripsAllFields() {
+    SparseEverything everything = new SparseEverything();
+    everything.setId(1L);
+    everything.setABool(false);
+    everything.setAnInt(1L << 40);
+    everything.setADouble(1.5);
+    everything.setAString("hello");
+    everything.setAByteArray(new byte[] {1, 2, 3});
+    everything.setA4ByteArray(new int[] {4});
+    everything.setA8ByteArray(new long[] {5L});
+    everything.setAFloatArray(new double[] {6.0});
+    everything.setAList(Arrays.asList((Object) "a", 1L));
+    Map<Object, Object> map = new HashMap<>();
+    map.put("key", "value");
+    everything.setAMap(map);
+    everything.setNestedList(Arrays.asList(Arrays.asList(true, false)));
+    Map<String, String> mapWithAnnotations = new HashMap<>();
+    mapWithAnnotations.put("a", "b");
+    everything.setMapWithAnnotations(mapWithAnnotations);
+    Map<String, Object> mapWithObject = new HashMap<>();
+    mapWithObject.put("c", 2L);
+    everything.setMapWithObject(mapWithObject);
+    everything.setMode(SparseMode.off);
+    everything.setNested(new SparseNested());
+    SparseEverything readEverything = roundTrip(everything);
+    assertEquals(false, readEverything.getABool());
+    assertEquals(1L << 40, (long) readEverything.getAnInt());
+    assertEquals("hello", readEverything.getAString());
+    assertArrayEquals(new byte[] {1, 2, 3}, readEverything.getAByteArray());
+    assertArrayEquals(new int[] {4}, readEverything.getA4ByteArray());
+    assertArrayEquals(new long[] {5L}, readEverything.getA8ByteArray());
+    assertEquals(6.0, readEverything.getAFloatArray()[0], 0.0);
+    assertEquals(everything.getAList(), readEverything.getAList());
+    assertEquals(map, readEverything.getAMap());
+    assertEquals(everything.getNestedList(), readEverything.getNestedList());
+    assertEquals(mapWithAnnotations, readEverything.getMapWithAnnotations());
+    assertEquals(mapWithObject, readEverything.getMapWithObject());
+    assertEquals(SparseMode.off, readEverything.getMode());
+    assertNull(readEverything.getNested().getValue());
+  }
+
+  @Test
+  public void readsPresenceFromDart() {
+    // Dart sends small integers as 32-bit values.
+    List<Object> list = Arrays.asList((Object) (1 | (1 << 2)), 5, 6);
+    SparseEverything everything = SparseEverything.fromList(list);
+    assertEquals(5L, (long) everything.getId());
+    assertEquals(6L, (long) everything.getAnInt());
+    assertNull(everything.getABool());
+  }
+
+  @Test
+  public void sparseMessageIsSmaller() {
+    SparseEverything sparse = new SparseEverything();
+    sparse.setId(1L);
+    int sparseSize = encodedSize(SparseHostApi.getCodec(), sparse);
+    int mapSize = encodedSize(HostEverything.getCodec(), new Everything());
+    assertTrue(sparseSize < 32);
+    assertTrue(sparseSize * 5 < mapSize);
+  }
+}
@@ -0,0 +1,111 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+
+import com.example.android_unit_tests.PreserveReferences.SharedBatch;
+import com.example.android_unit_tests.PreserveReferences.SharedNested;
+import com.example.android_unit_tests.PreserveReferences.SharedReferencesApi;
+import com.example.android_unit_tests.PreserveReferences.SharedRequest;
+import io.flutter.plugin.common.MessageCodec;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class PreserveReferencesTest {
+  private static SharedRequest makeRequest(String query) {
+    SharedRequest request = new SharedRequest();
+    request.setQuery(query);
+    request.setAnInt(1L);
+    request.setABool(true);
+    return request;
+  }
+
+  /** Returns a batch of [count] nested objects whose requests come from [requests]. */
+  private static SharedBatch makeBatch(int count, List<SharedRequest> requests) {
+    List<SharedNested> nested = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      SharedNested item = new SharedNested();
+      item.setRequest(requests.get(i % requests.size()));
+      item.setPage((long) i);
+      nested.add(item);
+    }
+    SharedBatch batch = new SharedBatch();
+    batch.setNested(nested);
+    batch.setDefaultRequest(requests.get(0));
+    return batch;
+  }
+
+  private static SharedBatch roundTrip(SharedBatch batch) {
+    MessageCodec<Object> codec = SharedReferencesApi.getCodec();
+    ByteBuffer message = codec.encodeMessage(batch);
+    message.rewind();
+    return (SharedBatch) codec.decodeMessage(message);
+  }
+
+  private static int encodedSize(Object value) {
+    return SharedReferencesApi.getCodec().encodeMessage(value).limit();
+  }
+
+  @Test
+  public void sharedInstanceIsDecodedOnce() {
+    SharedBatch readBatch =
+        roundTrip(makeBatch(100, Arrays.asList(makeRequest("shared query string"))));
+    SharedRequest defaultRequest = readBatch.getDefaultRequest();
+    assertEquals("shared query string", defaultRequest.getQuery());
+    assertEquals(100, readBatch.getNested().size());
+    for (int i = 0; i < 100; i++) {
+      SharedNested nested = readBatch.getNested().get(i);
+      assertSame(defaultRequest, nested.getRequest());
+      assertEquals(Long.valueOf(i), nested.getPage());
+    }
+  }
+
+  @Test
+  public void distinctInstancesStayDistinct() {
+    SharedBatch readBatch =
+        roundTrip(makeBatch(4, Arrays.asList(makeRequest("a"), makeRequest("a"))));
+    SharedNested first = readBatch.getNested().get(0);
+    SharedNested second = readBatch.getNested().get(1);
+    SharedNested third = readBatch.getNested().get(2);
+    assertNotSame(first.getRequest(), second.getRequest());
+    assertSame(first.getRequest(), third.getRequest());
+    assertSame(first.getRequest(), readBatch.getDefaultRequest());
+  }
+
+  @Test
+  public void nestedObjectsAreLeftToTheCodec() {
+    SharedRequest request = makeRequest("query");
+    SharedNested nested = new SharedNested();
+    nested.setRequest(request);
+    assertSame(request, nested.toMap().get("request"));
+    assertSame(request, SharedNested.fromMap(nested.toMap()).getRequest());
+  }
+
+  @Test
+  public void messagesAreIndependent() {
+    SharedRequest request = makeRequest("query");
+    SharedBatch batch = makeBatch(2, Arrays.asList(request));
+    // Encoding the same objects again writes them in full again.
+    assertEquals(encodedSize(batch), encodedSize(batch));
+    SharedBatch first = roundTrip(batch);
+    SharedBatch second = roundTrip(batch);
+    assertNotSame(first.getDefaultRequest(), second.getDefaultRequest());
+  }
+
+  @Test
+  public void sharedReferencesAreSmaller() {
+    List<SharedRequest> copies = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      copies.add(makeRequest("shared query string"));
+    }
+    int sharedSize = encodedSize(makeBatch(1000, Arrays.asList(copies.get(0))));
+    int copiesSize = encodedSize(makeBatch(1000, copies));
+    assertTrue(sharedSize * 2 < copiesSize);
+  }
+}
@@ -0,0 +1,155 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import com.example.android_unit_tests.SharedMemoryMessenger.SharedMemoryBinaryMessenger;
+import com.example.android_unit_tests.SharedMemoryMessenger.SharedMemoryHostApi;
+import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryMessenger;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a {@link SharedMemoryBinaryMessenger} shared by two processes, and prints the round trip
+ * time of calls to {@link SharedMemoryHostApi} and the rate of one-way messages.
+ *
+ * <p>Run {@link #main} without arguments; it starts the second process itself.
+ */
+public class SharedMemoryMessengerBenchmark {
+  private static final String COUNT_CHANNEL = "count";
+  private static final String COUNT_DONE_CHANNEL = "count.done";
+  private static final String READY_CHANNEL = "ready";
+
+  private static class Adder implements SharedMemoryHostApi {
+    @Override
+    public Long add(Long x, Long y) {
+      return x + y;
+    }
+
+    @Override
+    public String echo(String value) {
+      return value;
+    }
+  }
+
+  private static <T> T await(CompletableFuture<T> future) throws Exception {
+    return future.get(30, TimeUnit.SECONDS);
+  }
+
+  private static void callAdd(BasicMessageChannel<Object> channel, long x, long y)
+      throws Exception {
+    CompletableFuture<Object> reply = new CompletableFuture<>();
+    channel.send(new ArrayList<Object>(Arrays.asList(x, y)), reply::complete);
+    await(reply);
+  }
+
+  /**
+   * Serves {@link SharedMemoryHostApi} and counts the messages sent to {@link #COUNT_CHANNEL}
+   * until the parent process closes standard input. Messages sent before the handlers are set
+   * would be answered with {@code null}, so the parent waits for a message to {@link
+   * #READY_CHANNEL}.
+   */
+  private static void serve(File file, int ringCapacity) throws Exception {
+    SharedMemoryBinaryMessenger messenger =
+        new SharedMemoryBinaryMessenger(file, false, ringCapacity, Runnable::run);
+    SharedMemoryHostApi.setup(messenger, new Adder());
+    long[] count = {0};
+    messenger.setMessageHandler(COUNT_CHANNEL, (message, reply) -> count[0]++);
+    messenger.setMessageHandler(
+        COUNT_DONE_CHANNEL,
+        (message, reply) -> {
+          ByteBuffer result = ByteBuffer.allocateDirect(8);
+          result.putLong(count[0]);
+          reply.reply(result);
+        });
+    messenger.send(READY_CHANNEL, null);
+    while (System.in.read() != -1) {}
+    messenger.close();
+  }
+
+  private static void measure(BinaryMessenger messenger) throws Exception {
+    BasicMessageChannel<Object> channel =
+        new BasicMessageChannel<>(
+            messenger,
+            "dev.flutter.pigeon.SharedMemoryHostApi.add",
+            SharedMemoryHostApi.getCodec());
+    // Warms up both processes.
+    for (int i = 0; i < 20000; i++) {
+      callAdd(channel, i, 1);
+    }
+    int callCount = 20000;
+    long start = System.nanoTime();
+    for (int i = 0; i < callCount; i++) {
+      callAdd(channel, i, 1);
+    }
+    long callNanos = (System.nanoTime() - start) / callCount;
+
+    int messageCount = 2000000;
+    ByteBuffer message = ByteBuffer.allocateDirect(16);
+    message.putLong(1L);
+    message.putLong(2L);
+    start = System.nanoTime();
+    for (int i = 0; i < messageCount; i++) {
+      messenger.send(COUNT_CHANNEL, message);
+    }
+    CompletableFuture<ByteBuffer> count = new CompletableFuture<>();
+    messenger.send(COUNT_DONE_CHANNEL, null, count::complete);
+    long countedMessages = await(count).getLong();
+    long messageNanos = System.nanoTime() - start;
+    if (countedMessages != messageCount) {
+      throw new IllegalStateException(
+          "Sent " + messageCount + " messages but " + countedMessages + " arrived");
+    }
+    System.out.println(
+        "two processes: add round trip "
+            + callNanos / 1000.0
+            + " us, "
+            + messageCount * 1000000000L / messageNanos
+            + " 16 byte messages/s");
+  }
+
+  /**
+   * Runs the benchmark, or with the arguments the benchmark passes to the second process, the
+   * file of the rings and their capacity, serves it.
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length == 2) {
+      serve(new File(args[0]), Integer.parseInt(args[1]));
+      return;
+    }
+    File file = File.createTempFile("pigeon", ".rings");
+    file.deleteOnExit();
+    int ringCapacity = 1 << 20;
+    SharedMemoryBinaryMessenger messenger =
+        new SharedMemoryBinaryMessenger(file, true, ringCapacity, Runnable::run);
+    CountDownLatch ready = new CountDownLatch(1);
+    messenger.setMessageHandler(READY_CHANNEL, (message, reply) -> ready.countDown());
+    Process child =
+        new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp",
+                System.getProperty("java.class.path"),
+                SharedMemoryMessengerBenchmark.class.getName(),
+                file.getPath(),
+                Integer.toString(ringCapacity))
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+    try {
+      if (!ready.await(30, TimeUnit.SECONDS)) {
+        throw new IllegalStateException("The second process didn't start in 30s");
+      }
+      measure(messenger);
+    } finally {
+      child.getOutputStream().close();
+      child.waitFor(10, TimeUnit.SECONDS);
+      messenger.close();
+    }
+  }
+}
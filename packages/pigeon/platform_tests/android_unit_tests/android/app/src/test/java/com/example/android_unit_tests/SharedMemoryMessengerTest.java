@@ -0,0 +1,151 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+
+import com.example.android_unit_tests.SharedMemoryMessenger.SharedMemoryBinaryMessenger;
+import com.example.android_unit_tests.SharedMemoryMessenger.SharedMemoryFlutterApi;
+import com.example.android_unit_tests.SharedMemoryMessenger.SharedMemoryHostApi;
+import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryMessenger;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class SharedMemoryMessengerTest {
+  private static final String COUNT_CHANNEL = "count";
+
+  private static class Adder implements SharedMemoryHostApi {
+    @Override
+    public Long add(Long x, Long y) {
+      return x + y;
+    }
+
+    @Override
+    public String echo(String value) {
+      return value;
+    }
+  }
+
+  private static <T> T await(CompletableFuture<T> future) throws Exception {
+    return future.get(30, TimeUnit.SECONDS);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Object call(BinaryMessenger messenger, String method, Object... args)
+      throws Exception {
+    BasicMessageChannel<Object> channel =
+        new BasicMessageChannel<>(
+            messenger,
+            "dev.flutter.pigeon.SharedMemoryHostApi." + method,
+            SharedMemoryHostApi.getCodec());
+    CompletableFuture<Object> reply = new CompletableFuture<>();
+    channel.send(new ArrayList<Object>(Arrays.asList(args)), reply::complete);
+    return ((Map<String, Object>) await(reply)).get("result");
+  }
+
+  @Test
+  public void hostAndFlutterApisInOneProcess() throws Exception {
+    File file = File.createTempFile("pigeon", ".rings");
+    file.deleteOnExit();
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    SharedMemoryBinaryMessenger host = new SharedMemoryBinaryMessenger(file, true, 4096, executor);
+    SharedMemoryBinaryMessenger client =
+        new SharedMemoryBinaryMessenger(file, false, 4096, executor);
+    try {
+      SharedMemoryHostApi.setup(host, new Adder());
+      assertEquals(5L, ((Number) call(client, "add", 2L, 3L)).longValue());
+      // Much bigger than a ring.
+      char[] chars = new char[1 << 20];
+      Arrays.fill(chars, 'b');
+      String value = new String(chars);
+      assertEquals(value, call(client, "echo", value));
+
+      new BasicMessageChannel<>(
+              client,
+              "dev.flutter.pigeon.SharedMemoryFlutterApi.greet",
+              SharedMemoryFlutterApi.getCodec())
+          .setMessageHandler(
+              (message, reply) -> reply.reply("Hello " + ((List<?>) message).get(0)));
+      CompletableFuture<String> greeting = new CompletableFuture<>();
+      new SharedMemoryFlutterApi(host).greet("rings", greeting::complete);
+      assertEquals("Hello rings", await(greeting));
+    } finally {
+      host.close();
+      client.close();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void messagesFromManyThreadsStayWhole() throws Exception {
+    File file = File.createTempFile("pigeon", ".rings");
+    file.deleteOnExit();
+    SharedMemoryBinaryMessenger sender =
+        new SharedMemoryBinaryMessenger(file, true, 1024, Runnable::run);
+    SharedMemoryBinaryMessenger receiver =
+        new SharedMemoryBinaryMessenger(file, false, 1024, Runnable::run);
+    int threadCount = 4;
+    int perThread = 10000;
+    CountDownLatch received = new CountDownLatch(threadCount * perThread);
+    long[] sums = new long[threadCount];
+    receiver.setMessageHandler(
+        COUNT_CHANNEL,
+        (message, reply) -> {
+          int thread = message.getInt();
+          for (int i = 0; i < 10; i++) {
+            sums[thread] += message.getLong();
+          }
+          received.countDown();
+        });
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < threadCount; t++) {
+      final int thread = t;
+      threads.add(
+          new Thread(
+              () -> {
+                for (int i = 0; i < perThread; i++) {
+                  ByteBuffer message = ByteBuffer.allocateDirect(84);
+                  message.putInt(thread);
+                  for (int j = 0; j < 10; j++) {
+                    message.putLong(i);
+                  }
+                  sender.send(COUNT_CHANNEL, message);
+                }
+              }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    assertTrue(received.await(30, TimeUnit.SECONDS));
+    for (long sum : sums) {
+      assertEquals(10L * perThread * (perThread - 1) / 2, sum);
+    }
+    sender.close();
+    receiver.close();
+  }
+
+  @Test
+  public void closeRepliesNullToPendingCalls() throws Exception {
+    File file = File.createTempFile("pigeon", ".rings");
+    file.deleteOnExit();
+    SharedMemoryBinaryMessenger messenger =
+        new SharedMemoryBinaryMessenger(file, true, 1024, Runnable::run);
+    CompletableFuture<ByteBuffer> reply = new CompletableFuture<>();
+    messenger.send("nobody", null, reply::complete);
+    messenger.close();
+    assertNull(await(reply));
+  }
+}
@@ -0,0 +1,69 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import com.example.android_unit_tests.SingleChannel.MultiChannelApi;
+import com.example.android_unit_tests.SingleChannel.SingleChannelApi;
+import io.flutter.plugin.common.BinaryMessenger;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+
+/**
+ * Compares the time {@code setup} takes for an API on a single channel with the same API on one
+ * channel per method, and prints both.
+ */
+public class SingleChannelBenchmark {
+  /** A messenger that drops everything, so only the work of {@code setup} is measured. */
+  private static class NullBinaryMessenger implements BinaryMessenger {
+    @Override
+    public void send(String channel, ByteBuffer message) {}
+
+    @Override
+    public void send(String channel, ByteBuffer message, BinaryReply callback) {}
+
+    @Override
+    public void setMessageHandler(String channel, BinaryMessageHandler handler) {}
+  }
+
+  /** Returns an implementation of {@code api} whose methods do nothing. */
+  private static <T> T makeApi(Class<T> api) {
+    return api.cast(
+        Proxy.newProxyInstance(
+            api.getClassLoader(), new Class<?>[] {api}, (proxy, method, args) -> null));
+  }
+
+  public static void main(String[] args) {
+    final int iterations = 100000;
+    BinaryMessenger binaryMessenger = new NullBinaryMessenger();
+    SingleChannelApi singleApi = makeApi(SingleChannelApi.class);
+    MultiChannelApi multiApi = makeApi(MultiChannelApi.class);
+    // Warm up.
+    for (int i = 0; i < iterations; i++) {
+      SingleChannelApi.setup(binaryMessenger, singleApi);
+      MultiChannelApi.setup(binaryMessenger, multiApi);
+    }
+    // The fastest of a few rounds is reported, so a GC pause doesn't decide it.
+    long singleNanos = Long.MAX_VALUE;
+    long multiNanos = Long.MAX_VALUE;
+    for (int round = 0; round < 5; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        SingleChannelApi.setup(binaryMessenger, singleApi);
+      }
+      singleNanos = Math.min(singleNanos, System.nanoTime() - start);
+      start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        MultiChannelApi.setup(binaryMessenger, multiApi);
+      }
+      multiNanos = Math.min(multiNanos, System.nanoTime() - start);
+    }
+    System.out.println(
+        "setup of 8 methods: single channel "
+            + singleNanos / iterations
+            + " ns, one channel per method "
+            + multiNanos / iterations
+            + " ns");
+  }
+}
@@ -0,0 +1,159 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.example.android_unit_tests.SingleChannel.MultiChannelApi;
+import com.example.android_unit_tests.SingleChannel.SingleChannelApi;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MessageCodec;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class SingleChannelTest {
+  /** A messenger that only counts registered handlers. */
+  private static class CountingBinaryMessenger implements BinaryMessenger {
+    int handlerCount = 0;
+
+    @Override
+    public void send(String channel, ByteBuffer message) {}
+
+    @Override
+    public void send(String channel, ByteBuffer message, BinaryReply callback) {}
+
+    @Override
+    public void setMessageHandler(String channel, BinaryMessageHandler handler) {
+      if (handler != null) {
+        handlerCount++;
+      }
+    }
+  }
+
+  private static BinaryMessenger.BinaryMessageHandler setupSingleChannel(
+      SingleChannelApi api) {
+    BinaryMessenger binaryMessenger = mock(BinaryMessenger.class);
+    SingleChannelApi.setup(binaryMessenger, api);
+    ArgumentCaptor<BinaryMessenger.BinaryMessageHandler> handler =
+        ArgumentCaptor.forClass(BinaryMessenger.BinaryMessageHandler.class);
+    verify(binaryMessenger)
+        .setMessageHandler(eq("dev.flutter.pigeon.SingleChannelApi"), handler.capture());
+    return handler.getValue();
+  }
+
+  private static Map<String, Object> call(
+      BinaryMessenger.BinaryMessageHandler handler, Object... args) {
+    MessageCodec<Object> codec = SingleChannelApi.getCodec();
+    ByteBuffer message = codec.encodeMessage(new ArrayList<Object>(Arrays.asList(args)));
+    message.rewind();
+    Object[] result = {null};
+    handler.onMessage(
+        message,
+        (bytes) -> {
+          if (bytes != null) {
+            bytes.rewind();
+            result[0] = codec.decodeMessage(bytes);
+          }
+        });
+    @SuppressWarnings("unchecked")
+    Map<String, Object> wrapped = (Map<String, Object>) result[0];
+    return wrapped;
+  }
+
+  private static int countLambdas(Class<?> klass) {
+    int count = 0;
+    for (Method method : klass.getDeclaredMethods()) {
+      if (method.getName().startsWith("lambda$")) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void registersOneHandler() {
+    CountingBinaryMessenger single = new CountingBinaryMessenger();
+    SingleChannelApi singleApi = mock(SingleChannelApi.class);
+    SingleChannelApi.setup(single, singleApi);
+    assertEquals(1, single.handlerCount);
+    // Every setup registers one handler, not one per method.
+    SingleChannelApi.setup(single, singleApi);
+    assertEquals(2, single.handlerCount);
+
+    CountingBinaryMessenger multi = new CountingBinaryMessenger();
+    MultiChannelApi multiApi = mock(MultiChannelApi.class);
+    MultiChannelApi.setup(multi, multiApi);
+    assertEquals(8, multi.handlerCount);
+    MultiChannelApi.setup(multi, multiApi);
+    assertEquals(16, multi.handlerCount);
+  }
+
+  @Test
+  public void generatesOneHandlerLambda() {
+    assertEquals(1, countLambdas(SingleChannelApi.class));
+    assertEquals(8, countLambdas(MultiChannelApi.class));
+  }
+
+  @Test
+  public void dispatchesByMethodIndex() {
+    SingleChannelApi api = mock(SingleChannelApi.class);
+    when(api.add(1L, 2L)).thenReturn(3L);
+    when(api.echo("hello")).thenReturn("hello");
+    when(api.half(3.0)).thenReturn(1.5);
+    BinaryMessenger.BinaryMessageHandler handler = setupSingleChannel(api);
+
+    assertEquals(3L, ((Number) call(handler, 0, 1, 2).get("result")).longValue());
+    assertEquals("hello", call(handler, 1, "hello").get("result"));
+    Map<String, Object> resetReply = call(handler, 3);
+    assertTrue(resetReply.containsKey("result"));
+    verify(api).reset();
+    assertEquals(1.5, call(handler, 6, 3.0).get("result"));
+  }
+
+  @Test
+  public void asyncMethod() {
+    SingleChannelApi api = mock(SingleChannelApi.class);
+    doAnswer(
+            invocation -> {
+              SingleChannel.Result<Long> result = invocation.getArgument(2);
+              result.success(5L);
+              return null;
+            })
+        .when(api)
+        .addAsync(anyLong(), anyLong(), any());
+    BinaryMessenger.BinaryMessageHandler handler = setupSingleChannel(api);
+    assertEquals(5L, ((Number) call(handler, 4, 2, 3).get("result")).longValue());
+  }
+
+  @Test
+  public void errorIsWrapped() {
+    SingleChannelApi api = mock(SingleChannelApi.class);
+    BinaryMessenger.BinaryMessageHandler handler = setupSingleChannel(api);
+    // A null argument for a non-null parameter.
+    Map<String, Object> wrapped = call(handler, 1, null);
+    assertTrue(wrapped.containsKey("error"));
+  }
+
+  @Test
+  public void unknownMethodIndex() {
+    SingleChannelApi api = mock(SingleChannelApi.class);
+    BinaryMessenger.BinaryMessageHandler handler = setupSingleChannel(api);
+    assertNull(call(handler, 100));
+  }
+
+  @Test
+  public void clearsHandler() {
+    BinaryMessenger binaryMessenger = mock(BinaryMessenger.class);
+    SingleChannelApi.setup(binaryMessenger, null);
+    verify(binaryMessenger)
+        .setMessageHandler(eq("dev.flutter.pigeon.SingleChannelApi"), isNull());
+  }
+}
@@ -0,0 +1,165 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import com.example.android_unit_tests.SocketMessenger.SocketBinaryMessenger;
+import com.example.android_unit_tests.SocketMessenger.SocketHostApi;
+import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryMessenger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares calls to {@link SocketHostApi} through a {@link SocketBinaryMessenger} over the loopback
+ * interface with calls through a messenger that calls handlers directly, and prints the round trip
+ * time and the rate of pipelined calls of both.
+ */
+public class SocketMessengerBenchmark {
+  /** A messenger that calls handlers directly, the way the engine's messenger does in process. */
+  private static class InMemoryBinaryMessenger implements BinaryMessenger {
+    final Map<String, BinaryMessageHandler> handlers = new HashMap<>();
+
+    private static ByteBuffer received(ByteBuffer message) {
+      if (message == null) {
+        return null;
+      }
+      ByteBuffer view = message.duplicate();
+      view.flip();
+      return view;
+    }
+
+    @Override
+    public void send(String channel, ByteBuffer message) {
+      send(channel, message, null);
+    }
+
+    @Override
+    public void send(String channel, ByteBuffer message, BinaryReply callback) {
+      handlers
+          .get(channel)
+          .onMessage(
+              received(message),
+              reply -> {
+                if (callback != null) {
+                  callback.reply(received(reply));
+                }
+              });
+    }
+
+    @Override
+    public void setMessageHandler(String channel, BinaryMessageHandler handler) {
+      handlers.put(channel, handler);
+    }
+
+    @Override
+    public TaskQueue makeBackgroundTaskQueue() {
+      return new TaskQueue() {};
+    }
+
+    @Override
+    public void setMessageHandler(
+        String channel, BinaryMessageHandler handler, TaskQueue taskQueue) {
+      setMessageHandler(channel, handler);
+    }
+  }
+
+  private static class Adder implements SocketHostApi {
+    @Override
+    public Long add(Long x, Long y) {
+      return x + y;
+    }
+
+    @Override
+    public String echo(String value) {
+      return value;
+    }
+  }
+
+  private static BasicMessageChannel<Object> addChannel(BinaryMessenger messenger) {
+    return new BasicMessageChannel<>(
+        messenger, "dev.flutter.pigeon.SocketHostApi.add", SocketHostApi.getCodec());
+  }
+
+  /** Returns the nanoseconds taken by {@code count} calls, made one after the other. */
+  private static long measureLatency(BinaryMessenger messenger, int count) throws Exception {
+    BasicMessageChannel<Object> channel = addChannel(messenger);
+    long start = System.nanoTime();
+    for (int i = 0; i < count; i++) {
+      CompletableFuture<Object> reply = new CompletableFuture<>();
+      channel.send(new ArrayList<Object>(Arrays.asList((long) i, 1L)), reply::complete);
+      reply.get(10, TimeUnit.SECONDS);
+    }
+    return System.nanoTime() - start;
+  }
+
+  /** Returns the nanoseconds taken by {@code count} calls, all made before the first reply. */
+  private static long measureThroughput(BinaryMessenger messenger, int count) throws Exception {
+    BasicMessageChannel<Object> channel = addChannel(messenger);
+    CountDownLatch replies = new CountDownLatch(count);
+    long start = System.nanoTime();
+    for (int i = 0; i < count; i++) {
+      channel.send(
+          new ArrayList<Object>(Arrays.asList((long) i, 1L)), reply -> replies.countDown());
+    }
+    if (!replies.await(30, TimeUnit.SECONDS)) {
+      throw new IllegalStateException("Calls weren't answered in 30s");
+    }
+    return System.nanoTime() - start;
+  }
+
+  public static void main(String[] args) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    SocketBinaryMessenger host;
+    SocketBinaryMessenger client;
+    try (ServerSocketChannel server = ServerSocketChannel.open()) {
+      server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      SocketChannel clientChannel = SocketChannel.open(server.getLocalAddress());
+      host = new SocketBinaryMessenger(server.accept(), executor);
+      client = new SocketBinaryMessenger(clientChannel, executor);
+    }
+    try {
+      InMemoryBinaryMessenger inMemory = new InMemoryBinaryMessenger();
+      SocketHostApi.setup(inMemory, new Adder());
+      SocketHostApi.setup(host, new Adder());
+      // Warms up both paths.
+      measureLatency(inMemory, 2000);
+      measureLatency(client, 2000);
+      int latencyCount = 5000;
+      int throughputCount = 100000;
+      long inMemoryLatency = measureLatency(inMemory, latencyCount) / latencyCount;
+      long socketLatency = measureLatency(client, latencyCount) / latencyCount;
+      long inMemoryNanos = measureThroughput(inMemory, throughputCount);
+      long socketNanos = measureThroughput(client, throughputCount);
+      System.out.println(
+          "add round trip: in memory "
+              + inMemoryLatency / 1000.0
+              + " us, socket "
+              + socketLatency / 1000.0
+              + " us; "
+              + throughputCount
+              + " pipelined calls: in memory "
+              + throughputCount * 1000000000L / inMemoryNanos
+              + " calls/s, socket "
+              + throughputCount * 1000000000L / socketNanos
+              + " calls/s");
+    } finally {
+      client.close();
+      host.close();
+      executor.shutdown();
+    }
+  }
+}
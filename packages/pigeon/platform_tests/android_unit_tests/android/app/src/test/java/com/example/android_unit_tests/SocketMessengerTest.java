@@ -0,0 +1,163 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+
+import com.example.android_unit_tests.SocketMessenger.SocketBinaryMessenger;
+import com.example.android_unit_tests.SocketMessenger.SocketFlutterApi;
+import com.example.android_unit_tests.SocketMessenger.SocketHostApi;
+import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryMessenger;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SocketMessengerTest {
+  private static class Adder implements SocketHostApi {
+    @Override
+    public Long add(Long x, Long y) {
+      return x + y;
+    }
+
+    @Override
+    public String echo(String value) {
+      return value;
+    }
+  }
+
+  private ExecutorService executor;
+  private SocketBinaryMessenger host;
+  private SocketBinaryMessenger client;
+
+  @Before
+  public void connect() throws IOException {
+    executor = Executors.newFixedThreadPool(4);
+    try (ServerSocketChannel server = ServerSocketChannel.open()) {
+      server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      SocketChannel clientChannel = SocketChannel.open(server.getLocalAddress());
+      host = new SocketBinaryMessenger(server.accept(), executor);
+      client = new SocketBinaryMessenger(clientChannel, executor);
+    }
+  }
+
+  @After
+  public void close() {
+    client.close();
+    host.close();
+    executor.shutdown();
+  }
+
+  private static <T> T await(CompletableFuture<T> future) throws Exception {
+    return future.get(10, TimeUnit.SECONDS);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Object callAdd(BinaryMessenger messenger, long x, long y) throws Exception {
+    BasicMessageChannel<Object> channel =
+        new BasicMessageChannel<>(
+            messenger, "dev.flutter.pigeon.SocketHostApi.add", SocketHostApi.getCodec());
+    CompletableFuture<Object> reply = new CompletableFuture<>();
+    channel.send(new ArrayList<Object>(Arrays.asList(x, y)), reply::complete);
+    return ((Map<String, Object>) await(reply)).get("result");
+  }
+
+  @Test
+  public void hostApiOverSocket() throws Exception {
+    SocketHostApi.setup(host, new Adder());
+    assertEquals(5L, ((Number) callAdd(client, 2, 3)).longValue());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void taskQueueMethodOverSocket() throws Exception {
+    SocketHostApi.setup(host, new Adder());
+    BasicMessageChannel<Object> channel =
+        new BasicMessageChannel<>(
+            client, "dev.flutter.pigeon.SocketHostApi.echo", SocketHostApi.getCodec());
+    CompletableFuture<Object> reply = new CompletableFuture<>();
+    // Bigger than the read buffer.
+    char[] chars = new char[1 << 20];
+    Arrays.fill(chars, 'a');
+    String value = new String(chars);
+    channel.send(new ArrayList<Object>(Arrays.asList(value)), reply::complete);
+    assertEquals(value, ((Map<String, Object>) await(reply)).get("result"));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void flutterApiOverSocket() throws Exception {
+    new BasicMessageChannel<>(
+            client, "dev.flutter.pigeon.SocketFlutterApi.greet", SocketFlutterApi.getCodec())
+        .setMessageHandler(
+            (message, reply) -> reply.reply("Hello " + ((List<Object>) message).get(0)));
+    CompletableFuture<String> greeting = new CompletableFuture<>();
+    new SocketFlutterApi(host).greet("socket", greeting::complete);
+    assertEquals("Hello socket", await(greeting));
+  }
+
+  @Test
+  public void repliesAreMatchedToCalls() throws Exception {
+    CountDownLatch secondReplied = new CountDownLatch(1);
+    client.setMessageHandler(
+        "slow",
+        (message, reply) -> {
+          ByteBuffer echo = ByteBuffer.allocateDirect(1);
+          echo.put(message.get(0));
+          if (message.get(0) == 1) {
+            try {
+              // The first call is held up until the second one has its reply.
+              assertTrue(secondReplied.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException exception) {
+              throw new RuntimeException(exception);
+            }
+          }
+          reply.reply(echo);
+        });
+    List<CompletableFuture<Byte>> replies = new ArrayList<>();
+    for (byte i = 1; i <= 2; i++) {
+      ByteBuffer message = ByteBuffer.allocateDirect(1);
+      message.put(i);
+      CompletableFuture<Byte> reply = new CompletableFuture<>();
+      host.send("slow", message, bytes -> reply.complete(bytes.get(0)));
+      replies.add(reply);
+    }
+    assertEquals(Byte.valueOf((byte) 2), await(replies.get(1)));
+    assertFalse(replies.get(0).isDone());
+    secondReplied.countDown();
+    assertEquals(Byte.valueOf((byte) 1), await(replies.get(0)));
+  }
+
+  @Test
+  public void missingHandlerRepliesNull() throws Exception {
+    CompletableFuture<ByteBuffer> reply = new CompletableFuture<>();
+    host.send("missing", null, reply::complete);
+    assertNull(await(reply));
+  }
+
+  @Test
+  public void closeRepliesNullToPendingCalls() throws Exception {
+    client.setMessageHandler("never", (message, reply) -> {});
+    CompletableFuture<ByteBuffer> reply = new CompletableFuture<>();
+    host.send("never", null, reply::complete);
+    host.close();
+    assertNull(await(reply));
+  }
+}
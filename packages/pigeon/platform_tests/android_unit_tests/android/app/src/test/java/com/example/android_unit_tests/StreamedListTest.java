@@ -0,0 +1,160 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.example.android_unit_tests.StreamedList.StreamedListApi;
+import com.example.android_unit_tests.StreamedList.StreamedListItem;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MessageCodec;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class StreamedListTest {
+  /** Implements the API by consuming the iterators. */
+  private static class IteratingApi implements StreamedListApi {
+    /** The message that {@code sum} checks is read one 32-bit element at a time, if set. */
+    ByteBuffer message;
+
+    int firstElementPosition = 0;
+    int elementsReadAhead = 0;
+
+    @Override
+    public Long sum(String label, Iterator<Long> values) {
+      long sum = 0;
+      int index = 0;
+      while (values.hasNext()) {
+        Long value = values.next();
+        if (value != null) {
+          sum += value;
+        }
+        index++;
+        if (message != null) {
+          // Each element is a type byte followed by a 32-bit int.
+          int elementsRead = (message.position() - firstElementPosition) / 5;
+          elementsReadAhead = Math.max(elementsReadAhead, elementsRead - index);
+        }
+      }
+      return sum;
+    }
+
+    @Override
+    public String joinNames(Iterator<StreamedListItem> items) {
+      StringBuilder result = new StringBuilder();
+      while (items.hasNext()) {
+        StreamedListItem item = items.next();
+        result.append(item == null ? "-" : item.getName());
+      }
+      return result.toString();
+    }
+  }
+
+  private static BinaryMessenger.BinaryMessageHandler setup(StreamedListApi api, String method) {
+    BinaryMessenger binaryMessenger = mock(BinaryMessenger.class);
+    StreamedListApi.setup(binaryMessenger, api);
+    ArgumentCaptor<BinaryMessenger.BinaryMessageHandler> handler =
+        ArgumentCaptor.forClass(BinaryMessenger.BinaryMessageHandler.class);
+    verify(binaryMessenger)
+        .setMessageHandler(eq("dev.flutter.pigeon.StreamedListApi." + method), handler.capture());
+    return handler.getValue();
+  }
+
+  private static Map<String, Object> call(
+      BinaryMessenger.BinaryMessageHandler handler, ByteBuffer message) {
+    MessageCodec<Object> codec = StreamedListApi.getCodec();
+    Object[] result = {null};
+    handler.onMessage(
+        message,
+        (bytes) -> {
+          bytes.rewind();
+          result[0] = codec.decodeMessage(bytes);
+        });
+    @SuppressWarnings("unchecked")
+    Map<String, Object> wrapped = (Map<String, Object>) result[0];
+    return wrapped;
+  }
+
+  private static ByteBuffer encode(Object... args) {
+    ByteBuffer message =
+        StreamedListApi.getCodec().encodeMessage(new ArrayList<Object>(Arrays.asList(args)));
+    message.rewind();
+    return message;
+  }
+
+  @Test
+  public void sum() {
+    BinaryMessenger.BinaryMessageHandler handler = setup(new IteratingApi(), "sum");
+    // Mixes 32-bit and 64-bit integers, as sent by Dart.
+    Map<String, Object> wrapped =
+        call(handler, encode("label", Arrays.asList(1, 2L, null, 1L << 40)));
+    assertEquals(3L + (1L << 40), ((Number) wrapped.get("result")).longValue());
+  }
+
+  @Test
+  public void customClassElements() {
+    BinaryMessenger.BinaryMessageHandler handler = setup(new IteratingApi(), "joinNames");
+    StreamedListItem first = new StreamedListItem();
+    first.setName("a");
+    StreamedListItem second = new StreamedListItem();
+    second.setName("b");
+    Map<String, Object> wrapped = call(handler, encode(Arrays.asList(first, null, second)));
+    assertEquals("a-b", wrapped.get("result"));
+  }
+
+  @Test
+  public void nullArgument() {
+    BinaryMessenger.BinaryMessageHandler handler = setup(new IteratingApi(), "sum");
+    Map<String, Object> wrapped = call(handler, encode(null, Arrays.asList(1, 2)));
+    assertTrue(wrapped.containsKey("error"));
+  }
+
+  @Test
+  public void clearsHandler() {
+    BinaryMessenger binaryMessenger = mock(BinaryMessenger.class);
+    StreamedListApi.setup(binaryMessenger, null);
+    verify(binaryMessenger).setMessageHandler(eq("dev.flutter.pigeon.StreamedListApi.sum"), isNull());
+  }
+
+  @Test
+  public void tenMillionElements() {
+    final int count = 10_000_000;
+    // Writes the message by hand, in the StandardMessageCodec format, so that the
+    // test doesn't hold the list either.
+    byte[] label = "label".getBytes(StandardCharsets.UTF_8);
+    ByteBuffer message =
+        ByteBuffer.allocateDirect(2 + 2 + label.length + 6 + count * 5)
+            .order(ByteOrder.nativeOrder());
+    message.put((byte) 12).put((byte) 2);
+    message.put((byte) 7).put((byte) label.length).put(label);
+    message.put((byte) 12).put((byte) 255).putInt(count);
+    int firstElementPosition = message.position();
+    long expected = 0;
+    for (int i = 0; i < count; i++) {
+      message.put((byte) 3).putInt(i % 1000);
+      expected += i % 1000;
+    }
+    message.flip();
+
+    IteratingApi api = new IteratingApi();
+    api.message = message;
+    api.firstElementPosition = firstElementPosition;
+    BinaryMessenger.BinaryMessageHandler handler = setup(api, "sum");
+    Map<String, Object> wrapped = call(handler, message);
+    assertEquals(expected, ((Number) wrapped.get("result")).longValue());
+    // Every element is decoded from the message when the handler asks for it,
+    // so no more than one element is held at a time however long the list is.
+    assertEquals(0, api.elementsReadAhead);
+    assertEquals(message.limit(), message.position());
+  }
+}
@@ -0,0 +1,202 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+
+import com.example.android_unit_tests.TraceSections.PigeonTrace;
+import com.example.android_unit_tests.TraceSections.Result;
+import com.example.android_unit_tests.TraceSections.TraceFlutterApi;
+import com.example.android_unit_tests.TraceSections.TraceHostApi;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MessageCodec;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Test;
+
+public class TraceSectionsTest {
+  private static final String ADD_CHANNEL = "dev.flutter.pigeon.TraceHostApi.add";
+  private static final String ECHO_CHANNEL = "dev.flutter.pigeon.TraceHostApi.echo";
+
+  /** A sink that records the sections it receives as strings. */
+  private static class RecordingSink implements PigeonTrace.Sink {
+    final List<String> events = new ArrayList<>();
+    boolean enabled = true;
+
+    @Override
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    @Override
+    public void beginSection(String name) {
+      events.add("begin " + name);
+    }
+
+    @Override
+    public void endSection() {
+      events.add("end");
+    }
+
+    @Override
+    public void beginAsyncSection(String name, int cookie) {
+      events.add("beginAsync " + name + " " + cookie);
+    }
+
+    @Override
+    public void endAsyncSection(String name, int cookie) {
+      events.add("endAsync " + name + " " + cookie);
+    }
+  }
+
+  /** A messenger that calls handlers directly and answers sends with a fixed reply. */
+  private static class EngineBinaryMessenger implements BinaryMessenger {
+    final Map<String, BinaryMessageHandler> handlers = new HashMap<>();
+    final List<BinaryReply> pendingReplies = new ArrayList<>();
+
+    @Override
+    public void send(String channel, ByteBuffer message) {}
+
+    @Override
+    public void send(String channel, ByteBuffer message, BinaryReply callback) {
+      pendingReplies.add(callback);
+    }
+
+    @Override
+    public void setMessageHandler(String channel, BinaryMessageHandler handler) {
+      handlers.put(channel, handler);
+    }
+
+    @SuppressWarnings("unchecked")
+    Object call(String channel, Object... args) {
+      MessageCodec<Object> codec = TraceHostApi.getCodec();
+      ByteBuffer message = codec.encodeMessage(new ArrayList<Object>(Arrays.asList(args)));
+      message.rewind();
+      Object[] result = {null};
+      handlers
+          .get(channel)
+          .onMessage(
+              message,
+              reply -> {
+                reply.rewind();
+                result[0] = ((Map<String, Object>) codec.decodeMessage(reply)).get("result");
+              });
+      return result[0];
+    }
+
+    void replyToSend(Object reply) {
+      ByteBuffer message = TraceFlutterApi.getCodec().encodeMessage(reply);
+      message.rewind();
+      pendingReplies.remove(0).reply(message);
+    }
+  }
+
+  /** An implementation that holds on to the results of {@code echo}. */
+  private static class HostApi implements TraceHostApi {
+    Result<String> pendingEcho;
+
+    @Override
+    public Long add(Long x, Long y) {
+      return x + y;
+    }
+
+    @Override
+    public void echo(String value, Result<String> result) {
+      pendingEcho = result;
+    }
+  }
+
+  private final RecordingSink sink = new RecordingSink();
+  private final EngineBinaryMessenger binaryMessenger = new EngineBinaryMessenger();
+
+  @After
+  public void tearDown() {
+    PigeonTrace.setSink(null);
+  }
+
+  @Test
+  public void systemTraceIsDisabledOnJvm() {
+    assertFalse(PigeonTrace.isEnabled());
+    assertEquals(0, PigeonTrace.beginAsyncSection("Pigeon:Test"));
+  }
+
+  @Test
+  public void hostApiCall() {
+    PigeonTrace.setSink(sink);
+    TraceHostApi.setup(binaryMessenger, new HostApi());
+    assertEquals(3L, ((Number) binaryMessenger.call(ADD_CHANNEL, 1L, 2L)).longValue());
+    assertEquals(
+        Arrays.asList(
+            "begin Pigeon:TraceHostApi.add:decode",
+            "end",
+            "begin Pigeon:TraceHostApi.add:handler",
+            "begin Pigeon:TraceHostApi.add:encode",
+            "end",
+            "end"),
+        sink.events);
+  }
+
+  @Test
+  public void asyncHostApiCall() {
+    PigeonTrace.setSink(sink);
+    HostApi api = new HostApi();
+    TraceHostApi.setup(binaryMessenger, api);
+    binaryMessenger.call(ECHO_CHANNEL, "hello");
+    assertEquals(
+        Arrays.asList(
+            "begin Pigeon:TraceHostApi.echo:decode",
+            "end",
+            "begin Pigeon:TraceHostApi.echo:handler",
+            "end"),
+        sink.events);
+    sink.events.clear();
+    api.pendingEcho.success("hello");
+    assertEquals(Arrays.asList("begin Pigeon:TraceHostApi.echo:encode", "end"), sink.events);
+  }
+
+  @Test
+  public void flutterApiCall() {
+    PigeonTrace.setSink(sink);
+    TraceFlutterApi api = new TraceFlutterApi(binaryMessenger);
+    String[] greeting = {null};
+    api.greet("Pigeon", reply -> greeting[0] = reply);
+    assertEquals(3, sink.events.size());
+    String beginAsync = sink.events.get(0);
+    assertTrue(beginAsync.startsWith("beginAsync Pigeon:TraceFlutterApi.greet "));
+    String cookie = beginAsync.substring(beginAsync.lastIndexOf(' ') + 1);
+    assertFalse(cookie.equals("0"));
+    assertEquals("begin Pigeon:TraceFlutterApi.greet:encode", sink.events.get(1));
+    binaryMessenger.replyToSend("Hello Pigeon");
+    assertEquals("Hello Pigeon", greeting[0]);
+    assertEquals(
+        Arrays.asList(
+            beginAsync,
+            "begin Pigeon:TraceFlutterApi.greet:encode",
+            "end",
+            "begin Pigeon:TraceFlutterApi.greet:decode",
+            "end",
+            "endAsync Pigeon:TraceFlutterApi.greet " + cookie),
+        sink.events);
+  }
+
+  @Test
+  public void disabledSinkReceivesNothing() {
+    sink.enabled = false;
+    PigeonTrace.setSink(sink);
+    TraceHostApi.setup(binaryMessenger, new HostApi());
+    assertEquals(3L, ((Number) binaryMessenger.call(ADD_CHANNEL, 1L, 2L)).longValue());
+    TraceFlutterApi api = new TraceFlutterApi(binaryMessenger);
+    String[] greeting = {null};
+    api.greet("Pigeon", reply -> greeting[0] = reply);
+    binaryMessenger.replyToSend("Hello Pigeon");
+    assertEquals("Hello Pigeon", greeting[0]);
+    assertTrue(sink.events.isEmpty());
+  }
+}
@@ -0,0 +1,53 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import com.example.android_unit_tests.AllDatatypes.HostEverything;
+import io.flutter.plugin.common.MessageCodec;
+import io.flutter.plugin.common.StandardMessageCodec;
+
+/**
+ * Compares the time the codec generated for all_datatypes.dart takes to encode typed arrays of a
+ * million elements with the time {@link StandardMessageCodec} takes, and prints both.
+ */
+public class TypedArrayBenchmark {
+  /** Returns the fastest of a few encodes of {@code value}, in nanoseconds. */
+  private static long timeEncode(MessageCodec<Object> codec, Object value) {
+    long fastest = Long.MAX_VALUE;
+    for (int i = 0; i < 5; i++) {
+      long start = System.nanoTime();
+      codec.encodeMessage(value);
+      fastest = Math.min(fastest, System.nanoTime() - start);
+    }
+    return fastest;
+  }
+
+  public static void main(String[] args) {
+    int[] ints = new int[1000000];
+    long[] longs = new long[1000000];
+    double[] doubles = new double[1000000];
+    for (int i = 0; i < ints.length; i++) {
+      ints[i] = i;
+      longs[i] = (long) i << 20;
+      doubles[i] = i * 0.5;
+    }
+    MessageCodec<Object> codec = HostEverything.getCodec();
+    for (Object array : new Object[] {ints, longs, doubles}) {
+      // Warms up both codecs.
+      timeEncode(StandardMessageCodec.INSTANCE, array);
+      timeEncode(codec, array);
+      long standardNanos = timeEncode(StandardMessageCodec.INSTANCE, array);
+      long generatedNanos = timeEncode(codec, array);
+      System.out.println(
+          "1M "
+              + array.getClass().getComponentType()
+              + ": StandardMessageCodec "
+              + standardNanos / 1000
+              + " us, generated codec "
+              + generatedNanos / 1000
+              + " us");
+    }
+  }
+}
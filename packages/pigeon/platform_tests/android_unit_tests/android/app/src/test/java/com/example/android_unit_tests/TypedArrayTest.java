@@ -0,0 +1,71 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+
+import com.example.android_unit_tests.AllDatatypes.Everything;
+import com.example.android_unit_tests.AllDatatypes.HostEverything;
+import io.flutter.plugin.common.MessageCodec;
+import io.flutter.plugin.common.StandardMessageCodec;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class TypedArrayTest {
+  private static byte[] encode(MessageCodec<Object> codec, Object value) {
+    ByteBuffer message = codec.encodeMessage(value);
+    message.rewind();
+    byte[] bytes = new byte[message.remaining()];
+    message.get(bytes);
+    return bytes;
+  }
+
+  private static Object roundTrip(MessageCodec<Object> codec, Object value) {
+    ByteBuffer message = codec.encodeMessage(value);
+    message.rewind();
+    return codec.decodeMessage(message);
+  }
+
+  @Test
+  public void sameBytesAsStandardMessageCodec() {
+    int[] ints = {1, -2, Integer.MAX_VALUE, Integer.MIN_VALUE};
+    long[] longs = {1L, -2L, Long.MAX_VALUE, Long.MIN_VALUE};
+    double[] doubles = {0.5, -1.0, Double.NaN, Double.MAX_VALUE};
+    // The strings move the arrays to positions that need alignment.
+    List<Object> message = Arrays.asList("a", ints, "bc", longs, "def", doubles, new int[0]);
+    assertArrayEquals(
+        encode(StandardMessageCodec.INSTANCE, message), encode(HostEverything.getCodec(), message));
+  }
+
+  @Test
+  public void roundTripsEverything() {
+    Everything everything = new Everything();
+    everything.setA4ByteArray(new int[] {1, 2, 3});
+    everything.setA8ByteArray(new long[] {1L << 40});
+    everything.setAFloatArray(new double[] {0.25, 0.5});
+    Everything readEverything = (Everything) roundTrip(HostEverything.getCodec(), everything);
+    assertArrayEquals(new int[] {1, 2, 3}, readEverything.getA4ByteArray());
+    assertArrayEquals(new long[] {1L << 40}, readEverything.getA8ByteArray());
+    assertEquals(0.5, readEverything.getAFloatArray()[1], 0.0);
+  }
+
+  @Test
+  public void largeArraysMatchStandardMessageCodec() {
+    int[] ints = new int[100000];
+    long[] longs = new long[100000];
+    double[] doubles = new double[100000];
+    for (int i = 0; i < ints.length; i++) {
+      ints[i] = i;
+      longs[i] = (long) i << 20;
+      doubles[i] = i * 0.5;
+    }
+    MessageCodec<Object> codec = HostEverything.getCodec();
+    for (Object array : new Object[] {ints, longs, doubles}) {
+      assertArrayEquals(encode(StandardMessageCodec.INSTANCE, array), encode(codec, array));
+    }
+  }
+}
@@ -0,0 +1,200 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.example.android_unit_tests;
+
+import static org.junit.Assert.*;
+
+import com.example.android_unit_tests.AllDatatypes.Everything;
+import com.example.android_unit_tests.AllDatatypes.HostEverything;
+import com.example.android_unit_tests.Primitive.PrimitiveHostApi;
+import com.example.android_unit_tests.VarintIntegers.VarintColor;
+import com.example.android_unit_tests.VarintIntegers.VarintEverything;
+import com.example.android_unit_tests.VarintIntegers.VarintHostApi;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MessageCodec;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class VarintIntegersTest {
+  /** A messenger that holds on to the handlers that are set. */
+  private static class HandlerBinaryMessenger implements BinaryMessenger {
+    final Map<String, BinaryMessageHandler> handlers = new HashMap<>();
+
+    @Override
+    public void send(String channel, ByteBuffer message) {}
+
+    @Override
+    public void send(String channel, ByteBuffer message, BinaryReply callback) {}
+
+    @Override
+    public void setMessageHandler(String channel, BinaryMessageHandler handler) {
+      handlers.put(channel, handler);
+    }
+  }
+
+  private static Object roundTrip(MessageCodec<Object> codec, Object value) {
+    ByteBuffer message = codec.encodeMessage(value);
+    message.rewind();
+    return codec.decodeMessage(message);
+  }
+
+  private static int encodedSize(MessageCodec<Object> codec, Object value) {
+    return codec.encodeMessage(value).limit();
+  }
+
+  private static List<Object> makeIds(int count) {
+    List<Object> ids = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      ids.add((long) i);
+    }
+    return ids;
+  }
+
+  @Test
+  public void integersAreReadAsLong() {
+    MessageCodec<Object> codec = VarintHostApi.getCodec();
+    long[] values = {
+      0, 1, -1, 63, -64, 64, 127, 128, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE,
+      Long.MIN_VALUE
+    };
+    for (long value : values) {
+      assertEquals(value, roundTrip(codec, value));
+    }
+    // Integers decode as Long too.
+    assertEquals(5L, roundTrip(codec, 5));
+    assertEquals(Arrays.asList((Object) 1L, "a", 2.5), roundTrip(codec, Arrays.asList(1, "a", 2.5)));
+  }
+
+  @Test
+  public void smallIntegersTakeOneByte() {
+    MessageCodec<Object> codec = VarintHostApi.getCodec();
+    // One byte for the type and one for the value.
+    assertEquals(2, encodedSize(codec, 0L));
+    assertEquals(2, encodedSize(codec, -64L));
+    assertEquals(2, encodedSize(codec, 63L));
+    assertEquals(3, encodedSize(codec, 64L));
+    assertEquals(11, encodedSize(codec, Long.MIN_VALUE));
+  }
+
+  /** Calls the handler of {@code method} with {@code args} and returns the decoded reply. */
+  private static Object callHandler(
+      HandlerBinaryMessenger binaryMessenger, String method, Object... args) {
+    MessageCodec<Object> codec = VarintHostApi.getCodec();
+    ByteBuffer message = codec.encodeMessage(new ArrayList<Object>(Arrays.asList(args)));
+    message.rewind();
+    Object[] reply = {null};
+    binaryMessenger
+        .handlers
+        .get("dev.flutter.pigeon.VarintHostApi." + method)
+        .onMessage(
+            message,
+            (bytes) -> {
+              bytes.rewind();
+              reply[0] = codec.decodeMessage(bytes);
+            });
+    return reply[0];
+  }
+
+  @Test
+  public void handlerReceivesLong() {
+    HandlerBinaryMessenger binaryMessenger = new HandlerBinaryMessenger();
+    Long[] received = {null};
+    VarintColor[] receivedColor = {null};
+    VarintHostApi api =
+        new VarintHostApi() {
+          @Override
+          public VarintEverything echo(VarintEverything everything) {
+            return everything;
+          }
+
+          @Override
+          public Long anInt(Long value) {
+            received[0] = value;
+            return value + 1;
+          }
+
+          @Override
+          public List<Object> aList(List<Object> value) {
+            return value;
+          }
+
+          @Override
+          public Map<String, Long> aStringIntMap(Map<String, Long> value) {
+            return value;
+          }
+
+          @Override
+          public void setColor(VarintColor color) {
+            receivedColor[0] = color;
+          }
+        };
+    VarintHostApi.setup(binaryMessenger, api);
+    @SuppressWarnings("unchecked")
+    Map<String, Object> wrapped = (Map<String, Object>) callHandler(binaryMessenger, "anInt", 41);
+    assertEquals(Long.valueOf(41L), received[0]);
+    assertEquals(42L, wrapped.get("result"));
+    // Enum arguments arrive as Long too.
+    callHandler(binaryMessenger, "setColor", VarintColor.blue.ordinal());
+    assertEquals(VarintColor.blue, receivedColor[0]);
+  }
+
+  @Test
+  public void dataClassRoundTrip() {
+    VarintEverything everything = new VarintEverything();
+    everything.setAnInt(-3L);
+    everything.setAList(makeIds(10));
+    everything.setAColor(VarintColor.green);
+    VarintEverything readEverything =
+        (VarintEverything) roundTrip(VarintHostApi.getCodec(), everything);
+    assertEquals(Long.valueOf(-3L), readEverything.getAnInt());
+    assertEquals(makeIds(10), readEverything.getAList());
+    assertEquals(VarintColor.green, readEverything.getAColor());
+  }
+
+  private static Map<String, Object> makeCounters(int count) {
+    Map<String, Object> counters = new HashMap<>();
+    for (int i = 0; i < count; i++) {
+      counters.put("counter" + i, (long) i);
+    }
+    return counters;
+  }
+
+  @Test
+  public void primitiveMessagesAreSmaller() {
+    MessageCodec<Object> codec = PrimitiveHostApi.getCodec();
+    MessageCodec<Object> varintCodec = VarintPrimitive.PrimitiveHostApi.getCodec();
+    for (Object value : new Object[] {42L, makeIds(1000), makeCounters(100)}) {
+      List<Object> args = Arrays.asList(value);
+      assertEquals(args, roundTrip(varintCodec, args));
+      assertTrue(encodedSize(varintCodec, args) < encodedSize(codec, args));
+    }
+    List<Object> ids = Arrays.asList((Object) makeIds(1000));
+    assertTrue(encodedSize(varintCodec, ids) * 2 < encodedSize(codec, ids));
+  }
+
+  @Test
+  public void allDatatypesMessageIsSmaller() {
+    Everything everything = new Everything();
+    everything.setAnInt(42L);
+    everything.setAList(makeIds(1000));
+    everything.setMapWithObject(makeCounters(100));
+    VarintAllDatatypes.Everything varintEverything = new VarintAllDatatypes.Everything();
+    varintEverything.setAnInt(42L);
+    varintEverything.setAList(makeIds(1000));
+    varintEverything.setMapWithObject(makeCounters(100));
+    MessageCodec<Object> varintCodec = VarintAllDatatypes.HostEverything.getCodec();
+    VarintAllDatatypes.Everything readEverything =
+        (VarintAllDatatypes.Everything) roundTrip(varintCodec, varintEverything);
+    assertEquals(makeIds(1000), readEverything.getAList());
+    assertTrue(
+        encodedSize(varintCodec, Arrays.asList(varintEverything)) * 2
+            < encodedSize(HostEverything.getCodec(), Arrays.asList(everything)));
+  }
+}
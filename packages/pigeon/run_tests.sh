@@ -125,12 +125,14 @@ gen_ios_unittests_code() {
 gen_android_unittests_code() {
   local input=$1
   local javaName=$2
+  shift 2
   local javaOut="platform_tests/android_unit_tests/android/app/src/main/java/com/example/android_unit_tests/$javaName.java"
   $run_pigeon \
     --input $input \
     --dart_out /dev/null \
     --java_out $javaOut \
-    --java_package "com.example.android_unit_tests"
+    --java_package "com.example.android_unit_tests" \
+    "$@"
 
   java -jar ci/$java_formatter --replace $javaOut
   java -jar ci/$java_linter -c "ci/$google_checks" "$javaOut"
@@ -203,6 +205,7 @@ run_dart_compilation_tests() {
 
   test_pigeon_dart ./pigeons/all_void.dart $flutter_project_dir
   test_pigeon_dart ./pigeons/async_handlers.dart $flutter_project_dir
+  test_pigeon_dart ./pigeons/deadline.dart $flutter_project_dir
   test_pigeon_dart ./pigeons/host2flutter.dart $flutter_project_dir
   test_pigeon_dart ./pigeons/list.dart $flutter_project_dir
   test_pigeon_dart ./pigeons/message.dart $flutter_project_dir
@@ -276,22 +279,48 @@ run_ios_e2e_tests() {
 
 run_android_unittests() {
   pushd $PWD
+  gen_android_unittests_code ./pigeons/adaptive_task_queue.dart AdaptiveTaskQueue
   gen_android_unittests_code ./pigeons/all_datatypes.dart AllDatatypes
+  gen_android_unittests_code ./pigeons/all_datatypes.dart VarintAllDatatypes --varint_integers
   gen_android_unittests_code ./pigeons/all_void.dart AllVoid
   gen_android_unittests_code ./pigeons/android_unittests.dart Pigeon
   gen_android_unittests_code ./pigeons/async_handlers.dart AsyncHandlers
   gen_android_unittests_code ./pigeons/background_platform_channels.dart BackgroundPlatformChannels
+  gen_android_unittests_code ./pigeons/bounded_task_queue.dart BoundedTaskQueue
+  gen_android_unittests_code ./pigeons/coalesce.dart Coalesce
+  gen_android_unittests_code ./pigeons/coalesce_timeouts.dart CoalesceTimeouts
+  gen_android_unittests_code ./pigeons/columnar.dart Columnar
+  gen_android_unittests_code ./pigeons/deadline.dart Deadline
   gen_android_unittests_code ./pigeons/enum.dart Enum
   gen_android_unittests_code ./pigeons/enum_args.dart EnumArgs
+  gen_android_unittests_code ./pigeons/extended_type_tags.dart ExtendedTypeTags
+  gen_android_unittests_code ./pigeons/flutter_api_backpressure.dart FlutterApiBackpressure
+  gen_android_unittests_code ./pigeons/flutter_api_backpressure_timeouts.dart FlutterApiBackpressureTimeouts
+  gen_android_unittests_code ./pigeons/flutter_api_fan_out.dart FlutterApiFanOut
+  gen_android_unittests_code ./pigeons/flutter_api_thread_safe.dart FlutterApiThreadSafe
+  gen_android_unittests_code ./pigeons/flutter_api_timeouts.dart FlutterApiTimeouts
   gen_android_unittests_code ./pigeons/host2flutter.dart Host2Flutter
+  gen_android_unittests_code ./pigeons/immutable.dart Immutable
   gen_android_unittests_code ./pigeons/java_double_host_api.dart JavaDoubleHostApi
+  gen_android_unittests_code ./pigeons/large_blob.dart LargeBlob
   gen_android_unittests_code ./pigeons/list.dart PigeonList
   gen_android_unittests_code ./pigeons/message.dart MessagePigeon
   gen_android_unittests_code ./pigeons/multiple_arity.dart MultipleArity
   gen_android_unittests_code ./pigeons/non_null_fields.dart NonNullFields
   gen_android_unittests_code ./pigeons/null_fields.dart NullFields
   gen_android_unittests_code ./pigeons/nullable_returns.dart NullableReturns
+  gen_android_unittests_code ./pigeons/offset_indexed.dart OffsetIndexed
+  gen_android_unittests_code ./pigeons/pipelined_async.dart PipelinedAsync
+  gen_android_unittests_code ./pigeons/presence_bitmap.dart PresenceBitmap
+  gen_android_unittests_code ./pigeons/preserve_references.dart PreserveReferences
   gen_android_unittests_code ./pigeons/primitive.dart Primitive
+  gen_android_unittests_code ./pigeons/primitive.dart VarintPrimitive --varint_integers
+  gen_android_unittests_code ./pigeons/shared_memory_messenger.dart SharedMemoryMessenger
+  gen_android_unittests_code ./pigeons/single_channel.dart SingleChannel
+  gen_android_unittests_code ./pigeons/socket_messenger.dart SocketMessenger
+  gen_android_unittests_code ./pigeons/streamed_list.dart StreamedList
+  gen_android_unittests_code ./pigeons/trace_sections.dart TraceSections
+  gen_android_unittests_code ./pigeons/varint_integers.dart VarintIntegers
   gen_android_unittests_code ./pigeons/void_arg_flutter.dart VoidArgFlutter
   gen_android_unittests_code ./pigeons/void_arg_host.dart VoidArgHost
   gen_android_unittests_code ./pigeons/voidflutter.dart VoidFlutter
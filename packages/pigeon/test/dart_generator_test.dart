@@ -1234,4 +1234,393 @@ name: foobar
       expect(code, contains('///$comment'));
     }
   });
+
+  test('large blob field', () {
+    final Root root = Root(apis: <Api>[], classes: <Class>[
+      Class(name: 'Foobar', fields: <NamedType>[
+        NamedType(
+            type: const TypeDeclaration(
+              baseName: 'Uint8List',
+              isNullable: false,
+            ),
+            name: 'data',
+            largeBlobThreshold: 1024),
+      ]),
+    ], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    generateDart(const DartOptions(), root, sink);
+    final String code = sink.toString();
+    expect(code,
+        contains("import 'dart:io' show Directory, File, RandomAccessFile;"));
+    expect(code, contains("pigeonMap['data'] = _encodeLargeBlob(data, 1024);"));
+    expect(code, contains("data: _decodeLargeBlob(pigeonMap['data'])!,"));
+    expect(code, contains('Uint8List? _decodeLargeBlob(Object? value) {'));
+    expect(
+        code,
+        contains(
+            r"Directory('${Directory.systemTemp.path}/pigeon_blobs');"));
+    expect(code,
+        contains("final File file = _largeBlobFile(value['path']! as String);"));
+  });
+
+  test('single channel host api', () {
+    final Root root = Root(apis: <Api>[
+      Api(
+          name: 'Api',
+          location: ApiLocation.host,
+          isSingleChannel: true,
+          methods: <Method>[
+            Method(
+              name: 'add',
+              arguments: <NamedType>[
+                NamedType(
+                    name: 'x',
+                    type:
+                        const TypeDeclaration(isNullable: false, baseName: 'int')),
+                NamedType(
+                    name: 'y',
+                    type:
+                        const TypeDeclaration(isNullable: false, baseName: 'int')),
+              ],
+              returnType:
+                  const TypeDeclaration(baseName: 'int', isNullable: false),
+            ),
+            Method(
+              name: 'reset',
+              arguments: <NamedType>[],
+              returnType: const TypeDeclaration.voidDeclaration(),
+            ),
+          ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    generateDart(const DartOptions(), root, sink);
+    final String code = sink.toString();
+    expect(code, contains("'dev.flutter.pigeon.Api', codec"));
+    expect(code, isNot(contains('dev.flutter.pigeon.Api.add')));
+    expect(code, contains('channel.send(<Object?>[0, arg_x, arg_y])'));
+    expect(code, contains('channel.send(<Object?>[1])'));
+  });
+
+  test('columnar list field', () {
+    final Root root = Root(apis: <Api>[], classes: <Class>[
+      Class(name: 'Row', fields: <NamedType>[
+        NamedType(
+            name: 'id',
+            type: const TypeDeclaration(baseName: 'int', isNullable: false)),
+        NamedType(
+            name: 'score',
+            type: const TypeDeclaration(baseName: 'double', isNullable: true)),
+        NamedType(
+            name: 'name',
+            type: const TypeDeclaration(baseName: 'String', isNullable: true)),
+        NamedType(
+            name: 'state',
+            type: const TypeDeclaration(baseName: 'State', isNullable: false)),
+      ]),
+      Class(name: 'Table', fields: <NamedType>[
+        NamedType(
+            name: 'rows',
+            type: const TypeDeclaration(
+                baseName: 'List',
+                isNullable: true,
+                typeArguments: <TypeDeclaration>[
+                  TypeDeclaration(baseName: 'Row', isNullable: true)
+                ]),
+            isColumnar: true),
+      ]),
+    ], enums: <Enum>[
+      Enum(name: 'State', members: <String>['a', 'b']),
+    ]);
+    final StringBuffer sink = StringBuffer();
+    generateDart(const DartOptions(), root, sink);
+    final String code = sink.toString();
+    expect(code, contains('static Object encodeColumns(List<Row?> rows)'));
+    expect(code, contains('static List<Row?> decodeColumns(Object message)'));
+    expect(code, contains('final Int64List idColumn = Int64List(length);'));
+    expect(code, contains('final Float64List scoreColumn = Float64List(length);'));
+    expect(code, contains('<Object?>[nameTable, nameColumn],'));
+    expect(code, contains('stateColumn[row] = stateValue.index;'));
+    expect(code,
+        contains("pigeonMap['rows'] = rows == null ? null : Row.encodeColumns(rows!);"));
+    expect(code, contains("Row.decodeColumns(pigeonMap['rows']!)"));
+    expect(code, contains('bool _isColumnValuePresent(Uint8List bits, int row)'));
+  });
+
+  test('offset indexed list field', () {
+    final Root root = Root(apis: <Api>[], classes: <Class>[
+      Class(name: 'Item', fields: <NamedType>[
+        NamedType(
+            name: 'id',
+            type: const TypeDeclaration(baseName: 'int', isNullable: true)),
+      ]),
+      Class(name: 'Page', fields: <NamedType>[
+        NamedType(
+            name: 'items',
+            type: const TypeDeclaration(
+                baseName: 'List',
+                isNullable: true,
+                typeArguments: <TypeDeclaration>[
+                  TypeDeclaration(baseName: 'Item', isNullable: true)
+                ]),
+            isOffsetIndexed: true),
+        NamedType(
+            name: 'ids',
+            type: const TypeDeclaration(
+                baseName: 'List',
+                isNullable: false,
+                typeArguments: <TypeDeclaration>[
+                  TypeDeclaration(baseName: 'int', isNullable: true)
+                ]),
+            isOffsetIndexed: true),
+      ]),
+    ], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    generateDart(const DartOptions(), root, sink);
+    final String code = sink.toString();
+    expect(code, contains('show ByteData, Float64List'));
+    expect(code, contains('Object _encodeOffsetIndexed(Iterable<Object?> elements)'));
+    expect(code, contains('List<T> _decodeOffsetIndexed<T>('));
+    expect(
+        code,
+        contains(
+            "pigeonMap['items'] = items == null ? null : _encodeOffsetIndexed(items!.map((Item? e) => e?.encode()));"));
+    expect(code, contains("pigeonMap['ids'] = _encodeOffsetIndexed(ids);"));
+    expect(
+        code,
+        contains(
+            "_decodeOffsetIndexed<Item?>(pigeonMap['items']!, (Object? value) => value == null ? null : Item.decode(value))"));
+    expect(
+        code,
+        contains(
+            "_decodeOffsetIndexed<int?>(pigeonMap['ids']!, (Object? value) => value as int?)"));
+  });
+
+  test('presence bitmap class', () {
+    final Root root = Root(apis: <Api>[], classes: <Class>[
+      Class(
+        name: 'Settings',
+        fields: <NamedType>[
+          NamedType(
+              name: 'name',
+              type: const TypeDeclaration(baseName: 'String', isNullable: true)),
+          NamedType(
+              name: 'mode',
+              type: const TypeDeclaration(baseName: 'Mode', isNullable: true)),
+          NamedType(
+              name: 'nested',
+              type: const TypeDeclaration(baseName: 'Nested', isNullable: true)),
+        ],
+        hasPresenceBitmap: true,
+      ),
+      Class(
+        name: 'Nested',
+        fields: <NamedType>[
+          NamedType(
+              name: 'value',
+              type: const TypeDeclaration(baseName: 'int', isNullable: true)),
+        ],
+        hasPresenceBitmap: true,
+      ),
+    ], enums: <Enum>[
+      Enum(name: 'Mode', members: <String>['a', 'b']),
+    ]);
+    final StringBuffer sink = StringBuffer();
+    generateDart(const DartOptions(), root, sink);
+    final String code = sink.toString();
+    expect(code, contains('return _encodePresenceBitmap(pigeonMap.values);'));
+    expect(
+        code,
+        contains(
+            "_decodePresenceBitmap(message, const <String>['name', 'mode', 'nested']);"));
+    expect(code,
+        contains('List<Object?> _encodePresenceBitmap(Iterable<Object?> values)'));
+  });
+
+  test('varint integers', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'add',
+          arguments: <NamedType>[
+            NamedType(
+                name: 'value',
+                type: const TypeDeclaration(baseName: 'int', isNullable: false))
+          ],
+          returnType: const TypeDeclaration(baseName: 'int', isNullable: false),
+        )
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    generateDart(const DartOptions(varintIntegers: true), root, sink);
+    final String code = sink.toString();
+    expect(code, contains('class _ApiCodec extends StandardMessageCodec'));
+    expect(code, contains('void _writeVarint(WriteBuffer buffer, int value)'));
+    expect(code, contains('buffer.putUint8(127);'));
+    expect(code, contains('case 127:'));
+    expect(code, contains('return _readVarint(buffer);'));
+  });
+
+  test('preserve references', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'echo',
+          arguments: <NamedType>[
+            NamedType(
+                name: 'nested',
+                type: const TypeDeclaration(
+                    baseName: 'Nested', isNullable: false))
+          ],
+          returnType:
+              const TypeDeclaration(baseName: 'Nested', isNullable: false),
+        )
+      ])
+    ], classes: <Class>[
+      Class(name: 'Nested', fields: <NamedType>[
+        NamedType(
+            name: 'request',
+            type: const TypeDeclaration(baseName: 'Request', isNullable: true)),
+      ]),
+      Class(name: 'Request', fields: <NamedType>[
+        NamedType(
+            name: 'query',
+            type: const TypeDeclaration(baseName: 'String', isNullable: true)),
+      ]),
+    ], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    generateDart(const DartOptions(preserveReferences: true), root, sink);
+    final String code = sink.toString();
+    expect(code,
+        contains('static final Expando<Map<Object, int>> _writtenObjects'));
+    expect(code, contains('if (!_writeReference(buffer, value))'));
+    expect(code, contains('_addWrittenObject(buffer, value);'));
+    expect(code, contains('case 126:'));
+    expect(
+        code,
+        contains(
+            'return _addReadObject(buffer, Nested.decode(readValue(buffer)!));'));
+    expect(code, contains("pigeonMap['request'] = request;"));
+    expect(code, contains("request: pigeonMap['request'] as Request?"));
+  });
+
+  test('deadline host api method', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'add',
+          arguments: <NamedType>[
+            NamedType(
+                name: 'x',
+                type: const TypeDeclaration(isNullable: false, baseName: 'int')),
+          ],
+          returnType: const TypeDeclaration(baseName: 'int', isNullable: false),
+          hasDeadline: true,
+        ),
+        Method(
+          name: 'reset',
+          arguments: <NamedType>[],
+          returnType: const TypeDeclaration.voidDeclaration(),
+          hasDeadline: true,
+        ),
+        Method(
+          name: 'other',
+          arguments: <NamedType>[],
+          returnType: const TypeDeclaration.voidDeclaration(),
+        ),
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    generateDart(const DartOptions(), root, sink);
+    final String code = sink.toString();
+    expect(code, contains('Future<int> add(int arg_x, {Duration? timeout}) async'));
+    expect(code, contains('Future<void> reset({Duration? timeout}) async'));
+    expect(code, contains('Future<void> other() async'));
+    expect(code,
+        contains('DateTime.now().add(timeout).millisecondsSinceEpoch;'));
+    expect(code, contains('channel.send(<Object?>[arg_x, deadline])'));
+    expect(code, contains('channel.send(<Object?>[deadline])'));
+    expect(code, contains('channel.send(null)'));
+    expect(code, contains('reply.timeout(timeout)'));
+  });
+
+  test('deadline single channel host api method', () {
+    final Root root = Root(apis: <Api>[
+      Api(
+          name: 'Api',
+          location: ApiLocation.host,
+          isSingleChannel: true,
+          methods: <Method>[
+            Method(
+              name: 'reset',
+              arguments: <NamedType>[],
+              returnType: const TypeDeclaration.voidDeclaration(),
+            ),
+            Method(
+              name: 'add',
+              arguments: <NamedType>[
+                NamedType(
+                    name: 'x',
+                    type: const TypeDeclaration(
+                        isNullable: false, baseName: 'int')),
+              ],
+              returnType:
+                  const TypeDeclaration(baseName: 'int', isNullable: false),
+              hasDeadline: true,
+            ),
+          ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    generateDart(const DartOptions(), root, sink);
+    final String code = sink.toString();
+    expect(code, contains('channel.send(<Object?>[0])'));
+    expect(code, contains('channel.send(<Object?>[1, arg_x, deadline])'));
+  });
+
+  test('extended codec types', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'echo',
+          arguments: <NamedType>[
+            NamedType(
+                name: 'value',
+                type: const TypeDeclaration(
+                    baseName: 'Object', isNullable: false)),
+          ],
+          returnType:
+              const TypeDeclaration(baseName: 'Object', isNullable: false),
+        ),
+      ]),
+    ],
+        classes: List<Class>.generate(
+            130,
+            (int i) => Class(
+                    name: 'Class${i.toString().padLeft(3, '0')}',
+                    fields: <NamedType>[
+                      NamedType(
+                          name: 'value',
+                          type: const TypeDeclaration(
+                              baseName: 'int', isNullable: true)),
+                    ])),
+        enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    generateDart(const DartOptions(), root, sink);
+    final String code = sink.toString();
+    expect(code, contains('case 254:'));
+    expect(code, contains('buffer.putUint8(254);'));
+    expect(code, contains('case 255:'));
+    expect(
+        code,
+        contains(
+            'return _readExtendedValueOfType(buffer.getUint16(), buffer);'));
+    expect(
+        code,
+        contains(
+            'Object? _readExtendedValueOfType(int type, ReadBuffer buffer)'));
+    expect(code, contains('case 2:'));
+    expect(code, contains('return Class129.decode(readValue(buffer)!);'));
+    expect(code, contains('buffer.putUint8(255);'));
+    expect(code, contains('buffer.putUint16(2);'));
+    expect(code, isNot(contains('buffer.putUint8(256);')));
+  });
 }
@@ -313,4 +313,48 @@ void main() {
             .length,
         1);
   });
+
+  test('getCodecClasses: extended types', () {
+    final Root root = Root(apis: <Api>[
+      Api(
+        name: 'Api1',
+        location: ApiLocation.flutter,
+        methods: <Method>[
+          Method(
+            name: 'foo',
+            arguments: <NamedType>[
+              NamedType(
+                  name: 'x',
+                  type: const TypeDeclaration(
+                      isNullable: false, baseName: 'Object')),
+            ],
+            returnType: const TypeDeclaration.voidDeclaration(),
+          )
+        ],
+      ),
+    ],
+        classes: List<Class>.generate(
+            130,
+            (int i) => Class(
+                    name: 'Foo${i.toString().padLeft(3, '0')}',
+                    fields: <NamedType>[
+                      NamedType(
+                          name: 'bar',
+                          type: const TypeDeclaration(
+                              baseName: 'int', isNullable: true)),
+                    ])),
+        enums: <Enum>[]);
+    expect(() => getCodecClasses(root.apis[0], root).toList(),
+        throwsA(isA<Exception>()));
+    final List<EnumeratedClass> classes =
+        getCodecClasses(root.apis[0], root, extendedTypes: true).toList();
+    expect(classes.length, 130);
+    expect(classes[126].name, 'Foo126');
+    expect(classes[126].enumeration, 254);
+    expect(classes[126].isExtended, isFalse);
+    expect(classes[127].name, 'Foo127');
+    expect(classes[127].isExtended, isTrue);
+    expect(classes[127].extendedEnumeration, 0);
+    expect(classes[129].extendedEnumeration, 2);
+  });
 }
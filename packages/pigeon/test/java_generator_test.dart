@@ -586,7 +586,7 @@ void main() {
     expect(
         code,
         contains(
-            'pigeonResult.setEnum1(enum1 == null ? null : Enum1.values()[(int)enum1])'));
+            'pigeonResult.setEnum1(enum1 == null ? null : Enum1.values()[((Number) enum1).intValue()])'));
   });
 
   test('primitive enum host', () {
@@ -613,7 +613,7 @@ void main() {
     expect(
         code,
         contains(
-            'Foo fooArg = args.get(0) == null ? null : Foo.values()[(int)args.get(0)];'));
+            'Foo fooArg = args.get(0) == null ? null : Foo.values()[((Number) args.get(0)).intValue()];'));
   });
 
   Iterable<String> makeIterable(String string) sync* {
@@ -1146,4 +1146,1345 @@ void main() {
           true);
     }
   });
+
+  test('large blob field', () {
+    final Root root = Root(apis: <Api>[], classes: <Class>[
+      Class(name: 'Foobar', fields: <NamedType>[
+        NamedType(
+            type: const TypeDeclaration(
+              baseName: 'Uint8List',
+              isNullable: true,
+            ),
+            name: 'data',
+            largeBlobThreshold: 1024),
+      ]),
+    ], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, contains('import java.nio.channels.FileChannel;'));
+    expect(code, contains('public static final class LargeBlobFiles'));
+    expect(
+        code,
+        contains(
+            'toMapResult.put("data", LargeBlobFiles.encode(data, 1024));'));
+    expect(
+        code, contains('pigeonResult.setData(LargeBlobFiles.decode(data));'));
+    expect(
+        code,
+        contains(
+            'public static final String DIRECTORY_NAME = "pigeon_blobs";'));
+    expect(code, isNot(contains('setDirectory')));
+    expect(code, contains('payloadFile((String) descriptor.get("path"))'));
+  });
+
+  test('no large blob field', () {
+    final Root root = Root(apis: <Api>[], classes: <Class>[
+      Class(name: 'Foobar', fields: <NamedType>[
+        NamedType(
+            type: const TypeDeclaration(
+              baseName: 'Uint8List',
+              isNullable: true,
+            ),
+            name: 'data'),
+      ]),
+    ], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, isNot(contains('FileChannel')));
+    expect(code, isNot(contains('LargeBlobFiles')));
+  });
+
+  test('flutter api timeouts', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.flutter, methods: <Method>[
+        Method(
+          name: 'doSomething',
+          arguments: <NamedType>[
+            NamedType(
+                type: const TypeDeclaration(
+                  baseName: 'String',
+                  isNullable: false,
+                ),
+                name: 'input')
+          ],
+          returnType:
+              const TypeDeclaration(baseName: 'String', isNullable: false),
+        )
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions =
+        JavaOptions(className: 'Messages', flutterApiTimeouts: true);
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code,
+        contains('import java.util.concurrent.atomic.AtomicInteger;'));
+    expect(code, contains('public static final class PendingReply {'));
+    expect(code, contains('public int getPendingReplyCount()'));
+    expect(
+        code,
+        contains(
+            'public void doSomething(@NonNull String inputArg, Reply<String> callback)'));
+    expect(code, contains('doSomething(inputArg, 0, callback, null);'));
+    expect(
+        code,
+        contains(
+            'public @NonNull PendingReply doSomething(@NonNull String inputArg, long timeoutMillis, Reply<String> callback, @Nullable Runnable onTimeout)'));
+    expect(code, contains('(Reply<String>) pending.finish();'));
+    expect(code, contains('boolean begin(@Nullable Runnable onSettled)'));
+    expect(code, contains('} catch (RuntimeException exception) {'));
+    expect(code, contains('pending.discard();'));
+    expect(code, contains('return pending;'));
+  });
+
+  test('flutter api without timeouts', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.flutter, methods: <Method>[
+        Method(
+          name: 'doSomething',
+          arguments: <NamedType>[],
+          returnType: const TypeDeclaration.voidDeclaration(),
+        )
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, contains('public void doSomething(Reply<Void> callback)'));
+    expect(code, isNot(contains('PendingReply')));
+    expect(code, isNot(contains('AtomicInteger')));
+  });
+
+  test('flutter api backpressure', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.flutter, methods: <Method>[
+        Method(
+          name: 'doSomething',
+          arguments: <NamedType>[],
+          returnType: const TypeDeclaration.voidDeclaration(),
+        )
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions =
+        JavaOptions(className: 'Messages', flutterApiBackpressure: true);
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, contains('import java.util.ArrayDeque;'));
+    expect(code, contains('public enum OverflowPolicy {'));
+    expect(code, contains('public static final class InFlightWindow {'));
+    expect(code,
+        contains('public Api(BinaryMessenger argBinaryMessenger, @Nullable InFlightWindow window)'));
+    expect(code, contains('this(argBinaryMessenger, null);'));
+    expect(code, contains('submitToWindow(() -> {'));
+    expect(code, contains('releaseWindow();'));
+    expect(code, isNot(contains('PendingReply')));
+  });
+
+  test('flutter api backpressure with timeouts', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.flutter, methods: <Method>[
+        Method(
+          name: 'doSomething',
+          arguments: <NamedType>[],
+          returnType: const TypeDeclaration.voidDeclaration(),
+        )
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(
+        className: 'Messages',
+        flutterApiBackpressure: true,
+        flutterApiTimeouts: true);
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(
+        code,
+        contains(
+            'PendingReply pending = PendingReply.create(callback, timeoutMillis, onTimeout, pendingReplyCount);'));
+    expect(code, isNot(contains('PendingReply.start(callback')));
+    // The window is released by the PendingReply, once the call is sent.
+    expect(code, contains('if (!pending.begin(() -> releaseWindow())) {'));
+    expect(code, isNot(contains('  releaseWindow();')));
+  });
+
+  test('coalesced flutter api method', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.flutter, methods: <Method>[
+        Method(
+          name: 'setProgress',
+          arguments: <NamedType>[
+            NamedType(
+                type: const TypeDeclaration(
+                  baseName: 'double',
+                  isNullable: false,
+                ),
+                name: 'progress')
+          ],
+          returnType: const TypeDeclaration.voidDeclaration(),
+          isCoalesced: true,
+        ),
+        Method(
+          name: 'other',
+          arguments: <NamedType>[],
+          returnType: const TypeDeclaration.voidDeclaration(),
+        ),
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, contains('private static final class Coalescer {'));
+    expect(code,
+        contains('private final Coalescer setProgressCoalescer = new Coalescer();'));
+    expect(code, contains('setProgressCoalescer.submit(() -> {'));
+    expect(code, contains('}, null);'));
+    expect(code, contains('setProgressCoalescer.complete();'));
+    expect(code, isNot(contains('otherCoalescer')));
+  });
+
+  test('coalesced flutter api method with timeouts', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.flutter, methods: <Method>[
+        Method(
+          name: 'setProgress',
+          arguments: <NamedType>[],
+          returnType: const TypeDeclaration.voidDeclaration(),
+          isCoalesced: true,
+        ),
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions =
+        JavaOptions(className: 'Messages', flutterApiTimeouts: true);
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, contains('}, pending::cancel);'));
+    // The coalescer is completed by the PendingReply, so that a call that
+    // times out or is cancelled doesn't hold back later calls.
+    expect(
+        code,
+        contains(
+            'if (!pending.begin(() -> setProgressCoalescer.complete())) {'));
+    expect(code, isNot(contains('  setProgressCoalescer.complete();')));
+  });
+
+  test('single channel host api', () {
+    final Root root = Root(apis: <Api>[
+      Api(
+          name: 'Api',
+          location: ApiLocation.host,
+          isSingleChannel: true,
+          methods: <Method>[
+            Method(
+              name: 'add',
+              arguments: <NamedType>[
+                NamedType(
+                    name: 'x',
+                    type:
+                        const TypeDeclaration(isNullable: false, baseName: 'int')),
+                NamedType(
+                    name: 'y',
+                    type:
+                        const TypeDeclaration(isNullable: false, baseName: 'int')),
+              ],
+              returnType:
+                  const TypeDeclaration(baseName: 'int', isNullable: false),
+            ),
+            Method(
+              name: 'reset',
+              arguments: <NamedType>[],
+              returnType: const TypeDeclaration.voidDeclaration(),
+            ),
+          ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect('new BasicMessageChannel<>'.allMatches(code).length, 1);
+    expect(
+        code,
+        contains(
+            'new BasicMessageChannel<>(binaryMessenger, "dev.flutter.pigeon.Api", getCodec());'));
+    expect(code, contains('switch (((Number)args.get(0)).intValue())'));
+    expect(code, contains('case 0: {'));
+    expect(code, contains('Number xArg = (Number)args.get(1);'));
+    expect(code, contains('Number yArg = (Number)args.get(2);'));
+    expect(code, contains('case 1: {'));
+    expect(code, contains('api.reset();'));
+    expect(code, contains('reply.reply(null);'));
+  });
+
+  test('immutable data class', () {
+    final Root root = Root(apis: <Api>[], classes: <Class>[
+      Class(name: 'Foobar', fields: <NamedType>[
+        NamedType(
+            type: const TypeDeclaration(
+              baseName: 'int',
+              isNullable: false,
+            ),
+            name: 'field1'),
+        NamedType(
+            type: const TypeDeclaration(
+              baseName: 'String',
+              isNullable: true,
+            ),
+            name: 'field2'),
+      ]),
+    ], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions =
+        JavaOptions(className: 'Messages', immutableDataClasses: true);
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, contains('public static final class Foobar'));
+    expect(code, contains('private final @NonNull Long field1;'));
+    expect(code, contains('private final @Nullable String field2;'));
+    expect(code,
+        contains('public Foobar(@NonNull Long field1, @Nullable String field2)'));
+    expect(code, contains('throw new IllegalStateException("Nonnull field \\"field1\\" is null.");'));
+    expect(code, contains('return new Foobar('));
+    expect(code, isNot(contains('class Builder')));
+    expect(code, isNot(contains('setField1')));
+    expect(code, isNot(contains('pigeonResult')));
+  });
+
+  test('columnar list field', () {
+    final Root root = Root(apis: <Api>[], classes: <Class>[
+      Class(name: 'Row', fields: <NamedType>[
+        NamedType(
+            name: 'id',
+            type: const TypeDeclaration(baseName: 'int', isNullable: false)),
+        NamedType(
+            name: 'score',
+            type: const TypeDeclaration(baseName: 'double', isNullable: true)),
+        NamedType(
+            name: 'name',
+            type: const TypeDeclaration(baseName: 'String', isNullable: true)),
+        NamedType(
+            name: 'state',
+            type: const TypeDeclaration(baseName: 'State', isNullable: false)),
+      ]),
+      Class(name: 'Table', fields: <NamedType>[
+        NamedType(
+            name: 'rows',
+            type: const TypeDeclaration(
+                baseName: 'List',
+                isNullable: true,
+                typeArguments: <TypeDeclaration>[
+                  TypeDeclaration(baseName: 'Row', isNullable: true)
+                ]),
+            isColumnar: true),
+      ]),
+    ], enums: <Enum>[
+      Enum(name: 'State', members: <String>['a', 'b']),
+    ]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, contains('import java.util.AbstractList;'));
+    expect(code,
+        contains('public static final class Columns extends AbstractList<Row>'));
+    expect(code, contains('private final @NonNull long[] idColumn;'));
+    expect(code, contains('private final @NonNull double[] scoreColumn;'));
+    expect(code, contains('private final @NonNull List<String> nameTable;'));
+    expect(code, contains('private final @NonNull int[] stateColumn;'));
+    expect(code, contains('public long getId(int row)'));
+    expect(code, contains('public boolean hasScore(int row)'));
+    expect(code, contains('pigeonResult.setScore(hasScore(row) ? getScore(row) : null);'));
+    expect(code,
+        contains('toMapResult.put("rows", (rows == null) ? null : Row.Columns.encode(rows));'));
+    expect(code,
+        contains('pigeonResult.setRows((rows == null) ? null : Row.Columns.decode(rows));'));
+    expect(code, contains('nameColumn[row] = indexInTable(nameTable, nameIndices, value.name);'));
+    expect(code, contains('stateColumn[row] = value.state.index;'));
+  });
+
+  test('streamed list argument', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'sum',
+          arguments: <NamedType>[
+            NamedType(
+                type: const TypeDeclaration(baseName: 'String', isNullable: false),
+                name: 'label'),
+            NamedType(
+                type: const TypeDeclaration(
+                    baseName: 'List',
+                    isNullable: false,
+                    typeArguments: <TypeDeclaration>[
+                      TypeDeclaration(baseName: 'int', isNullable: true)
+                    ]),
+                name: 'values'),
+          ],
+          returnType: const TypeDeclaration(baseName: 'int', isNullable: false),
+          isLastArgumentStreamed: true,
+        ),
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, contains('import java.util.Iterator;'));
+    expect(code,
+        contains('@NonNull Long sum(@NonNull String label, @NonNull Iterator<Long> values);'));
+    expect(code, contains('int readListSize(ByteBuffer buffer)'));
+    expect(code,
+        contains('binaryMessenger.setMessageHandler("dev.flutter.pigeon.Api.sum", (message, reply) -> {'));
+    expect(code, contains('Object labelArgValue = codec.readNextValue(buffer);'));
+    expect(code, contains('int valuesArgSize = codec.readListSize(buffer);'));
+    expect(code, contains('Iterator<Long> valuesArg = new Iterator<Long>() {'));
+    expect(code, contains('reply.reply(codec.encodeMessage(wrapped));'));
+    expect(code, isNot(contains('BasicMessageChannel<Object> channel')));
+  });
+
+  test('offset indexed list field', () {
+    final Root root = Root(apis: <Api>[], classes: <Class>[
+      Class(name: 'Item', fields: <NamedType>[
+        NamedType(
+            name: 'id',
+            type: const TypeDeclaration(baseName: 'int', isNullable: true)),
+      ]),
+      Class(name: 'Page', fields: <NamedType>[
+        NamedType(
+            name: 'items',
+            type: const TypeDeclaration(
+                baseName: 'List',
+                isNullable: true,
+                typeArguments: <TypeDeclaration>[
+                  TypeDeclaration(baseName: 'Item', isNullable: true)
+                ]),
+            isOffsetIndexed: true),
+        NamedType(
+            name: 'ids',
+            type: const TypeDeclaration(
+                baseName: 'List',
+                isNullable: false,
+                typeArguments: <TypeDeclaration>[
+                  TypeDeclaration(baseName: 'int', isNullable: true)
+                ]),
+            isOffsetIndexed: true),
+      ]),
+    ], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, contains('import java.util.concurrent.ForkJoinPool;'));
+    expect(code,
+        contains('public static final class OffsetIndexedList<T> extends AbstractList<T>'));
+    expect(code, contains('public void decodeAll(@NonNull ForkJoinPool pool)'));
+    expect(code, contains('import android.os.Build;'));
+    expect(code, contains('if (Build.VERSION.SDK_INT >= 24) {'));
+    expect(code, contains('decodeRange(0, elements.length);'));
+    expect(
+        code,
+        contains(
+            'toMapResult.put("items", (items == null) ? null : OffsetIndexedList.encode(items, pigeonElement -> pigeonElement.toMap()));'));
+    expect(
+        code,
+        contains(
+            'toMapResult.put("ids", (ids == null) ? null : OffsetIndexedList.encode(ids, pigeonElement -> pigeonElement));'));
+    expect(
+        code,
+        contains(
+            'pigeonResult.setItems((items == null) ? null : OffsetIndexedList.decode(items, pigeonValue -> (pigeonValue == null) ? null : Item.fromMap((Map<String, Object>) pigeonValue)));'));
+    expect(
+        code,
+        contains(
+            'OffsetIndexedList.decode(ids, pigeonValue -> (pigeonValue == null) ? null : ((Number) pigeonValue).longValue())'));
+  });
+
+  test('presence bitmap class', () {
+    final Root root = Root(apis: <Api>[], classes: <Class>[
+      Class(
+        name: 'Settings',
+        fields: <NamedType>[
+          NamedType(
+              name: 'name',
+              type: const TypeDeclaration(baseName: 'String', isNullable: true)),
+          NamedType(
+              name: 'mode',
+              type: const TypeDeclaration(baseName: 'Mode', isNullable: true)),
+          NamedType(
+              name: 'nested',
+              type: const TypeDeclaration(baseName: 'Nested', isNullable: true)),
+        ],
+        hasPresenceBitmap: true,
+      ),
+      Class(
+        name: 'Nested',
+        fields: <NamedType>[
+          NamedType(
+              name: 'value',
+              type: const TypeDeclaration(baseName: 'int', isNullable: true)),
+        ],
+        hasPresenceBitmap: true,
+      ),
+    ], enums: <Enum>[
+      Enum(name: 'Mode', members: <String>['a', 'b']),
+    ]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, isNot(contains('toMap()')));
+    expect(code, contains('@NonNull List<Object> toList()'));
+    expect(code,
+        contains('static @NonNull Settings fromList(@NonNull List<Object> list)'));
+    expect(code, contains('pigeonPresence |= 1L << 2;'));
+    expect(code,
+        contains('toListResult.add((nested == null) ? null : nested.toList());'));
+    expect(code, contains('switch (Long.numberOfTrailingZeros(pigeonBits))'));
+    expect(
+        code,
+        contains(
+            'pigeonResult.setNested((pigeonFieldValue == null) ? null : Nested.fromList((List<Object>)pigeonFieldValue));'));
+  });
+
+  test('presence bitmap immutable class', () {
+    final Root root = Root(apis: <Api>[], classes: <Class>[
+      Class(
+        name: 'Settings',
+        fields: <NamedType>[
+          NamedType(
+              name: 'name',
+              type: const TypeDeclaration(baseName: 'String', isNullable: true)),
+          NamedType(
+              name: 'mode',
+              type: const TypeDeclaration(baseName: 'Mode', isNullable: true)),
+          NamedType(
+              name: 'nested',
+              type: const TypeDeclaration(baseName: 'Nested', isNullable: true)),
+        ],
+        hasPresenceBitmap: true,
+      ),
+      Class(
+        name: 'Nested',
+        fields: <NamedType>[
+          NamedType(
+              name: 'value',
+              type: const TypeDeclaration(baseName: 'int', isNullable: true)),
+        ],
+        hasPresenceBitmap: true,
+      ),
+    ], enums: <Enum>[
+      Enum(name: 'Mode', members: <String>['a', 'b']),
+    ]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions =
+        JavaOptions(className: 'Messages', immutableDataClasses: true);
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, contains('Object name = null;'));
+    expect(code, contains('name = pigeonFieldValue;'));
+    expect(code, contains('return new Settings((String)name,'));
+  });
+
+  test('varint integers', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'add',
+          arguments: <NamedType>[
+            NamedType(
+                name: 'value',
+                type: const TypeDeclaration(baseName: 'int', isNullable: false))
+          ],
+          returnType: const TypeDeclaration(baseName: 'int', isNullable: false),
+        )
+      ])
+    ], classes: <Class>[
+      Class(name: 'Counter', fields: <NamedType>[
+        NamedType(
+            name: 'count',
+            type: const TypeDeclaration(baseName: 'int', isNullable: true)),
+      ]),
+    ], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions =
+        JavaOptions(className: 'Messages', varintIntegers: true);
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, contains('private static class ApiCodec'));
+    expect(code, contains('case (byte)127:'));
+    expect(code, contains('return readVarint(buffer);'));
+    expect(code, contains('value instanceof Long || value instanceof Integer'));
+    expect(
+        code, contains('writeVarint(stream, ((Number) value).longValue());'));
+    expect(code, contains('Long valueArg = (Long)args.get(0);'));
+    expect(code, isNot(contains('instanceof Integer) ? (Integer)')));
+  });
+
+  test('typed arrays are written in bulk', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'samples',
+          arguments: <NamedType>[
+            NamedType(
+                name: 'from',
+                type: const TypeDeclaration(
+                    baseName: 'Int32List', isNullable: false))
+          ],
+          returnType:
+              const TypeDeclaration(baseName: 'Samples', isNullable: false),
+        )
+      ])
+    ], classes: <Class>[
+      Class(name: 'Samples', fields: <NamedType>[
+        NamedType(
+            name: 'values',
+            type: const TypeDeclaration(
+                baseName: 'Float64List', isNullable: true)),
+      ]),
+    ], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, contains('import java.nio.ByteOrder;'));
+    expect(code, contains('private static void writeTypedArrayHeader('));
+    expect(code, contains('if (value instanceof int[])'));
+    expect(code,
+        contains('writeTypedArrayHeader(stream, 9, array.length, 4);'));
+    expect(
+        code,
+        contains(
+            'int count = Math.min(array.length - start, TYPED_ARRAY_CHUNK / 4);'));
+    expect(code, contains('chunk.asIntBuffer().put(array, start, count);'));
+    expect(code, contains('if (value instanceof double[])'));
+    expect(code, contains('chunk.asDoubleBuffer().put(array, start, count);'));
+    expect(code, isNot(contains('ByteBuffer.allocate(length * elementSize)')));
+    expect(code, isNot(contains('if (value instanceof long[])')));
+  });
+
+  test('no typed array writes without typed arrays', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'add',
+          arguments: <NamedType>[
+            NamedType(
+                name: 'value',
+                type: const TypeDeclaration(baseName: 'int', isNullable: false))
+          ],
+          returnType: const TypeDeclaration(baseName: 'int', isNullable: false),
+        )
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, isNot(contains('writeTypedArrayHeader')));
+    expect(code, isNot(contains('protected void writeValue')));
+  });
+
+  test('preserve references', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'echo',
+          arguments: <NamedType>[
+            NamedType(
+                name: 'nested',
+                type: const TypeDeclaration(
+                    baseName: 'Nested', isNullable: false))
+          ],
+          returnType:
+              const TypeDeclaration(baseName: 'Nested', isNullable: false),
+        )
+      ])
+    ], classes: <Class>[
+      Class(name: 'Nested', fields: <NamedType>[
+        NamedType(
+            name: 'request',
+            type: const TypeDeclaration(baseName: 'Request', isNullable: true)),
+      ]),
+      Class(name: 'Request', fields: <NamedType>[
+        NamedType(
+            name: 'query',
+            type: const TypeDeclaration(baseName: 'String', isNullable: true)),
+      ]),
+    ], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions =
+        JavaOptions(className: 'Messages', preserveReferences: true);
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, contains('import java.util.IdentityHashMap;'));
+    expect(code, contains('public ByteBuffer encodeMessage(Object message)'));
+    expect(code, contains('public Object decodeMessage(ByteBuffer message)'));
+    expect(code, contains('case (byte)126:'));
+    expect(code, contains('return readObjects.get().get(readSize(buffer));'));
+    expect(code, contains('if (!writeReference(stream, value))'));
+    expect(code, contains('addWrittenObject(value);'));
+    expect(
+        code,
+        contains(
+            'return addReadObject(Nested.fromMap((Map<String, Object>) readValue(buffer)));'));
+    expect(code, contains('toMapResult.put("request", request);'));
+    expect(code, contains('pigeonResult.setRequest((Request)request);'));
+  });
+
+  test('flutter api fan out', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.flutter, methods: <Method>[
+        Method(
+          name: 'add',
+          arguments: <NamedType>[
+            NamedType(
+                name: 'x',
+                type:
+                    const TypeDeclaration(baseName: 'int', isNullable: false)),
+            NamedType(
+                name: 'y',
+                type:
+                    const TypeDeclaration(baseName: 'int', isNullable: false)),
+          ],
+          returnType: const TypeDeclaration(baseName: 'int', isNullable: false),
+        ),
+        Method(
+          name: 'ping',
+          arguments: <NamedType>[],
+          returnType: const TypeDeclaration.voidDeclaration(),
+        ),
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions =
+        JavaOptions(className: 'Messages', flutterApiFanOut: true);
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, contains('import java.util.Collection;'));
+    expect(code, contains('import java.util.concurrent.atomic.AtomicInteger;'));
+    expect(code, contains('public static class FanOut {'));
+    expect(
+        code,
+        contains(
+            'public FanOut(@NonNull Collection<BinaryMessenger> argBinaryMessengers)'));
+    expect(code, contains('message.asReadOnlyBuffer()'));
+    expect(
+        code,
+        contains(
+            'public void add(@NonNull Long xArg, @NonNull Long yArg, Reply<List<Long>> callback)'));
+    expect(
+        code,
+        contains(
+            'ByteBuffer message = getCodec().encodeMessage(new ArrayList<Object>(Arrays.asList(xArg, yArg)));'));
+    expect(code, contains('public void ping(Reply<Void> callback)'));
+    expect(code,
+        contains('ByteBuffer message = getCodec().encodeMessage(null);'));
+  });
+
+  test('flutter api thread safe', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.flutter, methods: <Method>[
+        Method(
+          name: 'add',
+          arguments: <NamedType>[
+            NamedType(
+                name: 'x',
+                type:
+                    const TypeDeclaration(baseName: 'int', isNullable: false)),
+            NamedType(
+                name: 'y',
+                type:
+                    const TypeDeclaration(baseName: 'int', isNullable: false)),
+          ],
+          returnType: const TypeDeclaration(baseName: 'int', isNullable: false),
+        ),
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions =
+        JavaOptions(className: 'Messages', flutterApiThreadSafe: true);
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(
+        code, contains('import java.util.concurrent.ConcurrentLinkedQueue;'));
+    expect(code, contains('import java.util.concurrent.Executor;'));
+    expect(code, contains('import java.util.concurrent.atomic.AtomicBoolean;'));
+    expect(code, contains('public static final class PlatformThreadQueue {'));
+    expect(code, contains('if (drainScheduled.compareAndSet(false, true)) {'));
+    expect(code, contains('public static class ThreadSafe {'));
+    expect(
+        code,
+        contains(
+            'public ThreadSafe(@NonNull Api api, @NonNull PlatformThreadQueue queue)'));
+    expect(
+        code,
+        contains(
+            'public void add(@NonNull Long xArg, @NonNull Long yArg, Reply<Long> callback)'));
+    expect(code,
+        contains('queue.submit(() -> api.add(xArg, yArg, callback));'));
+  });
+
+  test('flutter api thread safe without flutter apis', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'ping',
+          arguments: <NamedType>[],
+          returnType: const TypeDeclaration.voidDeclaration(),
+        ),
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions =
+        JavaOptions(className: 'Messages', flutterApiThreadSafe: true);
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, isNot(contains('PlatformThreadQueue')));
+    expect(code, isNot(contains('ConcurrentLinkedQueue')));
+  });
+
+  test('socket messenger', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'ping',
+          arguments: <NamedType>[],
+          returnType: const TypeDeclaration.voidDeclaration(),
+        ),
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions =
+        JavaOptions(className: 'Messages', socketMessenger: true);
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, contains('import java.nio.channels.Selector;'));
+    expect(code, contains('import java.nio.channels.SocketChannel;'));
+    expect(code, contains('import java.util.concurrent.ConcurrentHashMap;'));
+    expect(
+        code,
+        contains(
+            'public abstract static class FramedBinaryMessenger implements BinaryMessenger, Closeable {'));
+    expect(
+        code,
+        contains(
+            'public static final class SocketBinaryMessenger extends FramedBinaryMessenger {'));
+    expect(code, isNot(contains('SharedMemoryBinaryMessenger')));
+    expect(
+        code,
+        contains(
+            'public SocketBinaryMessenger(@NonNull SocketChannel channel, @NonNull Executor executor) throws IOException {'));
+    expect(code, contains('channel.write(buffers)'));
+    expect(code, contains('ByteBuffer.allocateDirect(64 * 1024)'));
+    expect(code.split('import java.io.IOException;').length, 2);
+  });
+
+  test('socket messenger without apis', () {
+    final Root root = Root(apis: <Api>[], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions =
+        JavaOptions(className: 'Messages', socketMessenger: true);
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, isNot(contains('SocketBinaryMessenger')));
+  });
+
+  test('shared memory messenger', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'ping',
+          arguments: <NamedType>[],
+          returnType: const TypeDeclaration.voidDeclaration(),
+        ),
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions =
+        JavaOptions(className: 'Messages', sharedMemoryMessenger: true);
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, contains('import java.nio.MappedByteBuffer;'));
+    expect(code, contains('import java.util.concurrent.locks.LockSupport;'));
+    expect(code, isNot(contains('import java.nio.channels.Selector;')));
+    expect(
+        code,
+        contains(
+            'public abstract static class FramedBinaryMessenger implements BinaryMessenger, Closeable {'));
+    expect(
+        code,
+        contains(
+            'public static final class SharedMemoryBinaryMessenger extends FramedBinaryMessenger {'));
+    expect(
+        code,
+        contains(
+            'public SharedMemoryBinaryMessenger(@NonNull File file, boolean create, int ringCapacity, @NonNull Executor executor) throws IOException {'));
+    expect(code, contains('private final class Ring {'));
+    expect(code, isNot(contains('SocketBinaryMessenger')));
+  });
+
+  test('socket and shared memory messengers', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'ping',
+          arguments: <NamedType>[],
+          returnType: const TypeDeclaration.voidDeclaration(),
+        ),
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(
+        className: 'Messages',
+        socketMessenger: true,
+        sharedMemoryMessenger: true);
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code.split('class FramedBinaryMessenger ').length, 2);
+    expect(code.split('import java.io.IOException;').length, 2);
+    expect(code, contains('class SocketBinaryMessenger '));
+    expect(code, contains('class SharedMemoryBinaryMessenger '));
+  });
+
+  test('adaptive task queue', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'search',
+          arguments: <NamedType>[
+            NamedType(
+                type: const TypeDeclaration(
+                  baseName: 'String',
+                  isNullable: false,
+                ),
+                name: 'query')
+          ],
+          returnType: const TypeDeclaration(baseName: 'int', isNullable: false),
+          adaptiveBudgetMicroseconds: 4000,
+        ),
+        Method(
+          name: 'other',
+          arguments: <NamedType>[],
+          returnType: const TypeDeclaration.voidDeclaration(),
+        ),
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(
+        code,
+        contains(
+            'public static final class AdaptiveDispatch implements BinaryMessenger {'));
+    expect(code, contains('import java.util.concurrent.atomic.AtomicLong;'));
+    expect(
+        code,
+        contains(
+            'AdaptiveDispatch adaptiveDispatch = new AdaptiveDispatch(binaryMessenger, 4000000L);'));
+    expect(
+        code,
+        contains(
+            'new BasicMessageChannel<>(adaptiveDispatch, "dev.flutter.pigeon.Api.search", getCodec());'));
+    expect(
+        code,
+        contains(
+            'new BasicMessageChannel<>(binaryMessenger, "dev.flutter.pigeon.Api.other", getCodec());'));
+  });
+
+  test('no adaptive task queue', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'other',
+          arguments: <NamedType>[],
+          returnType: const TypeDeclaration.voidDeclaration(),
+        ),
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, isNot(contains('AdaptiveDispatch')));
+    expect(code, isNot(contains('AtomicLong')));
+  });
+
+  test('deadline host api method', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'add',
+          arguments: <NamedType>[
+            NamedType(
+                type: const TypeDeclaration(
+                  baseName: 'int',
+                  isNullable: false,
+                ),
+                name: 'x')
+          ],
+          returnType: const TypeDeclaration(baseName: 'int', isNullable: false),
+          hasDeadline: true,
+        ),
+        Method(
+          name: 'reset',
+          arguments: <NamedType>[],
+          returnType: const TypeDeclaration.voidDeclaration(),
+          isAsynchronous: true,
+          hasDeadline: true,
+        ),
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, contains('public static final class CallContext {'));
+    expect(code,
+        contains('@NonNull Long add(@NonNull Long x, @NonNull CallContext context);'));
+    expect(code,
+        contains('void reset(@NonNull CallContext context, Result<Void> result);'));
+    expect(code,
+        contains('CallContext context = CallContext.fromDeadline(args.get(1));'));
+    expect(code,
+        contains('CallContext context = CallContext.fromDeadline(args.get(0));'));
+    expect(code,
+        contains('reply.reply(CallContext.shed("dev.flutter.pigeon.Api.add"));'));
+    expect(code, contains('api.reset(context, resultCallback);'));
+  });
+
+  test('no deadline', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'reset',
+          arguments: <NamedType>[],
+          returnType: const TypeDeclaration.voidDeclaration(),
+        ),
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, isNot(contains('CallContext')));
+    expect(code, isNot(contains('ArrayList<Object> args')));
+  });
+
+  test('bounded task queue on method', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'render',
+          arguments: <NamedType>[
+            NamedType(
+                type: const TypeDeclaration(
+                  baseName: 'int',
+                  isNullable: false,
+                ),
+                name: 'page')
+          ],
+          returnType: const TypeDeclaration(baseName: 'int', isNullable: false),
+          boundedTaskQueue: const BoundedTaskQueue(
+              maxConcurrentCalls: 2, maxPendingCalls: 16),
+        ),
+        Method(
+          name: 'other',
+          arguments: <NamedType>[],
+          returnType: const TypeDeclaration.voidDeclaration(),
+        ),
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(
+        code,
+        contains(
+            'public static final class BoundedDispatch implements BinaryMessenger {'));
+    expect(code, contains('import java.util.concurrent.ThreadPoolExecutor;'));
+    expect(code,
+        contains('import java.util.concurrent.RejectedExecutionException;'));
+    expect(
+        code,
+        contains(
+            'BoundedDispatch boundedDispatch = new BoundedDispatch(binaryMessenger, getCodec(), 2, 16);'));
+    expect(
+        code,
+        contains(
+            'new BasicMessageChannel<>(boundedDispatch, "dev.flutter.pigeon.Api.render", getCodec());'));
+    expect(
+        code,
+        contains(
+            'new BasicMessageChannel<>(binaryMessenger, "dev.flutter.pigeon.Api.other", getCodec());'));
+    expect(code, isNot(contains('apiBoundedDispatch')));
+  });
+
+  test('bounded task queue on api', () {
+    final Root root = Root(apis: <Api>[
+      Api(
+          name: 'Api',
+          location: ApiLocation.host,
+          boundedTaskQueue: const BoundedTaskQueue(maxPendingCalls: 0),
+          methods: <Method>[
+            Method(
+              name: 'render',
+              arguments: <NamedType>[],
+              returnType: const TypeDeclaration.voidDeclaration(),
+            ),
+            Method(
+              name: 'other',
+              arguments: <NamedType>[],
+              returnType: const TypeDeclaration.voidDeclaration(),
+            ),
+          ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(
+        code,
+        contains(
+            'BoundedDispatch apiBoundedDispatch = new BoundedDispatch(binaryMessenger, getCodec(), 1, 0);'));
+    expect(
+        code,
+        contains(
+            'new BasicMessageChannel<>(apiBoundedDispatch, "dev.flutter.pigeon.Api.render", getCodec());'));
+    expect(
+        code,
+        contains(
+            'new BasicMessageChannel<>(apiBoundedDispatch, "dev.flutter.pigeon.Api.other", getCodec());'));
+  });
+
+  test('bounded task queue on single channel api', () {
+    final Root root = Root(apis: <Api>[
+      Api(
+          name: 'Api',
+          location: ApiLocation.host,
+          isSingleChannel: true,
+          boundedTaskQueue: const BoundedTaskQueue(),
+          methods: <Method>[
+            Method(
+              name: 'render',
+              arguments: <NamedType>[],
+              returnType: const TypeDeclaration.voidDeclaration(),
+            ),
+          ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(
+        code,
+        contains(
+            'BoundedDispatch apiBoundedDispatch = new BoundedDispatch(binaryMessenger, getCodec(), 1, 64);'));
+    expect(
+        code,
+        contains(
+            'new BasicMessageChannel<>(apiBoundedDispatch, "dev.flutter.pigeon.Api", getCodec());'));
+  });
+
+  test('no bounded task queue', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'other',
+          arguments: <NamedType>[],
+          returnType: const TypeDeclaration.voidDeclaration(),
+        ),
+      ])
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, isNot(contains('BoundedDispatch')));
+    expect(code, isNot(contains('ThreadPoolExecutor')));
+  });
+
+  test('trace sections', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'search',
+          arguments: <NamedType>[
+            NamedType(
+                type: const TypeDeclaration(
+                  baseName: 'String',
+                  isNullable: false,
+                ),
+                name: 'query')
+          ],
+          returnType: const TypeDeclaration(baseName: 'int', isNullable: false),
+        ),
+      ]),
+      Api(name: 'Listener', location: ApiLocation.flutter, methods: <Method>[
+        Method(
+          name: 'update',
+          arguments: <NamedType>[],
+          returnType: const TypeDeclaration.voidDeclaration(),
+        ),
+      ]),
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions =
+        JavaOptions(className: 'Messages', traceSections: true);
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, contains('import android.os.Trace;'));
+    expect(code, contains('public static final class PigeonTrace {'));
+    expect(
+        code,
+        contains(
+            'new BasicMessageChannel<>(binaryMessenger, "dev.flutter.pigeon.Api.search", PigeonTrace.codec("Pigeon:Api.search", getCodec()));'));
+    expect(
+        code,
+        contains(
+            'channel.setMessageHandler(PigeonTrace.handler("Pigeon:Api.search", (message, reply) -> {'));
+    expect(
+        code,
+        contains(
+            'new BasicMessageChannel<>(binaryMessenger, "dev.flutter.pigeon.Listener.update", PigeonTrace.codec("Pigeon:Listener.update", getCodec()));'));
+    expect(
+        code,
+        contains(
+            'int traceCookie = PigeonTrace.beginAsyncSection("Pigeon:Listener.update");'));
+    expect(
+        code,
+        contains(
+            'PigeonTrace.endAsyncSection("Pigeon:Listener.update", traceCookie);'));
+  });
+
+  test('trace sections on single channel', () {
+    final Root root = Root(apis: <Api>[
+      Api(
+          name: 'Api',
+          location: ApiLocation.host,
+          isSingleChannel: true,
+          methods: <Method>[
+            Method(
+              name: 'search',
+              arguments: <NamedType>[],
+              returnType: const TypeDeclaration.voidDeclaration(),
+            ),
+          ]),
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions =
+        JavaOptions(className: 'Messages', traceSections: true);
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(
+        code,
+        contains(
+            'new BasicMessageChannel<>(binaryMessenger, "dev.flutter.pigeon.Api", PigeonTrace.codec("Pigeon:Api", getCodec()));'));
+    expect(
+        code,
+        contains(
+            'channel.setMessageHandler(PigeonTrace.handler("Pigeon:Api", (message, reply) -> {'));
+  });
+
+  test('no trace sections', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'search',
+          arguments: <NamedType>[],
+          returnType: const TypeDeclaration.voidDeclaration(),
+        ),
+      ]),
+    ], classes: <Class>[], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, isNot(contains('PigeonTrace')));
+    expect(code, isNot(contains('android.os.Trace')));
+  });
+
+  test('extended codec types', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'echo',
+          arguments: <NamedType>[
+            NamedType(
+                name: 'value',
+                type: const TypeDeclaration(
+                    baseName: 'Object', isNullable: false)),
+          ],
+          returnType:
+              const TypeDeclaration(baseName: 'Object', isNullable: false),
+        ),
+      ]),
+    ],
+        classes: List<Class>.generate(
+            130,
+            (int i) => Class(
+                    name: 'Class${i.toString().padLeft(3, '0')}',
+                    fields: <NamedType>[
+                      NamedType(
+                          name: 'value',
+                          type: const TypeDeclaration(
+                              baseName: 'int', isNullable: true)),
+                    ])),
+        enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, contains('case (byte)254:'));
+    expect(code, contains('stream.write(254);'));
+    expect(code, contains('case (byte)255:'));
+    expect(code,
+        contains('return readExtendedValueOfType(buffer.getChar(), buffer);'));
+    expect(
+        code,
+        contains(
+            'private Object readExtendedValueOfType(char type, ByteBuffer buffer)'));
+    expect(code, contains('case 2:'));
+    expect(
+        code,
+        contains(
+            'return Class129.fromMap((Map<String, Object>) readValue(buffer));'));
+    expect(code, contains('stream.write(255);'));
+    expect(code, contains('writeChar(stream, 2);'));
+    expect(code, isNot(contains('stream.write(256);')));
+  });
+
+  test('no extended codec types', () {
+    final Root root = Root(apis: <Api>[
+      Api(name: 'Api', location: ApiLocation.host, methods: <Method>[
+        Method(
+          name: 'search',
+          arguments: <NamedType>[],
+          returnType:
+              const TypeDeclaration(baseName: 'Input', isNullable: false),
+        ),
+      ]),
+    ], classes: <Class>[
+      Class(name: 'Input', fields: <NamedType>[
+        NamedType(
+            name: 'input',
+            type: const TypeDeclaration(baseName: 'String', isNullable: true)),
+      ]),
+    ], enums: <Enum>[]);
+    final StringBuffer sink = StringBuffer();
+    const JavaOptions javaOptions = JavaOptions(className: 'Messages');
+    generateJava(javaOptions, root, sink);
+    final String code = sink.toString();
+    expect(code, contains('case (byte)128:'));
+    expect(code, isNot(contains('readExtendedValueOfType')));
+    expect(code, isNot(contains('writeChar')));
+  });
 }
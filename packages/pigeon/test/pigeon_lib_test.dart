@@ -6,7 +6,10 @@ import 'dart:async';
 import 'dart:io';
 
 import 'package:pigeon/ast.dart';
+import 'package:pigeon/cpp_generator.dart';
+import 'package:pigeon/objc_generator.dart';
 import 'package:pigeon/pigeon_lib.dart';
+import 'package:pigeon/swift_generator.dart';
 import 'package:test/test.dart';
 
 class _ValidatorGenerator implements Generator {
@@ -110,6 +113,54 @@ void main() {
     expect(opts.javaOptions!.useGeneratedAnnotation, isTrue);
   });
 
+  test('parse args - java_flutter_api_timeouts', () {
+    final PigeonOptions opts =
+        Pigeon.parseArgs(<String>['--java_flutter_api_timeouts']);
+    expect(opts.javaOptions!.flutterApiTimeouts, isTrue);
+  });
+
+  test('parse args - java_flutter_api_fan_out', () {
+    final PigeonOptions opts =
+        Pigeon.parseArgs(<String>['--java_flutter_api_fan_out']);
+    expect(opts.javaOptions!.flutterApiFanOut, isTrue);
+  });
+
+  test('parse args - java_flutter_api_thread_safe', () {
+    final PigeonOptions opts =
+        Pigeon.parseArgs(<String>['--java_flutter_api_thread_safe']);
+    expect(opts.javaOptions!.flutterApiThreadSafe, isTrue);
+  });
+
+  test('parse args - java_socket_messenger', () {
+    final PigeonOptions opts =
+        Pigeon.parseArgs(<String>['--java_socket_messenger']);
+    expect(opts.javaOptions!.socketMessenger, isTrue);
+  });
+
+  test('parse args - java_shared_memory_messenger', () {
+    final PigeonOptions opts =
+        Pigeon.parseArgs(<String>['--java_shared_memory_messenger']);
+    expect(opts.javaOptions!.sharedMemoryMessenger, isTrue);
+  });
+
+  test('parse args - java_trace_sections', () {
+    final PigeonOptions opts =
+        Pigeon.parseArgs(<String>['--java_trace_sections']);
+    expect(opts.javaOptions!.traceSections, isTrue);
+  });
+
+  test('parse args - java_flutter_api_backpressure', () {
+    final PigeonOptions opts =
+        Pigeon.parseArgs(<String>['--java_flutter_api_backpressure']);
+    expect(opts.javaOptions!.flutterApiBackpressure, isTrue);
+  });
+
+  test('parse args - java_immutable_data_classes', () {
+    final PigeonOptions opts =
+        Pigeon.parseArgs(<String>['--java_immutable_data_classes']);
+    expect(opts.javaOptions!.immutableDataClasses, isTrue);
+  });
+
   test('parse args - experimental_cpp_source_out', () {
     final PigeonOptions opts =
         Pigeon.parseArgs(<String>['--experimental_cpp_source_out', 'foo.cpp']);
@@ -127,6 +178,17 @@ void main() {
     expect(opts.astOut, equals('stdout'));
   });
 
+  test('parse args - varint_integers', () {
+    final PigeonOptions opts = Pigeon.parseArgs(<String>['--varint_integers']);
+    expect(opts.varintIntegers, isTrue);
+  });
+
+  test('parse args - preserve_references', () {
+    final PigeonOptions opts =
+        Pigeon.parseArgs(<String>['--preserve_references']);
+    expect(opts.preserveReferences, isTrue);
+  });
+
   test('simple parse api', () {
     const String code = '''
 class Input1 {
@@ -1198,4 +1260,675 @@ abstract class Api {
     });
     await completer.future;
   });
+
+  test('large blob', () {
+    const String code = '''
+class Foo {
+  @LargeBlob(threshold: 4096)
+  Uint8List? data;
+  @LargeBlob()
+  Uint8List? other;
+}
+
+@HostApi()
+abstract class Api {
+  void send(Foo foo);
+}
+''';
+
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 0);
+    expect(results.root.classes[0].fields[0].largeBlobThreshold, 4096);
+    expect(results.root.classes[0].fields[1].largeBlobThreshold,
+        const LargeBlob().threshold);
+  });
+
+  test('large blob on unsupported type', () {
+    const String code = '''
+class Foo {
+  @LargeBlob()
+  String? data;
+}
+
+@HostApi()
+abstract class Api {
+  void send(Foo foo);
+}
+''';
+
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 1);
+    expect(results.errors[0].message,
+        contains('LargeBlob is only supported on Uint8List fields'));
+  });
+
+  test('large blob unsupported in objc', () {
+    final Root root = Root(apis: <Api>[], classes: <Class>[
+      Class(name: 'Foo', fields: <NamedType>[
+        NamedType(
+            name: 'data',
+            type:
+                const TypeDeclaration(baseName: 'Uint8List', isNullable: true),
+            largeBlobThreshold: 1024),
+      ]),
+    ], enums: <Enum>[]);
+    final List<Error> errors = const ObjcHeaderGenerator()
+        .validate(const PigeonOptions(objcOptions: ObjcOptions()), root);
+    expect(errors.length, 1);
+    expect(errors[0].message, contains("LargeBlob isn't supported"));
+  });
+
+  test('coalesce', () {
+    const String code = '''
+@FlutterApi()
+abstract class Api {
+  @Coalesce()
+  void setProgress(double progress);
+  void other();
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 0);
+    expect(results.root.apis[0].methods[0].isCoalesced, isTrue);
+    expect(results.root.apis[0].methods[1].isCoalesced, isFalse);
+  });
+
+  test('coalesce on host api', () {
+    const String code = '''
+@HostApi()
+abstract class Api {
+  @Coalesce()
+  void setProgress(double progress);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 1);
+    expect(results.errors[0].message,
+        contains('Coalesce is only supported on FlutterApi methods'));
+  });
+
+  test('adaptive task queue', () {
+    const String code = '''
+@HostApi()
+abstract class Api {
+  @AdaptiveTaskQueue(budgetMicroseconds: 4000)
+  int search(String query);
+  @AdaptiveTaskQueue()
+  int count();
+  void other();
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 0);
+    expect(results.root.apis[0].methods[0].adaptiveBudgetMicroseconds, 4000);
+    expect(results.root.apis[0].methods[1].adaptiveBudgetMicroseconds, 2000);
+    expect(results.root.apis[0].methods[2].adaptiveBudgetMicroseconds, isNull);
+  });
+
+  test('adaptive task queue on flutter api', () {
+    const String code = '''
+@FlutterApi()
+abstract class Api {
+  @AdaptiveTaskQueue()
+  int search(String query);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 1);
+    expect(results.errors[0].message,
+        contains('AdaptiveTaskQueue is only supported on methods of HostApis'));
+  });
+
+  test('adaptive task queue with task queue', () {
+    const String code = '''
+@HostApi()
+abstract class Api {
+  @AdaptiveTaskQueue()
+  @TaskQueue(type: TaskQueueType.serialBackgroundThread)
+  int search(String query);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 1);
+    expect(results.errors[0].message,
+        contains('AdaptiveTaskQueue is only supported on methods of HostApis'));
+  });
+
+  test('adaptive task queue with invalid budget', () {
+    const String code = '''
+@HostApi()
+abstract class Api {
+  @AdaptiveTaskQueue(budgetMicroseconds: 0)
+  int search(String query);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 1);
+    expect(results.errors[0].message,
+        contains('budgetMicroseconds must be a positive integer literal'));
+  });
+
+  test('deadline', () {
+    const String code = '''
+@HostApi()
+abstract class Api {
+  @Deadline()
+  int search(String query);
+  void other();
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 0);
+    expect(results.root.apis[0].methods[0].hasDeadline, isTrue);
+    expect(results.root.apis[0].methods[1].hasDeadline, isFalse);
+  });
+
+  test('deadline on flutter api', () {
+    const String code = '''
+@FlutterApi()
+abstract class Api {
+  @Deadline()
+  int search(String query);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 1);
+    expect(results.errors[0].message,
+        contains('Deadline is only supported on HostApi methods'));
+  });
+
+  test('bounded task queue', () {
+    const String code = '''
+@HostApi()
+abstract class Api {
+  @BoundedTaskQueue(maxConcurrentCalls: 2, maxPendingCalls: 0)
+  int render(int page);
+  @BoundedTaskQueue()
+  int count();
+  void other();
+}
+
+@HostApi()
+@BoundedTaskQueue(maxPendingCalls: 8)
+abstract class BoundedApi {
+  void other();
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 0);
+    final BoundedTaskQueue render =
+        results.root.apis[0].methods[0].boundedTaskQueue!;
+    expect(render.maxConcurrentCalls, 2);
+    expect(render.maxPendingCalls, 0);
+    final BoundedTaskQueue count =
+        results.root.apis[0].methods[1].boundedTaskQueue!;
+    expect(count.maxConcurrentCalls, 1);
+    expect(count.maxPendingCalls, 64);
+    expect(results.root.apis[0].methods[2].boundedTaskQueue, isNull);
+    expect(results.root.apis[0].boundedTaskQueue, isNull);
+    expect(results.root.apis[1].boundedTaskQueue!.maxConcurrentCalls, 1);
+    expect(results.root.apis[1].boundedTaskQueue!.maxPendingCalls, 8);
+  });
+
+  test('bounded task queue on flutter api', () {
+    const String code = '''
+@FlutterApi()
+@BoundedTaskQueue()
+abstract class Api {
+  void other();
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 1);
+    expect(results.errors[0].message,
+        contains('BoundedTaskQueue is only supported on HostApis'));
+  });
+
+  test('bounded task queue on method of bounded api', () {
+    const String code = '''
+@HostApi()
+@BoundedTaskQueue()
+abstract class Api {
+  @BoundedTaskQueue()
+  int render(int page);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 1);
+    expect(results.errors[0].message,
+        contains('BoundedTaskQueue is only supported on methods of HostApis'));
+  });
+
+  test('bounded task queue with task queue', () {
+    const String code = '''
+@HostApi()
+@BoundedTaskQueue()
+abstract class Api {
+  @TaskQueue(type: TaskQueueType.serialBackgroundThread)
+  int render(int page);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 1);
+    expect(results.errors[0].message,
+        contains('BoundedTaskQueue can\'t be combined with TaskQueue'));
+  });
+
+  test('bounded task queue with invalid limits', () {
+    const String code = '''
+@HostApi()
+abstract class Api {
+  @BoundedTaskQueue(maxConcurrentCalls: 0)
+  int render(int page);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 1);
+    expect(results.errors[0].message,
+        contains('maxConcurrentCalls must be a positive integer literal'));
+  });
+
+  test('single channel', () {
+    const String code = '''
+@HostApi()
+@SingleChannel()
+abstract class Api {
+  int add(int x, int y);
+}
+
+@HostApi()
+abstract class OtherApi {
+  int add(int x, int y);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 0);
+    expect(results.root.apis[0].isSingleChannel, isTrue);
+    expect(results.root.apis[1].isSingleChannel, isFalse);
+  });
+
+  test('single channel on flutter api', () {
+    const String code = '''
+@FlutterApi()
+@SingleChannel()
+abstract class Api {
+  int add(int x, int y);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 1);
+    expect(results.errors[0].message,
+        contains('SingleChannel is only supported on HostApis'));
+  });
+
+  test('single channel with mixed task queues', () {
+    const String code = '''
+@HostApi()
+@SingleChannel()
+abstract class Api {
+  @TaskQueue(type: TaskQueueType.serialBackgroundThread)
+  int add(int x, int y);
+  int sub(int x, int y);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 1);
+    expect(results.errors[0].message, contains('must use the same TaskQueue'));
+  });
+
+  test('single channel unsupported in swift', () {
+    final Root root = Root(apis: <Api>[
+      Api(
+          name: 'Api',
+          location: ApiLocation.host,
+          isSingleChannel: true,
+          methods: <Method>[]),
+    ], classes: <Class>[], enums: <Enum>[]);
+    final List<Error> errors =
+        const SwiftGenerator().validate(const PigeonOptions(), root);
+    expect(errors.length, 1);
+    expect(errors[0].message, contains("SingleChannel isn't supported"));
+  });
+
+  test('columnar', () {
+    const String code = '''
+enum State { a, b }
+
+class Row {
+  int? id;
+  String? name;
+  State? state;
+}
+
+class Table {
+  @Columnar()
+  List<Row?>? rows;
+  List<Row?>? other;
+}
+
+@HostApi()
+abstract class Api {
+  void send(Table table);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 0);
+    final Class table =
+        results.root.classes.firstWhere((Class x) => x.name == 'Table');
+    expect(table.fields[0].isColumnar, isTrue);
+    expect(table.fields[1].isColumnar, isFalse);
+  });
+
+  test('columnar on unsupported type', () {
+    const String code = '''
+class Foo {
+  @Columnar()
+  List<int?>? values;
+}
+
+@HostApi()
+abstract class Api {
+  void send(Foo foo);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 1);
+    expect(results.errors[0].message,
+        contains('Columnar is only supported on Lists of data classes'));
+  });
+
+  test('columnar element with unsupported field', () {
+    const String code = '''
+class Inner {
+  int? x;
+}
+
+class Row {
+  Inner? inner;
+}
+
+class Table {
+  @Columnar()
+  List<Row?>? rows;
+}
+
+@HostApi()
+abstract class Api {
+  void send(Table table);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 1);
+    expect(results.errors[0].message,
+        contains('Columnar elements only support int, double, bool, String'));
+  });
+
+  test('columnar unsupported in swift', () {
+    final Root root = Root(apis: <Api>[], classes: <Class>[
+      Class(name: 'Row', fields: <NamedType>[
+        NamedType(
+            name: 'id',
+            type: const TypeDeclaration(baseName: 'int', isNullable: true)),
+      ]),
+      Class(name: 'Table', fields: <NamedType>[
+        NamedType(
+            name: 'rows',
+            type: const TypeDeclaration(
+                baseName: 'List',
+                isNullable: true,
+                typeArguments: <TypeDeclaration>[
+                  TypeDeclaration(baseName: 'Row', isNullable: true)
+                ]),
+            isColumnar: true),
+      ]),
+    ], enums: <Enum>[]);
+    final List<Error> errors = const SwiftGenerator()
+        .validate(const PigeonOptions(swiftOptions: SwiftOptions()), root);
+    expect(errors.length, 1);
+    expect(errors[0].message, contains("Columnar isn't supported"));
+  });
+
+  test('streamed list', () {
+    const String code = '''
+@HostApi()
+abstract class Api {
+  @StreamedList()
+  int sum(String label, List<int?> values);
+  int other(List<int?> values);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 0);
+    expect(results.root.apis[0].methods[0].isLastArgumentStreamed, isTrue);
+    expect(results.root.apis[0].methods[1].isLastArgumentStreamed, isFalse);
+  });
+
+  test('streamed list without list argument', () {
+    const String code = '''
+@HostApi()
+abstract class Api {
+  @StreamedList()
+  int sum(List<int?> values, String label);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 1);
+    expect(results.errors[0].message,
+        contains('StreamedList requires the last argument to be a non-null List'));
+  });
+
+  test('streamed list on flutter api', () {
+    const String code = '''
+@FlutterApi()
+abstract class Api {
+  @StreamedList()
+  int sum(List<int?> values);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 1);
+    expect(results.errors[0].message,
+        contains('StreamedList is only supported on methods of HostApis'));
+  });
+
+  test('streamed list on async method', () {
+    const String code = '''
+@HostApi()
+abstract class Api {
+  @StreamedList()
+  @async
+  int sum(List<int?> values);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 1);
+    expect(results.errors[0].message,
+        contains("StreamedList isn't supported on async methods"));
+  });
+
+  test('offset indexed', () {
+    const String code = '''
+class Item {
+  int? id;
+}
+
+class Page {
+  @OffsetIndexed()
+  List<Item?>? items;
+  List<Item?>? other;
+}
+
+@HostApi()
+abstract class Api {
+  void send(Page page);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 0);
+    final Class page =
+        results.root.classes.firstWhere((Class x) => x.name == 'Page');
+    expect(page.fields[0].isOffsetIndexed, isTrue);
+    expect(page.fields[1].isOffsetIndexed, isFalse);
+  });
+
+  test('offset indexed on unsupported type', () {
+    const String code = '''
+class Foo {
+  @OffsetIndexed()
+  Map<String?, int?>? values;
+}
+
+@HostApi()
+abstract class Api {
+  void send(Foo foo);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 1);
+    expect(results.errors[0].message,
+        contains('OffsetIndexed is only supported on List fields'));
+  });
+
+  test('offset indexed with columnar', () {
+    const String code = '''
+class Row {
+  int? id;
+}
+
+class Table {
+  @OffsetIndexed()
+  @Columnar()
+  List<Row?>? rows;
+}
+
+@HostApi()
+abstract class Api {
+  void send(Table table);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 1);
+    expect(results.errors[0].message,
+        contains("OffsetIndexed can't be combined with Columnar"));
+  });
+
+  test('offset indexed unsupported in objc', () {
+    final Root root = Root(apis: <Api>[], classes: <Class>[
+      Class(name: 'Foo', fields: <NamedType>[
+        NamedType(
+            name: 'values',
+            type: const TypeDeclaration(
+                baseName: 'List',
+                isNullable: true,
+                typeArguments: <TypeDeclaration>[
+                  TypeDeclaration(baseName: 'int', isNullable: true)
+                ]),
+            isOffsetIndexed: true),
+      ]),
+    ], enums: <Enum>[]);
+    final List<Error> errors = const ObjcHeaderGenerator()
+        .validate(const PigeonOptions(objcOptions: ObjcOptions()), root);
+    expect(errors.length, 1);
+    expect(errors[0].message, contains("OffsetIndexed isn't supported"));
+  });
+
+  test('presence bitmap', () {
+    const String code = '''
+@PresenceBitmap()
+class Sparse {
+  int? a;
+  String? b;
+}
+
+class Dense {
+  int? a;
+}
+
+@HostApi()
+abstract class Api {
+  void send(Sparse sparse, Dense dense);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 0);
+    final Class sparse =
+        results.root.classes.firstWhere((Class x) => x.name == 'Sparse');
+    final Class dense =
+        results.root.classes.firstWhere((Class x) => x.name == 'Dense');
+    expect(sparse.hasPresenceBitmap, isTrue);
+    expect(dense.hasPresenceBitmap, isFalse);
+  });
+
+  test('presence bitmap with too many fields', () {
+    final String fields =
+        List<String>.generate(65, (int i) => '  int? f$i;').join('\n');
+    final String code = '''
+@PresenceBitmap()
+class Sparse {
+$fields
+}
+
+@HostApi()
+abstract class Api {
+  void send(Sparse sparse);
+}
+''';
+    final ParseResults results = parseSource(code);
+    expect(results.errors.length, 1);
+    expect(results.errors[0].message,
+        contains('PresenceBitmap supports classes with up to 64 fields'));
+  });
+
+  test('presence bitmap unsupported in c++', () {
+    final Root root = Root(apis: <Api>[], classes: <Class>[
+      Class(
+        name: 'Sparse',
+        fields: <NamedType>[
+          NamedType(
+              name: 'a',
+              type: const TypeDeclaration(baseName: 'int', isNullable: true)),
+        ],
+        hasPresenceBitmap: true,
+      ),
+    ], enums: <Enum>[]);
+    final List<Error> errors = const CppHeaderGenerator()
+        .validate(const PigeonOptions(cppOptions: CppOptions()), root);
+    expect(errors.length, 1);
+    expect(errors[0].message, contains("PresenceBitmap isn't supported"));
+  });
+
+  test('varint integers unsupported in swift', () {
+    final Root root = Root(apis: <Api>[], classes: <Class>[], enums: <Enum>[]);
+    final List<Error> errors = const SwiftGenerator().validate(
+        const PigeonOptions(varintIntegers: true, swiftOptions: SwiftOptions()),
+        root);
+    expect(errors.length, 1);
+    expect(errors[0].message, contains("varintIntegers isn't supported"));
+  });
+
+  test('preserve references unsupported in objc', () {
+    final Root root = Root(apis: <Api>[], classes: <Class>[], enums: <Enum>[]);
+    final List<Error> errors = const ObjcHeaderGenerator().validate(
+        const PigeonOptions(
+            preserveReferences: true, objcOptions: ObjcOptions()),
+        root);
+    expect(errors.length, 1);
+    expect(errors[0].message, contains("preserveReferences isn't supported"));
+  });
+
+  test('preserve references with offset indexed list', () {
+    final Root root = Root(apis: <Api>[], classes: <Class>[
+      Class(name: 'Page', fields: <NamedType>[
+        NamedType(
+            name: 'items',
+            type: const TypeDeclaration(baseName: 'List', isNullable: true),
+            isOffsetIndexed: true),
+      ]),
+    ], enums: <Enum>[]);
+    final List<Error> errors = const DartGenerator()
+        .validate(const PigeonOptions(preserveReferences: true), root);
+    expect(errors.length, 1);
+    expect(errors[0].message,
+        contains("preserveReferences can't be combined with OffsetIndexed"));
+  });
 }